@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage.benchmarks;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.util.ReferenceManager;
+import io.atomix.copycat.server.storage.compaction.Compaction;
+import io.atomix.copycat.server.storage.entry.Entry;
+
+/**
+ * Entry with a configurable amount of padding used to vary the stored size of entries in benchmarks.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public class BenchmarkEntry extends Entry<BenchmarkEntry> {
+  private byte[] padding = new byte[0];
+
+  public BenchmarkEntry() {
+  }
+
+  public BenchmarkEntry(ReferenceManager<Entry<?>> referenceManager) {
+    super(referenceManager);
+  }
+
+  @Override
+  public void readObject(BufferInput<?> buffer, Serializer serializer) {
+    padding = new byte[buffer.readInt()];
+    buffer.read(padding);
+  }
+
+  @Override
+  public void writeObject(BufferOutput<?> buffer, Serializer serializer) {
+    buffer.writeInt(padding.length).write(padding);
+  }
+
+  /**
+   * Returns the entry padding.
+   *
+   * @return The entry padding.
+   */
+  public byte[] getPadding() {
+    return padding;
+  }
+
+  /**
+   * Sets the entry padding.
+   *
+   * @param size The size of the entry padding in bytes.
+   * @return The entry.
+   */
+  public BenchmarkEntry setPadding(int size) {
+    if (padding.length != size) {
+      padding = new byte[size];
+    }
+    return this;
+  }
+
+  @Override
+  public Compaction.Mode getCompactionMode() {
+    return Compaction.Mode.QUORUM;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[index=%d, term=%d]", getClass().getSimpleName(), getIndex(), getTerm());
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage.benchmarks;
+
+import io.atomix.copycat.server.storage.StorageLevel;
+import io.atomix.copycat.server.storage.compaction.Compaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to compact the log.
+ * <p>
+ * Before each invocation, the log is populated with roughly {@code 64MB} of entries, every other entry is released,
+ * and all entries are committed. Each invocation then runs a single {@link Compaction#MINOR minor} or
+ * {@link Compaction#MAJOR major} compaction over the entire log, so compaction throughput is the size of the log
+ * divided by the measured time.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CompactionBenchmark extends LogBenchmark {
+  private static final long LOG_SIZE = 1024 * 1024 * 64;
+  private static final int SEGMENT_SIZE = 1024 * 1024 * 4;
+
+  @Param({"MEMORY", "MAPPED", "DISK", "TIERED"})
+  public StorageLevel storageLevel;
+
+  @Param({"64", "1024", "16384"})
+  public int entrySize;
+
+  @Param({"MINOR", "MAJOR"})
+  public Compaction compaction;
+
+  @Setup(Level.Invocation)
+  public void setup() {
+    createDirectory();
+    storage = storageBuilder(storageLevel)
+      .withMaxSegmentSize(SEGMENT_SIZE)
+      .build();
+    log = openLog();
+
+    long lastIndex = appendEntries(entryCount(LOG_SIZE, entrySize), entrySize);
+    for (long i = 1; i <= lastIndex; i += 2) {
+      log.release(i);
+    }
+    log.commit(lastIndex);
+    log.compactor().minorIndex(lastIndex);
+    log.compactor().majorIndex(lastIndex);
+  }
+
+  @TearDown(Level.Invocation)
+  public void teardown() {
+    deleteDirectory();
+  }
+
+  /**
+   * Compacts the log.
+   */
+  @Benchmark
+  public void compact() {
+    log.compactor().compact(compaction).join();
+  }
+
+}
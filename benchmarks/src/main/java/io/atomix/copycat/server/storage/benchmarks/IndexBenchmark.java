@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage.benchmarks;
+
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.copycat.server.storage.util.OffsetIndex;
+import io.atomix.copycat.server.storage.util.TermIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of segment index lookups.
+ * <p>
+ * The offset index is populated with {@code 1024 * 1024} entries. If {@code skipped} is {@code true}, every other
+ * offset is indexed, forcing lookups to search the index rather than computing positions directly. Sparse indexes
+ * are benchmarked by increasing the {@code interval}, in which case entries that are not stored in the index are
+ * located by scanning synthetic fixed-size records.
+ * <p>
+ * Term lookups are expected not to allocate, which can be verified by running the benchmarks with {@code -prof gc}.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class IndexBenchmark {
+  private static final int ENTRIES = 1024 * 1024;
+  private static final int RECORD_SIZE = 64;
+  private static final int TERM_INTERVAL = 1024;
+
+  @Param({"false", "true"})
+  public boolean skipped;
+
+  @Param({"1", "16"})
+  public int interval;
+
+  private OffsetIndex offsetIndex;
+  private TermIndex termIndex;
+  private long lastOffset;
+  private long nextOffset;
+  private long nextTermOffset;
+  private boolean nextTermRandom;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    int stride = skipped ? 2 : 1;
+    offsetIndex = new OffsetIndex(HeapBuffer.allocate(OffsetIndex.size(ENTRIES, interval)), interval);
+    offsetIndex.scanner(new OffsetIndex.Scanner() {
+      @Override
+      public long offset(long position) {
+        return position / RECORD_SIZE * stride;
+      }
+
+      @Override
+      public long next(long position) {
+        return position + RECORD_SIZE;
+      }
+    });
+
+    termIndex = new TermIndex();
+    for (int i = 0; i < ENTRIES; i++) {
+      long offset = (long) i * stride;
+      offsetIndex.index(offset, (long) i * RECORD_SIZE);
+      if (i % TERM_INTERVAL == 0) {
+        termIndex.index(offset, i / TERM_INTERVAL + 1);
+      }
+    }
+    lastOffset = offsetIndex.lastOffset();
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() {
+    offsetIndex.close();
+  }
+
+  /**
+   * Finds the position of a random offset.
+   */
+  @Benchmark
+  public long randomPosition() {
+    return offsetIndex.position(ThreadLocalRandom.current().nextLong(lastOffset + 1));
+  }
+
+  /**
+   * Finds the position of the offset following the last offset found.
+   */
+  @Benchmark
+  public long sequentialPosition() {
+    long position = offsetIndex.position(nextOffset);
+    nextOffset = nextOffset < lastOffset ? nextOffset + 1 : 0;
+    return position;
+  }
+
+  /**
+   * Finds the ordinal of a random offset.
+   */
+  @Benchmark
+  public long randomFind() {
+    return offsetIndex.find(ThreadLocalRandom.current().nextLong(lastOffset + 1));
+  }
+
+  /**
+   * Looks up the term of a random offset.
+   */
+  @Benchmark
+  public long randomTerm() {
+    return termIndex.lookup(ThreadLocalRandom.current().nextLong(lastOffset + 1));
+  }
+
+  /**
+   * Looks up the term of alternating sequential and random offsets.
+   */
+  @Benchmark
+  public long mixedTerm() {
+    long offset;
+    if (nextTermRandom) {
+      offset = ThreadLocalRandom.current().nextLong(lastOffset + 1);
+    } else {
+      offset = nextTermOffset;
+      nextTermOffset = nextTermOffset < lastOffset ? nextTermOffset + 1 : 0;
+    }
+    nextTermRandom = !nextTermRandom;
+    return termIndex.lookup(offset);
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage.benchmarks;
+
+import io.atomix.copycat.server.storage.Log;
+import io.atomix.copycat.server.storage.StorageLevel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of appending entries to the log.
+ * <p>
+ * Entries are appended individually via {@link Log#append(io.atomix.copycat.server.storage.entry.Entry)} and in
+ * batches via {@link Log#append(List)}. The log is recreated for each iteration, so appends include rolling over
+ * to new segments as segments fill up.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LogAppendBenchmark extends LogBenchmark {
+  private static final int BATCH_SIZE = 64;
+
+  @Param({"MEMORY", "MAPPED", "DISK", "TIERED"})
+  public StorageLevel storageLevel;
+
+  @Param({"64", "1024", "16384"})
+  public int entrySize;
+
+  private final List<BenchmarkEntry> batch = new ArrayList<>(BATCH_SIZE);
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    createDirectory();
+    storage = storageBuilder(storageLevel).build();
+    log = openLog();
+  }
+
+  @TearDown(Level.Iteration)
+  public void teardown() {
+    deleteDirectory();
+  }
+
+  /**
+   * Appends a single entry to the log.
+   */
+  @Benchmark
+  public long append() {
+    try (BenchmarkEntry entry = log.create(BenchmarkEntry.class)) {
+      entry.setTerm(1).setPadding(entrySize);
+      return log.append(entry);
+    }
+  }
+
+  /**
+   * Appends a batch of entries to the log.
+   */
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public long appendBatch() {
+    long index = log.lastIndex();
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      BenchmarkEntry entry = log.create(BenchmarkEntry.class);
+      entry.setIndex(++index).setTerm(1).setPadding(entrySize);
+      batch.add(entry);
+    }
+
+    try {
+      return log.append(batch);
+    } finally {
+      batch.forEach(BenchmarkEntry::close);
+      batch.clear();
+    }
+  }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage.benchmarks;
+
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.util.concurrent.SingleThreadContext;
+import io.atomix.catalyst.util.concurrent.ThreadContext;
+import io.atomix.copycat.server.storage.Log;
+import io.atomix.copycat.server.storage.Storage;
+import io.atomix.copycat.server.storage.StorageLevel;
+import io.atomix.copycat.server.storage.util.StorageSerialization;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+
+/**
+ * Base class for log benchmarks.
+ * <p>
+ * Benchmarks are packaged in a self-contained jar and can be run offline from the project root:
+ * <pre>
+ *   {@code
+ *   mvn -Pbenchmarks -pl benchmarks -am package -DskipTests
+ *   java -jar benchmarks/target/benchmarks.jar LogAppendBenchmark -p storageLevel=DISK,MAPPED -p entrySize=1024
+ *   }
+ * </pre>
+ * Logs are created in a temporary directory which is deleted when the benchmark state is torn down. Scheduled
+ * compaction is effectively disabled so that background compaction doesn't interfere with measurements. Benchmarks
+ * that measure compaction trigger it explicitly.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public abstract class LogBenchmark {
+  protected static final String LOG_NAME = "benchmark";
+  protected static final int MAX_SEGMENT_SIZE = 1024 * 1024 * 32;
+  private static final Duration COMPACTION_INTERVAL = Duration.ofDays(1);
+
+  protected File directory;
+  protected Storage storage;
+  protected Log log;
+
+  /**
+   * Creates the temporary directory in which to store logs.
+   */
+  protected void createDirectory() {
+    try {
+      directory = Files.createTempDirectory("copycat-benchmark").toFile();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Returns a storage builder for logs stored in the benchmark directory at the given storage level.
+   */
+  protected Storage.Builder storageBuilder(StorageLevel storageLevel) {
+    return Storage.builder()
+      .withDirectory(directory)
+      .withStorageLevel(storageLevel)
+      .withMaxSegmentSize(MAX_SEGMENT_SIZE)
+      .withCompactionThreads(1)
+      .withMinorCompactionInterval(COMPACTION_INTERVAL)
+      .withMajorCompactionInterval(COMPACTION_INTERVAL);
+  }
+
+  /**
+   * Opens the benchmark log with the current storage configuration.
+   * <p>
+   * Logs are opened via {@link Storage#openLog(String)}, which takes the log's serializer from the current
+   * {@link ThreadContext}, so the log is opened on a context whose serializer can serialize benchmark entries.
+   */
+  protected Log openLog() {
+    try (ThreadContext context = new SingleThreadContext("copycat-benchmark-%d", new Serializer().resolve(new StorageSerialization()).register(BenchmarkEntry.class))) {
+      return context.execute(() -> storage.openLog(LOG_NAME)).join();
+    }
+  }
+
+  /**
+   * Appends the given number of entries with the given padding to the log.
+   *
+   * @return The index of the last entry appended.
+   */
+  protected long appendEntries(int count, int padding) {
+    long index = 0;
+    for (int i = 0; i < count; i++) {
+      try (BenchmarkEntry entry = log.create(BenchmarkEntry.class)) {
+        entry.setTerm(1).setPadding(padding);
+        index = log.append(entry);
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Returns the number of entries with the given padding that fit in a log of roughly the given size.
+   */
+  protected static int entryCount(long logSize, int padding) {
+    return (int) Math.max(1024, logSize / padding);
+  }
+
+  /**
+   * Closes the benchmark log if it's open.
+   */
+  protected void closeLog() {
+    if (log != null && log.isOpen()) {
+      log.close();
+    }
+    log = null;
+  }
+
+  /**
+   * Closes the benchmark log and deletes the benchmark directory.
+   */
+  protected void deleteDirectory() {
+    closeLog();
+    if (directory == null) {
+      return;
+    }
+
+    try {
+      Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          Files.delete(file);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+          Files.delete(dir);
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    directory = null;
+  }
+
+}
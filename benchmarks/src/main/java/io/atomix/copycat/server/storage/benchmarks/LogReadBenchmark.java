@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage.benchmarks;
+
+import io.atomix.copycat.server.storage.Log;
+import io.atomix.copycat.server.storage.LogReader;
+import io.atomix.copycat.server.storage.StorageLevel;
+import io.atomix.copycat.server.storage.entry.Entry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of reading entries from the log.
+ * <p>
+ * The log is populated with roughly {@code 64MB} of entries once per trial. Entries are read at random indexes via
+ * {@link Log#get(long)}, at consecutive indexes via {@link Log#get(long)}, and at consecutive indexes via a
+ * {@link LogReader}. The entry cache is disabled so that entries are always read from their segments.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LogReadBenchmark extends LogBenchmark {
+  private static final long LOG_SIZE = 1024 * 1024 * 64;
+
+  @Param({"MEMORY", "MAPPED", "DISK", "TIERED"})
+  public StorageLevel storageLevel;
+
+  @Param({"64", "1024", "16384"})
+  public int entrySize;
+
+  private long lastIndex;
+  private long nextIndex = 1;
+  private LogReader reader;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    createDirectory();
+    storage = storageBuilder(storageLevel)
+      .withEntryCacheSize(0)
+      .build();
+    log = openLog();
+    lastIndex = appendEntries(entryCount(LOG_SIZE, entrySize), entrySize);
+    log.flush();
+    reader = log.createReader(1);
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() {
+    reader.close();
+    deleteDirectory();
+  }
+
+  /**
+   * Reads an entry at a random index.
+   */
+  @Benchmark
+  public void randomGet(Blackhole blackhole) {
+    try (Entry entry = log.get(ThreadLocalRandom.current().nextLong(1, lastIndex + 1))) {
+      blackhole.consume(entry);
+    }
+  }
+
+  /**
+   * Reads the entry following the last entry read.
+   */
+  @Benchmark
+  public void sequentialGet(Blackhole blackhole) {
+    try (Entry entry = log.get(nextIndex)) {
+      blackhole.consume(entry);
+    }
+    nextIndex = nextIndex < lastIndex ? nextIndex + 1 : 1;
+  }
+
+  /**
+   * Reads the next entry via a log reader.
+   */
+  @Benchmark
+  public void sequentialReader(Blackhole blackhole) {
+    if (!reader.hasNext()) {
+      reader.reset(1);
+    }
+    try (Entry entry = reader.next()) {
+      blackhole.consume(entry);
+    }
+  }
+
+}
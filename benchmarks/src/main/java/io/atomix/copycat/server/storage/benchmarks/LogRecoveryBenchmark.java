@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage.benchmarks;
+
+import io.atomix.copycat.server.storage.StorageLevel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to open a persistent log.
+ * <p>
+ * The log is populated with roughly {@code 256MB} of entries once per trial and closed. Each invocation reopens the
+ * log, loading its segments and rebuilding their indexes. {@link StorageLevel#MEMORY} logs are not persisted and are
+ * therefore not benchmarked.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LogRecoveryBenchmark extends LogBenchmark {
+  private static final long LOG_SIZE = 1024 * 1024 * 256;
+
+  @Param({"MAPPED", "DISK", "TIERED"})
+  public StorageLevel storageLevel;
+
+  @Param({"64", "1024", "16384"})
+  public int entrySize;
+
+  @Param({"1", "4"})
+  public int recoveryThreads;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    createDirectory();
+    storage = storageBuilder(storageLevel)
+      .withRecoveryThreads(recoveryThreads)
+      .build();
+    log = openLog();
+    appendEntries(entryCount(LOG_SIZE, entrySize), entrySize);
+    closeLog();
+  }
+
+  @TearDown(Level.Invocation)
+  public void close() {
+    closeLog();
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() {
+    deleteDirectory();
+  }
+
+  /**
+   * Opens the log.
+   */
+  @Benchmark
+  public long open() {
+    log = openLog();
+    return log.lastIndex();
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage.benchmarks;
+
+import io.atomix.copycat.server.storage.Storage;
+import io.atomix.copycat.server.storage.StorageLevel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of rolling over to a new segment.
+ * <p>
+ * The log is configured to store a single entry per segment, so every append rolls over to a new segment. Segments
+ * are benchmarked with and without {@link Storage#preallocateSegments() background preallocation}.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SegmentRollBenchmark extends LogBenchmark {
+  private static final int SEGMENT_SIZE = 1024 * 64;
+
+  @Param({"MEMORY", "MAPPED", "DISK", "TIERED"})
+  public StorageLevel storageLevel;
+
+  @Param({"false", "true"})
+  public boolean preallocateSegments;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    createDirectory();
+    storage = storageBuilder(storageLevel)
+      .withMaxSegmentSize(SEGMENT_SIZE)
+      .withMaxEntriesPerSegment(1)
+      .withPreallocateSegments(preallocateSegments)
+      .build();
+    log = openLog();
+  }
+
+  @TearDown(Level.Iteration)
+  public void teardown() {
+    deleteDirectory();
+  }
+
+  /**
+   * Appends an entry to a new segment.
+   */
+  @Benchmark
+  public long roll() {
+    try (BenchmarkEntry entry = log.create(BenchmarkEntry.class)) {
+      entry.setTerm(1);
+      return log.append(entry);
+    }
+  }
+
+}
@@ -142,7 +142,8 @@ public class ClientConnection implements Connection {
           || response.error() == CopycatError.Type.COMMAND_ERROR
           || response.error() == CopycatError.Type.QUERY_ERROR
           || response.error() == CopycatError.Type.APPLICATION_ERROR
-          || response.error() == CopycatError.Type.UNKNOWN_SESSION_ERROR) {
+          || response.error() == CopycatError.Type.UNKNOWN_SESSION_ERROR
+          || response.error() == CopycatError.Type.RESOURCE_EXHAUSTED_ERROR) {
           future.complete(response);
         } else {
           next().whenComplete((c, e) -> sendRequest(request, c, e, future));
@@ -50,6 +50,8 @@ public interface CopycatError {
         return Type.INTERNAL_ERROR;
       case 8:
         return Type.CONFIGURATION_ERROR;
+      case 9:
+        return Type.RESOURCE_EXHAUSTED_ERROR;
       default:
         throw new IllegalArgumentException("invalid error identifier: " + id);
     }
@@ -152,6 +154,16 @@ public interface CopycatError {
       public CopycatException createException() {
         return new ConfigurationException("configuration failed");
       }
+    },
+
+    /**
+     * Resource exhausted error.
+     */
+    RESOURCE_EXHAUSTED_ERROR(9) {
+      @Override
+      public CopycatException createException() {
+        return new ResourceExhaustedException("server resources exhausted");
+      }
     };
 
     private final byte id;
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.error;
+
+/**
+ * Indicates that a request was rejected because server resources were exhausted.
+ * <p>
+ * Resource exhausted errors are transient. Servers reject requests with this error, e.g. when the storage
+ * memory budget has been exhausted, to apply backpressure to clients, and rejected requests may be retried.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public class ResourceExhaustedException extends CopycatException {
+  private static final CopycatError.Type TYPE = CopycatError.Type.RESOURCE_EXHAUSTED_ERROR;
+
+  public ResourceExhaustedException(String message, Object... args) {
+    super(TYPE, message, args);
+  }
+
+  public ResourceExhaustedException(Throwable cause, String message, Object... args) {
+    super(TYPE, cause, message, args);
+  }
+
+  public ResourceExhaustedException(Throwable cause) {
+    super(TYPE, cause);
+  }
+
+}
@@ -48,6 +48,8 @@ public class CopycatErrorTest {
     assertEquals(error, CopycatError.Type.INTERNAL_ERROR);
     error = CopycatError.forId(new ConfigurationException("test").getType().id());
     assertEquals(error, CopycatError.Type.CONFIGURATION_ERROR);
+    error = CopycatError.forId(new ResourceExhaustedException("test").getType().id());
+    assertEquals(error, CopycatError.Type.RESOURCE_EXHAUSTED_ERROR);
   }
 
 }
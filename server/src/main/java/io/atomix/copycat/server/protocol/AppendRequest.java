@@ -20,10 +20,12 @@ import io.atomix.catalyst.buffer.BufferOutput;
 import io.atomix.catalyst.serializer.Serializer;
 import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.protocol.AbstractRequest;
+import io.atomix.copycat.server.storage.RawEntry;
 import io.atomix.copycat.server.storage.entry.Entry;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -33,6 +35,11 @@ import java.util.Objects;
  * Append entries requests are at the core of the replication protocol. Leaders send append requests
  * to followers to replicate and commit log entries, and followers sent append requests to passive members
  * to replicate committed log entries.
+ * <p>
+ * Entries can be added to the request either as {@link Entry} objects or as {@link RawEntry raw entries} read
+ * directly from the log. Both are written to the request in the same format: raw entries are written verbatim
+ * when the output buffer has the same byte order as the log from which they were read, and otherwise they're
+ * deserialized and reserialized. All entries are deserialized into {@link Entry} objects when the request is read.
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
@@ -62,6 +69,8 @@ public class AppendRequest extends AbstractRequest {
   private long logIndex;
   private long logTerm;
   private List<Entry> entries;
+  private List<RawEntry> rawEntries = Collections.emptyList();
+  private Serializer rawSerializer;
   private long commitIndex = -1;
   private long globalIndex = -1;
 
@@ -103,13 +112,46 @@ public class AppendRequest extends AbstractRequest {
 
   /**
    * Returns the log entries to append.
+   * <p>
+   * If the request contains {@link #rawEntries() raw entries} that have not been deserialized, e.g. because the
+   * request was not serialized by the transport, the raw entries are deserialized with the serializer with which
+   * they were added to the request.
    *
    * @return A list of log entries.
    */
   public List<? extends Entry> entries() {
+    if (!rawEntries.isEmpty()) {
+      List<Entry> entries = new ArrayList<>(this.entries.size() + rawEntries.size());
+      entries.addAll(this.entries);
+      for (RawEntry rawEntry : rawEntries) {
+        entries.add(rawEntry.toEntry(rawSerializer));
+      }
+      this.entries = entries;
+      this.rawEntries = Collections.emptyList();
+    }
     return entries;
   }
 
+  /**
+   * Returns the raw log entries to append.
+   * <p>
+   * Raw entries follow {@link #entries()} in the request.
+   *
+   * @return A list of raw log entries.
+   */
+  public List<RawEntry> rawEntries() {
+    return rawEntries;
+  }
+
+  /**
+   * Returns a boolean indicating whether the request contains any entries.
+   *
+   * @return Indicates whether the request contains any entries.
+   */
+  public boolean hasEntries() {
+    return !entries.isEmpty() || !rawEntries.isEmpty();
+  }
+
   /**
    * Returns the leader's commit index.
    *
@@ -137,11 +179,24 @@ public class AppendRequest extends AbstractRequest {
       .writeLong(commitIndex)
       .writeLong(globalIndex);
 
-    buffer.writeInt(entries.size());
+    buffer.writeInt(entries.size() + rawEntries.size());
     for (Entry entry : entries) {
       buffer.writeLong(entry.getIndex()).writeLong(entry.getTerm());
       serializer.writeObject(entry, buffer);
     }
+
+    // Raw entries hold the serializer's output for each entry, so they can be written in place of the serialized
+    // entry if they were serialized in the buffer's byte order.
+    for (RawEntry rawEntry : rawEntries) {
+      buffer.writeLong(rawEntry.index()).writeLong(rawEntry.term());
+      if (rawEntry.canWriteTo(buffer)) {
+        rawEntry.writeTo(buffer);
+      } else {
+        try (Entry entry = rawEntry.toEntry(rawSerializer)) {
+          serializer.writeObject(entry, buffer);
+        }
+      }
+    }
   }
 
   @Override
@@ -162,11 +217,13 @@ public class AppendRequest extends AbstractRequest {
       entry.setIndex(index).setTerm(term);
       entries.add(entry);
     }
+    rawEntries = Collections.emptyList();
+    rawSerializer = null;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(getClass(), term, leader, logIndex, logTerm, entries, commitIndex, globalIndex);
+    return Objects.hash(getClass(), term, leader, logIndex, logTerm, entries, rawEntries, commitIndex, globalIndex);
   }
 
   @Override
@@ -178,6 +235,7 @@ public class AppendRequest extends AbstractRequest {
         && request.logIndex == logIndex
         && request.logTerm == logTerm
         && request.entries.equals(entries)
+        && request.rawEntries.equals(rawEntries)
         && request.commitIndex == commitIndex
         && request.globalIndex == globalIndex;
     }
@@ -186,7 +244,7 @@ public class AppendRequest extends AbstractRequest {
 
   @Override
   public String toString() {
-    return String.format("%s[term=%d, leader=%s, logIndex=%d, logTerm=%d, entries=[%d], commitIndex=%d, globalIndex=%d]", getClass().getSimpleName(), term, leader, logIndex, logTerm, entries.size(), commitIndex, globalIndex);
+    return String.format("%s[term=%d, leader=%s, logIndex=%d, logTerm=%d, entries=[%d], commitIndex=%d, globalIndex=%d]", getClass().getSimpleName(), term, leader, logIndex, logTerm, entries.size() + rawEntries.size(), commitIndex, globalIndex);
   }
 
   /**
@@ -269,6 +327,24 @@ public class AppendRequest extends AbstractRequest {
       return this;
     }
 
+    /**
+     * Sets the request raw entries.
+     * <p>
+     * Raw entries are written to the request following any {@link #withEntries(List) entries}. The given serializer
+     * must be the serializer with which the entries were serialized, and it's used to deserialize the entries when
+     * they can't be written verbatim or when the request is read without being serialized.
+     *
+     * @param entries The request raw entries.
+     * @param serializer The serializer with which the raw entries were serialized.
+     * @return The append request builder.
+     * @throws NullPointerException if {@code entries} or {@code serializer} is null
+     */
+    public Builder withRawEntries(List<RawEntry> entries, Serializer serializer) {
+      request.rawEntries = Assert.notNull(entries, "entries");
+      request.rawSerializer = Assert.notNull(serializer, "serializer");
+      return this;
+    }
+
     /**
      * Adds an entry to the request.
      *
@@ -17,9 +17,13 @@ package io.atomix.copycat.server.state;
 
 import io.atomix.catalyst.transport.Connection;
 import io.atomix.catalyst.util.Assert;
+import io.atomix.catalyst.util.Listener;
 import io.atomix.copycat.protocol.Response;
 import io.atomix.copycat.server.CopycatServer;
+import io.atomix.copycat.server.cluster.Member;
 import io.atomix.copycat.server.protocol.*;
+import io.atomix.copycat.server.storage.LogReader;
+import io.atomix.copycat.server.storage.RawEntry;
 import io.atomix.copycat.server.storage.entry.Entry;
 import io.atomix.copycat.server.storage.snapshot.Snapshot;
 import io.atomix.copycat.server.storage.snapshot.SnapshotReader;
@@ -40,10 +44,13 @@ abstract class AbstractAppender implements AutoCloseable {
   private final Set<MemberState> appending = new HashSet<>();
   private final Set<MemberState> configuring = new HashSet<>();
   private final Set<MemberState> installing = new HashSet<>();
+  private final Map<MemberState, LogReader> readers = new HashMap<>();
+  private final Listener<Member> leaveListener;
   protected boolean open = true;
 
   protected AbstractAppender(ServerContext context) {
     this.context = Assert.notNull(context, "context");
+    this.leaveListener = context.getClusterState().onLeave(this::closeReader);
   }
 
   /**
@@ -175,6 +182,27 @@ abstract class AbstractAppender implements AutoCloseable {
     // Calculate the starting index of the list of entries.
     final long index = prevEntry != null ? prevEntry.getIndex() + 1 : context.getLog().firstIndex();
 
+    // If the first entry is not in the log's cache of recently appended entries, attempt to read the entries
+    // from the log without deserializing them. Raw entries are written to the request verbatim. Cached entries
+    // are already deserialized, and entries that may have been compacted must be read as Entry objects.
+    if (!context.getLog().isCached(index)) {
+      List<RawEntry> rawEntries = context.getLog().readRaw(index, MAX_BATCH_SIZE);
+      int count = rawEntries.size();
+      while (count > 0 && rawEntries.get(count - 1).index() > lastIndex) {
+        count--;
+      }
+
+      if (count > 0) {
+        // Release the previous entry back to the entry pool.
+        if (prevEntry != null) {
+          prevEntry.release();
+        }
+        return builder.withEntries(Collections.EMPTY_LIST)
+          .withRawEntries(rawEntries.subList(0, count), context.getLog().serializer())
+          .build();
+      }
+    }
+
     // Build a list of entries to send to the member.
     List<Entry> entries = new ArrayList<>((int) Math.min(8, context.getLog().lastIndex() - index + 1));
 
@@ -187,11 +215,12 @@ abstract class AbstractAppender implements AutoCloseable {
     int size = 0;
 
     // Iterate through remaining entries in the log up to the last index.
-    for (long i = index; i <= lastIndex; i++) {
+    LogReader reader = getReader(member, index);
+    while (reader.nextIndex() <= lastIndex) {
       // Get the entry from the log and append it if it's not null. Entries in the log can be null
       // if they've been cleaned or compacted from the log. Each entry sent in the append request
       // has a unique index to handle gaps in the log.
-      Entry entry = context.getLog().get(i);
+      Entry entry = reader.next();
       if (entry != null) {
         if (!entries.isEmpty() && size + entry.size() > MAX_BATCH_SIZE) {
           break;
@@ -210,6 +239,37 @@ abstract class AbstractAppender implements AutoCloseable {
     return builder.withEntries(entries).build();
   }
 
+  /**
+   * Returns the log reader for the given member positioned at the given index.
+   * <p>
+   * A reader is held for each member to which entries are replicated, so entries are read sequentially
+   * from the log as the member catches up.
+   */
+  private LogReader getReader(MemberState member, long index) {
+    LogReader reader = readers.get(member);
+    if (reader == null) {
+      reader = context.getLog().createReader(index);
+      readers.put(member, reader);
+    } else if (reader.nextIndex() != index) {
+      reader.reset(index);
+    }
+    return reader;
+  }
+
+  /**
+   * Closes the log reader for a member that has been removed from the configuration.
+   */
+  private void closeReader(Member member) {
+    Iterator<Map.Entry<MemberState, LogReader>> iterator = readers.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<MemberState, LogReader> entry = iterator.next();
+      if (entry.getKey().getMember().id() == member.id()) {
+        entry.getValue().close();
+        iterator.remove();
+      }
+    }
+  }
+
   /**
    * Gets the previous entry.
    */
@@ -675,6 +735,9 @@ abstract class AbstractAppender implements AutoCloseable {
   @Override
   public void close() {
     open = false;
+    leaveListener.close();
+    readers.values().forEach(LogReader::close);
+    readers.clear();
   }
 
 }
@@ -28,6 +28,7 @@ import io.atomix.copycat.server.protocol.VoteResponse;
 import io.atomix.copycat.server.storage.entry.ConnectEntry;
 import io.atomix.copycat.server.storage.entry.Entry;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
@@ -51,7 +52,7 @@ abstract class ActiveState extends PassiveState {
     // assign that term and leader to the current context and transition to follower.
     boolean transition = updateTermAndLeader(request.term(), request.leader());
 
-    CompletableFuture<AppendResponse> future = CompletableFuture.completedFuture(logResponse(handleAppend(request)));
+    CompletableFuture<AppendResponse> future = flushAppend(logResponse(handleAppend(request)));
 
     // If a transition is required then transition back to the follower state.
     // If the node is already a follower then the transition will be ignored.
@@ -101,36 +102,41 @@ abstract class ActiveState extends PassiveState {
     // If the log contains entries after the request's previous log index
     // then remove those entries to be replaced by the request entries.
     if (!request.entries().isEmpty()) {
+      List<? extends Entry> entries = request.entries();
 
-      // Iterate through request entries and append them to the log.
-      for (Entry entry : request.entries()) {
-        // If the entry index is greater than the last log index, skip missing entries.
+      // Iterate through request entries that are already in the log to find the first entry to append.
+      int i = 0;
+      for (; i < entries.size(); i++) {
+        Entry entry = entries.get(i);
+
+        // If the entry index is greater than the last log index, append the remaining entries.
         if (context.getLog().lastIndex() < entry.getIndex()) {
-          context.getLog().skip(entry.getIndex() - context.getLog().lastIndex() - 1).append(entry);
-          LOGGER.debug("{} - Appended {} to log at index {}", context.getCluster().member().address(), entry, entry.getIndex());
+          break;
         } else if (context.getCommitIndex() >= entry.getIndex()) {
           continue;
-        } else {
-          // Compare the term of the received entry with the matching entry in the log.
-          long term = context.getLog().term(entry.getIndex());
+        }
+
+        // Compare the term of the received entry with the matching entry in the log.
+        long term = context.getLog().term(entry.getIndex());
+        if (term == 0 || entry.getTerm() != term) {
+          // We found an invalid entry in the log. Remove the invalid entry and append the remaining entries.
           if (term != 0) {
-            if (entry.getTerm() != term) {
-              // We found an invalid entry in the log. Remove the invalid entry and append the new entry.
-              // If appending to the log fails, apply commits and reply false to the append request.
-              LOGGER.debug("{} - Appended entry term does not match local log, removing incorrect entries", context.getCluster().member().address());
-              context.getLog().truncate(entry.getIndex() - 1).append(entry);
-              LOGGER.debug("{} - Appended {} to log at index {}", context.getCluster().member().address(), entry, entry.getIndex());
-            }
-          } else {
-            context.getLog().truncate(entry.getIndex() - 1).append(entry);
-            LOGGER.debug("{} - Appended {} to log at index {}", context.getCluster().member().address(), entry, entry.getIndex());
+            LOGGER.debug("{} - Appended entry term does not match local log, removing incorrect entries", context.getCluster().member().address());
           }
+          context.getLog().truncate(entry.getIndex() - 1);
+          break;
         }
 
-        // If the entry is a connect entry then immediately configure the connection.
-        if (entry instanceof ConnectEntry) {
-          ConnectEntry connectEntry = (ConnectEntry) entry;
-          context.getStateMachine().executor().context().sessions().registerAddress(connectEntry.getClient(), connectEntry.getAddress());
+        registerConnection(entry);
+      }
+
+      // Append the remaining entries to the log in a single batch. Missing entries are skipped by the log.
+      if (i < entries.size()) {
+        List<? extends Entry> batch = entries.subList(i, entries.size());
+        context.getLog().append(batch);
+        for (Entry entry : batch) {
+          LOGGER.debug("{} - Appended {} to log at index {}", context.getCluster().member().address(), entry, entry.getIndex());
+          registerConnection(entry);
         }
       }
     }
@@ -150,6 +156,17 @@ abstract class ActiveState extends PassiveState {
       .build();
   }
 
+  /**
+   * Registers the connection for the given entry if it's a connect entry.
+   */
+  private void registerConnection(Entry entry) {
+    // If the entry is a connect entry then immediately configure the connection.
+    if (entry instanceof ConnectEntry) {
+      ConnectEntry connectEntry = (ConnectEntry) entry;
+      context.getStateMachine().executor().context().sessions().registerAddress(connectEntry.getClient(), connectEntry.getAddress());
+    }
+  }
+
   @Override
   protected CompletableFuture<PollResponse> poll(PollRequest request) {
     context.checkThread();
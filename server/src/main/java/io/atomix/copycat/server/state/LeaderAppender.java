@@ -137,30 +137,47 @@ final class LeaderAppender extends AbstractAppender {
     if (index <= context.getCommitIndex())
       return CompletableFuture.completedFuture(index);
 
-    // If there are no other stateful servers in the cluster, immediately commit the index.
+    // If there are no other stateful servers in the cluster, commit the index once it has been flushed to disk.
     if (context.getClusterState().getActiveMemberStates().isEmpty() && context.getClusterState().getPassiveMemberStates().isEmpty()) {
-      long previousCommitIndex = context.getCommitIndex();
-      context.setCommitIndex(index);
-      context.setGlobalIndex(index);
-      completeCommits(previousCommitIndex, index);
-      return CompletableFuture.completedFuture(index);
+      return context.getLog().flush(index).thenApply(flushIndex -> {
+        long previousCommitIndex = context.getCommitIndex();
+        context.setCommitIndex(index);
+        context.setGlobalIndex(index);
+        completeCommits(previousCommitIndex, index);
+        return index;
+      });
     }
-    // If there are no other active members in the cluster, update the commit index and complete the commit.
-    // The updated commit index will be sent to passive/reserve members on heartbeats.
+    // If there are no other active members in the cluster, update the commit index and complete the commit
+    // once the index has been flushed to disk. The updated commit index will be sent to passive/reserve
+    // members on heartbeats.
     else if (context.getClusterState().getActiveMemberStates().isEmpty()) {
-      long previousCommitIndex = context.getCommitIndex();
-      context.setCommitIndex(index);
-      completeCommits(previousCommitIndex, index);
-      return CompletableFuture.completedFuture(index);
+      return context.getLog().flush(index).thenApply(flushIndex -> {
+        long previousCommitIndex = context.getCommitIndex();
+        context.setCommitIndex(index);
+        completeCommits(previousCommitIndex, index);
+        return index;
+      });
     }
 
     // Only send entry-specific AppendRequests to active members of the cluster.
-    return appendFutures.computeIfAbsent(index, i -> {
+    CompletableFuture<Long> future = appendFutures.computeIfAbsent(index, i -> {
       for (MemberState member : context.getClusterState().getActiveMemberStates()) {
         appendEntries(member);
       }
       return new CompletableFuture<>();
     });
+
+    // The leader's log counts towards the commitment of an entry only once the entry has been flushed.
+    // If followers respond before the local flush completes, recheck commit indexes once it's done.
+    CompletableFuture<Long> flushFuture = context.getLog().flush(index);
+    if (!flushFuture.isDone()) {
+      flushFuture.whenComplete((flushIndex, error) -> {
+        if (open && error == null) {
+          commitEntries();
+        }
+      });
+    }
+    return future;
   }
 
   @Override
@@ -314,14 +331,21 @@ final class LeaderAppender extends AbstractAppender {
     // ensure all commit futures are completed and cleared.
     if (members.isEmpty()) {
       long previousCommitIndex = context.getCommitIndex();
-      long commitIndex = context.getLog().lastIndex();
+      long commitIndex = context.getLog().flushIndex();
       context.setCommitIndex(commitIndex);
       completeCommits(previousCommitIndex, commitIndex);
       return;
     }
 
-    // Calculate the current commit index as the median matchIndex.
-    long commitIndex = members.get(quorumIndex()).getMatchIndex();
+    // Calculate the current commit index as the median matchIndex. The leader's own log only counts towards
+    // the quorum for entries that have been flushed to disk. If the leader has not yet flushed the median
+    // matchIndex, an additional follower is required to form a quorum.
+    int quorumIndex = quorumIndex();
+    long commitIndex = members.get(quorumIndex).getMatchIndex();
+    long flushIndex = context.getLog().flushIndex();
+    if (flushIndex < commitIndex) {
+      commitIndex = Math.max(flushIndex, members.size() > quorumIndex + 1 ? members.get(quorumIndex + 1).getMatchIndex() : 0);
+    }
 
     // If the commit index has increased then update the commit index. Note that in order to ensure
     // the leader completeness property holds, we verify that the commit index is greater than or equal to
@@ -399,7 +423,7 @@ final class LeaderAppender extends AbstractAppender {
       updateNextIndex(member);
 
       // If entries were committed to the replica then check commit indexes.
-      if (!request.entries().isEmpty()) {
+      if (request.hasEntries()) {
         commitEntries();
       }
 
@@ -489,6 +489,16 @@ final class LeaderState extends ActiveState {
       return future;
     }
 
+    // If the storage memory budget has been exhausted, reject the command with a retriable error to apply
+    // backpressure to the client until compaction or snapshotting releases memory.
+    if (context.getStorage().memory().isExhausted()) {
+      LOGGER.debug("{} - Storage memory exhausted: {}", context.getCluster().member().address(), context.getStorage().memory());
+      return CompletableFuture.completedFuture(logResponse(CommandResponse.builder()
+        .withStatus(Response.Status.ERROR)
+        .withError(CopycatError.Type.RESOURCE_EXHAUSTED_ERROR)
+        .build()));
+    }
+
     final long term = context.getTerm();
     final long timestamp = System.currentTimeMillis();
     final long index;
@@ -116,7 +116,18 @@ class PassiveState extends ReserveState {
     logRequest(request);
     updateTermAndLeader(request.term(), request.leader());
 
-    return CompletableFuture.completedFuture(logResponse(handleAppend(request)));
+    return flushAppend(logResponse(handleAppend(request)));
+  }
+
+  /**
+   * Returns a future to be completed with the given response once entries up to the response's log index
+   * have been flushed to disk.
+   */
+  protected CompletableFuture<AppendResponse> flushAppend(AppendResponse response) {
+    if (response.status() == Response.Status.OK && response.succeeded()) {
+      return context.getLog().flush(response.logIndex()).thenApply(index -> response);
+    }
+    return CompletableFuture.completedFuture(response);
   }
 
   /**
@@ -26,6 +26,7 @@ import io.atomix.copycat.server.Snapshottable;
 import io.atomix.copycat.server.StateMachine;
 import io.atomix.copycat.server.session.SessionListener;
 import io.atomix.copycat.server.storage.Log;
+import io.atomix.copycat.server.storage.LogReader;
 import io.atomix.copycat.server.storage.entry.*;
 import io.atomix.copycat.server.storage.snapshot.Snapshot;
 import io.atomix.copycat.server.storage.snapshot.SnapshotReader;
@@ -51,6 +52,7 @@ final class ServerStateMachine implements AutoCloseable {
   private final Log log;
   private final ServerStateMachineExecutor executor;
   private final ServerCommitPool commits;
+  private LogReader reader;
   private volatile long lastApplied;
   private long lastCompleted;
   private Snapshot pendingSnapshot;
@@ -267,8 +269,10 @@ final class ServerStateMachine implements AutoCloseable {
     // If the effective commit index is greater than the last index applied to the state machine then apply remaining entries.
     long lastIndex = Math.min(index, log.lastIndex());
     if (lastIndex > lastApplied) {
-      for (long i = lastApplied + 1; i <= lastIndex; i++) {
-        Entry entry = log.get(i);
+      LogReader reader = reader(lastApplied + 1);
+      while (reader.nextIndex() <= lastIndex) {
+        long i = reader.nextIndex();
+        Entry entry = reader.next();
         if (entry != null) {
           LOGGER.debug("{} - Applying {}", state.getCluster().member().address(), entry);
           apply(entry, false).whenComplete((result, error) -> entry.release());
@@ -278,6 +282,21 @@ final class ServerStateMachine implements AutoCloseable {
     }
   }
 
+  /**
+   * Returns the log reader positioned at the given index, creating the reader if necessary.
+   * <p>
+   * The reader is retained between calls to {@link #applyAll(long)} so committed entries are read
+   * sequentially from the log as they're applied.
+   */
+  private LogReader reader(long index) {
+    if (reader == null) {
+      reader = log.createReader(index);
+    } else if (reader.nextIndex() != index) {
+      reader.reset(index);
+    }
+    return reader;
+  }
+
   /**
    * Applies the entry at the given index to the state machine.
    * <p>
@@ -1100,6 +1119,9 @@ final class ServerStateMachine implements AutoCloseable {
 
   @Override
   public void close() {
+    if (reader != null) {
+      reader.close();
+    }
     executor.close();
   }
 
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.util.Assert;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches decompressed blocks of compressed segments in memory.
+ * <p>
+ * Blocks are identified by the {@code id} and {@code version} of the segment in which they're stored and the block
+ * number within the segment. The cache is bounded by the decompressed size of cached blocks, and blocks are evicted
+ * in least recently used order. The size of cached blocks is accounted to the storage memory budget as the
+ * {@link StorageMemory.Component#BLOCK_CACHE} component.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+final class BlockCache {
+  private final int maxSize;
+  private final StorageMemory memory;
+  private final LinkedHashMap<Key, byte[]> blocks = new LinkedHashMap<>(16, 0.75f, true);
+  private long size;
+
+  BlockCache(int maxSize, StorageMemory memory) {
+    this.maxSize = Assert.arg(maxSize, maxSize >= 0, "maxSize must not be negative");
+    this.memory = Assert.notNull(memory, "memory");
+  }
+
+  /**
+   * Returns the number of cached blocks.
+   *
+   * @return The number of cached blocks.
+   */
+  synchronized int count() {
+    return blocks.size();
+  }
+
+  /**
+   * Returns the total decompressed size of cached blocks.
+   *
+   * @return The total decompressed size of cached blocks in bytes.
+   */
+  synchronized long size() {
+    return size;
+  }
+
+  /**
+   * Returns a cached block.
+   *
+   * @param id The segment identifier.
+   * @param version The segment version.
+   * @param block The block number.
+   * @return The decompressed block or {@code null} if the block is not cached.
+   */
+  synchronized byte[] get(long id, long version, int block) {
+    return blocks.get(new Key(id, version, block));
+  }
+
+  /**
+   * Adds a decompressed block to the cache.
+   *
+   * @param id The segment identifier.
+   * @param version The segment version.
+   * @param block The block number.
+   * @param bytes The decompressed block.
+   */
+  synchronized void put(long id, long version, int block, byte[] bytes) {
+    if (maxSize == 0 || bytes.length > maxSize) {
+      return;
+    }
+
+    byte[] previous = blocks.put(new Key(id, version, block), bytes);
+    resize(bytes.length - (previous != null ? previous.length : 0));
+
+    // Evict the least recently used blocks until the cache is within its size limit.
+    Iterator<byte[]> iterator = blocks.values().iterator();
+    while (size > maxSize) {
+      resize(-iterator.next().length);
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Invalidates all cached blocks for the given segment.
+   *
+   * @param id The segment identifier.
+   * @param version The segment version.
+   */
+  synchronized void invalidate(long id, long version) {
+    Iterator<Map.Entry<Key, byte[]>> iterator = blocks.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Key, byte[]> entry = iterator.next();
+      if (entry.getKey().id == id && entry.getKey().version == version) {
+        resize(-entry.getValue().length);
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Invalidates all cached blocks.
+   */
+  synchronized void clear() {
+    blocks.clear();
+    resize(-size);
+  }
+
+  /**
+   * Adjusts the size of the cache and the memory accounted for it.
+   */
+  private void resize(long bytes) {
+    size += bytes;
+    memory.allocate(StorageMemory.Component.BLOCK_CACHE, bytes);
+  }
+
+  /**
+   * Block cache key.
+   */
+  private static final class Key {
+    private final long id;
+    private final long version;
+    private final int block;
+
+    private Key(long id, long version, int block) {
+      this.id = id;
+      this.version = version;
+      this.block = block;
+    }
+
+    @Override
+    public int hashCode() {
+      int hashCode = 23;
+      hashCode = 37 * hashCode + (int) (id ^ (id >>> 32));
+      hashCode = 37 * hashCode + (int) (version ^ (version >>> 32));
+      hashCode = 37 * hashCode + block;
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if (object instanceof Key) {
+        Key key = (Key) object;
+        return key.id == id && key.version == version && key.block == block;
+      }
+      return false;
+    }
+  }
+
+}
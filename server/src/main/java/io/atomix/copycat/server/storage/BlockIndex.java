@@ -0,0 +1,233 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.Bytes;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Index of the compressed blocks in a compressed {@link Segment}.
+ * <p>
+ * Compressed segments store the same sequence of entry records as uncompressed segments, but the records are
+ * grouped into blocks and each block is compressed independently. Records are never split across blocks. Entry
+ * positions in the segment's {@link io.atomix.copycat.server.storage.util.OffsetIndex} are positions within the
+ * uncompressed sequence of records, and the block index maps those positions to the compressed block in which
+ * each record is stored.
+ * <p>
+ * Each block is written in the following binary format:
+ * <ul>
+ *   <li>Required 32-bit compressed length</li>
+ *   <li>Required 32-bit uncompressed length</li>
+ *   <li>Required compressed bytes</li>
+ * </ul>
+ * The sequence of blocks is terminated by a zero compressed length.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+final class BlockIndex {
+  static final int HEADER_BYTES = Bytes.INTEGER + Bytes.INTEGER;
+  private long[] starts = new long[16];
+  private long[] positions = new long[16];
+  private int[] compressedLengths = new int[16];
+  private int[] lengths = new int[16];
+  private int count;
+  private long size;
+
+  /**
+   * Reads the block headers from the given buffer.
+   * <p>
+   * Once the headers have been read, the buffer is positioned at the end of the last block.
+   *
+   * @param buffer The compressed segment buffer.
+   * @return The block index.
+   */
+  static BlockIndex read(Buffer buffer) {
+    BlockIndex index = new BlockIndex();
+    long position = 0;
+    int compressedLength = buffer.readInt(position);
+    while (compressedLength > 0) {
+      int length = buffer.readInt(position + Bytes.INTEGER);
+      if (length <= 0) {
+        break;
+      }
+      index.add(position + HEADER_BYTES, compressedLength, length);
+      position += HEADER_BYTES + compressedLength;
+      compressedLength = buffer.readInt(position);
+    }
+    buffer.position(position);
+    return index;
+  }
+
+  /**
+   * Compresses a block of records and writes the block at the current position of the given buffer.
+   *
+   * @param buffer The buffer to which to write the block.
+   * @param bytes The uncompressed records.
+   * @param length The length of the uncompressed records.
+   * @param deflater The deflater with which to compress the records.
+   */
+  static void write(Buffer buffer, byte[] bytes, int length, Deflater deflater) {
+    deflater.reset();
+    deflater.setInput(bytes, 0, length);
+    deflater.finish();
+    byte[] compressed = new byte[Math.max(length / 2, 64)];
+    int compressedLength = 0;
+    while (!deflater.finished()) {
+      if (compressedLength == compressed.length) {
+        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+      }
+      compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+    }
+    buffer.writeInt(compressedLength).writeInt(length).write(compressed, 0, compressedLength);
+  }
+
+  /**
+   * Decompresses a block.
+   *
+   * @param compressed The compressed block bytes.
+   * @param length The uncompressed length of the block.
+   * @param inflater The inflater with which to decompress the block.
+   * @return The decompressed block.
+   * @throws StorageException if the block cannot be decompressed
+   */
+  static byte[] decompress(byte[] compressed, int length, Inflater inflater) {
+    inflater.reset();
+    inflater.setInput(compressed);
+    byte[] bytes = new byte[length];
+    try {
+      int read = 0;
+      while (read < length && !inflater.finished()) {
+        int inflated = inflater.inflate(bytes, read, length - read);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        read += inflated;
+      }
+      if (read != length) {
+        throw new StorageException("truncated compressed block");
+      }
+    } catch (DataFormatException e) {
+      throw new StorageException("corrupt compressed block", e);
+    }
+    return bytes;
+  }
+
+  /**
+   * Adds a block to the index.
+   */
+  private void add(long position, int compressedLength, int length) {
+    if (count == starts.length) {
+      int capacity = count * 2;
+      starts = Arrays.copyOf(starts, capacity);
+      positions = Arrays.copyOf(positions, capacity);
+      compressedLengths = Arrays.copyOf(compressedLengths, capacity);
+      lengths = Arrays.copyOf(lengths, capacity);
+    }
+    starts[count] = size;
+    positions[count] = position;
+    compressedLengths[count] = compressedLength;
+    lengths[count] = length;
+    size += length;
+    count++;
+  }
+
+  /**
+   * Returns the number of blocks in the index.
+   *
+   * @return The number of blocks in the index.
+   */
+  int count() {
+    return count;
+  }
+
+  /**
+   * Returns the total uncompressed size of all blocks.
+   *
+   * @return The total uncompressed size of all blocks.
+   */
+  long size() {
+    return size;
+  }
+
+  /**
+   * Finds the block containing the given uncompressed position.
+   *
+   * @param position The uncompressed position.
+   * @return The block containing the position, or {@code -1} if the position is not within any block.
+   */
+  int find(long position) {
+    if (position < 0 || position >= size) {
+      return -1;
+    }
+    int low = 0;
+    int high = count - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (starts[mid] <= position) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the uncompressed position of the first record in the given block.
+   *
+   * @param block The block number.
+   * @return The uncompressed position of the block.
+   */
+  long start(int block) {
+    return starts[block];
+  }
+
+  /**
+   * Returns the position of the compressed bytes of the given block in the compressed buffer.
+   *
+   * @param block The block number.
+   * @return The position of the compressed bytes of the block.
+   */
+  long position(int block) {
+    return positions[block];
+  }
+
+  /**
+   * Returns the compressed length of the given block.
+   *
+   * @param block The block number.
+   * @return The compressed length of the block.
+   */
+  int compressedLength(int block) {
+    return compressedLengths[block];
+  }
+
+  /**
+   * Returns the uncompressed length of the given block.
+   *
+   * @param block The block number.
+   * @return The uncompressed length of the block.
+   */
+  int length(int block) {
+    return lengths[block];
+  }
+
+}
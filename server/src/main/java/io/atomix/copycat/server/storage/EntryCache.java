@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.entry.Entry;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Caches recently appended entries in memory.
+ * <p>
+ * The entry cache holds a reference to each entry appended to the log until the entry is evicted, allowing reads
+ * of the tail of the log to be served without reading and deserializing entries from their segments. The cache is
+ * bounded by the serialized {@link Entry#size() size} of cached entries, and entries are evicted in the order in
+ * which they were appended. Entries are returned from the cache with an additional reference that must be
+ * released by the reader. The serialized size of cached entries is accounted to the storage memory budget as the
+ * {@link StorageMemory.Component#ENTRY_CACHE} component.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+final class EntryCache {
+  private final int maxSize;
+  private final StorageMemory memory;
+  private final Map<Long, Entry> entries = new HashMap<>();
+  private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+  private long size;
+
+  EntryCache(int maxSize, StorageMemory memory) {
+    this.maxSize = Assert.arg(maxSize, maxSize >= 0, "maxSize must not be negative");
+    this.memory = Assert.notNull(memory, "memory");
+  }
+
+  /**
+   * Returns the number of cached entries.
+   *
+   * @return The number of cached entries.
+   */
+  synchronized int count() {
+    return queue.size();
+  }
+
+  /**
+   * Returns the total serialized size of cached entries.
+   *
+   * @return The total serialized size of cached entries in bytes.
+   */
+  synchronized long size() {
+    return size;
+  }
+
+  /**
+   * Adds an appended entry to the cache.
+   * <p>
+   * If the entry's index is not greater than the index of the last cached entry, cached entries following the
+   * entry's index are invalidated before the entry is cached.
+   *
+   * @param entry The entry to cache.
+   */
+  synchronized void put(Entry entry) {
+    if (maxSize == 0 || entry.size() > maxSize) {
+      return;
+    }
+
+    truncate(entry.getIndex() - 1);
+
+    entries.put(entry.getIndex(), entry.acquire());
+    queue.addLast(entry);
+    size += entry.size();
+    memory.allocate(StorageMemory.Component.ENTRY_CACHE, entry.size());
+
+    // Evict the oldest entries until the cache is within its size limit.
+    while (size > maxSize) {
+      remove(queue.removeFirst());
+    }
+  }
+
+  /**
+   * Returns the cached entry at the given index.
+   * <p>
+   * The returned entry is acquired on behalf of the caller and must be released once the caller is finished with it.
+   *
+   * @param index The index of the entry to get.
+   * @return The cached entry or {@code null} if the entry is not cached.
+   */
+  @SuppressWarnings("unchecked")
+  synchronized <T extends Entry> T get(long index) {
+    Entry entry = entries.get(index);
+    return entry != null ? (T) entry.acquire() : null;
+  }
+
+  /**
+   * Returns a boolean indicating whether the entry at the given index is cached.
+   *
+   * @param index The index of the entry to check.
+   * @return Indicates whether the entry at the given index is cached.
+   */
+  synchronized boolean contains(long index) {
+    return entries.containsKey(index);
+  }
+
+  /**
+   * Invalidates cached entries with indexes greater than the given index.
+   *
+   * @param index The index after which to invalidate entries.
+   */
+  synchronized void truncate(long index) {
+    while (!queue.isEmpty() && queue.peekLast().getIndex() > index) {
+      remove(queue.removeLast());
+    }
+  }
+
+  /**
+   * Invalidates cached entries within the given range of indexes.
+   *
+   * @param fromIndex The first index to invalidate, inclusive.
+   * @param toIndex The last index to invalidate, inclusive.
+   */
+  synchronized void invalidate(long fromIndex, long toIndex) {
+    Iterator<Entry> iterator = queue.iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (entry.getIndex() >= fromIndex && entry.getIndex() <= toIndex) {
+        iterator.remove();
+        remove(entry);
+      }
+    }
+  }
+
+  /**
+   * Invalidates all cached entries.
+   */
+  synchronized void clear() {
+    while (!queue.isEmpty()) {
+      remove(queue.removeFirst());
+    }
+  }
+
+  /**
+   * Removes an entry that has already been removed from the queue and releases the cache's reference to it.
+   */
+  private void remove(Entry entry) {
+    entries.remove(entry.getIndex());
+    size -= entry.size();
+    memory.release(StorageMemory.Component.ENTRY_CACHE, entry.size());
+    entry.release();
+  }
+
+}
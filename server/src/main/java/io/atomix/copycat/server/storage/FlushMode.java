@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+/**
+ * {@link Log} flush mode configuration values which control when entries are synced to disk.
+ * <p>
+ * The flush mode dictates when {@link Segment} buffers are flushed to the underlying storage after
+ * {@link io.atomix.copycat.server.storage.entry.Entry entries} are {@link Log#append(io.atomix.copycat.server.storage.entry.Entry) appended}
+ * to the log. Raft servers use the flush mode to determine when an appended entry may be considered durable
+ * and thus when it may be acknowledged to the leader or counted towards the commitment of an entry.
+ * <p>
+ * The flush mode only applies to persistent {@link StorageLevel}s. Logs stored at {@link StorageLevel#MEMORY}
+ * are never flushed.
+ *
+ * @see Storage
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+public enum FlushMode {
+
+  /**
+   * Leaves flushing to the operating system.
+   * <p>
+   * Entries are considered durable as soon as they're written to the segment buffer, and the log will only
+   * be explicitly flushed when it's closed. This mode provides the greatest throughput but entries that were
+   * acknowledged before a crash may be lost.
+   */
+  OS,
+
+  /**
+   * Flushes the log after every entry.
+   * <p>
+   * Each entry is synchronously flushed to disk before {@link Log#append(io.atomix.copycat.server.storage.entry.Entry)}
+   * returns. This mode provides the strongest durability guarantees at the cost of a disk sync per entry.
+   */
+  ENTRY,
+
+  /**
+   * Flushes the log in batches in a background thread.
+   * <p>
+   * Entries appended to the log are flushed to disk in groups once either the {@link Storage#flushInterval()}
+   * has elapsed or {@link Storage#maxFlushSize()} bytes have been written since the last flush. Callers waiting
+   * for an entry to become durable are completed once a flush covering the entry's index has completed, so a
+   * single disk sync is shared by all entries appended within the flush window.
+   */
+  GROUP
+
+}
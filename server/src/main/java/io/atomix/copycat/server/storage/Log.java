@@ -23,7 +23,11 @@ import io.atomix.copycat.server.storage.compaction.Compactor;
 import io.atomix.copycat.server.storage.entry.Entry;
 import io.atomix.copycat.server.storage.entry.TypedEntryPool;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
+import java.util.function.LongPredicate;
 
 /**
  * Stores Raft log entries in a segmented log in memory or on disk.
@@ -116,6 +120,7 @@ import java.util.concurrent.Executors;
 public class Log implements AutoCloseable {
   final SegmentManager segments;
   private final Compactor compactor;
+  private final LogFlusher flusher;
   private final TypedEntryPool entryPool = new TypedEntryPool();
   private boolean open = true;
 
@@ -125,6 +130,7 @@ public class Log implements AutoCloseable {
   protected Log(String name, Storage storage, Serializer serializer) {
     this.segments = new SegmentManager(name, storage, serializer);
     this.compactor = new Compactor(storage, segments, Executors.newScheduledThreadPool(storage.compactionThreads(), new CatalystThreadFactory("copycat-compactor-%d")));
+    this.flusher = new LogFlusher(storage, segments);
   }
 
   /**
@@ -185,6 +191,8 @@ public class Log implements AutoCloseable {
 
   /**
    * Returns the total size of all {@link Segment segments} of the log on disk in bytes.
+   * <p>
+   * The size of {@link Storage#compressSegments() compressed} segments is their size before compression.
    *
    * @return The total size of all {@link Segment segments} of the log in bytes.
    * @throws IllegalStateException If the log is not open.
@@ -194,6 +202,21 @@ public class Log implements AutoCloseable {
     return segments.segments().stream().mapToLong(Segment::size).sum();
   }
 
+  /**
+   * Returns the total size in bytes of {@link Entry entries} that have been {@link #release(long) released} from
+   * the log but not yet compacted.
+   * <p>
+   * The released size includes the record headers of released entries, so {@link #size()} less the released size
+   * is the number of bytes the log would consume if all released entries were compacted.
+   *
+   * @return The total size of released entries in bytes.
+   * @throws IllegalStateException If the log is not open.
+   */
+  public long releaseSize() {
+    assertIsOpen();
+    return segments.segments().stream().mapToLong(Segment::releaseSize).sum();
+  }
+
   /**
    * Returns the number of entries in the log.
    * <p>
@@ -285,7 +308,50 @@ public class Log implements AutoCloseable {
     checkRoll();
 
     // Append the entry to the appropriate segment.
-    return segments.currentSegment().append(entry);
+    Segment segment = segments.currentSegment();
+    long index = segment.append(entry);
+    flusher.append(segment, index, entry.size());
+    compactor.throttle().foreground(entry.size());
+    segments.cache().put(entry);
+    return index;
+  }
+
+  /**
+   * Appends a batch of entries to the log.
+   * <p>
+   * Entries are appended to the current segment in bulk, rolling over to new segments as segments become full.
+   * Entries in the batch must have increasing indexes beginning at or after the next index in the log. Any gaps
+   * between indexes are skipped in the log.
+   *
+   * @param entries The entries to append.
+   * @return The index of the last appended entry, or the last index in the log if {@code entries} is empty.
+   * @throws IllegalStateException If the log is not open
+   * @throws NullPointerException If {@code entries} or an entry in the batch is {@code null}
+   * @throws IndexOutOfBoundsException If an entry's index is inconsistent with the log.
+   */
+  public long append(List<? extends Entry> entries) {
+    Assert.notNull(entries, "entries");
+    assertIsOpen();
+
+    int i = 0;
+    while (i < entries.size()) {
+      checkRoll();
+
+      // Append as many entries as fit in the current segment.
+      Segment segment = segments.currentSegment();
+      int count = segment.appendBatch(entries, i);
+
+      int size = 0;
+      for (int j = i; j < i + count; j++) {
+        Entry entry = entries.get(j);
+        size += entry.size();
+        segments.cache().put(entry);
+      }
+      i += count;
+      flusher.append(segment, entries.get(i - 1).getIndex(), size);
+      compactor.throttle().foreground(size);
+    }
+    return !entries.isEmpty() ? entries.get(entries.size() - 1).getIndex() : lastIndex();
   }
 
   /**
@@ -305,10 +371,13 @@ public class Log implements AutoCloseable {
     assertIsOpen();
     assertValidIndex(index);
 
-    Segment segment = segments.segment(index);
+    Segment segment = segments.pin(index);
     Assert.index(segment != null, "invalid index: " + index);
-
-    return segment.term(index);
+    try {
+      return segment.term(index);
+    } finally {
+      segment.unpin();
+    }
   }
 
   /**
@@ -336,13 +405,74 @@ public class Log implements AutoCloseable {
     assertIsOpen();
     assertValidIndex(index);
 
-    Segment segment = segments.segment(index);
+    Segment segment = segments.pin(index);
+    Assert.index(segment != null, "invalid index: " + index);
+    try {
+      // Get the entry from the cache of recently appended entries or from the segment. If the entry hasn't
+      // already been compacted from the segment, it will be non-null.
+      T entry = segments.cache().get(index);
+      if (entry != null) {
+        return visible(index, entry, true, segment::isLive);
+      }
+      return visible(index, segment.get(index), false, segment::isLive);
+    } finally {
+      segment.unpin();
+    }
+  }
+
+  /**
+   * Creates a reader for reading entries sequentially from the log starting at the given index.
+   * <p>
+   * Readers are intended for consumers that read consecutive entries from the log, such as the state machine
+   * applying committed entries or a leader replicating entries to a follower. Entries read via a {@link LogReader}
+   * are subject to the same visibility rules as entries read via {@link #get(long)}, but consecutive entries are
+   * read from segments without looking up the position of each entry. Readers are not thread safe and should be
+   * held by a single consumer.
+   *
+   * @param index The index of the first entry to read.
+   * @return A new log reader.
+   * @throws IllegalStateException If the log is not open.
+   */
+  public LogReader createReader(long index) {
+    assertIsOpen();
+    return new LogReader(this, index);
+  }
+
+  /**
+   * Reads the entry at the given index via the given reader.
+   * <p>
+   * Entries not found in the cache of recently appended entries are read sequentially from the segment
+   * containing the index via a {@link Segment.Reader} held by the log reader.
+   */
+  <T extends Entry> T get(long index, LogReader reader) {
+    assertIsOpen();
+    assertValidIndex(index);
+
+    Segment segment = segments.pin(index);
     Assert.index(segment != null, "invalid index: " + index);
+    try {
+      T entry = segments.cache().get(index);
+      if (entry != null) {
+        return visible(index, entry, true, segment::isLive);
+      }
 
-    // Get the entry from the segment. If the entry hasn't already been compacted from the segment,
-    // it will be non-null.
-    T entry = segment.get(index);
+      Segment.Reader segmentReader = reader.segmentReader(segment);
+      return visible(index, segmentReader.next(index), false, segmentReader::isLive);
+    } finally {
+      segment.unpin();
+    }
+  }
 
+  /**
+   * Returns the given entry if it's visible to the Raft algorithm, otherwise releases the entry if necessary.
+   *
+   * @param index The index of the entry.
+   * @param entry The entry read from the cache or the segment.
+   * @param cached Indicates whether the entry was read from the cache.
+   * @param live A predicate indicating whether the entry at a given index is live in its segment.
+   * @return The entry or {@code null} if the entry is not visible.
+   */
+  private <T extends Entry> T visible(long index, T entry, boolean cached, LongPredicate live) {
     // For non-null entries, we determine whether the entry should be exposed to the Raft algorithm
     // based on the type of entry and whether it has been released.
     if (entry != null) {
@@ -369,7 +499,7 @@ public class Log implements AutoCloseable {
         // entry is still live.
         case RELEASE:
         case QUORUM:
-          if (index > compactor.minorIndex() || segment.isLive(index)) {
+          if (index > compactor.minorIndex() || live.test(index)) {
             return entry;
           }
           break;
@@ -379,17 +509,75 @@ public class Log implements AutoCloseable {
         case SEQUENTIAL:
         case EXPIRING:
         case TOMBSTONE:
-          if (index > compactor.minorIndex() || index > compactor.majorIndex() || segment.isLive(index)) {
+          if (index > compactor.minorIndex() || index > compactor.majorIndex() || live.test(index)) {
             return entry;
           }
           break;
         default:
           break;
       }
+
+      // Release the reference acquired from the cache since the entry is not returned to the caller.
+      if (cached) {
+        entry.release();
+      }
     }
     return null;
   }
 
+  /**
+   * Reads serialized entries starting at the given index without deserializing them.
+   * <p>
+   * Raw entries are copied out of the segment containing the given index in a single read and can be written
+   * verbatim to another buffer, e.g. when replicating entries to other servers. Entries are read until the total
+   * size of the entries read would exceed {@code maxBytes}, but at least one entry is read if the segment contains
+   * an entry at or after the given index. Reads do not span segments.
+   * <p>
+   * Whether an entry that may have been compacted is visible depends on the entry's compaction mode, which can only
+   * be determined by deserializing the entry. Entries at or below the {@link Compactor#minorIndex() minor},
+   * {@link Compactor#majorIndex() major}, or {@link Compactor#snapshotIndex() snapshot} index must be read via
+   * {@link #get(long)}, and an empty list is returned for those indexes.
+   *
+   * @param index The index of the first entry to read.
+   * @param maxBytes The maximum number of bytes to read.
+   * @return The raw entries read from the log.
+   * @throws IllegalStateException If the log is not open.
+   * @throws IndexOutOfBoundsException If the given index is not within the bounds of the log.
+   */
+  public List<RawEntry> readRaw(long index, int maxBytes) {
+    assertIsOpen();
+    assertValidIndex(index);
+
+    if (index <= compactor.minorIndex() || index <= compactor.majorIndex() || index <= compactor.snapshotIndex()) {
+      return Collections.emptyList();
+    }
+
+    Segment segment = segments.pin(index);
+    Assert.index(segment != null, "invalid index: " + index);
+    try {
+      return !segment.isEmpty() ? segment.readRaw(index, maxBytes) : Collections.emptyList();
+    } finally {
+      segment.unpin();
+    }
+  }
+
+  /**
+   * Returns a boolean value indicating whether the entry at the given index is held in the cache of recently
+   * appended entries.
+   * <p>
+   * Cached entries can be read via {@link #get(long)} or a {@link LogReader} without reading or deserializing
+   * them from their segment, so callers that would otherwise {@link #readRaw(long, int) read raw entries} should
+   * prefer reading cached entries.
+   *
+   * @param index The index of the entry to check.
+   * @return Indicates whether the entry at the given index is cached.
+   * @throws IllegalStateException If the log is not open.
+   */
+  public boolean isCached(long index) {
+    assertIsOpen();
+    return segments.cache().contains(index);
+  }
+
   /**
    * Returns a boolean value indicating whether the given index is within the bounds of the log.
    * <p>
@@ -417,8 +605,15 @@ public class Log implements AutoCloseable {
     if (!validIndex(index))
       return false;
 
-    Segment segment = segments.segment(index);
-    return segment != null && segment.contains(index);
+    Segment segment = segments.pin(index);
+    if (segment == null)
+      return false;
+
+    try {
+      return segment.contains(index);
+    } finally {
+      segment.unpin();
+    }
   }
 
   /**
@@ -433,9 +628,13 @@ public class Log implements AutoCloseable {
     assertIsOpen();
     assertValidIndex(index);
 
-    Segment segment = segments.segment(index);
+    Segment segment = segments.pin(index);
     Assert.index(segment != null, "invalid index: " + index);
-    segment.release(index);
+    try {
+      segment.release(index);
+    } finally {
+      segment.unpin();
+    }
     return this;
   }
 
@@ -503,6 +702,7 @@ public class Log implements AutoCloseable {
     if (lastIndex() == index)
       return this;
 
+    segments.cache().truncate(index);
     for (Segment segment : segments.reverseSegments()) {
       if (segment.validIndex(index)) {
         segment.truncate(index);
@@ -511,6 +711,7 @@ public class Log implements AutoCloseable {
         segments.removeSegment(segment);
       }
     }
+    flusher.truncate(index);
     return this;
   }
 
@@ -521,7 +722,38 @@ public class Log implements AutoCloseable {
    */
   public void flush() {
     assertIsOpen();
-    segments.currentSegment().flush();
+    flusher.flush();
+  }
+
+  /**
+   * Returns a future to be completed once entries up to the given index have been flushed to disk.
+   * <p>
+   * The returned future will be completed according to the configured {@link Storage#flushMode()}. If the
+   * flush mode is {@link FlushMode#OS} or the log is stored in memory, the returned future will be completed
+   * immediately. Otherwise, the future will be completed on the calling thread's context once a flush covering
+   * the given index has completed.
+   *
+   * @param index The index up to which to wait for entries to be flushed.
+   * @return A completable future to be completed once entries up to the given index have been flushed.
+   * @throws IllegalStateException If the log is not open.
+   */
+  public CompletableFuture<Long> flush(long index) {
+    assertIsOpen();
+    return flusher.flush(index);
+  }
+
+  /**
+   * Returns the highest index known to have been flushed to disk.
+   * <p>
+   * If the configured {@link Storage#flushMode()} is {@link FlushMode#OS} or the log is stored in memory,
+   * all entries are considered flushed and the flush index is the {@link #lastIndex()}.
+   *
+   * @return The highest index known to have been flushed to disk.
+   * @throws IllegalStateException If the log is not open.
+   */
+  public long flushIndex() {
+    assertIsOpen();
+    return flusher.mode() == FlushMode.OS ? lastIndex() : Math.min(flusher.flushIndex(), lastIndex());
   }
 
   /**
@@ -533,6 +765,7 @@ public class Log implements AutoCloseable {
   public void close() {
     assertIsOpen();
     flush();
+    flusher.close();
     compactor.close();
     segments.close();
     open = false;
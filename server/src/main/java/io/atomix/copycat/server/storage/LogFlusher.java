@@ -0,0 +1,315 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.util.Assert;
+import io.atomix.catalyst.util.concurrent.CatalystThreadFactory;
+import io.atomix.catalyst.util.concurrent.ThreadContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flushes {@link Segment}s of the {@link Log} to disk according to the configured {@link FlushMode}.
+ * <p>
+ * The flusher sits between the log and its segments and tracks the highest index that has been written to the
+ * log and the highest index that's known to have been synced to disk. Callers that need to know when an entry
+ * is durable can request a future via {@link #flush(long)} which will be completed once a flush covering that
+ * index has completed.
+ * <p>
+ * When the {@link FlushMode#GROUP} mode is used, flushes are performed in a single background thread. Each flush
+ * syncs all segments written since the previous flush, so a single disk sync is shared by all the entries appended
+ * within the flush window. Futures are completed on the {@link ThreadContext} from which they were requested.
+ * <p>
+ * If a flush fails, the flush index is not advanced and futures waiting for the failed flush are completed
+ * exceptionally. The unflushed segments are retained, and another flush is scheduled to retry them.
+ * <p>
+ * Flushes are performed one at a time. If the log is truncated while a flush is in progress, the flush only
+ * completes entries up to the truncated index, since entries appended after the truncation may not have been
+ * synced by the flush. Futures waiting for truncated entries are completed exceptionally.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+final class LogFlusher implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LogFlusher.class);
+  private final SegmentManager segments;
+  private final FlushMode mode;
+  private final long flushInterval;
+  private final int maxFlushSize;
+  private final ScheduledExecutorService executor;
+  private final List<Segment> dirtySegments = new ArrayList<>();
+  private final NavigableMap<Long, CompletableFuture<Long>> futures = new TreeMap<>();
+  private final Object flushLock = new Object();
+  private ScheduledFuture<?> scheduledFlush;
+  private long appendIndex;
+  private long pendingBytes;
+  private boolean flushing;
+  private long flushLimit = Long.MAX_VALUE;
+  private volatile long flushIndex;
+
+  LogFlusher(Storage storage, SegmentManager segments) {
+    Assert.notNull(storage, "storage");
+    this.segments = Assert.notNull(segments, "segments");
+    this.mode = storage.level() == StorageLevel.MEMORY ? FlushMode.OS : storage.flushMode();
+    this.flushInterval = storage.flushInterval().toMillis();
+    this.maxFlushSize = storage.maxFlushSize();
+    this.executor = mode == FlushMode.GROUP ? Executors.newSingleThreadScheduledExecutor(new CatalystThreadFactory("copycat-flusher-%d")) : null;
+
+    // Entries recovered from disk are considered to have already been flushed.
+    Segment lastSegment = segments.lastSegment();
+    this.appendIndex = lastSegment != null ? Math.max(lastSegment.lastIndex(), 0) : 0;
+    this.flushIndex = appendIndex;
+  }
+
+  /**
+   * Returns the flush mode.
+   *
+   * @return The flush mode.
+   */
+  FlushMode mode() {
+    return mode;
+  }
+
+  /**
+   * Returns the highest index known to have been flushed to disk.
+   *
+   * @return The highest index known to have been flushed to disk.
+   */
+  long flushIndex() {
+    return flushIndex;
+  }
+
+  /**
+   * Records an entry appended to the given segment.
+   *
+   * @param segment The segment to which the entry was appended.
+   * @param index The index of the appended entry.
+   * @param size The size of the appended entry in bytes.
+   */
+  void append(Segment segment, long index, int size) {
+    switch (mode) {
+      case ENTRY:
+        segment.flush();
+        complete(index);
+        break;
+      case GROUP:
+        synchronized (this) {
+          if (dirtySegments.isEmpty() || dirtySegments.get(dirtySegments.size() - 1) != segment) {
+            dirtySegments.add(segment);
+          }
+          appendIndex = index;
+          pendingBytes += size;
+
+          // If no flush is scheduled, schedule one to run after the flush interval, or immediately if the
+          // pending bytes already exceed the max flush size. If a delayed flush is scheduled but enough bytes
+          // have been written, replace it with an immediate flush. If the scheduled flush can't be cancelled
+          // it's already running and will pick up this entry.
+          if (scheduledFlush == null) {
+            scheduledFlush = executor.schedule(this::flushSegments, pendingBytes >= maxFlushSize ? 0 : flushInterval, TimeUnit.MILLISECONDS);
+          } else if (pendingBytes >= maxFlushSize && scheduledFlush.cancel(false)) {
+            scheduledFlush = executor.schedule(this::flushSegments, 0, TimeUnit.MILLISECONDS);
+          }
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Returns a future to be completed once entries up to the given index have been flushed to disk.
+   *
+   * @param index The index up to which to wait for a flush.
+   * @return A completable future to be completed once the given index has been flushed.
+   */
+  CompletableFuture<Long> flush(long index) {
+    if (mode == FlushMode.OS || index <= flushIndex) {
+      return CompletableFuture.completedFuture(index);
+    }
+
+    CompletableFuture<Long> future;
+    synchronized (this) {
+      // Entries beyond the last appended index have been skipped and contain no data to flush.
+      long flushIndex = Math.min(index, appendIndex);
+      if (flushIndex <= this.flushIndex) {
+        return CompletableFuture.completedFuture(index);
+      }
+      future = futures.computeIfAbsent(flushIndex, i -> new CompletableFuture<>());
+    }
+
+    // Ensure the returned future is completed on the calling thread's context.
+    ThreadContext context = ThreadContext.currentContext();
+    if (context == null) {
+      return future.thenApply(i -> index);
+    }
+
+    CompletableFuture<Long> result = new CompletableFuture<>();
+    future.whenComplete((flushIndex, error) -> context.executor().execute(() -> {
+      if (error == null) {
+        result.complete(index);
+      } else {
+        result.completeExceptionally(error);
+      }
+    }));
+    return result;
+  }
+
+  /**
+   * Synchronously flushes all written segments to disk.
+   */
+  void flush() {
+    if (mode == FlushMode.GROUP) {
+      flushSegments();
+    }
+    segments.currentSegment().flush();
+  }
+
+  /**
+   * Truncates the flusher's state after the given index.
+   * <p>
+   * Futures waiting for entries after the given index are completed exceptionally.
+   *
+   * @param index The index after which entries were truncated.
+   */
+  void truncate(long index) {
+    List<CompletableFuture<Long>> truncated;
+    synchronized (this) {
+      appendIndex = Math.min(appendIndex, index);
+      flushIndex = Math.min(flushIndex, index);
+
+      // Entries appended after the truncation are not covered by a flush that's already in progress.
+      if (flushing) {
+        flushLimit = Math.min(flushLimit, index);
+      }
+
+      Map<Long, CompletableFuture<Long>> tailMap = futures.tailMap(index, false);
+      if (tailMap.isEmpty()) {
+        return;
+      }
+      truncated = new ArrayList<>(tailMap.values());
+      tailMap.clear();
+    }
+    StorageException exception = new StorageException("entries truncated after index " + index);
+    truncated.forEach(f -> f.completeExceptionally(exception));
+  }
+
+  /**
+   * Flushes all segments written since the last flush.
+   */
+  private void flushSegments() {
+    synchronized (flushLock) {
+      List<Segment> segments;
+      long index;
+      synchronized (this) {
+        scheduledFlush = null;
+        if (dirtySegments.isEmpty()) {
+          return;
+        }
+        segments = new ArrayList<>(dirtySegments);
+        dirtySegments.clear();
+        index = appendIndex;
+        pendingBytes = 0;
+        flushing = true;
+        flushLimit = Long.MAX_VALUE;
+      }
+
+      try {
+        for (Segment segment : segments) {
+          // Segments may have been closed by truncation or compaction since they were written.
+          if (segment.isOpen()) {
+            segment.flush();
+          }
+        }
+      } catch (Exception e) {
+        LOGGER.warn("Failed to flush segments", e);
+        fail(segments, index, e);
+        return;
+      }
+      complete(index);
+    }
+  }
+
+  /**
+   * Fails futures up to the given index after a failed flush.
+   * <p>
+   * The flush index is not advanced, and the segments are retained and another flush is scheduled to retry them.
+   */
+  private void fail(List<Segment> segments, long index, Throwable error) {
+    List<CompletableFuture<Long>> failed;
+    synchronized (this) {
+      flushing = false;
+      dirtySegments.addAll(0, segments);
+      if (scheduledFlush == null && !executor.isShutdown()) {
+        scheduledFlush = executor.schedule(this::flushSegments, flushInterval, TimeUnit.MILLISECONDS);
+      }
+      Map<Long, CompletableFuture<Long>> headMap = futures.headMap(index, true);
+      failed = new ArrayList<>(headMap.values());
+      headMap.clear();
+    }
+    StorageException exception = new StorageException("failed to flush segments", error);
+    failed.forEach(f -> f.completeExceptionally(exception));
+  }
+
+  /**
+   * Completes futures up to the given flushed index.
+   * <p>
+   * If the log was truncated during a group flush, only entries up to the truncated index are completed.
+   */
+  private void complete(long index) {
+    List<CompletableFuture<Long>> completed;
+    long completeIndex;
+    synchronized (this) {
+      completeIndex = flushing ? Math.min(index, flushLimit) : index;
+      flushing = false;
+      flushIndex = Math.max(flushIndex, completeIndex);
+      if (futures.isEmpty()) {
+        return;
+      }
+      Map<Long, CompletableFuture<Long>> headMap = futures.headMap(completeIndex, true);
+      completed = new ArrayList<>(headMap.values());
+      headMap.clear();
+    }
+    completed.forEach(f -> f.complete(completeIndex));
+  }
+
+  /**
+   * Closes the flusher.
+   * <p>
+   * When the flusher is closed, any scheduled flush will be run and all pending futures completed.
+   */
+  @Override
+  public void close() {
+    if (executor != null) {
+      executor.shutdown();
+      try {
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+      }
+      flushSegments();
+    }
+  }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.entry.Entry;
+
+/**
+ * Sequential reader of entries in a {@link Log}.
+ * <p>
+ * Log readers are created via {@link Log#createReader(long)} and read consecutive entries from the log, walking
+ * records within and across {@link Segment segments}. Each reader holds a {@link Segment.Reader} for the segment
+ * it's currently reading, so reading the next entry does not require looking up the position of the entry in the
+ * segment, and records of segments stored on disk are read ahead in chunks. Entries read by a log reader are
+ * subject to the same compaction visibility rules as entries read via {@link Log#get(long)}, and {@code null} is
+ * returned for entries that have been compacted from the log.
+ * <pre>
+ *   {@code
+ *   try (LogReader reader = log.createReader(1)) {
+ *     while (reader.hasNext()) {
+ *       try (Entry entry = reader.next()) {
+ *         ...
+ *       }
+ *     }
+ *   }
+ *   }
+ * </pre>
+ * Readers are not thread safe and are intended to be held by a single consumer, e.g. the state machine or the
+ * appender replicating entries to a single follower. Readers may be {@link #reset(long) reset} to any index, and
+ * a reader transparently resumes reading from the new segment if the segment it's reading is compacted.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public final class LogReader implements AutoCloseable {
+  private final Log log;
+  private Segment segment;
+  private Segment.Reader reader;
+  private long nextIndex;
+  private boolean open = true;
+
+  LogReader(Log log, long index) {
+    this.log = Assert.notNull(log, "log");
+    this.nextIndex = index;
+  }
+
+  /**
+   * Returns the index of the next entry to be read.
+   *
+   * @return The index of the next entry to be read.
+   */
+  public long nextIndex() {
+    return nextIndex;
+  }
+
+  /**
+   * Returns a boolean value indicating whether the log contains an entry at the next index.
+   *
+   * @return Indicates whether the log contains an entry at the next index.
+   */
+  public boolean hasNext() {
+    return open && log.isOpen() && nextIndex <= log.lastIndex();
+  }
+
+  /**
+   * Reads the entry at the next index and advances the reader.
+   * <p>
+   * Entries returned by this method are pooled and {@link io.atomix.catalyst.util.ReferenceCounted reference counted}
+   * and must be released once the caller is done with them.
+   *
+   * @return The entry at the next index or {@code null} if the entry has been compacted from the log.
+   * @throws IllegalStateException If the reader or the log is not open.
+   * @throws IndexOutOfBoundsException If the next index is not within the bounds of the log.
+   */
+  public <T extends Entry> T next() {
+    Assert.state(open, "reader not open");
+    T entry = log.get(nextIndex, this);
+    nextIndex++;
+    return entry;
+  }
+
+  /**
+   * Resets the reader to the given index.
+   *
+   * @param index The index of the next entry to read.
+   * @return The log reader.
+   */
+  public LogReader reset(long index) {
+    this.nextIndex = index;
+    return this;
+  }
+
+  /**
+   * Returns a reader for the given segment, replacing the current segment reader if necessary.
+   */
+  Segment.Reader segmentReader(Segment segment) {
+    if (segment != this.segment) {
+      this.segment = segment;
+      this.reader = segment.createReader();
+    }
+    return reader;
+  }
+
+  @Override
+  public void close() {
+    open = false;
+    segment = null;
+    reader = null;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[nextIndex=%d]", getClass().getSimpleName(), nextIndex);
+  }
+
+}
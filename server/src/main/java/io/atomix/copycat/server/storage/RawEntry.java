@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.buffer.Bytes;
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.catalyst.buffer.HeapBytes;
+import io.atomix.catalyst.buffer.WrappedBytes;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.compaction.Compaction;
+import io.atomix.copycat.server.storage.entry.Entry;
+
+import java.nio.ByteOrder;
+
+/**
+ * Serialized entry read from the log without deserialization.
+ * <p>
+ * Raw entries hold the bytes of an entry as serialized by the log's {@link Log#serializer() serializer}. Raw entries
+ * are read from a contiguous range of a segment via {@link Log#readRaw(long, int)} and can be written verbatim to
+ * another buffer. Because the byte order of serialized entries depends on the storage level of the log from which
+ * they were read, each raw entry carries the {@link #order() byte order} in which it was serialized. Raw entries read
+ * from segments also carry the entry's {@link #compactionMode() compaction mode} if it was recorded in the entry's
+ * record header.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public final class RawEntry {
+  private final long index;
+  private final long term;
+  private final byte[] bytes;
+  private final int offset;
+  private final int length;
+  private final ByteOrder order;
+  private final Compaction.Mode compactionMode;
+
+  public RawEntry(long index, long term, byte[] bytes, int offset, int length, ByteOrder order) {
+    this(index, term, bytes, offset, length, order, null);
+  }
+
+  public RawEntry(long index, long term, byte[] bytes, int offset, int length, ByteOrder order, Compaction.Mode compactionMode) {
+    this.index = index;
+    this.term = term;
+    this.bytes = Assert.notNull(bytes, "bytes");
+    this.offset = offset;
+    this.length = length;
+    this.order = Assert.notNull(order, "order");
+    this.compactionMode = compactionMode;
+  }
+
+  /**
+   * Returns the entry index.
+   *
+   * @return The entry index.
+   */
+  public long index() {
+    return index;
+  }
+
+  /**
+   * Returns the entry term.
+   *
+   * @return The entry term.
+   */
+  public long term() {
+    return term;
+  }
+
+  /**
+   * Returns the size of the serialized entry in bytes.
+   *
+   * @return The size of the serialized entry in bytes.
+   */
+  public int size() {
+    return length;
+  }
+
+  /**
+   * Returns the byte order in which the entry was serialized.
+   *
+   * @return The byte order in which the entry was serialized.
+   */
+  public ByteOrder order() {
+    return order;
+  }
+
+  /**
+   * Returns the entry compaction mode.
+   *
+   * @return The entry compaction mode or {@code null} if the compaction mode is not known without deserializing
+   * the entry.
+   */
+  public Compaction.Mode compactionMode() {
+    return compactionMode;
+  }
+
+  /**
+   * Returns a buffer slice of the serialized entry.
+   * <p>
+   * The returned buffer reads values in the entry's {@link #order() byte order}.
+   *
+   * @return A buffer slice of the serialized entry.
+   */
+  public Buffer buffer() {
+    Buffer buffer = HeapBuffer.wrap(bytes);
+    if (order != ByteOrder.nativeOrder()) {
+      buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+    return buffer.slice(offset, length);
+  }
+
+  /**
+   * Returns a boolean indicating whether the entry can be written verbatim to the given output.
+   * <p>
+   * Serialized entries can only be read back from a buffer that stores values in the byte order in which the
+   * entry was serialized. Heap buffers report big-endian order but store values in native order, so the order in
+   * which a heap buffer stores values is the reverse of its reported order on little-endian platforms.
+   *
+   * @param output The output to which to write the entry.
+   * @return Indicates whether the output is a buffer that stores values in the entry's byte order.
+   */
+  public boolean canWriteTo(BufferOutput<?> output) {
+    if (!(output instanceof Buffer)) {
+      return false;
+    }
+
+    Buffer buffer = (Buffer) output;
+    Bytes bytes = buffer.bytes();
+    while (bytes instanceof WrappedBytes) {
+      bytes = ((WrappedBytes) bytes).root();
+    }
+
+    ByteOrder order = buffer.order();
+    if (bytes instanceof HeapBytes && ByteOrder.nativeOrder() != ByteOrder.BIG_ENDIAN) {
+      order = order == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+    }
+    return order == this.order;
+  }
+
+  /**
+   * Writes the serialized entry verbatim to the given output.
+   *
+   * @param output The output to which to write the entry.
+   */
+  public void writeTo(BufferOutput<?> output) {
+    output.write(bytes, offset, length);
+  }
+
+  /**
+   * Deserializes the entry.
+   *
+   * @param serializer The serializer with which to deserialize the entry.
+   * @param <T> The entry type.
+   * @return The deserialized entry.
+   */
+  public <T extends Entry> T toEntry(Serializer serializer) {
+    try (Buffer buffer = buffer()) {
+      T entry = serializer.readObject(buffer);
+      entry.setIndex(index).setTerm(term).setSize(length);
+      return entry;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[index=%d, term=%d, size=%d]", getClass().getSimpleName(), index, term, length);
+  }
+
+}
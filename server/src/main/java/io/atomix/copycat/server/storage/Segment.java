@@ -18,11 +18,28 @@ package io.atomix.copycat.server.storage;
 import io.atomix.catalyst.buffer.*;
 import io.atomix.catalyst.serializer.Serializer;
 import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.compaction.Compaction;
 import io.atomix.copycat.server.storage.entry.Entry;
 import io.atomix.copycat.server.storage.util.OffsetIndex;
 import io.atomix.copycat.server.storage.util.OffsetPredicate;
 import io.atomix.copycat.server.storage.util.TermIndex;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
 /**
  * Stores a sequence of entries with monotonically increasing indexes in a {@link Buffer}.
  * <p>
@@ -36,12 +53,21 @@ import io.atomix.copycat.server.storage.util.TermIndex;
  * each entry within the segment's internal {@link io.atomix.catalyst.buffer.Buffer}. For entries that are appended
  * to the log sequentially, the index has an O(1) lookup time. For instances where entries in a segment have been
  * skipped (due to log compaction), the lookup time is O(log n) due to binary search. However, due to the nature of
- * the Raft consensus algorithm, readers should typically benefit from O(1) lookups.
+ * the Raft consensus algorithm, readers should typically benefit from O(1) lookups. If the
+ * {@link Storage#indexInterval() index interval} is greater than {@code 1}, the index is sparse and entries that
+ * are not indexed are located by scanning forward from the nearest indexed entry.
  * <p>
  * When a segment is constructed, the segment will attempt to rebuild its index from the underlying segment
  * {@link Buffer}. This is done by reading a 32-bit length and 64-bit offset for each entry. Once the segment
  * has been built, new entries will be {@link #append(Entry) appended} at the end of the segment.
  * <p>
+ * Persistent segments also write each indexed entry to a {@link SegmentIndexFile} stored alongside the segment.
+ * When the segment is loaded, the index is rebuilt from the index file and only entries written after the last
+ * valid record in the index file are read from the segment buffer.
+ * <p>
+ * Persistent segments also persist {@link #release(long) released} entries to a {@link SegmentReleaseFile}, and
+ * released entries are restored when the segment is loaded so compaction can resume immediately after a restart.
+ * <p>
  * Additionally, segments are responsible for keeping track of entries that have been {@link #release(long) released}.
  * Entry liveness is tracked in an internal {@link io.atomix.catalyst.buffer.util.BitArray} with a size equal
  * to the segment's entry {@link #count()}.
@@ -50,47 +76,676 @@ import io.atomix.copycat.server.storage.util.TermIndex;
  * <ul>
  *   <li>Required 32-bit entry length</li>
  *   <li>Required 64-bit offset</li>
- *   <li>Required 8-bit term flag</li>
+ *   <li>Required 8-bit flags</li>
  *   <li>Optional 64-bit term</li>
+ *   <li>Optional 32-bit CRC32 checksum of the entry header and value</li>
  * </ul>
+ * <p>
+ * The lowest bit of the flags indicates whether the record includes the entry term, and the next four bits store
+ * the entry's {@link Compaction.Mode} so compaction can determine whether a record is live without deserializing
+ * the entry. Records whose compaction mode bits are zero, e.g. records written by earlier versions, do not record
+ * the compaction mode. Records can be {@link Reader#nextRaw(long) read} and {@link #appendRaw(RawEntry) appended}
+ * without deserializing them, in which case only the record header is rewritten.
+ * <p>
+ * Checksums are written only for segments whose {@link SegmentDescriptor#checksums()} flag is set. When a
+ * checksummed segment is loaded, entries are validated as the index is rebuilt and the segment is truncated
+ * at the first entry that fails validation, discarding any entries that were partially written before a crash.
+ * <p>
+ * Segments support a single writer and any number of concurrent readers. Entries are only visible to readers once
+ * they've been written to the segment buffer and published in the segment's {@link OffsetIndex}, and reads do not
+ * lock the segment. Because {@link FileBuffer} reads are not safe for concurrent use, entries in segments stored
+ * on disk are read with positional reads from a separate {@link FileChannel}. Resizing a {@link MappedBuffer} in
+ * place unmaps the prior mapping, so mapped segment buffers are never resized while they may be read. Records are
+ * serialized before they're written to a mapped segment, and if a record doesn't fit in the mapped buffer, the
+ * segment file is mapped again at a larger size. Replaced mappings are retained until the segment's resources are
+ * closed, so concurrent readers and flushes never access an unmapped buffer.
+ * <p>
+ * The buffer, indexes, and files of persistent segments may be closed by the {@link SegmentManager} to limit the
+ * number of {@link Storage#maxOpenSegments() open segments}. A closed segment retains only its descriptor, its
+ * released entries, and the size of the segment, and its buffer and indexes are reopened the next time an entry
+ * is read from or written to the segment. Readers and writers hold a reference to the segment's resources for
+ * the duration of each operation, so resources are never closed while in use.
+ * <p>
+ * Segments that are removed from the log by compaction or truncation are {@link #retire() retired} rather than
+ * closed. Readers {@link #pin() pin} a segment for the duration of a read, and a retired segment is closed and
+ * deleted once it's no longer pinned.
+ * <p>
+ * Segments whose {@link SegmentDescriptor#compressed()} flag is set store their records in independently
+ * compressed blocks described by a {@link BlockIndex}. Compressed segments are written once from a sealed segment
+ * via {@link #compress(Buffer, int)} and are read-only thereafter. Positions in the offset index of a compressed
+ * segment are positions within the uncompressed records, and reads decompress the block containing the requested
+ * records, caching decompressed blocks in the {@link SegmentManager}'s {@link BlockCache}.
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
 public class Segment implements AutoCloseable {
+  private static final int FILE_READ_SIZE = 1024;
+  private static final int BATCH_BUFFER_SIZE = 1024 * 32;
+  private static final int MAX_BATCH_BUFFER_SIZE = 1024 * 1024;
+  private static final int READ_AHEAD_SIZE = 1024 * 64;
+  private static final int TERM_FLAG = 0x01;
+  private static final int MODE_SHIFT = 1;
+  private static final int MODE_MASK = 0x0F;
+  private static final Compaction.Mode[] MODES = Compaction.Mode.values();
+  private static final ThreadLocal<Checksum> CHECKSUMS = ThreadLocal.withInitial(Checksum::new);
+  private static final ThreadLocal<byte[]> FILE_READ_BUFFERS = ThreadLocal.withInitial(() -> new byte[FILE_READ_SIZE]);
+  private static final ThreadLocal<HeapBuffer> BATCH_BUFFERS = ThreadLocal.withInitial(() -> HeapBuffer.allocate(BATCH_BUFFER_SIZE, Integer.MAX_VALUE));
+  private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
   private final SegmentDescriptor descriptor;
   private final Serializer serializer;
-  private final Buffer buffer;
-  private final OffsetIndex offsetIndex;
   private final OffsetPredicate offsetPredicate;
-  private final TermIndex termIndex = new TermIndex();
+  private final boolean checksums;
+  private final boolean verifyChecksums;
   private final SegmentManager manager;
-  private long skip = 0;
-  private boolean open = true;
+  private volatile Resources resources;
+  private volatile long accessed = System.nanoTime();
+  private volatile long skip = 0;
+  private volatile boolean open = true;
+  private volatile int generation;
+  private boolean torn;
+  private int closedCount;
+  private long closedLastOffset;
+  private long closedSize;
+  private long predicateSize;
+  private volatile long releaseSize;
+  private final AtomicInteger pins = new AtomicInteger();
+  private volatile boolean retired;
 
   /**
-   * @throws NullPointerException if any argument is null
+   * @throws NullPointerException if any argument other than {@code indexFile} or {@code releaseFile} is null
    */
-  Segment(Buffer buffer, SegmentDescriptor descriptor, OffsetIndex offsetIndex, OffsetPredicate offsetPredicate, Serializer serializer, SegmentManager manager) {
+  Segment(Buffer buffer, SegmentDescriptor descriptor, OffsetIndex offsetIndex, SegmentIndexFile indexFile, SegmentReleaseFile releaseFile, OffsetPredicate offsetPredicate, Serializer serializer, SegmentManager manager) {
+    Assert.notNull(buffer, "buffer");
+    Assert.notNull(offsetIndex, "offsetIndex");
     this.serializer = Assert.notNull(serializer, "serializer");
-    this.buffer = Assert.notNull(buffer, "buffer");
     this.descriptor = Assert.notNull(descriptor, "descriptor");
-    this.offsetIndex = Assert.notNull(offsetIndex, "offsetIndex");
     this.offsetPredicate = Assert.notNull(offsetPredicate, "offsetPredicate");
     this.manager = Assert.notNull(manager, "manager");
+    this.checksums = descriptor.checksums();
+    this.verifyChecksums = checksums && manager.storage().verifyChecksums();
+    this.resources = load(new Resources(buffer, offsetIndex, indexFile, releaseFile, descriptor.compressed(), manager.storage().memory())).account();
+    computeReleaseSize(resources);
+    accountPredicate();
+    manager.segmentOpened(this);
+  }
+
+  /**
+   * Creates a segment whose resources are not open.
+   */
+  private Segment(SegmentDescriptor descriptor, int count, long lastOffset, long size, long releaseSize, OffsetPredicate offsetPredicate, Serializer serializer, SegmentManager manager) {
+    this.serializer = serializer;
+    this.descriptor = descriptor;
+    this.offsetPredicate = offsetPredicate;
+    this.manager = manager;
+    this.checksums = descriptor.checksums();
+    this.verifyChecksums = checksums && manager.storage().verifyChecksums();
+    this.closedCount = count;
+    this.closedLastOffset = lastOffset;
+    this.closedSize = size;
+    this.releaseSize = releaseSize;
+    accountPredicate();
+  }
+
+  /**
+   * Creates a persistent segment without opening its resources.
+   * <p>
+   * The segment's metadata is read from the last record of the segment's index file, which is verified against the
+   * segment file along with the absence of any entries following the indexed entries, so loading the segment only
+   * requires reading a few bytes from the segment rather than rebuilding its indexes. The segment's resources are
+   * opened when the segment is first read or written. If the index file does not cover all the entries in the
+   * segment or the segment is compressed, the segment cannot be created without loading it.
+   *
+   * @param descriptor The segment descriptor.
+   * @param file The segment file.
+   * @param indexFile The segment index file, which is closed by this method.
+   * @param releaseFile The segment release file, which is closed by this method.
+   * @param offsetPredicate The segment offset predicate.
+   * @param serializer The entry serializer.
+   * @param manager The segment manager.
+   * @return The segment or {@code null} if the segment must be loaded.
+   */
+  static Segment open(SegmentDescriptor descriptor, File file, SegmentIndexFile indexFile, SegmentReleaseFile releaseFile, OffsetPredicate offsetPredicate, Serializer serializer, SegmentManager manager) {
+    try {
+      if (descriptor.compressed()) {
+        return null;
+      }
+
+      long count = indexFile.count();
+      long[] record = new long[3];
+      if (count > 0 && !indexFile.readRecord(count - 1, (offset, position, term) -> {
+        record[0] = offset;
+        record[1] = position;
+        record[2] = term;
+        return true;
+      })) {
+        return null;
+      }
+
+      long lastOffset = -1;
+      long end = 0;
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+        ByteBuffer header = ByteBuffer.allocate(Bytes.INTEGER + Bytes.LONG + Bytes.BOOLEAN + Bytes.LONG);
+        if (count > 0) {
+          // Verify that the last index record matches the entry at the recorded position.
+          long position = record[1];
+          if (readFully(channel, header, SegmentDescriptor.BYTES + position) < header.capacity()) {
+            return null;
+          }
+          int length = header.getInt(0);
+          boolean hasTerm = hasTerm(header.get(Bytes.INTEGER + Bytes.LONG));
+          if (length <= 0 || header.getLong(Bytes.INTEGER) != record[0]
+            || (hasTerm && header.getLong(Bytes.INTEGER + Bytes.LONG + Bytes.BOOLEAN) != record[2])) {
+            return null;
+          }
+          lastOffset = record[0];
+          end = position + headerLength(hasTerm, descriptor.checksums()) + length;
+        }
+
+        // Verify that no entries follow the last indexed entry.
+        header.clear().limit(Bytes.INTEGER);
+        if (readFully(channel, header, SegmentDescriptor.BYTES + end) == Bytes.INTEGER && header.getInt(0) != 0) {
+          return null;
+        }
+      } catch (IOException e) {
+        throw new StorageException("failed to read segment: " + file, e);
+      }
+
+      long releaseSize = 0;
+      if (releaseFile != null) {
+        releaseFile.load(count, offsetPredicate);
+        if (offsetPredicate.count() > 0) {
+          releaseSize = releaseSize(indexFile, count, end, offsetPredicate);
+          if (releaseSize == -1) {
+            return null;
+          }
+        }
+      }
+      return new Segment(descriptor, (int) count, lastOffset, SegmentDescriptor.BYTES + end, releaseSize, offsetPredicate, serializer, manager);
+    } finally {
+      indexFile.close();
+      if (releaseFile != null) {
+        releaseFile.close();
+      }
+    }
+  }
+
+  /**
+   * Returns the total size of the released records in a segment from the positions in the segment's index file.
+   * <p>
+   * Each record ends where the next indexed record begins, and the last record ends at the given position.
+   *
+   * @return The size of the released records or {@code -1} if the index file could not be read.
+   */
+  private static long releaseSize(SegmentIndexFile indexFile, long count, long end, OffsetPredicate offsetPredicate) {
+    long[] state = new long[3];
+    if (indexFile.readRecords(count, (offset, position, term) -> {
+      if (state[0] > 0 && !offsetPredicate.test(state[0] - 1)) {
+        state[2] += position - state[1];
+      }
+      state[0]++;
+      state[1] = position;
+      return true;
+    }) < count) {
+      return -1;
+    }
+    return count > 0 && !offsetPredicate.test(count - 1) ? state[2] + end - state[1] : state[2];
+  }
+
+  /**
+   * Reads from the given channel at the given position until the buffer is full or the end of the file is reached.
+   *
+   * @return The number of bytes read.
+   */
+  private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) <= 0) {
+        break;
+      }
+    }
+    return buffer.position();
+  }
+
+  /**
+   * Rebuilds the indexes for the given segment resources.
+   */
+  private Resources load(Resources resources) {
+    // Sparse offset indexes locate entries that are not indexed by scanning the segment's records.
+    resources.offsetIndex.scanner(new RecordScanner(resources));
+
+    if (resources.blocks != null) {
+      return loadBlocks(resources);
+    }
+
+    Buffer buffer = resources.buffer;
+    OffsetIndex offsetIndex = resources.offsetIndex;
+    TermIndex termIndex = resources.termIndex;
+    SegmentIndexFile indexFile = resources.indexFile;
+
+    // Rebuild the index from the index file if one exists.
+    if (indexFile != null) {
+      buffer.position(loadIndex(resources));
+    }
 
-    // Rebuild the index from the segment data.
+    // Rebuild the remainder of the index from the segment data.
     long position = buffer.mark().position();
     int length = buffer.readInt();
     while (length != 0) {
+      // If the entry fails validation, assume it was partially written and discard it along with the
+      // remainder of the segment.
+      if (checksums && !validateEntry(buffer, position, length, offsetIndex.lastOffset())) {
+        buffer.zero(position).flush();
+        torn = true;
+        break;
+      }
+
       long offset = buffer.readLong();
-      if (buffer.readBoolean()) {
+      if (hasTerm(buffer.readByte())) {
         termIndex.index(offset, buffer.readLong());
       }
+      if (checksums) {
+        buffer.skip(Bytes.INTEGER);
+      }
+      resources.recordSize(offsetIndex.size(), buffer.position() - position + length);
       offsetIndex.index(offset, position);
+      if (indexFile != null) {
+        indexFile.append(offset, position, termIndex.term());
+      }
       position = buffer.skip(length).position();
       length = buffer.mark().readInt();
     }
     buffer.reset();
+
+    // Write any index records rebuilt from the segment data in a single batch.
+    if (indexFile != null) {
+      indexFile.flush();
+    }
+
+    // Restore released entries from the release file.
+    if (resources.releaseFile != null) {
+      resources.releaseFile.load(offsetIndex.size(), offsetPredicate);
+    }
+    return resources;
+  }
+
+  /**
+   * Rebuilds the indexes for the given compressed segment resources.
+   * <p>
+   * As with uncompressed segments, the index is rebuilt from the index file if one exists. Any entries not covered
+   * by the index file are indexed by decompressing the remaining blocks of the segment.
+   */
+  private Resources loadBlocks(Resources resources) {
+    OffsetIndex offsetIndex = resources.offsetIndex;
+    TermIndex termIndex = resources.termIndex;
+    SegmentIndexFile indexFile = resources.indexFile;
+    BlockIndex blocks = resources.blocks;
+
+    // Rebuild the index from the index file if one exists.
+    long position = 0;
+    if (indexFile != null) {
+      long count = indexFile.count();
+      while (count > 0 && !indexFile.readRecord(count - 1, (offset, recordPosition, term) -> verifyBlockEntry(resources, offset, recordPosition, term))) {
+        count--;
+      }
+
+      long[] lastPosition = {-1};
+      indexFile.readRecords(count, (offset, recordPosition, term) -> {
+        // Each record ends where the next indexed record begins.
+        if (lastPosition[0] != -1) {
+          resources.recordSize(offsetIndex.size() - 1, recordPosition - lastPosition[0]);
+        }
+        lastPosition[0] = recordPosition;
+        offsetIndex.index(offset, recordPosition);
+        termIndex.index(offset, term);
+        return true;
+      });
+
+      if (!offsetIndex.isEmpty()) {
+        position = recordEnd(resources, lastPosition[0]);
+        resources.recordSize(offsetIndex.size() - 1, position - lastPosition[0]);
+      }
+    }
+
+    // Rebuild the remainder of the index from the decompressed blocks.
+    while (position < blocks.size()) {
+      int block = blocks.find(position);
+      long start = blocks.start(block);
+      ByteBuffer records = ByteBuffer.wrap(decompressBlock(resources, block)).order(resources.order);
+      int recordPosition = (int) (position - start);
+      while (recordPosition < records.limit()) {
+        int length = records.getInt(recordPosition);
+        if (length <= 0) {
+          throw new StorageException("invalid entry in compressed segment: " + descriptor.id());
+        }
+
+        long offset = records.getLong(recordPosition + Bytes.INTEGER);
+        boolean hasTerm = hasTerm(records.get(recordPosition + Bytes.INTEGER + Bytes.LONG));
+        if (hasTerm) {
+          termIndex.index(offset, records.getLong(recordPosition + Bytes.INTEGER + Bytes.LONG + Bytes.BOOLEAN));
+        }
+        resources.recordSize(offsetIndex.size(), headerLength(hasTerm) + length);
+        offsetIndex.index(offset, start + recordPosition);
+        if (indexFile != null) {
+          indexFile.append(offset, start + recordPosition, termIndex.term());
+        }
+        recordPosition += headerLength(hasTerm) + length;
+      }
+      position = start + records.limit();
+    }
+
+    // Write any index records rebuilt from the segment data in a single batch.
+    if (indexFile != null) {
+      indexFile.flush();
+    }
+
+    // Restore released entries from the release file.
+    if (resources.releaseFile != null) {
+      resources.releaseFile.load(offsetIndex.size(), offsetPredicate);
+    }
+    return resources;
+  }
+
+  /**
+   * Verifies that the entry at the given uncompressed position matches the given index record.
+   */
+  private boolean verifyBlockEntry(Resources resources, long offset, long position, long term) {
+    int block = resources.blocks.find(position);
+    if (block == -1) {
+      return false;
+    }
+
+    ByteBuffer records = ByteBuffer.wrap(decompressBlock(resources, block)).order(resources.order);
+    int recordPosition = (int) (position - resources.blocks.start(block));
+    if (recordPosition + Bytes.INTEGER + Bytes.LONG + Bytes.BOOLEAN + Bytes.LONG > records.limit()) {
+      return false;
+    }
+    if (records.getInt(recordPosition) <= 0 || records.getLong(recordPosition + Bytes.INTEGER) != offset) {
+      return false;
+    }
+    return !hasTerm(records.get(recordPosition + Bytes.INTEGER + Bytes.LONG)) || records.getLong(recordPosition + Bytes.INTEGER + Bytes.LONG + Bytes.BOOLEAN) == term;
+  }
+
+  /**
+   * Acquires a reference to the segment's resources, reopening the segment if it has been closed by the manager.
+   * <p>
+   * The returned resources must be {@link Resources#release() released} once the caller is done with them.
+   */
+  private Resources acquire() {
+    Resources resources = this.resources;
+    if (resources == null || !resources.acquire()) {
+      resources = reopen();
+    }
+    accessed = System.nanoTime();
+    return resources;
+  }
+
+  /**
+   * Reopens the segment's resources if necessary and acquires a reference to them.
+   */
+  private Resources reopen() {
+    Resources resources;
+    boolean reopened = false;
+    synchronized (this) {
+      assertSegmentOpen();
+      resources = this.resources;
+      if (resources == null) {
+        SegmentAllocation allocation = manager.reopenSegment(descriptor);
+        Buffer buffer = allocation.buffer();
+        descriptor.attach(buffer);
+        resources = load(new Resources(buffer.position(SegmentDescriptor.BYTES).slice(), allocation.index(), allocation.indexFile(), allocation.releaseFile(), descriptor.compressed(), manager.storage().memory())).account();
+        this.resources = resources;
+        reopened = true;
+      }
+      resources.acquire();
+    }
+
+    // Notify the manager outside of the segment lock since the manager may close other segments.
+    if (reopened) {
+      manager.segmentOpened(this);
+    }
+    return resources;
+  }
+
+  /**
+   * Closes the segment's resources if they're not in use, retaining only the segment's metadata.
+   * <p>
+   * Only persistent segments that are no longer written may be unloaded. The segment's resources will be reopened
+   * the next time the segment is accessed.
+   *
+   * @return Indicates whether the segment's resources were closed.
+   */
+  synchronized boolean unload() {
+    Resources resources = this.resources;
+    if (resources == null || !resources.references.compareAndSet(1, 0)) {
+      return false;
+    }
+    capture(resources);
+    this.resources = null;
+    resources.close();
+    return true;
+  }
+
+  /**
+   * Captures the metadata of the segment to be used while the segment's resources are closed.
+   */
+  private void capture(Resources resources) {
+    closedCount = resources.offsetIndex.size();
+    closedLastOffset = resources.offsetIndex.lastOffset();
+    closedSize = size(resources);
+  }
+
+  /**
+   * Returns a boolean value indicating whether the segment's resources are open.
+   *
+   * @return Indicates whether the segment's resources are open.
+   */
+  boolean isLoaded() {
+    return resources != null;
+  }
+
+  /**
+   * Returns a boolean value indicating whether the segment's resources are open and stored in a memory mapped file.
+   *
+   * @return Indicates whether the segment is open and memory mapped.
+   */
+  boolean isMapped() {
+    Resources resources = this.resources;
+    return resources != null && resources.root instanceof MappedBuffer;
+  }
+
+  /**
+   * Returns the time at which the segment was last accessed.
+   *
+   * @return The {@link System#nanoTime()} at which the segment was last accessed.
+   */
+  long accessed() {
+    return accessed;
+  }
+
+  /**
+   * Validates the length, offset, and checksum of the entry at the given position in the segment buffer.
+   */
+  private boolean validateEntry(Buffer buffer, long position, int length, long lastOffset) {
+    if (length <= 0 || length > descriptor.maxSegmentSize()) {
+      return false;
+    }
+    long offset = buffer.readLong(position + Bytes.INTEGER);
+    if (offset < 0 || offset <= lastOffset) {
+      return false;
+    }
+    int headerLength = headerLength(buffer, position);
+    return buffer.readInt(position + headerLength - Bytes.INTEGER) == CHECKSUMS.get().compute(buffer, position, headerLength, length);
+  }
+
+  /**
+   * Validates all entries in the segment, discarding the first invalid entry and all following entries.
+   * <p>
+   * Entries loaded from the segment's index file are not validated when the segment is constructed. Recovery
+   * validates the checksum of every entry in the segment and should be performed on segments that may contain
+   * entries that were partially written before a crash.
+   *
+   * @return Indicates whether entries were discarded from the segment.
+   */
+  boolean recover() {
+    if (!checksums || descriptor.compressed()) {
+      return false;
+    }
+
+    Resources resources = acquire();
+    try {
+      Buffer buffer = resources.buffer;
+      long position = 0;
+      long lastOffset = -1;
+      while (position < buffer.position()) {
+        int length = buffer.readInt(position);
+        if (!validateEntry(buffer, position, length, lastOffset)) {
+          resources.offsetIndex.truncate(lastOffset);
+          resources.termIndex.truncate(lastOffset);
+          if (resources.indexFile != null) {
+            resources.indexFile.truncate(resources.offsetIndex.size());
+          }
+          offsetPredicate.truncate(resources.offsetIndex.size());
+          if (resources.releaseFile != null) {
+            resources.releaseFile.truncate(resources.offsetIndex.size());
+          }
+          buffer.position(position)
+            .zero(position)
+            .flush();
+          resources.account();
+          accountPredicate();
+          computeReleaseSize(resources);
+          skip = 0;
+          torn = true;
+          return true;
+        }
+        lastOffset = buffer.readLong(position + Bytes.INTEGER);
+        position += headerLength(buffer, position) + length;
+      }
+      return false;
+    } finally {
+      resources.release();
+    }
+  }
+
+  /**
+   * Opens a channel for concurrent reads from the given buffer if it's stored on disk.
+   */
+  private static FileChannel openChannel(Buffer buffer) {
+    Buffer root = buffer instanceof SlicedBuffer ? ((SlicedBuffer) buffer).root() : buffer;
+    if (root instanceof FileBuffer) {
+      try {
+        return FileChannel.open(((FileBuffer) root).file().toPath(), StandardOpenOption.READ);
+      } catch (IOException e) {
+        throw new StorageException("failed to open segment file", e);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the length of the header of the entry at the given position in the given buffer.
+   */
+  private int headerLength(Buffer buffer, long position) {
+    return headerLength(hasTerm(buffer.readByte(position + Bytes.INTEGER + Bytes.LONG)));
+  }
+
+  /**
+   * Returns the record flags for an entry with the given compaction mode.
+   */
+  private static int flags(boolean hasTerm, Compaction.Mode mode) {
+    return (hasTerm ? TERM_FLAG : 0) | (mode != null ? (mode.ordinal() + 1) << MODE_SHIFT : 0);
+  }
+
+  /**
+   * Returns a boolean value indicating whether the given record flags indicate the record includes a term.
+   */
+  private static boolean hasTerm(int flags) {
+    return (flags & TERM_FLAG) != 0;
+  }
+
+  /**
+   * Returns the compaction mode stored in the given record flags.
+   *
+   * @return The compaction mode or {@code null} if the record does not store the compaction mode.
+   */
+  private static Compaction.Mode compactionMode(int flags) {
+    int mode = (flags >>> MODE_SHIFT) & MODE_MASK;
+    return mode != 0 && mode <= MODES.length ? MODES[mode - 1] : null;
+  }
+
+  /**
+   * Returns the length of an entry header.
+   */
+  private int headerLength(boolean hasTerm) {
+    return headerLength(hasTerm, checksums);
+  }
+
+  /**
+   * Returns the length of the header of a record with or without a term in a segment with or without checksums.
+   */
+  private static int headerLength(boolean hasTerm, boolean checksums) {
+    return Bytes.INTEGER + Bytes.LONG + Bytes.BOOLEAN + (hasTerm ? Bytes.LONG : 0) + (checksums ? Bytes.INTEGER : 0);
+  }
+
+  /**
+   * Loads the offset and term indexes from the index file.
+   * <p>
+   * The index file may contain records for entries that never made it to disk, so the last record in the index
+   * file that's consistent with the segment buffer is located first. All records up to and including that record
+   * are then read into the offset and term indexes.
+   *
+   * @return The position in the segment buffer following the last indexed entry.
+   */
+  private long loadIndex(Resources resources) {
+    Buffer buffer = resources.buffer;
+    OffsetIndex offsetIndex = resources.offsetIndex;
+    SegmentIndexFile indexFile = resources.indexFile;
+
+    long count = indexFile.count();
+    while (count > 0 && !indexFile.readRecord(count - 1, (offset, position, term) -> verifyEntry(buffer, offset, position, term))) {
+      count--;
+    }
+
+    long[] lastPosition = {-1};
+    indexFile.readRecords(count, (offset, position, term) -> {
+      // Each record ends where the next indexed record begins.
+      if (lastPosition[0] != -1) {
+        resources.recordSize(offsetIndex.size() - 1, position - lastPosition[0]);
+      }
+      lastPosition[0] = position;
+      offsetIndex.index(offset, position);
+      resources.termIndex.index(offset, term);
+      return true;
+    });
+
+    if (offsetIndex.isEmpty()) {
+      return 0;
+    }
+
+    long position = lastPosition[0];
+    long end = position + headerLength(buffer, position) + buffer.readInt(position);
+    resources.recordSize(offsetIndex.size() - 1, end - position);
+    return end;
+  }
+
+  /**
+   * Verifies that the entry at the given position in the segment buffer matches the given index record.
+   */
+  private boolean verifyEntry(Buffer buffer, long offset, long position, long term) {
+    if (position + Bytes.INTEGER + Bytes.LONG + Bytes.BOOLEAN > descriptor.maxSegmentSize()) {
+      return false;
+    }
+    int length = buffer.readInt(position);
+    if (length <= 0 || buffer.readLong(position + Bytes.INTEGER) != offset) {
+      return false;
+    }
+    if (hasTerm(buffer.readByte(position + Bytes.INTEGER + Bytes.LONG)) && buffer.readLong(position + Bytes.INTEGER + Bytes.LONG + Bytes.BOOLEAN) != term) {
+      return false;
+    }
+    if (checksums) {
+      int headerLength = headerLength(buffer, position);
+      return length <= descriptor.maxSegmentSize() && buffer.readInt(position + headerLength - Bytes.INTEGER) == CHECKSUMS.get().compute(buffer, position, headerLength, length);
+    }
+    return true;
   }
 
   /**
@@ -114,6 +769,18 @@ public class Segment implements AutoCloseable {
     return open;
   }
 
+  /**
+   * Returns a boolean value indicating whether entries were discarded from the segment when it was loaded.
+   * <p>
+   * Entries are discarded from checksummed segments when an entry fails validation, typically because it was
+   * only partially written to disk before a crash. All entries following the invalid entry are discarded.
+   *
+   * @return Indicates whether entries were discarded from the segment when it was loaded.
+   */
+  boolean isTorn() {
+    return torn;
+  }
+
   /**
    * Returns a boolean value indicating whether the segment is empty.
    * <p>
@@ -123,7 +790,7 @@ public class Segment implements AutoCloseable {
    * @return Indicates whether the segment is empty.
    */
   public boolean isEmpty() {
-    return offsetIndex.size() > 0 ? offsetIndex.lastOffset() + 1 + skip == 0 : skip == 0;
+    return indexSize() > 0 ? lastOffset() + 1 + skip == 0 : skip == 0;
   }
 
   /**
@@ -144,22 +811,34 @@ public class Segment implements AutoCloseable {
    * <ul>
    *   <li>{@link #size()} is greater than or equal to {@link SegmentDescriptor#maxSegmentSize()}</li>
    *   <li>{@link #count()} is greater than or equal to {@link SegmentDescriptor#maxEntries()}</li>
+   *   <li>The segment is {@link SegmentDescriptor#compressed() compressed}</li>
    * </ul>
    *
    * @return Indicates whether the segment is full.
    */
   public boolean isFull() {
-    return size() >= descriptor.maxSegmentSize()
-      || offsetIndex.size() >= descriptor.maxEntries();
+    return descriptor.compressed()
+      || size() >= descriptor.maxSegmentSize()
+      || indexSize() >= descriptor.maxEntries();
   }
 
   /**
    * Returns the total size of the segment in bytes.
+   * <p>
+   * The size of a compressed segment is the size of the segment's entries before compression.
    *
    * @return The size of the segment in bytes.
    */
   public long size() {
-    return buffer.offset() + buffer.position();
+    Resources resources = this.resources;
+    return resources != null ? size(resources) : closedSize;
+  }
+
+  /**
+   * Returns the size of the segment with the given resources.
+   */
+  private static long size(Resources resources) {
+    return resources.buffer.offset() + (resources.blocks != null ? resources.blocks.size() : resources.buffer.position());
   }
 
   /**
@@ -170,7 +849,7 @@ public class Segment implements AutoCloseable {
    * @return The current range of the segment.
    */
   public long length() {
-    return !isEmpty() ? offsetIndex.lastOffset() + 1 + skip : 0;
+    return !isEmpty() ? lastOffset() + 1 + skip : 0;
   }
 
   /**
@@ -182,7 +861,25 @@ public class Segment implements AutoCloseable {
    * @return The count of all entries in the segment.
    */
   public int count() {
-    return offsetIndex.size();
+    return indexSize();
+  }
+
+  /**
+   * Returns the number of entries in the segment's offset index.
+   * <p>
+   * The size and last offset of the offset index are volatile fields that remain readable after the index is closed.
+   */
+  private int indexSize() {
+    Resources resources = this.resources;
+    return resources != null ? resources.offsetIndex.size() : closedCount;
+  }
+
+  /**
+   * Returns the last offset in the segment's offset index.
+   */
+  private long lastOffset() {
+    Resources resources = this.resources;
+    return resources != null ? resources.offsetIndex.lastOffset() : closedLastOffset;
   }
 
   /**
@@ -217,7 +914,7 @@ public class Segment implements AutoCloseable {
    */
   public long lastIndex() {
     assertSegmentOpen();
-    return !isEmpty() ? offsetIndex.lastOffset() + descriptor.index() + skip : descriptor.index() - 1;
+    return !isEmpty() ? lastOffset() + descriptor.index() + skip : descriptor.index() - 1;
   }
 
   /**
@@ -240,7 +937,12 @@ public class Segment implements AutoCloseable {
    * @return The offset of the given index.
    */
   public long offset(long index) {
-    return offsetIndex.find(relativeOffset(index));
+    Resources resources = acquire();
+    try {
+      return resources.offsetIndex.find(relativeOffset(index));
+    } finally {
+      resources.release();
+    }
   }
 
   /**
@@ -270,11 +972,28 @@ public class Segment implements AutoCloseable {
    */
   public long append(Entry entry) {
     Assert.notNull(entry, "entry");
+    Resources resources = acquire();
+    try {
+      long index = append(entry, resources);
+      resources.account();
+      return index;
+    } finally {
+      resources.release();
+    }
+  }
+
+  /**
+   * Commits an entry to the given segment resources.
+   */
+  private long append(Entry entry, Resources resources) {
     Assert.stateNot(isFull(), "segment is full");
 
     long index = nextIndex();
     Assert.index(index == entry.getIndex(), "inconsistent index: %s", entry.getIndex());
 
+    Buffer buffer = resources.buffer;
+    TermIndex termIndex = resources.termIndex;
+
     // Calculate the offset of the entry.
     long offset = relativeOffset(index);
 
@@ -287,48 +1006,333 @@ public class Segment implements AutoCloseable {
     // The entry term must be positive and >= the last term in the segment.
     Assert.arg(term > 0 && term >= lastTerm, "term must be monotonically increasing");
 
-    // Mark the starting position of the record and record the starting position of the new entry.
-    long position = buffer.mark().position();
-
-    // Determine whether to skip writing the term to the segment.
-    boolean skipTerm = term == lastTerm;
-
-    // Calculate the length of the entry header bytes.
-    int headerLength = Bytes.INTEGER + Bytes.LONG + Bytes.BOOLEAN + (skipTerm ? 0 : Bytes.LONG);
-
-    // Serialize the object into the segment buffer.
-    serializer.writeObject(entry, buffer.skip(headerLength));
-
-    // Calculate the length of the serialized bytes based on the resulting buffer position and the starting position.
-    int length = (int) (buffer.position() - (position + headerLength));
-
-    // Set the entry size.
-    entry.setSize(length);
-
-    // Write the length of the entry for indexing.
-    buffer.reset().writeInt(length).writeLong(offset);
-
-    // If the term has not yet been written, write the term to this entry.
-    if (skipTerm) {
-      buffer.writeBoolean(false).skip(length);
+    // Record the starting position of the new entry and write the entry, skipping the term if it's unchanged.
+    // Mapped buffers are grown as needed to fit the record.
+    long position = buffer.position();
+    if (resources.root instanceof MappedBuffer) {
+      writeMappedEntry(resources, entry, offset, term != lastTerm);
     } else {
-      buffer.writeBoolean(true).writeLong(entry.getTerm()).skip(length);
-    }
-
-    // Index the offset, position, and length.
-    offsetIndex.index(offset, position);
-
-    // If the entry term is greater than the last indexed term, index the term.
-    if (term > lastTerm) {
-      termIndex.index(offset, term);
+      writeEntry(entry, buffer, offset, term != lastTerm);
     }
-
-    // Reset skip to zero since we wrote a new entry.
-    skip = 0;
-
+    index(resources, offset, position, term, lastTerm);
     return index;
   }
 
+  /**
+   * Commits a serialized entry to the segment.
+   * <p>
+   * The entry bytes are written to the segment verbatim with a new record header, so the entry is not deserialized
+   * or re-serialized. If the entry was read in a byte order that differs from the byte order of this segment, the
+   * entry is deserialized and appended via {@link #append(Entry)}.
+   *
+   * @param entry The serialized entry to append.
+   * @return The index of the appended entry.
+   * @throws NullPointerException if {@code entry} is null
+   * @throws IllegalStateException if the segment is full
+   * @throws IndexOutOfBoundsException if the {@code entry} index does not match the next index
+   */
+  public long appendRaw(RawEntry entry) {
+    Assert.notNull(entry, "entry");
+    Resources resources = acquire();
+    try {
+      long index;
+      if (entry.order() != resources.order) {
+        try (Entry decoded = entry.toEntry(manager.readSerializer())) {
+          index = append(decoded, resources);
+        }
+      } else {
+        index = appendRaw(entry, resources);
+      }
+      resources.account();
+      return index;
+    } finally {
+      resources.release();
+    }
+  }
+
+  /**
+   * Commits a serialized entry to the given segment resources.
+   */
+  private long appendRaw(RawEntry entry, Resources resources) {
+    Assert.stateNot(isFull(), "segment is full");
+
+    long index = nextIndex();
+    Assert.index(index == entry.index(), "inconsistent index: %s", entry.index());
+
+    long offset = relativeOffset(index);
+    long term = entry.term();
+    long lastTerm = resources.termIndex.term();
+    Assert.arg(term > 0 && term >= lastTerm, "term must be monotonically increasing");
+
+    // Write a new header for the record since the offset and checksum differ from those of the source record.
+    boolean writeTerm = term != lastTerm;
+    int headerLength = headerLength(writeTerm);
+    int length = entry.size();
+    Buffer buffer = ensureCapacity(resources, headerLength + length);
+    long position = buffer.position();
+    buffer.writeInt(length).writeLong(offset).writeByte(flags(writeTerm, entry.compactionMode()));
+    if (writeTerm) {
+      buffer.writeLong(term);
+    }
+    if (checksums) {
+      buffer.writeInt(0);
+    }
+    entry.writeTo(buffer);
+
+    // The checksum covers the entry bytes, so it can only be computed once the bytes have been written.
+    if (checksums) {
+      buffer.writeInt(position + headerLength - Bytes.INTEGER, CHECKSUMS.get().compute(buffer, position, headerLength, length));
+    }
+
+    index(resources, offset, position, term, lastTerm);
+    return index;
+  }
+
+  /**
+   * Indexes an entry record written at the given position.
+   */
+  private void index(Resources resources, long offset, long position, long term, long lastTerm) {
+    // Write the offset, position, and term to the index file.
+    if (resources.indexFile != null) {
+      resources.indexFile.append(offset, position, term);
+    }
+
+    // If the entry term is greater than the last indexed term, index the term.
+    if (term > lastTerm) {
+      resources.termIndex.index(offset, term);
+    }
+
+    // Reset skip to zero since we wrote a new entry.
+    skip = 0;
+
+    // Index the offset and position last. Indexing the offset publishes the entry to concurrent readers,
+    // so the term and record size must already be indexed by the time the entry becomes visible.
+    resources.recordSize(resources.offsetIndex.size(), resources.buffer.position() - position);
+    resources.offsetIndex.index(offset, position);
+  }
+
+  /**
+   * Commits a batch of entries to the segment.
+   * <p>
+   * Entries are appended starting at {@code fromIndex} in the given list until either the list is exhausted or the
+   * segment becomes full. The batch is validated before any entries are written, and the appended entries are
+   * serialized into a contiguous region of the segment and indexed in bulk. Entries in the batch must have increasing
+   * indexes, and any gaps between indexes are {@link #skip(long) skipped}.
+   *
+   * @param entries The entries to append.
+   * @param fromIndex The position in the list of the first entry to append.
+   * @return The number of entries appended to the segment.
+   * @throws NullPointerException if {@code entries} or an entry in the batch is null
+   * @throws IllegalStateException if the segment is full
+   * @throws IndexOutOfBoundsException if the entry indexes are inconsistent with the segment
+   * @throws IllegalArgumentException if the entry terms are not monotonically increasing
+   */
+  public int appendBatch(List<? extends Entry> entries, int fromIndex) {
+    Assert.notNull(entries, "entries");
+    Assert.argNot(fromIndex < 0 || fromIndex > entries.size(), "invalid batch offset: %s", fromIndex);
+    Resources resources = acquire();
+    try {
+      int count = appendBatch(entries, fromIndex, resources);
+      resources.account();
+      return count;
+    } finally {
+      resources.release();
+    }
+  }
+
+  /**
+   * Commits a batch of entries to the given segment resources.
+   */
+  private int appendBatch(List<? extends Entry> entries, int fromIndex, Resources resources) {
+    Assert.stateNot(isFull(), "segment is full");
+
+    Buffer buffer = resources.buffer;
+    TermIndex termIndex = resources.termIndex;
+
+    // Limit the batch to the number of entries remaining in the segment.
+    int maxCount = Math.min(entries.size() - fromIndex, descriptor.maxEntries() - indexSize());
+
+    // Validate indexes and terms for the entire batch before writing any entries to the segment.
+    long lastIndex = nextIndex() - 1;
+    long lastTerm = termIndex.term();
+    for (int i = 0; i < maxCount; i++) {
+      Entry entry = Assert.notNull(entries.get(fromIndex + i), "entry");
+      Assert.index(entry.getIndex() > lastIndex, "inconsistent index: %s", entry.getIndex());
+      Assert.arg(entry.getTerm() > 0 && entry.getTerm() >= lastTerm, "term must be monotonically increasing");
+      lastIndex = entry.getIndex();
+      lastTerm = entry.getTerm();
+    }
+
+    // File segments are serialized into a heap buffer and written to the segment in a single write. Mapped and memory
+    // segments are written directly to the segment buffer, and mapped buffers are grown as needed while the batch is
+    // written.
+    boolean mapped = resources.root instanceof MappedBuffer;
+    HeapBuffer scratch = resources.channel != null && !mapped ? BATCH_BUFFERS.get() : null;
+    Buffer target = scratch != null ? bigEndian(scratch).clear() : buffer;
+
+    long startPosition = buffer.position();
+    long targetPosition = target.position();
+    long[] offsets = new long[maxCount];
+    long[] positions = new long[maxCount];
+    long[] terms = new long[maxCount];
+
+    int count = 0;
+    long endPosition;
+    try {
+      lastTerm = termIndex.term();
+      while (count < maxCount && buffer.offset() + startPosition + (target.position() - targetPosition) < descriptor.maxSegmentSize()) {
+        Entry entry = entries.get(fromIndex + count);
+        long offset = relativeOffset(entry.getIndex());
+        long term = entry.getTerm();
+        offsets[count] = offset;
+        positions[count] = startPosition + (target.position() - targetPosition);
+        terms[count] = term;
+        if (mapped) {
+          target = writeMappedEntry(resources, entry, offset, term != lastTerm);
+        } else {
+          writeEntry(entry, target, offset, term != lastTerm);
+        }
+        lastTerm = term;
+        count++;
+      }
+
+      endPosition = startPosition + (target.position() - targetPosition);
+      if (scratch != null) {
+        buffer.write(scratch.array(), 0, target.position());
+      }
+    } finally {
+      // Avoid retaining large buffers for the life of the thread.
+      if (scratch != null && scratch.array().length > MAX_BATCH_BUFFER_SIZE) {
+        BATCH_BUFFERS.remove();
+      }
+    }
+
+    // Write the offsets, positions, and terms to the index file in a single write.
+    if (resources.indexFile != null) {
+      resources.indexFile.append(offsets, positions, terms, count);
+    }
+
+    // Index any term changes in the batch.
+    lastTerm = termIndex.term();
+    for (int i = 0; i < count; i++) {
+      if (terms[i] > lastTerm) {
+        termIndex.index(offsets[i], terms[i]);
+        lastTerm = terms[i];
+      }
+    }
+
+    // Reset skip to zero since we wrote new entries.
+    skip = 0;
+
+    // Each record ends where the next record in the batch begins.
+    int size = resources.offsetIndex.size();
+    for (int i = 0; i < count; i++) {
+      resources.recordSize(size + i, (i < count - 1 ? positions[i + 1] : endPosition) - positions[i]);
+    }
+
+    // Index the offsets and positions last to publish the batch to concurrent readers.
+    resources.offsetIndex.index(offsets, positions, count);
+
+    return count;
+  }
+
+  /**
+   * Writes an entry record directly to the mapped buffer of the given resources.
+   * <p>
+   * The size of the record isn't known until the entry has been serialized, so if the record overflows the mapped
+   * buffer, the segment file is mapped at a larger size and the record is written again.
+   *
+   * @return The mapped buffer to which the record was written.
+   */
+  private Buffer writeMappedEntry(Resources resources, Entry entry, long offset, boolean writeTerm) {
+    Buffer buffer = resources.buffer;
+    long position = buffer.position();
+    for (;;) {
+      try {
+        writeEntry(entry, buffer, offset, writeTerm);
+        return buffer;
+      } catch (BufferOverflowException e) {
+        buffer.position(position);
+        Buffer newBuffer = ensureCapacity(resources, buffer.capacity() - position + 1);
+        if (newBuffer == buffer) {
+          throw e;
+        }
+        buffer = newBuffer;
+      }
+    }
+  }
+
+  /**
+   * Returns a view of the given heap buffer that writes values in the big-endian order of file and mapped segments.
+   * <p>
+   * Heap buffers use native byte order, so the buffer's order must be swapped on little-endian systems.
+   */
+  private static Buffer bigEndian(HeapBuffer buffer) {
+    return ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? buffer : buffer.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Returns the buffer of the given resources, ensuring it can hold the given number of bytes at its position.
+   * <p>
+   * Only memory mapped buffers are grown here. Rather than resizing the mapped buffer in place, which would unmap
+   * the buffer while it may still be read by concurrent readers or flushed by the log flusher, the segment file is
+   * mapped again at a larger size and the prior mapping is retained until the resources are closed.
+   */
+  private Buffer ensureCapacity(Resources resources, long bytes) {
+    Buffer buffer = resources.buffer;
+    if (!(resources.root instanceof MappedBuffer) || buffer.position() + bytes <= buffer.capacity()) {
+      return buffer;
+    }
+
+    long capacity = buffer.offset() + buffer.capacity();
+    long required = buffer.offset() + buffer.position() + bytes;
+    Buffer root = manager.mapSegment(descriptor, Math.min(Math.max(capacity * 2, required), Integer.MAX_VALUE));
+    Buffer newBuffer = root.position(buffer.offset()).slice();
+    newBuffer.position(buffer.position());
+    resources.replace(root, newBuffer);
+    return newBuffer;
+  }
+
+  /**
+   * Writes an entry record at the current position of the given buffer.
+   * <p>
+   * The buffer is left positioned at the end of the written record.
+   *
+   * @return The length of the serialized entry.
+   */
+  private int writeEntry(Entry entry, Buffer buffer, long offset, boolean writeTerm) {
+    // Mark the starting position of the record.
+    long position = buffer.mark().position();
+
+    // Calculate the length of the entry header bytes.
+    int headerLength = headerLength(writeTerm);
+
+    // Serialize the object into the buffer.
+    serializer.writeObject(entry, buffer.skip(headerLength));
+
+    // Calculate the length of the serialized bytes based on the resulting buffer position and the starting position.
+    int length = (int) (buffer.position() - (position + headerLength));
+
+    // Set the entry size.
+    entry.setSize(length);
+
+    // Write the length of the entry for indexing.
+    buffer.reset().writeInt(length).writeLong(offset);
+
+    // Write the record flags, and if the term has not yet been written, write the term to this entry.
+    buffer.writeByte(flags(writeTerm, entry.getCompactionMode()));
+    if (writeTerm) {
+      buffer.writeLong(entry.getTerm());
+    }
+
+    // If checksums are enabled, write the checksum of the entry header and value.
+    if (checksums) {
+      buffer.writeInt(CHECKSUMS.get().compute(buffer, position, headerLength, length));
+    }
+    buffer.skip(length);
+    return length;
+  }
+
   /**
    * Reads the term for the entry at the given index.
    *
@@ -344,7 +1348,12 @@ public class Segment implements AutoCloseable {
     long offset = relativeOffset(index);
 
     // Look up the term for the offset in the term index.
-    return termIndex.lookup(offset);
+    Resources resources = acquire();
+    try {
+      return resources.termIndex.lookup(offset);
+    } finally {
+      resources.release();
+    }
   }
 
   /**
@@ -354,19 +1363,43 @@ public class Segment implements AutoCloseable {
    * @return The entry at the given index.
    * @throws IllegalStateException if the segment is not open or {@code index} is inconsistent with the entry
    */
-  public synchronized <T extends Entry> T get(long index) {
+  public <T extends Entry> T get(long index) {
     assertSegmentOpen();
     checkRange(index);
 
+    Resources resources = acquire();
+    try {
+      return get(index, resources);
+    } finally {
+      resources.release();
+    }
+  }
+
+  /**
+   * Reads the entry at the given index from the given segment resources.
+   */
+  private <T extends Entry> T get(long index, Resources resources) {
     // Get the offset of the index within this segment.
     long offset = relativeOffset(index);
 
     // Get the start position of the entry from the memory index.
-    long position = offsetIndex.position(offset);
+    long position = resources.offsetIndex.position(offset);
 
     // If the index contained the entry, read the entry from the buffer.
     if (position != -1) {
 
+      // If the segment is compressed, read the entry from the decompressed block containing it. Otherwise, if the
+      // segment is stored on disk, read the entry into a heap buffer to avoid sharing the file buffer.
+      Buffer buffer = resources.buffer;
+      if (resources.blocks != null) {
+        int block = resources.blocks.find(position);
+        buffer = wrap(readBlock(resources, block), resources.order);
+        position -= resources.blocks.start(block);
+      } else if (resources.channel != null) {
+        buffer = readFile(resources, position);
+        position = 0;
+      }
+
       // Read the length of the entry.
       int length = buffer.readInt(position);
 
@@ -374,19 +1407,304 @@ public class Segment implements AutoCloseable {
       long entryOffset = buffer.readLong(position + Bytes.INTEGER);
       Assert.state(entryOffset == offset, "inconsistent index: %s", index);
 
-      // Determine whether to skip reading the term from this entry.
-      boolean skipTerm = !buffer.readBoolean(position + Bytes.INTEGER + Bytes.LONG);
+      // Determine the length of the entry header.
+      int headerLength = headerLength(buffer, position);
+
+      // If checksum verification is enabled, verify the entry checksum.
+      if (verifyChecksums && buffer.readInt(position + headerLength - Bytes.INTEGER) != CHECKSUMS.get().compute(buffer, position, headerLength, length)) {
+        throw new StorageException("checksum mismatch for entry: " + index);
+      }
 
       // Read the entry buffer and deserialize the entry.
-      try (Buffer value = buffer.slice(position + Bytes.INTEGER + Bytes.LONG + Bytes.BOOLEAN + (skipTerm ? 0 : Bytes.LONG), length)) {
-        T entry = serializer.readObject(value);
-        entry.setIndex(index).setTerm(termIndex.lookup(offset)).setSize(length);
+      try (Buffer value = buffer.slice(position + headerLength, length)) {
+        T entry = manager.readSerializer().readObject(value);
+        entry.setIndex(index).setTerm(resources.termIndex.lookup(offset)).setSize(length);
         return entry;
       }
     }
     return null;
   }
 
+  /**
+   * Reads serialized entries starting at the given index without deserializing them.
+   * <p>
+   * Entries are stored contiguously within the segment, so the records for entries at or after the given index are
+   * copied out of the segment in a single read. Entries are read until the total size of the records read would
+   * exceed {@code maxBytes}, but at least one entry is always read if the segment contains an entry at or after
+   * the given index. Missing entries are not returned.
+   *
+   * @param index The index of the first entry to read.
+   * @param maxBytes The maximum number of bytes to read.
+   * @return The raw entries read from the segment.
+   * @throws IllegalStateException if the segment is not open
+   * @throws IndexOutOfBoundsException if {@code index} is not within the range of the segment
+   */
+  public List<RawEntry> readRaw(long index, int maxBytes) {
+    assertSegmentOpen();
+    checkRange(index);
+
+    Resources resources = acquire();
+    try {
+      return readRaw(index, maxBytes, resources);
+    } finally {
+      resources.release();
+    }
+  }
+
+  /**
+   * Reads serialized entries from the given segment resources.
+   */
+  private List<RawEntry> readRaw(long index, int maxBytes, Resources resources) {
+    OffsetIndex offsetIndex = resources.offsetIndex;
+    long lastOffset = offsetIndex.lastOffset();
+
+    // Find the positions of the records to read. Each record ends at the start of the next record in the segment.
+    // Records are only read from a single block of compressed segments.
+    long[] positions = new long[16];
+    int count = 0;
+    long end = -1;
+    long blockEnd = Long.MAX_VALUE;
+    for (long offset = relativeOffset(index); offset <= lastOffset; offset++) {
+      long position = offsetIndex.position(offset);
+      if (position != -1) {
+        if (count > 0 && (position - positions[0] > maxBytes || position >= blockEnd)) {
+          end = position;
+          break;
+        }
+        if (count == 0 && resources.blocks != null) {
+          int block = resources.blocks.find(position);
+          blockEnd = resources.blocks.start(block) + resources.blocks.length(block);
+        }
+        if (count == positions.length) {
+          positions = Arrays.copyOf(positions, count * 2);
+        }
+        positions[count++] = position;
+      }
+    }
+
+    if (count == 0) {
+      return Collections.emptyList();
+    }
+
+    // If the last record is the last record in the segment, read its header to determine where it ends.
+    if (end == -1) {
+      end = recordEnd(resources, positions[count - 1]);
+    }
+
+    // Remove records from the end of the range until the range fits within maxBytes.
+    while (count > 1 && end - positions[0] > maxBytes) {
+      end = positions[--count];
+    }
+
+    // Copy the range of records out of the segment or the decompressed block containing the records.
+    long start = positions[0];
+    byte[] bytes;
+    if (resources.blocks != null) {
+      int block = resources.blocks.find(start);
+      bytes = new byte[(int) (end - start)];
+      System.arraycopy(readBlock(resources, block), (int) (start - resources.blocks.start(block)), bytes, 0, bytes.length);
+    } else {
+      bytes = readRange(resources, start, (int) (end - start));
+    }
+    ByteOrder order = resources.order;
+
+    ByteBuffer records = ByteBuffer.wrap(bytes).order(order);
+    List<RawEntry> entries = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int recordPosition = (int) (positions[i] - start);
+      int length = records.getInt(recordPosition);
+      long offset = records.getLong(recordPosition + Bytes.INTEGER);
+      int flags = records.get(recordPosition + Bytes.INTEGER + Bytes.LONG);
+      int headerLength = headerLength(hasTerm(flags));
+
+      // If checksum verification is enabled, verify the entry checksum.
+      if (verifyChecksums && records.getInt(recordPosition + headerLength - Bytes.INTEGER) != CHECKSUMS.get().compute(bytes, recordPosition, headerLength, length)) {
+        throw new StorageException("checksum mismatch for entry: " + (descriptor.index() + offset));
+      }
+
+      entries.add(new RawEntry(descriptor.index() + offset, resources.termIndex.lookup(offset), bytes, recordPosition + headerLength, length, order, compactionMode(flags)));
+    }
+    return entries;
+  }
+
+  /**
+   * Creates a sequential reader over the entries in the segment.
+   * <p>
+   * Readers are intended for reading consecutive indexes from the segment and avoid looking up the position of
+   * each entry in the segment's {@link OffsetIndex}. Readers are not thread safe, but any number of readers may
+   * read from the segment concurrently.
+   *
+   * @return A new segment reader.
+   */
+  public Reader createReader() {
+    assertSegmentOpen();
+    return new Reader();
+  }
+
+  /**
+   * Returns the position at which the record at the given position ends.
+   */
+  private long recordEnd(Resources resources, long position) {
+    if (resources.blocks != null) {
+      int block = resources.blocks.find(position);
+      ByteBuffer records = ByteBuffer.wrap(readBlock(resources, block)).order(resources.order);
+      int recordPosition = (int) (position - resources.blocks.start(block));
+      return position + headerLength(hasTerm(records.get(recordPosition + Bytes.INTEGER + Bytes.LONG))) + records.getInt(recordPosition);
+    } else if (resources.channel != null) {
+      byte[] header = new byte[Bytes.INTEGER + Bytes.LONG + Bytes.BOOLEAN];
+      int read = readFile(resources.channel, resources.buffer.offset() + position, header, 0, header.length);
+      Assert.state(read == header.length, "failed to read entry at position: %s", position);
+      return position + headerLength(hasTerm(header[Bytes.INTEGER + Bytes.LONG])) + ByteBuffer.wrap(header).getInt(0);
+    }
+    return position + headerLength(resources.buffer, position) + resources.buffer.readInt(position);
+  }
+
+  /**
+   * Returns the offset of the record at the given position.
+   */
+  private long recordOffset(Resources resources, long position) {
+    if (resources.blocks != null) {
+      int block = resources.blocks.find(position);
+      ByteBuffer records = ByteBuffer.wrap(readBlock(resources, block)).order(resources.order);
+      return records.getLong((int) (position - resources.blocks.start(block)) + Bytes.INTEGER);
+    } else if (resources.channel != null) {
+      byte[] bytes = new byte[Bytes.LONG];
+      int read = readFile(resources.channel, resources.buffer.offset() + position + Bytes.INTEGER, bytes, 0, bytes.length);
+      Assert.state(read == bytes.length, "failed to read entry at position: %s", position);
+      return ByteBuffer.wrap(bytes).getLong(0);
+    }
+    return resources.buffer.readLong(position + Bytes.INTEGER);
+  }
+
+  /**
+   * Reads the entry at the given position from the segment file into a thread-local heap buffer.
+   */
+  private Buffer readFile(Resources resources, long position) {
+    FileChannel channel = resources.channel;
+    long filePosition = resources.buffer.offset() + position;
+    byte[] bytes = FILE_READ_BUFFERS.get();
+    int read = readFile(channel, filePosition, bytes, 0, bytes.length);
+    Assert.state(read >= Bytes.INTEGER + Bytes.LONG + Bytes.BOOLEAN, "failed to read entry at position: %s", position);
+
+    // If the entry didn't fit in the buffer, allocate a larger buffer and read the remainder of the entry.
+    int entryLength = ByteBuffer.wrap(bytes).getInt(0) + headerLength(hasTerm(bytes[Bytes.INTEGER + Bytes.LONG]));
+    if (entryLength > bytes.length) {
+      byte[] entryBytes = new byte[entryLength];
+      System.arraycopy(bytes, 0, entryBytes, 0, read);
+      read += readFile(channel, filePosition + read, entryBytes, read, entryLength - read);
+      FILE_READ_BUFFERS.set(entryBytes);
+      bytes = entryBytes;
+    }
+    Assert.state(read >= entryLength, "failed to read entry at position: %s", position);
+
+    // Segment files are written in big-endian order whereas heap buffers read in native order.
+    return wrap(bytes, ByteOrder.BIG_ENDIAN);
+  }
+
+  /**
+   * Wraps the given bytes in a heap buffer that reads values in the given byte order.
+   */
+  private static Buffer wrap(byte[] bytes, ByteOrder order) {
+    Buffer buffer = HeapBuffer.wrap(bytes);
+    return order == ByteOrder.nativeOrder() ? buffer : buffer.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Copies a range of bytes out of the segment buffer.
+   */
+  private static byte[] readRange(Resources resources, long position, int length) {
+    byte[] bytes = new byte[length];
+    if (resources.channel != null) {
+      int read = readFile(resources.channel, resources.buffer.offset() + position, bytes, 0, length);
+      Assert.state(read == length, "failed to read segment at position: %s", position);
+    } else {
+      resources.buffer.read(position, bytes, 0, length);
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns the given decompressed block, reading it from the block cache if possible.
+   */
+  private byte[] readBlock(Resources resources, int block) {
+    BlockCache cache = manager.blockCache();
+    byte[] bytes = cache.get(descriptor.id(), descriptor.version(), block);
+    if (bytes == null) {
+      bytes = decompressBlock(resources, block);
+      cache.put(descriptor.id(), descriptor.version(), block, bytes);
+    }
+    return bytes;
+  }
+
+  /**
+   * Reads and decompresses the given block from the segment buffer.
+   */
+  private static byte[] decompressBlock(Resources resources, int block) {
+    BlockIndex blocks = resources.blocks;
+    byte[] compressed = readRange(resources, blocks.position(block), blocks.compressedLength(block));
+    return BlockIndex.decompress(compressed, blocks.length(block), INFLATERS.get());
+  }
+
+  /**
+   * Writes the entries in the segment to the given buffer as a sequence of compressed blocks.
+   * <p>
+   * Entry records are copied from the segment verbatim and grouped into blocks of up to {@code blockSize} bytes
+   * before compression. Records are never split across blocks, so records larger than the block size are written
+   * to blocks of their own. Once all blocks have been written, the buffer is truncated following the last block.
+   *
+   * @param buffer The buffer to which to write the compressed blocks.
+   * @param blockSize The maximum uncompressed size of each block.
+   * @throws IllegalStateException if the segment is not open or is already compressed
+   */
+  void compress(Buffer buffer, int blockSize) {
+    assertSegmentOpen();
+    Assert.stateNot(descriptor.compressed(), "segment is already compressed");
+
+    Resources resources = acquire();
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      long end = resources.buffer.position();
+      long start = 0;
+      long position = 0;
+      while (position < end) {
+        long next = recordEnd(resources, position);
+        if (next - start > blockSize && position > start) {
+          BlockIndex.write(buffer, readRange(resources, start, (int) (position - start)), (int) (position - start), deflater);
+          start = position;
+        }
+        position = next;
+      }
+
+      if (position > start) {
+        BlockIndex.write(buffer, readRange(resources, start, (int) (position - start)), (int) (position - start), deflater);
+      }
+
+      buffer.writeInt(0);
+      buffer.zero(buffer.position()).flush();
+    } finally {
+      deflater.end();
+      resources.release();
+    }
+  }
+
+  /**
+   * Reads bytes from the segment file at the given position.
+   */
+  private static int readFile(FileChannel channel, long position, byte[] bytes, int offset, int length) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+    try {
+      while (buffer.hasRemaining()) {
+        int read = channel.read(buffer, position + buffer.position() - offset);
+        if (read < 0) {
+          break;
+        }
+      }
+    } catch (IOException e) {
+      throw new StorageException("failed to read segment file", e);
+    }
+    return buffer.position() - offset;
+  }
+
   /**
    * Returns a boolean value indicating whether the given index is within the range of the segment.
    *
@@ -414,7 +1732,12 @@ public class Segment implements AutoCloseable {
 
     // Check the memory index first for performance reasons.
     long offset = relativeOffset(index);
-    return offsetIndex.contains(offset);
+    Resources resources = acquire();
+    try {
+      return resources.offsetIndex.contains(offset);
+    } finally {
+      resources.release();
+    }
   }
 
   /**
@@ -426,8 +1749,31 @@ public class Segment implements AutoCloseable {
    */
   public boolean release(long index) {
     assertSegmentOpen();
-    long offset = offsetIndex.find(relativeOffset(index));
-    return offset != -1 && offsetPredicate.release(offset);
+    Resources resources = acquire();
+    try {
+      long offset = resources.offsetIndex.find(relativeOffset(index));
+      if (offset != -1 && release(offset, resources)) {
+        if (resources.releaseFile != null) {
+          resources.releaseFile.release(offset);
+        }
+        accountPredicate();
+        return true;
+      }
+      return false;
+    } finally {
+      resources.release();
+    }
+  }
+
+  /**
+   * Releases the entry at the given position in the offset index, accounting for the size of its record.
+   */
+  private synchronized boolean release(long offset, Resources resources) {
+    if (!offsetPredicate.release(offset)) {
+      return false;
+    }
+    releaseSize += resources.recordSize((int) offset);
+    return true;
   }
 
   /**
@@ -439,7 +1785,12 @@ public class Segment implements AutoCloseable {
    */
   public boolean isLive(long index) {
     assertSegmentOpen();
-    return offsetPredicate.test(offsetIndex.find(relativeOffset(index)));
+    Resources resources = acquire();
+    try {
+      return offsetPredicate.test(resources.offsetIndex.find(relativeOffset(index)));
+    } finally {
+      resources.release();
+    }
   }
 
   /**
@@ -453,6 +1804,50 @@ public class Segment implements AutoCloseable {
     return offsetPredicate.count();
   }
 
+  /**
+   * Returns the total size in bytes of the records of entries that have been released from the segment.
+   * <p>
+   * The released size is maintained from the sizes of records as they're released, so it can be read without
+   * opening the segment's resources. When a segment with released entries is loaded, the released size is rebuilt
+   * from the positions of its records in the segment's index.
+   *
+   * @return The total size of released records in bytes.
+   * @throws IllegalStateException if the segment is not open
+   */
+  public long releaseSize() {
+    assertSegmentOpen();
+    return releaseSize;
+  }
+
+  /**
+   * Returns the total size in bytes of the records of entries in the segment that have not been released.
+   * <p>
+   * The live size is the number of bytes that must be copied to compact the segment. It's derived from the segment's
+   * {@link #size() size} less its descriptor and released records, so it can be read without opening the segment's
+   * resources.
+   *
+   * @return The total size of live records in bytes.
+   * @throws IllegalStateException if the segment is not open
+   */
+  public long liveSize() {
+    assertSegmentOpen();
+    return size() - SegmentDescriptor.BYTES - releaseSize;
+  }
+
+  /**
+   * Recomputes the released size from the sizes of the released records in the given resources.
+   */
+  private synchronized void computeReleaseSize(Resources resources) {
+    long size = 0;
+    int count = offsetPredicate.count() > 0 ? resources.offsetIndex.size() : 0;
+    for (int i = 0; i < count; i++) {
+      if (!offsetPredicate.test((long) i)) {
+        size += resources.recordSize(i);
+      }
+    }
+    releaseSize = size;
+  }
+
   /**
    * Returns a predicate for live offsets in the segment.
    *
@@ -486,54 +1881,149 @@ public class Segment implements AutoCloseable {
     assertSegmentOpen();
     Assert.index(index >= manager.commitIndex(), "cannot truncate committed index");
 
-    long offset = relativeOffset(index);
-    long lastOffset = offsetIndex.lastOffset();
-
-    long diff = Math.abs(lastOffset - offset);
-    skip = Math.max(skip - diff, 0);
-
-    if (offset < lastOffset) {
-      long position = offsetIndex.truncate(offset);
-      buffer.position(position)
-        .zero(position)
-        .flush();
-      termIndex.truncate(offset);
+    Resources resources = acquire();
+    try {
+      long offset = relativeOffset(index);
+      long lastOffset = resources.offsetIndex.lastOffset();
+
+      long diff = Math.abs(lastOffset - offset);
+      skip = Math.max(skip - diff, 0);
+
+      if (offset < lastOffset) {
+        Assert.stateNot(resources.blocks != null, "cannot truncate compressed segment");
+        long position = resources.offsetIndex.truncate(offset);
+        resources.buffer.position(position)
+          .zero(position)
+          .flush();
+        resources.termIndex.truncate(offset);
+        generation++;
+        if (resources.indexFile != null) {
+          resources.indexFile.truncate(resources.offsetIndex.size());
+        }
+        if (resources.releaseFile != null) {
+          resources.releaseFile.truncate(resources.offsetIndex.size());
+        }
+        resources.account();
+        computeReleaseSize(resources);
+      }
+      return this;
+    } finally {
+      resources.release();
     }
-    return this;
   }
 
   /**
    * Flushes the segment buffers to disk.
+   * <p>
+   * Segments whose resources have been closed are already flushed, so flushing a closed segment does not reopen it.
    *
    * @return The segment.
    */
   public Segment flush() {
-    buffer.flush();
-    offsetIndex.flush();
+    Resources resources = this.resources;
+    if (resources != null && resources.acquire()) {
+      try {
+        resources.buffer.flush();
+        resources.offsetIndex.flush();
+        if (resources.indexFile != null) {
+          resources.indexFile.flush();
+        }
+      } finally {
+        resources.release();
+      }
+    }
     return this;
   }
 
   @Override
   public void close() {
-    buffer.close();
-    offsetIndex.close();
+    // The descriptor is backed by the root buffer of the segment's resources, so the descriptor is closed along
+    // with the resources once the last reader releases them rather than being closed separately here. Closing
+    // the descriptor here as well would close a mapped buffer twice or close it underneath a reader.
+    synchronized (this) {
+      Resources resources = this.resources;
+      if (resources != null) {
+        capture(resources);
+        this.resources = null;
+        resources.release();
+      }
+      open = false;
+    }
     offsetPredicate.close();
-    descriptor.close();
-    open = false;
+    synchronized (this) {
+      manager.storage().memory().release(StorageMemory.Component.PREDICATES, predicateSize);
+      predicateSize = 0;
+    }
+    if (descriptor.compressed()) {
+      manager.blockCache().invalidate(descriptor.id(), descriptor.version());
+    }
+    manager.segmentClosed(this);
   }
 
   /**
    * Deletes the segment.
    */
   public void delete() {
-    Buffer buffer = this.buffer instanceof SlicedBuffer ? ((SlicedBuffer) this.buffer).root() : this.buffer;
-    if (buffer instanceof FileBuffer) {
-      ((FileBuffer) buffer).delete();
-    } else if (buffer instanceof MappedBuffer) {
-      ((MappedBuffer) buffer).delete();
+    descriptor.delete();
+    manager.deleteIndexFiles(descriptor.id(), descriptor.version());
+  }
+
+  /**
+   * Pins the segment, preventing it from being closed and deleted once it's been {@link #retire() retired}.
+   * <p>
+   * Pinned segments must be {@link #unpin() unpinned} once the caller is done with them.
+   *
+   * @return Indicates whether the segment was pinned. Segments that have already been retired and closed cannot be
+   *         pinned, and the caller should look up the segment again in the manager's current view of the log.
+   */
+  boolean pin() {
+    for (;;) {
+      int pins = this.pins.get();
+      if (pins < 0) {
+        return false;
+      } else if (this.pins.compareAndSet(pins, pins + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Unpins the segment, closing and deleting the segment if it's been retired and this was the last pin.
+   */
+  void unpin() {
+    if (pins.decrementAndGet() == 0 && retired) {
+      destroy();
     }
+  }
 
-    offsetIndex.delete();
+  /**
+   * Retires the segment once it's been removed from the log.
+   * <p>
+   * The segment is closed and deleted immediately if it's not pinned, otherwise it's closed and deleted once the
+   * last reader unpins it.
+   */
+  void retire() {
+    retired = true;
+    destroy();
+  }
+
+  /**
+   * Returns a boolean value indicating whether the segment has been retired.
+   *
+   * @return Indicates whether the segment has been retired.
+   */
+  boolean isRetired() {
+    return retired;
+  }
+
+  /**
+   * Closes and deletes the segment if it's not pinned.
+   */
+  private void destroy() {
+    if (pins.compareAndSet(0, -1)) {
+      close();
+      delete();
+    }
   }
 
   @Override
@@ -541,7 +2031,468 @@ public class Segment implements AutoCloseable {
     return String.format("Segment[id=%d, version=%d, index=%d, length=%d]", descriptor.id(), descriptor.version(), firstIndex(), length());
   }
 
+  /**
+   * Updates the memory accounted for the segment's released-entry bit array.
+   */
+  private synchronized void accountPredicate() {
+    long size = offsetPredicate.memorySize();
+    manager.storage().memory().allocate(StorageMemory.Component.PREDICATES, size - predicateSize);
+    predicateSize = size;
+  }
+
   private void assertSegmentOpen() {
     Assert.state(isOpen(), "segment not open");
   }
+
+  /**
+   * Computes entry checksums.
+   * <p>
+   * Checksums are not thread safe and are stored in a thread local for concurrent use.
+   */
+  private static final class Checksum {
+    private final CRC32 crc32 = new CRC32();
+    private byte[] bytes = new byte[1024];
+
+    /**
+     * Computes the checksum of the entry header and value at the given position, excluding the checksum itself.
+     */
+    int compute(Buffer buffer, long position, int headerLength, int length) {
+      int entryLength = headerLength + length;
+      if (bytes.length < entryLength) {
+        bytes = new byte[entryLength];
+      }
+      buffer.read(position, bytes, 0, entryLength);
+      return compute(bytes, 0, headerLength, length);
+    }
+
+    /**
+     * Computes the checksum of the entry header and value at the given offset in the given array.
+     */
+    int compute(byte[] bytes, int offset, int headerLength, int length) {
+      crc32.reset();
+      crc32.update(bytes, offset, headerLength - Bytes.INTEGER);
+      crc32.update(bytes, offset + headerLength, length);
+      return (int) crc32.getValue();
+    }
+  }
+
+  /**
+   * Sequential reader over the entries in a segment.
+   * <p>
+   * The reader tracks the position and ordinal of the next record in the segment as entries are read, so reading
+   * consecutive indexes requires no offset index lookups. Records of segments stored on disk are read ahead from
+   * the segment file in chunks of up to {@code 64KB}, and records of compressed segments are read from the
+   * decompressed block containing them. The reader does not hold the segment's resources open between reads, and
+   * the position of the reader is recomputed from the offset index if the segment is truncated or the reader
+   * skips ahead.
+   */
+  public final class Reader {
+    private byte[] bytes;
+    private Buffer window;
+    private long windowStart;
+    private long windowEnd;
+    private long position = -1;
+    private int ordinal;
+    private long nextOffset = -1;
+    private long readOffset = -1;
+    private int readOrdinal;
+    private long recordPosition;
+    private int recordFlags;
+    private int recordHeaderLength;
+    private int recordLength;
+    private int generation = Segment.this.generation;
+
+    private Reader() {
+    }
+
+    /**
+     * Reads the entry at the given index.
+     *
+     * @param index The index from which to read the entry.
+     * @return The entry at the given index or {@code null} if the entry doesn't exist.
+     * @throws IllegalStateException if the segment is not open
+     * @throws IndexOutOfBoundsException if {@code index} is not within the range of the segment
+     */
+    public <T extends Entry> T next(long index) {
+      assertSegmentOpen();
+      checkRange(index);
+
+      Resources resources = acquire();
+      try {
+        Buffer buffer = seek(index, resources);
+        if (buffer == null) {
+          return null;
+        }
+
+        // Read the entry buffer and deserialize the entry.
+        try (Buffer value = buffer.slice(recordPosition + recordHeaderLength, recordLength)) {
+          T entry = manager.readSerializer().readObject(value);
+          entry.setIndex(index).setTerm(resources.termIndex.lookup(readOffset)).setSize(recordLength);
+          return entry;
+        }
+      } finally {
+        resources.release();
+      }
+    }
+
+    /**
+     * Reads the serialized entry at the given index without deserializing it.
+     * <p>
+     * The returned entry carries the compaction mode stored in the entry's record header, if any, and the entry
+     * bytes are copied out of the segment.
+     *
+     * @param index The index from which to read the entry.
+     * @return The serialized entry at the given index or {@code null} if the entry doesn't exist.
+     * @throws IllegalStateException if the segment is not open
+     * @throws IndexOutOfBoundsException if {@code index} is not within the range of the segment
+     */
+    public RawEntry nextRaw(long index) {
+      assertSegmentOpen();
+      checkRange(index);
+
+      Resources resources = acquire();
+      try {
+        Buffer buffer = seek(index, resources);
+        if (buffer == null) {
+          return null;
+        }
+
+        byte[] bytes = new byte[recordLength];
+        buffer.read(recordPosition + recordHeaderLength, bytes, 0, recordLength);
+        return new RawEntry(index, resources.termIndex.lookup(readOffset), bytes, 0, recordLength, resources.order, compactionMode(recordFlags));
+      } finally {
+        resources.release();
+      }
+    }
+
+    /**
+     * Locates the record for the given index in the given segment resources.
+     * <p>
+     * If the record is found, the position, flags, header length and length of the record within the returned buffer
+     * are stored in the reader.
+     *
+     * @return The buffer containing the record or {@code null} if the entry doesn't exist.
+     */
+    private Buffer seek(long index, Resources resources) {
+      long offset = relativeOffset(index);
+      OffsetIndex offsetIndex = resources.offsetIndex;
+
+      // If the segment has been truncated, records following the truncated offset may have been rewritten.
+      int generation = Segment.this.generation;
+      if (generation != this.generation) {
+        this.generation = generation;
+        position = -1;
+        window = null;
+      }
+
+      // If the index doesn't follow the last index read, look up the position of the entry in the offset index.
+      if (position == -1 || offset != nextOffset) {
+        position = offsetIndex.position(offset);
+        ordinal = (int) offsetIndex.find(offset);
+      }
+      nextOffset = offset + 1;
+
+      if (position == -1) {
+        return null;
+      }
+
+      // Read the last offset before the size to ensure records up to the last offset are visible.
+      long lastOffset = offsetIndex.lastOffset();
+      while (ordinal < offsetIndex.size() && offset <= lastOffset) {
+        Buffer buffer = read(resources, position);
+        long recordPosition = position - windowStart;
+        long recordOffset = buffer.readLong(recordPosition + Bytes.INTEGER);
+
+        // If the next record follows the offset, the entry was compacted from the segment.
+        if (recordOffset > offset) {
+          return null;
+        }
+
+        int length = buffer.readInt(recordPosition);
+        int flags = buffer.readByte(recordPosition + Bytes.INTEGER + Bytes.LONG);
+        int headerLength = headerLength(hasTerm(flags));
+        position += headerLength + length;
+        ordinal++;
+
+        if (recordOffset == offset) {
+          // If checksum verification is enabled, verify the entry checksum.
+          if (verifyChecksums && buffer.readInt(recordPosition + headerLength - Bytes.INTEGER) != CHECKSUMS.get().compute(buffer, recordPosition, headerLength, length)) {
+            throw new StorageException("checksum mismatch for entry: " + index);
+          }
+
+          readOffset = offset;
+          readOrdinal = ordinal - 1;
+          this.recordPosition = recordPosition;
+          this.recordFlags = flags;
+          this.recordHeaderLength = headerLength;
+          this.recordLength = length;
+          return buffer;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Returns a buffer containing the complete record at the given position.
+     * <p>
+     * Records of segments stored in memory or memory mapped files are read directly from the segment buffer.
+     * Otherwise, the record is read from the current read-ahead window, and the window is refilled if it does
+     * not contain the complete record.
+     */
+    private Buffer read(Resources resources, long position) {
+      if (resources.blocks == null && resources.channel == null) {
+        window = null;
+        windowStart = 0;
+        return resources.buffer;
+      }
+
+      if (window != null && position >= windowStart && position + Bytes.INTEGER + Bytes.LONG + Bytes.BOOLEAN <= windowEnd) {
+        long recordPosition = position - windowStart;
+        if (position + headerLength(window, recordPosition) + window.readInt(recordPosition) <= windowEnd) {
+          return window;
+        }
+      }
+
+      if (resources.blocks != null) {
+        int block = resources.blocks.find(position);
+        window = wrap(readBlock(resources, block), resources.order);
+        windowStart = resources.blocks.start(block);
+        windowEnd = windowStart + resources.blocks.length(block);
+      } else {
+        readAhead(resources, position);
+      }
+      return window;
+    }
+
+    /**
+     * Reads records from the segment file into the read-ahead window starting at the given position.
+     * <p>
+     * The window only includes records that had been published in the offset index when the window was read,
+     * ensuring records that are concurrently written to the segment are never read from the window.
+     */
+    private void readAhead(Resources resources, long position) {
+      OffsetIndex offsetIndex = resources.offsetIndex;
+      long limit = recordEnd(resources, offsetIndex.position(offsetIndex.lastOffset()));
+      long filePosition = resources.buffer.offset() + position;
+
+      if (bytes == null) {
+        bytes = new byte[READ_AHEAD_SIZE];
+      }
+
+      int read = readFile(resources.channel, filePosition, bytes, 0, (int) Math.min(bytes.length, limit - position));
+      Assert.state(read >= Bytes.INTEGER + Bytes.LONG + Bytes.BOOLEAN, "failed to read entry at position: %s", position);
+
+      // If the record didn't fit in the window, allocate a larger window and read the remainder of the record.
+      int recordLength = ByteBuffer.wrap(bytes).getInt(0) + headerLength(hasTerm(bytes[Bytes.INTEGER + Bytes.LONG]));
+      if (recordLength > bytes.length) {
+        byte[] recordBytes = new byte[recordLength];
+        System.arraycopy(bytes, 0, recordBytes, 0, read);
+        read += readFile(resources.channel, filePosition + read, recordBytes, read, recordLength - read);
+        bytes = recordBytes;
+      }
+      Assert.state(read >= recordLength, "failed to read entry at position: %s", position);
+
+      // Segment files are written in big-endian order whereas heap buffers read in native order.
+      window = wrap(bytes, ByteOrder.BIG_ENDIAN);
+      windowStart = position;
+      windowEnd = position + read;
+    }
+
+    /**
+     * Returns a boolean value indicating whether the entry at the given index is live.
+     * <p>
+     * The liveness of the entry most recently read by the reader is determined without an offset index lookup.
+     *
+     * @param index The index of the entry to check.
+     * @return Indicates whether the entry at the given index is live.
+     * @throws IllegalStateException if the segment is not open
+     */
+    public boolean isLive(long index) {
+      assertSegmentOpen();
+      if (relativeOffset(index) == readOffset) {
+        return offsetPredicate.test((long) readOrdinal);
+      }
+      return Segment.this.isLive(index);
+    }
+  }
+
+  /**
+   * Scans the records of the segment to locate entries that are not stored in a sparse {@link OffsetIndex}.
+   */
+  private final class RecordScanner implements OffsetIndex.Scanner {
+    private final Resources resources;
+
+    private RecordScanner(Resources resources) {
+      this.resources = resources;
+    }
+
+    @Override
+    public long offset(long position) {
+      return recordOffset(resources, position);
+    }
+
+    @Override
+    public long next(long position) {
+      return recordEnd(resources, position);
+    }
+  }
+
+  /**
+   * The buffer, indexes, and files of an open segment.
+   * <p>
+   * Resources are reference counted. The segment holds a reference to its resources for as long as they're open, and
+   * readers and writers acquire a reference for the duration of each operation. Resources are closed once the last
+   * reference is released.
+   */
+  private static final class Resources {
+    private volatile Buffer root;
+    private volatile Buffer buffer;
+    private final List<Buffer> replacedBuffers = new ArrayList<>(0);
+    private final OffsetIndex offsetIndex;
+    private final TermIndex termIndex = new TermIndex();
+    private final SegmentIndexFile indexFile;
+    private final SegmentReleaseFile releaseFile;
+    private final FileChannel channel;
+    private final ByteOrder order;
+    private final BlockIndex blocks;
+    private final StorageMemory memory;
+    private final StorageMemory.Component bufferComponent;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private volatile int[] recordSizes = new int[16];
+    private long bufferSize;
+    private long indexSize;
+
+    private Resources(Buffer buffer, OffsetIndex offsetIndex, SegmentIndexFile indexFile, SegmentReleaseFile releaseFile, boolean compressed, StorageMemory memory) {
+      this.root = buffer instanceof SlicedBuffer ? ((SlicedBuffer) buffer).root() : buffer;
+      this.buffer = buffer;
+      this.offsetIndex = offsetIndex;
+      this.indexFile = indexFile;
+      this.releaseFile = releaseFile;
+      this.channel = openChannel(buffer);
+      // File and mapped segments are stored in big-endian order, whereas heap buffers store values in native order.
+      this.order = root instanceof HeapBuffer ? ByteOrder.nativeOrder() : ByteOrder.BIG_ENDIAN;
+      this.blocks = compressed ? BlockIndex.read(buffer) : null;
+      this.memory = memory;
+      this.bufferComponent = root instanceof MappedBuffer ? StorageMemory.Component.MAPPED_SEGMENTS : StorageMemory.Component.SEGMENTS;
+    }
+
+    /**
+     * Updates the memory accounted for the segment buffer and offset index.
+     * <p>
+     * Heap buffers are accounted by their capacity and memory mapped buffers by the number of bytes written to them.
+     * Memory mapped buffers are accounted separately since they don't count towards the memory budget. Segments
+     * stored in files consume no memory beyond their offset index and the sizes of their records, which are accounted
+     * along with the index.
+     *
+     * @return The resources.
+     */
+    private synchronized Resources account() {
+      // Resources may be released concurrently, in which case their memory has already been released.
+      if (references.get() == 0) {
+        return this;
+      }
+      long bufferSize = root instanceof HeapBuffer ? root.capacity() : root instanceof MappedBuffer ? buffer.position() : 0;
+      long indexSize = offsetIndex.memorySize() + (long) recordSizes.length * Bytes.INTEGER;
+      memory.allocate(bufferComponent, bufferSize - this.bufferSize);
+      memory.allocate(StorageMemory.Component.INDEXES, indexSize - this.indexSize);
+      this.bufferSize = bufferSize;
+      this.indexSize = indexSize;
+      return this;
+    }
+
+    /**
+     * Records the size of the record at the given position in the offset index.
+     * <p>
+     * The size of each record must be recorded before the record is published in the offset index. Growing the
+     * array publishes a copy that includes all the sizes recorded so far, so a reader that has found a record in
+     * the offset index always observes its size.
+     */
+    private void recordSize(int offset, long size) {
+      int[] recordSizes = this.recordSizes;
+      if (offset >= recordSizes.length) {
+        recordSizes = Arrays.copyOf(recordSizes, Math.max(recordSizes.length * 2, offset + 1));
+        this.recordSizes = recordSizes;
+      }
+      recordSizes[offset] = (int) size;
+    }
+
+    /**
+     * Returns the size of the record at the given position in the offset index.
+     */
+    private int recordSize(int offset) {
+      return recordSizes[offset];
+    }
+
+    /**
+     * Acquires a reference to the resources if they have not been closed.
+     */
+    private boolean acquire() {
+      int references;
+      do {
+        references = this.references.get();
+        if (references == 0) {
+          return false;
+        }
+      } while (!this.references.compareAndSet(references, references + 1));
+      return true;
+    }
+
+    /**
+     * Releases a reference to the resources, closing the resources once all references have been released.
+     */
+    private void release() {
+      int references = this.references.decrementAndGet();
+      if (references == 0) {
+        close();
+      } else if (references == 1 && offsetIndex.closeReplacedBuffers(() -> this.references.get() == 1)) {
+        // Once only the segment's own reference remains, no reader can still be reading the index buffers that
+        // were replaced as the index grew, so they're freed rather than being retained until the segment is closed.
+        account();
+      }
+    }
+
+    /**
+     * Replaces the segment buffer with a larger mapping of the segment file.
+     * <p>
+     * The replaced buffers may still be in use by concurrent readers, so they're retained until the resources
+     * are closed.
+     */
+    private void replace(Buffer root, Buffer buffer) {
+      replacedBuffers.add(this.buffer);
+      replacedBuffers.add(this.root);
+      this.root = root;
+      this.buffer = buffer;
+    }
+
+    /**
+     * Closes the resources.
+     */
+    private void close() {
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException e) {
+        }
+      }
+      buffer.close();
+      // The root buffer also backs the segment's descriptor, so this closes the descriptor as well.
+      root.close();
+      replacedBuffers.forEach(Buffer::close);
+      replacedBuffers.clear();
+      offsetIndex.close();
+      synchronized (this) {
+        memory.release(bufferComponent, bufferSize);
+        memory.release(StorageMemory.Component.INDEXES, indexSize);
+        bufferSize = 0;
+        indexSize = 0;
+      }
+      if (indexFile != null) {
+        indexFile.close();
+      }
+      if (releaseFile != null) {
+        releaseFile.close();
+      }
+    }
+  }
+
 }
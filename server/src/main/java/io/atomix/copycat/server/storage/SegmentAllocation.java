@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.FileBuffer;
+import io.atomix.catalyst.buffer.MappedBuffer;
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.util.OffsetIndex;
+
+/**
+ * Resources allocated for a new {@link Segment} before the segment's descriptor is written.
+ * <p>
+ * An allocation holds the segment buffer and the indexes for a segment with a known {@code id} and {@code version}.
+ * Because the first index of a new segment is not known until the log rolls over to the segment, allocations
+ * may be created ahead of time by the {@link SegmentPreallocator} and later turned into a segment by writing
+ * the segment's {@link SegmentDescriptor} to the allocated buffer.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+final class SegmentAllocation {
+  private final long id;
+  private final long version;
+  private final Buffer buffer;
+  private final OffsetIndex index;
+  private final SegmentIndexFile indexFile;
+  private final SegmentReleaseFile releaseFile;
+
+  /**
+   * @throws NullPointerException if {@code buffer} or {@code index} is null
+   */
+  SegmentAllocation(long id, long version, Buffer buffer, OffsetIndex index, SegmentIndexFile indexFile, SegmentReleaseFile releaseFile) {
+    this.id = id;
+    this.version = version;
+    this.buffer = Assert.notNull(buffer, "buffer");
+    this.index = Assert.notNull(index, "index");
+    this.indexFile = indexFile;
+    this.releaseFile = releaseFile;
+  }
+
+  /**
+   * Returns the allocated segment identifier.
+   *
+   * @return The allocated segment identifier.
+   */
+  long id() {
+    return id;
+  }
+
+  /**
+   * Returns the allocated segment version.
+   *
+   * @return The allocated segment version.
+   */
+  long version() {
+    return version;
+  }
+
+  /**
+   * Returns the allocated segment buffer.
+   *
+   * @return The allocated segment buffer.
+   */
+  Buffer buffer() {
+    return buffer;
+  }
+
+  /**
+   * Returns the allocated segment offset index.
+   *
+   * @return The allocated segment offset index.
+   */
+  OffsetIndex index() {
+    return index;
+  }
+
+  /**
+   * Returns the allocated segment index file, or {@code null} if the segment is not persistent.
+   *
+   * @return The allocated segment index file.
+   */
+  SegmentIndexFile indexFile() {
+    return indexFile;
+  }
+
+  /**
+   * Returns the allocated segment release file, or {@code null} if the segment is not persistent.
+   *
+   * @return The allocated segment release file.
+   */
+  SegmentReleaseFile releaseFile() {
+    return releaseFile;
+  }
+
+  /**
+   * Closes and deletes the allocated resources.
+   */
+  void delete() {
+    buffer.close();
+    if (buffer instanceof FileBuffer) {
+      ((FileBuffer) buffer).delete();
+    } else if (buffer instanceof MappedBuffer) {
+      ((MappedBuffer) buffer).delete();
+    }
+    index.close();
+    if (indexFile != null) {
+      indexFile.close();
+      indexFile.delete();
+    }
+    if (releaseFile != null) {
+      releaseFile.close();
+      releaseFile.delete();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[id=%d, version=%d]", getClass().getSimpleName(), id, version);
+  }
+
+}
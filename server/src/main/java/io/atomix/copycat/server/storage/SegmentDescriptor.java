@@ -48,6 +48,10 @@ import io.atomix.catalyst.util.Assert;
  *   <li>{@code locked} (8-bit boolean) - A boolean indicating whether the segment is locked. Segments will be locked once
  *   all entries have been committed to the segment. The lock state of each segment is used to determine log compaction
  *   and recovery behavior.</li>
+ *   <li>{@code checksums} (8-bit boolean) - A boolean indicating whether entries in the segment are written with
+ *   checksums. The checksum flag is stored at offset {@code 48} in the descriptor.</li>
+ *   <li>{@code compressed} (8-bit boolean) - A boolean indicating whether entries in the segment are stored in
+ *   compressed blocks. The compression flag is stored at offset {@code 49} in the descriptor.</li>
  * </ul>
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
@@ -85,6 +89,8 @@ public final class SegmentDescriptor implements AutoCloseable {
   private final long maxSegmentSize;
   private final int maxEntries;
   private boolean locked;
+  private final boolean checksums;
+  private final boolean compressed;
 
   /**
    * @throws NullPointerException if {@code buffer} is null
@@ -98,7 +104,10 @@ public final class SegmentDescriptor implements AutoCloseable {
     this.maxEntries = buffer.readInt();
     this.updated = buffer.readLong();
     this.locked = buffer.readBoolean();
-    buffer.skip(23);
+    buffer.skip(7);
+    this.checksums = buffer.readBoolean();
+    this.compressed = buffer.readBoolean();
+    buffer.skip(14);
   }
 
   /**
@@ -155,6 +164,24 @@ public final class SegmentDescriptor implements AutoCloseable {
     return maxEntries;
   }
 
+  /**
+   * Returns a boolean value indicating whether entries in the segment are written with checksums.
+   *
+   * @return Indicates whether entries in the segment are written with checksums.
+   */
+  public boolean checksums() {
+    return checksums;
+  }
+
+  /**
+   * Returns a boolean value indicating whether entries in the segment are stored in compressed blocks.
+   *
+   * @return Indicates whether entries in the segment are stored in compressed blocks.
+   */
+  public boolean compressed() {
+    return compressed;
+  }
+
   /**
    * Returns last time the segment was updated.
    * <p>
@@ -173,7 +200,7 @@ public final class SegmentDescriptor implements AutoCloseable {
    */
   public void update(long timestamp) {
     if (!locked) {
-      buffer.writeLong(35, timestamp);
+      buffer.writeLong(32, timestamp);
       this.updated = timestamp;
     }
   }
@@ -194,7 +221,7 @@ public final class SegmentDescriptor implements AutoCloseable {
    * Locks the segment.
    */
   public void lock() {
-    buffer.writeBoolean(43, true).flush();
+    buffer.writeBoolean(40, true).flush();
     locked = true;
   }
 
@@ -210,11 +237,22 @@ public final class SegmentDescriptor implements AutoCloseable {
       .writeInt(maxEntries)
       .writeLong(updated)
       .writeBoolean(locked)
-      .skip(23)
+      .skip(7)
+      .writeBoolean(checksums)
+      .writeBoolean(compressed)
+      .skip(14)
       .flush();
     return this;
   }
 
+  /**
+   * Attaches the descriptor to a reopened segment buffer already containing the descriptor.
+   */
+  SegmentDescriptor attach(Buffer buffer) {
+    this.buffer = Assert.notNull(buffer, "buffer");
+    return this;
+  }
+
   @Override
   public void close() {
     buffer.close();
@@ -296,6 +334,28 @@ public final class SegmentDescriptor implements AutoCloseable {
       return this;
     }
 
+    /**
+     * Sets whether entries in the segment are written with checksums.
+     *
+     * @param checksums Whether entries in the segment are written with checksums.
+     * @return The segment descriptor builder.
+     */
+    public Builder withChecksums(boolean checksums) {
+      buffer.writeBoolean(48, checksums);
+      return this;
+    }
+
+    /**
+     * Sets whether entries in the segment are stored in compressed blocks.
+     *
+     * @param compressed Whether entries in the segment are stored in compressed blocks.
+     * @return The segment descriptor builder.
+     */
+    public Builder withCompressed(boolean compressed) {
+      buffer.writeBoolean(49, compressed);
+      return this;
+    }
+
     /**
      * Builds the segment descriptor.
      *
@@ -28,6 +28,8 @@ public final class SegmentFile {
   private static final char PART_SEPARATOR = '-';
   private static final char EXTENSION_SEPARATOR = '.';
   private static final String EXTENSION = "log";
+  private static final String INDEX_EXTENSION = "index";
+  private static final String RELEASE_EXTENSION = "released";
   private final File file;
 
   /**
@@ -36,10 +38,35 @@ public final class SegmentFile {
    * @throws NullPointerException if {@code file} is null
    */
   public static boolean isSegmentFile(String name, File file) {
+    return isFile(name, file, EXTENSION);
+  }
+
+  /**
+   * Returns a boolean value indicating whether the given file appears to be a parsable segment index file.
+   *
+   * @throws NullPointerException if {@code file} is null
+   */
+  public static boolean isIndexFile(String name, File file) {
+    return isFile(name, file, INDEX_EXTENSION);
+  }
+
+  /**
+   * Returns a boolean value indicating whether the given file appears to be a parsable segment release file.
+   *
+   * @throws NullPointerException if {@code file} is null
+   */
+  public static boolean isReleaseFile(String name, File file) {
+    return isFile(name, file, RELEASE_EXTENSION);
+  }
+
+  /**
+   * Returns a boolean value indicating whether the given file is a parsable segment file with the given extension.
+   */
+  private static boolean isFile(String name, File file, String extension) {
     Assert.notNull(name, "name");
     Assert.notNull(file, "file");
     String fileName = file.getName();
-    if (fileName.lastIndexOf(EXTENSION_SEPARATOR) == -1 || fileName.lastIndexOf(PART_SEPARATOR) == -1 || fileName.lastIndexOf(EXTENSION_SEPARATOR) < fileName.lastIndexOf(PART_SEPARATOR) || !fileName.endsWith(EXTENSION))
+    if (fileName.lastIndexOf(EXTENSION_SEPARATOR) == -1 || fileName.lastIndexOf(PART_SEPARATOR) == -1 || fileName.lastIndexOf(EXTENSION_SEPARATOR) < fileName.lastIndexOf(PART_SEPARATOR) || !fileName.substring(fileName.lastIndexOf(EXTENSION_SEPARATOR) + 1).equals(extension))
       return false;
 
     for (int i = fileName.lastIndexOf(PART_SEPARATOR) + 1; i < fileName.lastIndexOf(EXTENSION_SEPARATOR); i++) {
@@ -64,7 +91,21 @@ public final class SegmentFile {
    * Creates a segment file for the given directory, log name, segment ID, and segment version.
    */
   static File createSegmentFile(String name, File directory, long id, long version) {
-    return new File(directory, String.format("%s-%d-%d.log", Assert.notNull(name, "name"), id, version));
+    return new File(directory, String.format("%s-%d-%d.%s", Assert.notNull(name, "name"), id, version, EXTENSION));
+  }
+
+  /**
+   * Creates a segment index file for the given directory, log name, segment ID, and segment version.
+   */
+  static File createIndexFile(String name, File directory, long id, long version) {
+    return new File(directory, String.format("%s-%d-%d.%s", Assert.notNull(name, "name"), id, version, INDEX_EXTENSION));
+  }
+
+  /**
+   * Creates a segment release file for the given directory, log name, segment ID, and segment version.
+   */
+  static File createReleaseFile(String name, File directory, long id, long version) {
+    return new File(directory, String.format("%s-%d-%d.%s", Assert.notNull(name, "name"), id, version, RELEASE_EXTENSION));
   }
 
   /**
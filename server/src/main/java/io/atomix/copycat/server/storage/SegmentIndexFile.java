@@ -0,0 +1,319 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.buffer.Bytes;
+import io.atomix.catalyst.util.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent sidecar index for a {@link Segment}.
+ * <p>
+ * The index file stores a fixed size record for each entry appended to a segment so the segment's in-memory
+ * {@link io.atomix.copycat.server.storage.util.OffsetIndex} and {@link io.atomix.copycat.server.storage.util.TermIndex}
+ * can be rebuilt on load without scanning every entry in the segment. Records for appended entries are buffered in
+ * memory and written to the file in batches when the segment is flushed or the buffer fills, so appends don't incur
+ * a write to the index file per entry. Because the index file is never synced independently of the segment, the index is
+ * treated only as a hint: each record is protected by a checksum, and the segment verifies the last indexed entry
+ * against its own buffer before scanning any remaining entries not covered by the index.
+ * <p>
+ * Each record in the index file is written in the following binary format:
+ * <ul>
+ *   <li>Required 64-bit entry offset</li>
+ *   <li>Required 32-bit entry position</li>
+ *   <li>Required 64-bit entry term</li>
+ *   <li>Required 32-bit CRC32 checksum of the preceding fields</li>
+ * </ul>
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+final class SegmentIndexFile implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SegmentIndexFile.class);
+  static final int RECORD_BYTES = Bytes.LONG + Bytes.INTEGER + Bytes.LONG + Bytes.INTEGER;
+  private static final int CHECKSUM_BYTES = RECORD_BYTES - Bytes.INTEGER;
+  private static final int READ_BUFFER_SIZE = RECORD_BYTES * 4096;
+  private static final int WRITE_BUFFER_SIZE = RECORD_BYTES * 4096;
+
+  /**
+   * Index record reader.
+   */
+  @FunctionalInterface
+  interface RecordReader {
+
+    /**
+     * Reads an index record.
+     *
+     * @param offset The entry offset.
+     * @param position The entry position.
+     * @param term The entry term.
+     * @return Indicates whether the record was accepted by the reader.
+     */
+    boolean read(long offset, long position, long term);
+  }
+
+  private final File file;
+  private final FileChannel channel;
+  private final ByteBuffer records = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+  private final CRC32 checksum = new CRC32();
+  private long count;
+  private long written;
+
+  /**
+   * @throws NullPointerException if {@code file} is null
+   * @throws StorageException if the index file cannot be opened
+   */
+  SegmentIndexFile(File file) {
+    this.file = Assert.notNull(file, "file");
+    try {
+      this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      throw new StorageException("failed to open segment index: " + file, e);
+    }
+    this.count = size() / RECORD_BYTES;
+    this.written = count;
+  }
+
+  /**
+   * Returns the size of the index file.
+   */
+  private long size() {
+    try {
+      return channel.size();
+    } catch (IOException e) {
+      throw new StorageException("failed to read segment index: " + file, e);
+    }
+  }
+
+  /**
+   * Returns the index file.
+   *
+   * @return The index file.
+   */
+  File file() {
+    return file;
+  }
+
+  /**
+   * Returns the number of records in the index file.
+   * <p>
+   * When the index file is first opened, the count is calculated from the size of the file and may include
+   * records that have not been fully written. The count includes buffered records that have not yet been written.
+   *
+   * @return The number of records in the index file.
+   */
+  synchronized long count() {
+    return count;
+  }
+
+  /**
+   * Reads the record at the given position in the index file.
+   *
+   * @param record The zero-based record number to read.
+   * @param reader The record reader.
+   * @return Indicates whether the record was valid and accepted by the reader.
+   */
+  synchronized boolean readRecord(long record, RecordReader reader) {
+    flush();
+    ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES);
+    try {
+      long position = record * RECORD_BYTES;
+      int read;
+      while (buffer.hasRemaining() && (read = channel.read(buffer, position)) > 0) {
+        position += read;
+      }
+    } catch (IOException e) {
+      throw new StorageException("failed to read segment index: " + file, e);
+    }
+    buffer.flip();
+    return buffer.remaining() == RECORD_BYTES && read(buffer, reader);
+  }
+
+  /**
+   * Reads records sequentially from the head of the index file.
+   * <p>
+   * Records are read until the given number of records have been read or a record either fails checksum validation
+   * or is rejected by the reader. Once the records have been read, the index file is truncated to the records that
+   * were read and subsequent appends will be written after the last read record.
+   *
+   * @param count The maximum number of records to read.
+   * @param reader The record reader.
+   * @return The number of records read.
+   */
+  synchronized long readRecords(long count, RecordReader reader) {
+    flush();
+    ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    long records = 0;
+    try {
+      long position = 0;
+      int read;
+      read:
+      while (records < count && (read = channel.read(buffer, position)) > 0) {
+        position += read;
+        buffer.flip();
+        while (records < count && buffer.remaining() >= RECORD_BYTES) {
+          if (!read(buffer, reader)) {
+            break read;
+          }
+          records++;
+        }
+        buffer.compact();
+      }
+    } catch (IOException e) {
+      throw new StorageException("failed to read segment index: " + file, e);
+    }
+    truncate(records);
+    return records;
+  }
+
+  /**
+   * Reads and validates a single record from the given buffer.
+   */
+  private boolean read(ByteBuffer buffer, RecordReader reader) {
+    checksum.reset();
+    checksum.update(buffer.array(), buffer.position(), CHECKSUM_BYTES);
+    long offset = buffer.getLong();
+    long position = buffer.getInt() & 0xFFFFFFFFL;
+    long term = buffer.getLong();
+    return buffer.getInt() == (int) checksum.getValue() && reader.read(offset, position, term);
+  }
+
+  /**
+   * Appends a record to the index file.
+   * <p>
+   * The record is buffered in memory and written to the file on the next {@link #flush()} or once the buffer fills.
+   *
+   * @param offset The entry offset.
+   * @param position The entry position.
+   * @param term The entry term.
+   */
+  synchronized void append(long offset, long position, long term) {
+    buffer(offset, position, term);
+  }
+
+  /**
+   * Appends a batch of entries to the index file.
+   *
+   * @param offsets The entry offsets.
+   * @param positions The entry positions.
+   * @param terms The entry terms.
+   * @param count The number of entries to append.
+   */
+  synchronized void append(long[] offsets, long[] positions, long[] terms, int count) {
+    for (int i = 0; i < count; i++) {
+      buffer(offsets[i], positions[i], terms[i]);
+    }
+  }
+
+  /**
+   * Buffers a single record, writing buffered records to the file if the buffer is full.
+   */
+  private void buffer(long offset, long position, long term) {
+    if (records.remaining() < RECORD_BYTES) {
+      flush();
+    }
+    int start = records.position();
+    records.putLong(offset).putInt((int) position).putLong(term);
+    checksum.reset();
+    checksum.update(records.array(), start, CHECKSUM_BYTES);
+    records.putInt((int) checksum.getValue());
+    count++;
+  }
+
+  /**
+   * Writes buffered records to the index file.
+   * <p>
+   * Records are written with a single positional write. The index file is not synced.
+   */
+  synchronized void flush() {
+    if (records.position() == 0) {
+      return;
+    }
+    records.flip();
+    try {
+      long filePosition = written * RECORD_BYTES;
+      while (records.hasRemaining()) {
+        filePosition += channel.write(records, filePosition);
+      }
+    } catch (IOException e) {
+      throw new StorageException("failed to write segment index: " + file, e);
+    } finally {
+      records.clear();
+    }
+    written = count;
+  }
+
+  /**
+   * Truncates the index file to the given number of records.
+   *
+   * @param count The number of records to retain.
+   */
+  synchronized void truncate(long count) {
+    flush();
+    try {
+      channel.truncate(count * RECORD_BYTES);
+    } catch (IOException e) {
+      throw new StorageException("failed to truncate segment index: " + file, e);
+    }
+    this.count = count;
+    this.written = count;
+  }
+
+  @Override
+  public synchronized void close() {
+    try {
+      flush();
+    } finally {
+      closeChannel();
+    }
+  }
+
+  /**
+   * Closes the index file channel.
+   */
+  private void closeChannel() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      throw new StorageException("failed to close segment index: " + file, e);
+    }
+  }
+
+  /**
+   * Deletes the index file.
+   */
+  void delete() {
+    try {
+      Files.deleteIfExists(file.toPath());
+    } catch (IOException e) {
+      LOGGER.warn("Failed to delete segment index: {}", file, e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[file=%s, count=%d]", getClass().getSimpleName(), file.getName(), count);
+  }
+
+}
@@ -16,40 +16,73 @@
 package io.atomix.copycat.server.storage;
 
 import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.DirectBuffer;
 import io.atomix.catalyst.buffer.FileBuffer;
 import io.atomix.catalyst.buffer.HeapBuffer;
 import io.atomix.catalyst.buffer.MappedBuffer;
 import io.atomix.catalyst.serializer.Serializer;
 import io.atomix.catalyst.util.Assert;
+import io.atomix.catalyst.util.concurrent.CatalystThreadFactory;
 import io.atomix.copycat.server.storage.util.OffsetIndex;
 import io.atomix.copycat.server.storage.util.OffsetPredicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.Set;
 import java.util.TreeMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Manages creation and deletion of {@link Segment}s of the {@link Log}.
  * <p>
  * The segment manager keeps track of segments in a given {@link Log} and provides an interface to loading, retrieving,
  * and compacting those segments.
+ * <p>
+ * For persistent logs, the segment manager limits the number of segments that are open at any given time to
+ * {@link Storage#maxOpenSegments()}. Once the limit is exceeded, the least recently used segments that are no longer
+ * written are closed, and closed segments are transparently reopened the next time they're accessed.
+ * <p>
+ * For {@link StorageLevel#TIERED} logs, the segment manager stores the most recent {@link Storage#mappedSegments()}
+ * segments in memory mapped files and all older segments on disk. Each time the set of recent segments changes,
+ * segments stored in the wrong tier are closed and reopened in the correct tier the next time they're accessed.
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
 public class SegmentManager implements AutoCloseable {
   private static final Logger LOGGER = LoggerFactory.getLogger(SegmentManager.class);
   private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+  private static final int PREALLOCATE_BUFFER_SIZE = 1024 * 64;
   
   private final String name;
   private final Storage storage;
   private final Serializer serializer;
-  private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
-  private Segment currentSegment;
+  private final ThreadLocal<Serializer> readSerializers;
+  private volatile NavigableMap<Long, Segment> segments = Collections.emptyNavigableMap();
+  private final SegmentPreallocator preallocator;
+  private final EntryCache cache;
+  private final BlockCache blockCache;
+  private final Set<Segment> openSegments = new HashSet<>();
+  private final Map<Long, Long> removedVersions = new ConcurrentHashMap<>();
+  private volatile Segment currentSegment;
   private long commitIndex;
 
   /**
@@ -59,9 +92,40 @@ public class SegmentManager implements AutoCloseable {
     this.name = Assert.notNull(name, "name");
     this.storage = Assert.notNull(storage, "storage");
     this.serializer = Assert.notNull(serializer, "serializer");
+    this.readSerializers = ThreadLocal.withInitial(serializer::clone);
+    this.preallocator = storage.preallocateSegments() ? new SegmentPreallocator(this::allocateNextSegment) : null;
+    this.cache = new EntryCache(storage.entryCacheSize(), storage.memory());
+    this.blockCache = new BlockCache(storage.blockCacheSize(), storage.memory());
     open();
   }
 
+  /**
+   * Returns the log storage configuration.
+   *
+   * @return The log storage configuration.
+   */
+  Storage storage() {
+    return storage;
+  }
+
+  /**
+   * Returns the cache of recently appended entries.
+   *
+   * @return The entry cache.
+   */
+  EntryCache cache() {
+    return cache;
+  }
+
+  /**
+   * Returns the cache of decompressed blocks of compressed segments.
+   *
+   * @return The block cache.
+   */
+  BlockCache blockCache() {
+    return blockCache;
+  }
+
   /**
    * Returns the entry serializer.
    *
@@ -71,6 +135,18 @@ public class SegmentManager implements AutoCloseable {
     return serializer;
   }
 
+  /**
+   * Returns the entry serializer for reading entries on the current thread.
+   * <p>
+   * Serializers are not thread safe, so segments read entries with a serializer local to the reading thread
+   * to allow entries to be read concurrently.
+   *
+   * @return The entry serializer for reading entries on the current thread.
+   */
+  Serializer readSerializer() {
+    return readSerializers.get();
+  }
+
   /**
    * Sets the log commit index.
    *
@@ -96,9 +172,12 @@ public class SegmentManager implements AutoCloseable {
    */
   private void open() {
     // Load existing log segments from disk.
-    for (Segment segment : loadSegments()) {
-      segments.put(segment.descriptor().index(), segment);
-    }
+    Collection<Segment> loadedSegments = loadSegments();
+    updateSegments(segments -> {
+      for (Segment segment : loadedSegments) {
+        segments.put(segment.descriptor().index(), segment);
+      }
+    });
 
     // If a segment doesn't already exist, create an initial segment starting at index 1.
     if (!segments.isEmpty()) {
@@ -110,6 +189,7 @@ public class SegmentManager implements AutoCloseable {
         .withIndex(1)
         .withMaxSegmentSize(storage.maxSegmentSize())
         .withMaxEntries(storage.maxEntriesPerSegment())
+        .withChecksums(storage.checksums())
         .build();
 
       descriptor.lock();
@@ -118,7 +198,135 @@ public class SegmentManager implements AutoCloseable {
       currentSegment.descriptor().update(System.currentTimeMillis());
       currentSegment.descriptor().lock();
 
-      segments.put(1l, currentSegment);
+      Segment segment = currentSegment;
+      updateSegments(segments -> segments.put(1L, segment));
+    }
+
+    if (preallocator != null) {
+      prepareSegment(currentSegment.descriptor().id() + 1);
+    }
+
+    // Segments whose indexes had to be rebuilt are opened when they're loaded, so close segments beyond the open
+    // segment limit now that all segments have been loaded.
+    evictSegments(null);
+    retierSegments();
+  }
+
+  /**
+   * Registers an opened segment, closing the least recently used segments if too many segments are open.
+   *
+   * @param segment The opened segment.
+   */
+  void segmentOpened(Segment segment) {
+    if (storage.level() == StorageLevel.MEMORY) {
+      return;
+    }
+
+    synchronized (openSegments) {
+      openSegments.add(segment);
+    }
+
+    // Segments are evicted once all segments have been loaded when the manager is opened.
+    if (currentSegment != null) {
+      evictSegments(segment);
+    }
+  }
+
+  /**
+   * Unregisters a closed segment.
+   *
+   * @param segment The closed segment.
+   */
+  void segmentClosed(Segment segment) {
+    synchronized (openSegments) {
+      openSegments.remove(segment);
+    }
+  }
+
+  /**
+   * Closes the least recently used segments until no more than the maximum number of segments are open.
+   * <p>
+   * Only segments that are part of the log and are no longer written may be closed. Segments that are in use by
+   * a reader are skipped.
+   *
+   * @param opened The segment that was just opened and should not be closed.
+   */
+  private void evictSegments(Segment opened) {
+    List<Segment> candidates;
+    synchronized (openSegments) {
+      if (openSegments.size() <= storage.maxOpenSegments()) {
+        return;
+      }
+      candidates = new ArrayList<>(openSegments);
+    }
+
+    candidates.sort(Comparator.comparingLong(Segment::accessed));
+    int excess = candidates.size() - storage.maxOpenSegments();
+    for (Segment segment : candidates) {
+      if (excess == 0) {
+        break;
+      }
+      if (segment != opened && segment != currentSegment && segments.get(segment.index()) == segment && segment.unload()) {
+        LOGGER.trace("Closed segment: {}", segment.descriptor().id());
+        segmentClosed(segment);
+        excess--;
+      }
+    }
+  }
+
+  /**
+   * Returns the level at which to store the segment starting at the given index.
+   * <p>
+   * Segments of {@link StorageLevel#TIERED} logs are stored in memory mapped files while they're among the most
+   * recent {@link Storage#mappedSegments()} segments in the log, and older and compressed segments are stored on
+   * disk. Segments of all other logs are stored at the configured storage level.
+   *
+   * @param index The first index of the segment.
+   * @param compressed Whether the segment is compressed.
+   * @return The level at which to store the segment.
+   */
+  private StorageLevel segmentLevel(long index, boolean compressed) {
+    if (storage.level() != StorageLevel.TIERED) {
+      return storage.level();
+    } else if (compressed) {
+      return StorageLevel.DISK;
+    }
+
+    int count = 0;
+    for (long segmentIndex : segments.descendingKeySet()) {
+      if (segmentIndex <= index) {
+        return StorageLevel.MAPPED;
+      } else if (++count == storage.mappedSegments()) {
+        return StorageLevel.DISK;
+      }
+    }
+    return StorageLevel.MAPPED;
+  }
+
+  /**
+   * Closes the open segments of tiered logs that are stored in the wrong tier.
+   * <p>
+   * Segments that are no longer among the most recent {@link Storage#mappedSegments()} segments are unmapped, and
+   * recent segments that were opened from disk are closed, so that each segment is reopened in the correct tier the
+   * next time it's accessed. Segments that are in use by a reader are skipped until the set of recent segments next
+   * changes.
+   */
+  private void retierSegments() {
+    if (storage.level() != StorageLevel.TIERED) {
+      return;
+    }
+
+    List<Segment> candidates;
+    synchronized (openSegments) {
+      candidates = new ArrayList<>(openSegments);
+    }
+
+    for (Segment segment : candidates) {
+      boolean mapped = segmentLevel(segment.index(), segment.descriptor().compressed()) == StorageLevel.MAPPED;
+      if (segment.isMapped() != mapped && segments.get(segment.index()) == segment && segment.unload()) {
+        LOGGER.trace("Moved segment {} to {} storage", segment.descriptor().id(), mapped ? StorageLevel.MAPPED : StorageLevel.DISK);
+        segmentClosed(segment);
+      }
     }
   }
 
@@ -150,17 +358,19 @@ public class SegmentManager implements AutoCloseable {
     } else {
       SegmentDescriptor descriptor = SegmentDescriptor.builder()
         .withId(1)
-        .withVersion(1)
+        .withVersion(nextVersion(1))
         .withIndex(1)
         .withMaxSegmentSize(storage.maxSegmentSize())
         .withMaxEntries(storage.maxEntriesPerSegment())
+        .withChecksums(storage.checksums())
         .build();
       descriptor.lock();
 
-      currentSegment = createSegment(descriptor);
-
-      segments.put(1L, currentSegment);
+      Segment segment = createSegment(descriptor);
+      updateSegments(segments -> segments.put(1L, segment));
+      currentSegment = segment;
     }
+    retierSegments();
   }
 
   /**
@@ -193,24 +403,46 @@ public class SegmentManager implements AutoCloseable {
    */
   public Segment nextSegment() {
     assertOpen();
+
+    // Flush the current segment to disk before rolling over to ensure only the last segment in the log
+    // can contain partially written entries.
+    currentSegment.flush();
+
     Segment lastSegment = lastSegment();
+    long id = lastSegment != null ? lastSegment.descriptor().id() + 1 : 1;
+
+    // If the next segment was preallocated in the background, create the segment from the prepared allocation.
+    SegmentAllocation allocation = preallocator != null ? preallocator.take(id) : null;
     SegmentDescriptor descriptor = SegmentDescriptor.builder()
-      .withId(lastSegment != null ? lastSegment.descriptor().id() + 1 : 1)
-      .withVersion(1)
+      .withId(id)
+      .withVersion(allocation != null ? allocation.version() : nextVersion(id))
       .withIndex(currentSegment.lastIndex() + 1)
       .withMaxSegmentSize(storage.maxSegmentSize())
       .withMaxEntries(storage.maxEntriesPerSegment())
+      .withChecksums(storage.checksums())
       .build();
     descriptor.lock();
 
-    currentSegment = createSegment(descriptor);
+    Segment segment = allocation != null ? createSegment(descriptor, allocation) : createSegment(descriptor);
+
+    // Publish the segment and update the current segment atomically with respect to segments being replaced.
+    synchronized (this) {
+      updateSegments(segments -> segments.put(descriptor.index(), segment));
+      currentSegment = segment;
+    }
+    retierSegments();
 
-    segments.put(descriptor.index(), currentSegment);
-    return currentSegment;
+    if (preallocator != null) {
+      prepareSegment(descriptor.id() + 1);
+    }
+    return segment;
   }
 
   /**
    * Returns the collection of segments.
+   * <p>
+   * The returned collection is an immutable view of the segments at the time of the call and is not updated as
+   * segments are added, replaced, or removed.
    *
    * @return An ordered collection of segments.
    */
@@ -220,6 +452,8 @@ public class SegmentManager implements AutoCloseable {
 
   /**
    * Returns the collection of segments in reverse order.
+   * <p>
+   * The returned collection is an immutable view of the segments at the time of the call.
    *
    * @return A reverse ordered collection of segments.
    */
@@ -236,6 +470,7 @@ public class SegmentManager implements AutoCloseable {
   public Segment segment(long index) {
     assertOpen();
     // Check if the current segment contains the given index first in order to prevent an unnecessary map lookup.
+    Segment currentSegment = this.currentSegment;
     if (currentSegment != null && currentSegment.validIndex(index))
       return currentSegment;
 
@@ -244,92 +479,304 @@ public class SegmentManager implements AutoCloseable {
     return segment != null ? segment.getValue() : null;
   }
 
+  /**
+   * Returns the segment for the given index, pinning the segment until it's {@link Segment#unpin() unpinned}.
+   * <p>
+   * A segment that is replaced or removed while it's pinned remains readable and is closed and deleted once the
+   * last reader unpins it. If the segment is retired and closed between being looked up and pinned, the segment
+   * is looked up again in the current view of the log.
+   *
+   * @param index The index for which to return the segment.
+   * @return The pinned segment or {@code null} if no segment contains the index.
+   * @throws IllegalStateException if the segment manager is not open
+   */
+  Segment pin(long index) {
+    for (;;) {
+      Segment segment = segment(index);
+      if (segment == null || segment.pin()) {
+        return segment;
+      }
+    }
+  }
+
+  /**
+   * Publishes a new view of the segments in the log.
+   * <p>
+   * Views are immutable, so readers looking up or iterating segments never observe a partially applied update.
+   * Updates are serialized by the manager and each view is published atomically.
+   *
+   * @param update A function updating a copy of the current view.
+   */
+  private synchronized void updateSegments(Consumer<NavigableMap<Long, Segment>> update) {
+    NavigableMap<Long, Segment> segments = new TreeMap<>(this.segments);
+    update.accept(segments);
+    this.segments = Collections.unmodifiableNavigableMap(segments);
+  }
+
   /**
    * Inserts a segment.
+   * <p>
+   * The old segments are replaced by the new segment in a single atomic update of the segments in the log. Readers
+   * that pinned an old segment before it was replaced continue reading from the old segment, so the old segments
+   * must be {@link #retireSegments(Collection) retired} rather than closed once they're no longer needed.
    *
+   * @param segments The segments to replace.
    * @param segment The segment to insert.
-   * @throws IllegalStateException if the segment is unknown
+   * @throws IllegalArgumentException if a segment is unknown
    */
   public synchronized void replaceSegments(Collection<Segment> segments, Segment segment) {
     // Update the segment descriptor and lock the segment.
     segment.descriptor().update(System.currentTimeMillis());
     segment.descriptor().lock();
 
-    // Iterate through old segments and remove them from the segments list.
     for (Segment oldSegment : segments) {
       if (!this.segments.containsKey(oldSegment.index())) {
         throw new IllegalArgumentException("unknown segment at index: " + oldSegment.index());
       }
-      this.segments.remove(oldSegment.index());
     }
 
-    // Put the new segment in the segments list.
-    this.segments.put(segment.index(), segment);
+    // Remove the old segments and put the new segment in a single view.
+    updateSegments(view -> {
+      for (Segment oldSegment : segments) {
+        view.remove(oldSegment.index());
+      }
+      view.put(segment.index(), segment);
+    });
 
-    resetCurrentSegment();
+    // Invalidate cached entries from the old segments.
+    for (Segment oldSegment : segments) {
+      cache.invalidate(oldSegment.index(), oldSegment.lastIndex());
+    }
+
+    // The current segment is only reset if it was replaced to avoid racing with the next segment being created.
+    if (segments.contains(currentSegment)) {
+      resetCurrentSegment();
+    } else {
+      retierSegments();
+    }
+  }
+
+  /**
+   * Retires segments that were replaced in the log.
+   * <p>
+   * Each segment is closed and deleted once it's no longer pinned by readers that looked it up before it was replaced.
+   *
+   * @param segments The segments to retire.
+   */
+  public void retireSegments(Collection<Segment> segments) {
+    for (Segment segment : segments) {
+      segment.retire();
+    }
   }
 
   /**
    * Removes a segment.
+   * <p>
+   * The segment is closed and deleted once it's no longer pinned by readers. Until then, its files remain on
+   * disk, so any segment later created with the same ID is given a higher version to ensure the two segments
+   * never share files.
    *
    * @param segment The segment to remove.
    */
   public synchronized void removeSegment(Segment segment) {
-    segments.remove(segment.index());
-    segment.close();
-    segment.delete();
+    updateSegments(segments -> segments.remove(segment.index()));
+    removedVersions.merge(segment.descriptor().id(), segment.descriptor().version(), Math::max);
+    segment.retire();
     resetCurrentSegment();
   }
 
+  /**
+   * Returns the version with which to create a new segment with the given ID.
+   */
+  private long nextVersion(long id) {
+    Long version = removedVersions.get(id);
+    return version != null ? version + 1 : 1;
+  }
+
   /**
    * Creates a new segment.
    */
   public Segment createSegment(SegmentDescriptor descriptor) {
-    switch (storage.level()) {
+    StorageLevel level = segmentLevel(descriptor.index(), descriptor.compressed());
+    return createSegment(descriptor, allocateSegment(descriptor.id(), descriptor.version(), descriptor.maxSegmentSize(), descriptor.maxEntries(), level, false));
+  }
+
+  /**
+   * Creates a new segment from the given allocation.
+   */
+  private Segment createSegment(SegmentDescriptor descriptor, SegmentAllocation allocation) {
+    Buffer buffer = allocation.buffer();
+    descriptor.copyTo(buffer);
+    Segment segment = new Segment(buffer.slice(), descriptor, allocation.index(), allocation.indexFile(), allocation.releaseFile(), new OffsetPredicate(), serializer.clone(), this);
+    LOGGER.debug("Created segment: {}", segment);
+    return segment;
+  }
+
+  /**
+   * Creates a compressed copy of the given segment.
+   * <p>
+   * The compressed segment is created with the same identifier and index as the given segment and the next greatest
+   * version, so that the compressed segment supersedes the given segment once it's {@link SegmentDescriptor#lock()
+   * locked}. The compressed segment is not added to the log and must be swapped in via
+   * {@link #replaceSegments(Collection, Segment)}.
+   *
+   * @param segment The segment to compress.
+   * @return The compressed segment.
+   * @throws IllegalStateException if the log is not stored on disk
+   */
+  public Segment compressSegment(Segment segment) {
+    Assert.state(storage.level() == StorageLevel.DISK || storage.level() == StorageLevel.TIERED, "cannot compress " + storage.level() + " segment");
+
+    SegmentDescriptor descriptor = SegmentDescriptor.builder()
+      .withId(segment.descriptor().id())
+      .withVersion(segment.descriptor().version() + 1)
+      .withIndex(segment.descriptor().index())
+      .withMaxSegmentSize(segment.descriptor().maxSegmentSize())
+      .withMaxEntries(segment.descriptor().maxEntries())
+      .withChecksums(segment.descriptor().checksums())
+      .withCompressed(true)
+      .build();
+
+    File file = SegmentFile.createSegmentFile(name, storage.directory(), descriptor.id(), descriptor.version());
+    Buffer buffer = FileBuffer.allocate(file, Math.min(DEFAULT_BUFFER_SIZE, descriptor.maxSegmentSize()), Integer.MAX_VALUE);
+    descriptor.copyTo(buffer);
+
+    Buffer blocks = buffer.slice();
+    segment.compress(blocks, storage.compressionBlockSize());
+
+    Segment compressedSegment = new Segment(blocks, descriptor, createIndex(descriptor.maxEntries()), createIndexFile(descriptor.id(), descriptor.version()), createReleaseFile(descriptor.id(), descriptor.version(), descriptor.maxEntries()), new OffsetPredicate(), serializer.clone(), this);
+
+    // Retain any entries skipped at the end of the segment.
+    if (segment.lastIndex() > compressedSegment.lastIndex()) {
+      compressedSegment.skip(segment.lastIndex() - compressedSegment.lastIndex());
+    }
+
+    LOGGER.debug("Compressed segment {} from {} to {} bytes", descriptor.id(), segment.size(), file.length());
+    return compressedSegment;
+  }
+
+  /**
+   * Prepares the segment with the given ID in the background.
+   * <p>
+   * The version of the prepared segment is reserved as if a segment with that version had been removed. If the
+   * prepared segment is not ready by the time it's needed, the segment allocated in its place is created with a
+   * newer version and so does not share files with the prepared segment while it's being discarded.
+   */
+  private void prepareSegment(long id) {
+    long version = nextVersion(id);
+    removedVersions.merge(id, version, Math::max);
+    preallocator.prepare(id, version);
+  }
+
+  /**
+   * Allocates the next segment with the configured storage limits.
+   */
+  private SegmentAllocation allocateNextSegment(long id, long version) {
+    // The next segment is always the most recent segment in the log, so tiered logs map the next segment.
+    StorageLevel level = storage.level() == StorageLevel.TIERED ? StorageLevel.MAPPED : storage.level();
+    return allocateSegment(id, version, storage.maxSegmentSize(), storage.maxEntriesPerSegment(), level, true);
+  }
+
+  /**
+   * Allocates the buffer and indexes for a new segment, filling the segment file if {@code fill} is {@code true}.
+   */
+  private SegmentAllocation allocateSegment(long id, long version, long maxSegmentSize, int maxEntries, StorageLevel level, boolean fill) {
+    Buffer buffer;
+    switch (level) {
       case MEMORY:
-        return createMemorySegment(descriptor);
+        buffer = HeapBuffer.allocate(Math.min(DEFAULT_BUFFER_SIZE, maxSegmentSize), Integer.MAX_VALUE);
+        break;
       case MAPPED:
-        return createMappedSegment(descriptor);
+        File mappedFile = SegmentFile.createSegmentFile(name, storage.directory(), id, version);
+        preallocateFile(mappedFile, maxSegmentSize, fill);
+        buffer = MappedBuffer.allocate(mappedFile, Math.min(DEFAULT_BUFFER_SIZE, maxSegmentSize), Integer.MAX_VALUE);
+        break;
       case DISK:
-        return createDiskSegment(descriptor);
+        File diskFile = SegmentFile.createSegmentFile(name, storage.directory(), id, version);
+        preallocateFile(diskFile, maxSegmentSize, fill);
+        buffer = FileBuffer.allocate(diskFile, Math.min(DEFAULT_BUFFER_SIZE, maxSegmentSize), Integer.MAX_VALUE);
+        break;
       default:
         throw new AssertionError();
     }
+    return new SegmentAllocation(id, version, buffer, createIndex(maxEntries), createIndexFile(id, version), createReleaseFile(id, version, maxEntries));
   }
 
   /**
-   * Creates a new segment.
+   * Preallocates the given segment file to the given size if file preallocation is enabled.
+   * <p>
+   * Files allocated in the background are filled with zeros and synced so that writes to the file don't have to
+   * allocate blocks or update the file's metadata. Filling a file is expensive, so files allocated synchronously,
+   * i.e. when segments aren't preallocated or the preallocated segment isn't ready, are only extended to the given
+   * size without being filled or synced.
    */
-  private Segment createDiskSegment(SegmentDescriptor descriptor) {
-    File segmentFile = SegmentFile.createSegmentFile(name, storage.directory(), descriptor.id(), descriptor.version());
-    Buffer buffer = FileBuffer.allocate(segmentFile, Math.min(DEFAULT_BUFFER_SIZE, descriptor.maxSegmentSize()), Integer.MAX_VALUE);
-    descriptor.copyTo(buffer);
-    Segment segment = new Segment(buffer.slice(), descriptor, createIndex(descriptor), new OffsetPredicate(), serializer.clone(), this);
-    LOGGER.debug("Created segment: {}", segment);
-    return segment;
+  private void preallocateFile(File file, long size, boolean fill) {
+    if (!storage.preallocateFiles()) {
+      return;
+    }
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      long position = channel.size();
+      if (!fill) {
+        if (position < size) {
+          channel.write(ByteBuffer.allocate(1), size - 1);
+        }
+        return;
+      }
+
+      ByteBuffer zeros = ByteBuffer.allocate(PREALLOCATE_BUFFER_SIZE);
+      while (position < size) {
+        zeros.clear().limit((int) Math.min(zeros.capacity(), size - position));
+        position += channel.write(zeros, position);
+      }
+      channel.force(true);
+    } catch (IOException e) {
+      throw new StorageException("failed to preallocate segment file: " + file, e);
+    }
   }
 
   /**
-   * Creates a new segment.
+   * Reopens the buffer and indexes of a persistent segment that was closed to limit the number of open segments.
+   * <p>
+   * Segments of tiered logs are reopened in the tier in which they belong at the time they're reopened.
+   * <p>
+   * The returned allocation's buffer is positioned at the head of the segment, before the segment's descriptor.
    */
-  private Segment createMappedSegment(SegmentDescriptor descriptor) {
-    File segmentFile = SegmentFile.createSegmentFile(name, storage.directory(), descriptor.id(), descriptor.version());
-    Buffer buffer = MappedBuffer.allocate(segmentFile, Math.min(DEFAULT_BUFFER_SIZE, descriptor.maxSegmentSize()), Integer.MAX_VALUE);
-    descriptor.copyTo(buffer);
-    Segment segment = new Segment(buffer.slice(), descriptor, createIndex(descriptor), new OffsetPredicate(), serializer.clone(), this);
-    LOGGER.debug("Created segment: {}", segment);
-    return segment;
+  SegmentAllocation reopenSegment(SegmentDescriptor descriptor) {
+    File file = SegmentFile.createSegmentFile(name, storage.directory(), descriptor.id(), descriptor.version());
+    Buffer buffer;
+    switch (segmentLevel(descriptor.index(), descriptor.compressed())) {
+      case MAPPED:
+        buffer = MappedBuffer.allocate(file, Math.min(DEFAULT_BUFFER_SIZE, descriptor.maxSegmentSize()), Integer.MAX_VALUE);
+        break;
+      case DISK:
+        buffer = FileBuffer.allocate(file, Math.min(DEFAULT_BUFFER_SIZE, descriptor.maxSegmentSize()), Integer.MAX_VALUE);
+        break;
+      default:
+        throw new IllegalStateException("cannot reopen " + storage.level() + " segment");
+    }
+    LOGGER.trace("Reopened segment: {} ({})", descriptor.id(), file.getName());
+    return new SegmentAllocation(descriptor.id(), descriptor.version(), buffer, createIndex(descriptor.maxEntries()), createIndexFile(descriptor.id(), descriptor.version()), createReleaseFile(descriptor.id(), descriptor.version(), descriptor.maxEntries()));
   }
 
   /**
-   * Creates a new segment.
+   * Maps the file of the given segment at the given size.
+   * <p>
+   * The returned buffer is positioned at the head of the segment, before the segment's descriptor.
    */
-  private Segment createMemorySegment(SegmentDescriptor descriptor) {
-    Buffer buffer = HeapBuffer.allocate(Math.min(DEFAULT_BUFFER_SIZE, descriptor.maxSegmentSize()), Integer.MAX_VALUE);
-    descriptor.copyTo(buffer);
-    Segment segment = new Segment(buffer.slice(), descriptor, createIndex(descriptor), new OffsetPredicate(), serializer.clone(), this);
-    LOGGER.debug("Created segment: {}", segment);
-    return segment;
+  MappedBuffer mapSegment(SegmentDescriptor descriptor, long size) {
+    File file = SegmentFile.createSegmentFile(name, storage.directory(), descriptor.id(), descriptor.version());
+    return MappedBuffer.allocate(file, size, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Deletes the index and release files for the given segment.
+   */
+  void deleteIndexFiles(long id, long version) {
+    if (storage.level() != StorageLevel.MEMORY) {
+      SegmentFile.createIndexFile(name, storage.directory(), id, version).delete();
+      SegmentFile.createReleaseFile(name, storage.directory(), id, version).delete();
+    }
   }
 
   /**
@@ -341,21 +788,47 @@ public class SegmentManager implements AutoCloseable {
         return loadMemorySegment(segmentId, segmentVersion);
       case MAPPED:
         return loadMappedSegment(segmentId, segmentVersion);
+      // Tiered segments are loaded from disk, and recent segments are mapped once all segments have been loaded.
       case DISK:
+      case TIERED:
         return loadDiskSegment(segmentId, segmentVersion);
       default:
         throw new AssertionError();
     }
   }
 
+  /**
+   * Loads a persistent segment without opening its resources.
+   * <p>
+   * Only the segment's descriptor is read, and the segment's metadata is recovered from its index file. The
+   * segment's resources are opened the first time the segment is read or written.
+   *
+   * @return The segment or {@code null} if the segment's index file does not cover all the segment's entries.
+   */
+  private Segment loadClosedSegment(long segmentId, long segmentVersion) {
+    File file = SegmentFile.createSegmentFile(name, storage.directory(), segmentId, segmentVersion);
+    SegmentDescriptor descriptor = new SegmentDescriptor(FileBuffer.allocate(file, SegmentDescriptor.BYTES));
+    descriptor.close();
+    Segment segment = Segment.open(descriptor, file, createIndexFile(descriptor.id(), descriptor.version()), createReleaseFile(descriptor.id(), descriptor.version(), descriptor.maxEntries()), new OffsetPredicate(), serializer.clone(), this);
+    if (segment != null) {
+      LOGGER.debug("Loaded closed segment: {} ({})", descriptor.id(), file.getName());
+    }
+    return segment;
+  }
+
   /**
    * Loads a segment.
    */
   private Segment loadDiskSegment(long segmentId, long segmentVersion) {
+    Segment closedSegment = loadClosedSegment(segmentId, segmentVersion);
+    if (closedSegment != null) {
+      return closedSegment;
+    }
+
     File file = SegmentFile.createSegmentFile(name, storage.directory(), segmentId, segmentVersion);
     Buffer buffer = FileBuffer.allocate(file, Math.min(DEFAULT_BUFFER_SIZE, storage.maxSegmentSize()), Integer.MAX_VALUE);
     SegmentDescriptor descriptor = new SegmentDescriptor(buffer);
-    Segment segment = new Segment(buffer.position(SegmentDescriptor.BYTES).slice(), descriptor, createIndex(descriptor), new OffsetPredicate(), serializer.clone(), this);
+    Segment segment = new Segment(buffer.position(SegmentDescriptor.BYTES).slice(), descriptor, createIndex(descriptor.maxEntries()), createIndexFile(descriptor.id(), descriptor.version()), createReleaseFile(descriptor.id(), descriptor.version(), descriptor.maxEntries()), new OffsetPredicate(), serializer.clone(), this);
     LOGGER.debug("Loaded file segment: {} ({})", descriptor.id(), file.getName());
     return segment;
   }
@@ -364,10 +837,15 @@ public class SegmentManager implements AutoCloseable {
    * Loads a segment.
    */
   private Segment loadMappedSegment(long segmentId, long segmentVersion) {
+    Segment closedSegment = loadClosedSegment(segmentId, segmentVersion);
+    if (closedSegment != null) {
+      return closedSegment;
+    }
+
     File file = SegmentFile.createSegmentFile(name, storage.directory(), segmentId, segmentVersion);
     Buffer buffer = MappedBuffer.allocate(file, Math.min(DEFAULT_BUFFER_SIZE, storage.maxSegmentSize()), Integer.MAX_VALUE);
     SegmentDescriptor descriptor = new SegmentDescriptor(buffer);
-    Segment segment = new Segment(buffer.position(SegmentDescriptor.BYTES).slice(), descriptor, createIndex(descriptor), new OffsetPredicate(), serializer.clone(), this);
+    Segment segment = new Segment(buffer.position(SegmentDescriptor.BYTES).slice(), descriptor, createIndex(descriptor.maxEntries()), createIndexFile(descriptor.id(), descriptor.version()), createReleaseFile(descriptor.id(), descriptor.version(), descriptor.maxEntries()), new OffsetPredicate(), serializer.clone(), this);
     LOGGER.debug("Loaded mapped segment: {} ({})", descriptor.id(), file.getName());
     return segment;
   }
@@ -378,20 +856,52 @@ public class SegmentManager implements AutoCloseable {
   private Segment loadMemorySegment(long segmentId, long segmentVersion) {
     Buffer buffer = HeapBuffer.allocate(Math.min(DEFAULT_BUFFER_SIZE, storage.maxSegmentSize()), Integer.MAX_VALUE);
     SegmentDescriptor descriptor = new SegmentDescriptor(buffer);
-    Segment segment = new Segment(buffer.position(SegmentDescriptor.BYTES).slice(), descriptor, createIndex(descriptor), new OffsetPredicate(), serializer.clone(), this);
+    Segment segment = new Segment(buffer.position(SegmentDescriptor.BYTES).slice(), descriptor, createIndex(descriptor.maxEntries()), createIndexFile(descriptor.id(), descriptor.version()), createReleaseFile(descriptor.id(), descriptor.version(), descriptor.maxEntries()), new OffsetPredicate(), serializer.clone(), this);
     LOGGER.debug("Loaded memory segment: {}", descriptor.id());
     return segment;
   }
 
   /**
-   * Creates an in memory segment index.
+   * Creates a segment index.
+   * <p>
+   * Indexes for persistent segments are stored off-heap to avoid retaining a heap buffer for every segment in the log.
+   * Indexes are sparse if the configured {@link Storage#indexInterval()} is greater than {@code 1}.
+   */
+  private OffsetIndex createIndex(int maxEntries) {
+    int interval = storage.indexInterval();
+    long maxCapacity = OffsetIndex.size(maxEntries, interval);
+    long initialCapacity = Math.min(Math.min(DEFAULT_BUFFER_SIZE, maxEntries), maxCapacity);
+    if (storage.level() == StorageLevel.MEMORY) {
+      return new OffsetIndex(HeapBuffer.allocate(initialCapacity, maxCapacity), interval);
+    }
+    return new OffsetIndex(DirectBuffer.allocate(initialCapacity, maxCapacity), interval);
+  }
+
+  /**
+   * Creates a persistent segment index file, or returns {@code null} if the log is stored in memory.
+   */
+  private SegmentIndexFile createIndexFile(long id, long version) {
+    if (storage.level() == StorageLevel.MEMORY) {
+      return null;
+    }
+    return new SegmentIndexFile(SegmentFile.createIndexFile(name, storage.directory(), id, version));
+  }
+
+  /**
+   * Creates a persistent segment release file, or returns {@code null} if the log is stored in memory.
    */
-  private OffsetIndex createIndex(SegmentDescriptor descriptor) {
-    return new OffsetIndex(HeapBuffer.allocate(Math.min(DEFAULT_BUFFER_SIZE, descriptor.maxEntries()), OffsetIndex.size(descriptor.maxEntries())));
+  private SegmentReleaseFile createReleaseFile(long id, long version, int maxEntries) {
+    if (storage.level() == StorageLevel.MEMORY) {
+      return null;
+    }
+    return new SegmentReleaseFile(SegmentFile.createReleaseFile(name, storage.directory(), id, version), maxEntries);
   }
 
   /**
    * Loads all segments from disk.
+   * <p>
+   * Segments are loaded in parallel on up to {@link Storage#recoveryThreads()} threads. Once all segments have been
+   * loaded, conflicts between segment versions and overlapping segments are resolved in segment ID order.
    *
    * @return A collection of segments for the log.
    */
@@ -399,9 +909,10 @@ public class SegmentManager implements AutoCloseable {
     // Ensure log directories are created.
     storage.directory().mkdirs();
 
-    TreeMap<Long, Segment> segments = new TreeMap<>();
+    long startTime = System.nanoTime();
 
-    // Iterate through all files in the log directory.
+    // Iterate through all files in the log directory and collect the descriptors of locked segments.
+    List<SegmentFile> segmentFiles = new ArrayList<>();
     for (File file : storage.directory().listFiles(File::isFile)) {
 
       // If the file looks like a segment file, attempt to load the segment.
@@ -412,57 +923,7 @@ public class SegmentManager implements AutoCloseable {
         // Valid segments will have been locked. Segments that resulting from failures during log cleaning will be
         // unlocked and should ultimately be deleted from disk.
         if (descriptor.locked()) {
-
-          // Load the segment.
-          Segment segment = loadSegment(descriptor.id(), descriptor.version());
-
-          // If a segment with an equal or lower index has already been loaded, ensure this segment is not superseded
-          // by the earlier segment. This can occur due to segments being combined during log compaction.
-          Map.Entry<Long, Segment> previousEntry = segments.floorEntry(segment.index());
-          if (previousEntry != null) {
-
-            // If an existing descriptor exists with a lower index than this segment's first index, check to determine
-            // whether this segment's first index is contained in that existing index. If it is, determine which segment
-            // should take precedence based on segment versions.
-            Segment previousSegment = previousEntry.getValue();
-
-            // If the two segments start at the same index, the segment with the higher version number is used.
-            if (previousSegment.index() == segment.index()) {
-              if (segment.descriptor().version() > previousSegment.descriptor().version()) {
-                LOGGER.debug("Replaced segment {} with newer version: {} ({})", previousSegment.descriptor().id(), segment.descriptor().version(), segmentFile.file().getName());
-                segments.remove(previousEntry.getKey());
-                previousSegment.close();
-                previousSegment.delete();
-              } else {
-                segment.close();
-                segment.delete();
-                continue;
-              }
-            }
-            // If the existing segment's entries overlap with the loaded segment's entries, the existing segment always
-            // supersedes the loaded segment. Log compaction processes ensure this is always the case.
-            else if (previousSegment.index() + previousSegment.length() > segment.index()) {
-              segment.close();
-              segment.delete();
-              continue;
-            }
-          }
-
-          // Add the segment to the segments list.
-          LOGGER.debug("Found segment: {} ({})", segment.descriptor().id(), segmentFile.file().getName());
-          segments.put(segment.index(), segment);
-
-          // Ensure any segments later in the log with which this segment overlaps are removed.
-          Map.Entry<Long, Segment> nextEntry = segments.higherEntry(segment.index());
-          while (nextEntry != null) {
-            if (nextEntry.getValue().index() < segment.index() + segment.length()) {
-              segments.remove(nextEntry.getKey());
-              nextEntry = segments.higherEntry(segment.index());
-            } else {
-              break;
-            }
-          }
-
+          segmentFiles.add(segmentFile);
           descriptor.close();
         }
         // If the segment descriptor wasn't locked, close and delete the descriptor.
@@ -470,10 +931,87 @@ public class SegmentManager implements AutoCloseable {
           LOGGER.debug("Deleting unlocked segment: {}-{} ({})", descriptor.id(), descriptor.version(), segmentFile.file().getName());
           descriptor.close();
           descriptor.delete();
+          deleteIndexFiles(segmentFile.id(), segmentFile.version());
+        }
+      }
+    }
+
+    // Resolve conflicts in a deterministic order regardless of the order in which segments were loaded.
+    segmentFiles.sort(Comparator.comparingLong(SegmentFile::id).thenComparingLong(SegmentFile::version));
+
+    TreeMap<Long, Segment> segments = new TreeMap<>();
+    for (Segment segment : loadSegments(segmentFiles)) {
+
+      // If a segment with an equal or lower index has already been loaded, ensure this segment is not superseded
+      // by the earlier segment. This can occur due to segments being combined during log compaction.
+      Map.Entry<Long, Segment> previousEntry = segments.floorEntry(segment.index());
+      if (previousEntry != null) {
+
+        // If an existing descriptor exists with a lower index than this segment's first index, check to determine
+        // whether this segment's first index is contained in that existing index. If it is, determine which segment
+        // should take precedence based on segment versions.
+        Segment previousSegment = previousEntry.getValue();
+
+        // If the two segments start at the same index, the segment with the higher version number is used.
+        if (previousSegment.index() == segment.index()) {
+          if (segment.descriptor().version() > previousSegment.descriptor().version()) {
+            LOGGER.debug("Replaced segment {} with newer version: {}", previousSegment.descriptor().id(), segment.descriptor().version());
+            segments.remove(previousEntry.getKey());
+            previousSegment.close();
+            previousSegment.delete();
+          } else {
+            segment.close();
+            segment.delete();
+            continue;
+          }
+        }
+        // If the existing segment's entries overlap with the loaded segment's entries, the existing segment always
+        // supersedes the loaded segment. Log compaction processes ensure this is always the case.
+        else if (previousSegment.index() + previousSegment.length() > segment.index()) {
+          segment.close();
+          segment.delete();
+          continue;
+        }
+      }
+
+      // Add the segment to the segments list.
+      LOGGER.debug("Found segment: {}", segment.descriptor().id());
+      segments.put(segment.index(), segment);
+
+      // Ensure any segments later in the log with which this segment overlaps are removed.
+      Map.Entry<Long, Segment> nextEntry = segments.higherEntry(segment.index());
+      while (nextEntry != null) {
+        if (nextEntry.getValue().index() < segment.index() + segment.length()) {
+          segments.remove(nextEntry.getKey());
+          nextEntry = segments.higherEntry(segment.index());
+        } else {
+          break;
         }
       }
     }
 
+    // Segments are flushed to disk before the log rolls over to a new segment, so only entries in the last
+    // segment may have been partially written. Validate all the entries in the last segment.
+    if (!segments.isEmpty()) {
+      segments.lastEntry().getValue().recover();
+    }
+
+    // If entries were discarded from a segment during recovery, entries in later segments no longer follow
+    // a consistent log and must be removed as well.
+    for (Segment segment : segments.values()) {
+      if (segment.isTorn()) {
+        LOGGER.warn("Discarded invalid entries from segment {} after index {}", segment.descriptor().id(), segment.lastIndex());
+        NavigableMap<Long, Segment> tailSegments = segments.tailMap(segment.index(), false);
+        for (Segment tailSegment : tailSegments.values()) {
+          LOGGER.warn("Deleting segment {} following invalid entries", tailSegment.descriptor().id());
+          tailSegment.close();
+          tailSegment.delete();
+        }
+        tailSegments.clear();
+        break;
+      }
+    }
+
     for (Long segmentId : segments.keySet()) {
       Segment segment = segments.get(segmentId);
       Map.Entry<Long, Segment> previousEntry = segments.floorEntry(segmentId - 1);
@@ -485,15 +1023,74 @@ public class SegmentManager implements AutoCloseable {
       }
     }
 
+    LOGGER.info("Recovered {} segment(s) in {} ms", segments.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
     return segments.values();
   }
 
+  /**
+   * Loads the given segment files in parallel.
+   * <p>
+   * If any segment fails to load, all loaded segments are closed and the failure is rethrown.
+   *
+   * @return The loaded segments in the order of the given segment files.
+   */
+  private List<Segment> loadSegments(List<SegmentFile> segmentFiles) {
+    if (segmentFiles.isEmpty()) {
+      return new ArrayList<>(0);
+    }
+
+    int threads = Math.min(storage.recoveryThreads(), segmentFiles.size());
+    ExecutorService executor = Executors.newFixedThreadPool(threads, new CatalystThreadFactory("copycat-recovery-%d"));
+    try {
+      List<Future<Segment>> futures = new ArrayList<>(segmentFiles.size());
+      for (SegmentFile segmentFile : segmentFiles) {
+        futures.add(executor.submit(() -> {
+          long startTime = System.nanoTime();
+          Segment segment = loadSegment(segmentFile.id(), segmentFile.version());
+          LOGGER.debug("Recovered segment {} with {} entries in {} ms ({})", segment.descriptor().id(), segment.count(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), segmentFile.file().getName());
+          return segment;
+        }));
+      }
+
+      List<Segment> segments = new ArrayList<>(futures.size());
+      Throwable error = null;
+      for (Future<Segment> future : futures) {
+        try {
+          segments.add(future.get());
+        } catch (ExecutionException e) {
+          error = error != null ? error : e.getCause();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          error = error != null ? error : e;
+        }
+      }
+
+      if (error != null) {
+        segments.forEach(Segment::close);
+        if (error instanceof RuntimeException) {
+          throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+          throw (Error) error;
+        }
+        throw new StorageException("failed to load segments", error);
+      }
+      return segments;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   @Override
   public void close() {
+    if (preallocator != null) {
+      preallocator.close();
+    }
     segments.values().forEach(s -> {
       LOGGER.debug("Closing segment: {}", s.descriptor().id());
       s.close();
     });
+    cache.clear();
+    blockCache.clear();
     currentSegment = null;
   }
 
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.util.Assert;
+import io.atomix.catalyst.util.concurrent.CatalystThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocates the next {@link Segment} of the log in the background.
+ * <p>
+ * The preallocator keeps a single {@link SegmentAllocation} ready for the segment that will follow the log's
+ * current segment. When the log rolls over to a new segment, the {@link SegmentManager} takes the prepared
+ * allocation and only has to write the new segment's descriptor. If the prepared allocation does not match the
+ * segment being created, e.g. because the log was truncated, or the allocation has not yet completed, the allocation
+ * is discarded in the background and the segment is allocated synchronously. Taking an allocation never blocks
+ * the log on the background allocation.
+ * <p>
+ * Prepared allocations are not locked segments, so any allocation left on disk after a crash will be deleted
+ * when the log is next loaded.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+final class SegmentPreallocator implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SegmentPreallocator.class);
+
+  /**
+   * Segment allocator.
+   */
+  @FunctionalInterface
+  interface Allocator {
+
+    /**
+     * Allocates a segment.
+     *
+     * @param id The ID of the segment to allocate.
+     * @param version The version of the segment to allocate.
+     * @return The segment allocation.
+     */
+    SegmentAllocation allocate(long id, long version);
+  }
+
+  private final Allocator allocator;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(new CatalystThreadFactory("copycat-preallocator-%d"));
+  private Future<SegmentAllocation> next;
+  private long nextId;
+
+  /**
+   * @param allocator A function that allocates a segment for the given segment ID.
+   * @throws NullPointerException if {@code allocator} is null
+   */
+  SegmentPreallocator(Allocator allocator) {
+    this.allocator = Assert.notNull(allocator, "allocator");
+  }
+
+  /**
+   * Prepares an allocation for the segment with the given ID in the background.
+   * <p>
+   * Any previously prepared allocation that has not been taken is discarded.
+   *
+   * @param id The ID of the segment to allocate.
+   * @param version The version of the segment to allocate.
+   */
+  void prepare(long id, long version) {
+    discard();
+    nextId = id;
+    next = executor.submit(() -> allocator.allocate(id, version));
+  }
+
+  /**
+   * Takes the prepared allocation for the segment with the given ID.
+   * <p>
+   * If the prepared allocation is still in progress, the allocation is discarded rather than waiting for it to
+   * complete. The discarded allocation may still be writing its files, so the caller must allocate the segment
+   * with a different version.
+   *
+   * @param id The ID of the segment for which to take the prepared allocation.
+   * @return The prepared allocation or {@code null} if no allocation was prepared for the given segment or the
+   * prepared allocation is not yet complete.
+   */
+  SegmentAllocation take(long id) {
+    if (next == null || nextId != id) {
+      discard();
+      return null;
+    }
+
+    if (!next.isDone()) {
+      LOGGER.debug("Segment {} not yet preallocated, discarding preallocated segment", id);
+      discard();
+      return null;
+    }
+
+    Future<SegmentAllocation> future = next;
+    next = null;
+    try {
+      return future.get();
+    } catch (InterruptedException | ExecutionException e) {
+      LOGGER.warn("Failed to preallocate segment: {}", id, e);
+      return null;
+    }
+  }
+
+  /**
+   * Discards the prepared allocation, if any.
+   */
+  private void discard() {
+    Future<SegmentAllocation> future = next;
+    if (future != null) {
+      next = null;
+
+      // Allocations are performed on a single thread, so the prepared allocation will have completed by the
+      // time the discard task runs.
+      executor.execute(() -> {
+        try {
+          future.get().delete();
+        } catch (InterruptedException | ExecutionException e) {
+        }
+      });
+    }
+  }
+
+  @Override
+  public void close() {
+    discard();
+    executor.shutdown();
+    try {
+      executor.awaitTermination(30, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+    }
+  }
+
+}
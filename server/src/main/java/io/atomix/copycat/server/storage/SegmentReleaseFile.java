@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.buffer.util.MappedMemory;
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.util.OffsetPredicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+/**
+ * Persistent bitmap of entries released from a {@link Segment}.
+ * <p>
+ * The release file stores a single bit for each entry in the segment's offset index, in the same order as the
+ * segment's {@link OffsetPredicate}. The file is memory mapped and sized to the maximum number of entries in the
+ * segment, and bits are set in the mapped bitmap as entries are released, so persisting a release does not require
+ * a system call. When the segment is loaded, released entries are restored to the segment's predicate, allowing
+ * compaction to reclaim released entries immediately after a restart.
+ * <p>
+ * The release file is never synced to disk. Losing a release only delays compaction of the released entry, so
+ * the bitmap may safely lag the state machine after a crash. The mapping is unmapped without syncing it when the
+ * release file is closed rather than being left for the garbage collector to unmap. Bits for entries that are no longer present in the
+ * segment are cleared when the segment is loaded or truncated.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+final class SegmentReleaseFile implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SegmentReleaseFile.class);
+  private final File file;
+  private final MappedMemory bitmap;
+  private int limit;
+
+  /**
+   * @throws NullPointerException if {@code file} is null
+   * @throws StorageException if the release file cannot be opened
+   */
+  SegmentReleaseFile(File file, int maxEntries) {
+    this.file = Assert.notNull(file, "file");
+    Assert.argNot(maxEntries <= 0, "maxEntries must be positive");
+    try {
+      this.bitmap = MappedMemory.allocate(file, FileChannel.MapMode.READ_WRITE, (maxEntries + 7) / 8);
+    } catch (RuntimeException e) {
+      throw new StorageException("failed to open segment release file: " + file, e);
+    }
+  }
+
+  /**
+   * Returns the release file.
+   *
+   * @return The release file.
+   */
+  File file() {
+    return file;
+  }
+
+  /**
+   * Loads released offsets into the given predicate.
+   * <p>
+   * Only offsets less than the given size are loaded. Released offsets greater than or equal to the given size
+   * are cleared from the file.
+   *
+   * @param size The number of entries in the segment's offset index.
+   * @param predicate The predicate into which to load released offsets.
+   */
+  void load(long size, OffsetPredicate predicate) {
+    for (int i = 0; i < bitmap.size(); i++) {
+      byte bits = bitmap.getByte(i);
+      if (bits != 0) {
+        limit = i + 1;
+        for (int j = 0; j < 8; j++) {
+          long offset = i * 8L + j;
+          if ((bits & (1 << j)) != 0 && offset < size) {
+            predicate.release(offset);
+          }
+        }
+      }
+    }
+    truncate(size);
+  }
+
+  /**
+   * Persists the release of the given offset.
+   *
+   * @param offset The offset of the released entry in the segment's offset index.
+   */
+  void release(long offset) {
+    int i = (int) (offset / 8);
+    if (offset >= 0 && i < bitmap.size()) {
+      bitmap.putByte(i, (byte) (bitmap.getByte(i) | (1 << (offset % 8))));
+      limit = Math.max(limit, i + 1);
+    }
+  }
+
+  /**
+   * Clears released offsets greater than or equal to the given size.
+   *
+   * @param size The number of entries remaining in the segment's offset index.
+   */
+  void truncate(long size) {
+    int i = (int) (size / 8);
+    if (i < limit) {
+      bitmap.putByte(i, (byte) (bitmap.getByte(i) & ((1 << (size % 8)) - 1)));
+      for (int j = i + 1; j < limit; j++) {
+        bitmap.putByte(j, (byte) 0);
+      }
+      limit = i + 1;
+    }
+  }
+
+  /**
+   * Closes the release file, unmapping the bitmap without syncing it to disk.
+   */
+  @Override
+  public void close() {
+    try {
+      bitmap.free();
+    } catch (RuntimeException e) {
+      throw new StorageException("failed to close segment release file: " + file, e);
+    }
+  }
+
+  /**
+   * Deletes the release file.
+   */
+  void delete() {
+    try {
+      Files.deleteIfExists(file.toPath());
+    } catch (IOException e) {
+      LOGGER.warn("Failed to delete segment release file: {}", file, e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[file=%s]", getClass().getSimpleName(), file.getName());
+  }
+
+}
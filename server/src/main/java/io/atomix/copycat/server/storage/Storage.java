@@ -68,6 +68,24 @@ public class Storage {
   private static final Duration DEFAULT_MINOR_COMPACTION_INTERVAL = Duration.ofMinutes(1);
   private static final Duration DEFAULT_MAJOR_COMPACTION_INTERVAL = Duration.ofHours(1);
   private static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+  private static final long DEFAULT_COMPACTION_RATE_LIMIT = 0;
+  private static final int DEFAULT_MAX_COMPACTION_SEGMENTS = Integer.MAX_VALUE;
+  private static final FlushMode DEFAULT_FLUSH_MODE = FlushMode.OS;
+  private static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofMillis(10);
+  private static final int DEFAULT_MAX_FLUSH_SIZE = 1024 * 1024;
+  private static final boolean DEFAULT_CHECKSUMS = false;
+  private static final boolean DEFAULT_VERIFY_CHECKSUMS = false;
+  private static final boolean DEFAULT_PREALLOCATE_SEGMENTS = false;
+  private static final boolean DEFAULT_PREALLOCATE_FILES = false;
+  private static final int DEFAULT_MAX_OPEN_SEGMENTS = 128;
+  private static final int DEFAULT_MAPPED_SEGMENTS = 2;
+  private static final int DEFAULT_RECOVERY_THREADS = Runtime.getRuntime().availableProcessors();
+  private static final int DEFAULT_ENTRY_CACHE_SIZE = 1024 * 1024;
+  private static final int DEFAULT_INDEX_INTERVAL = 1;
+  private static final boolean DEFAULT_COMPRESS_SEGMENTS = false;
+  private static final int DEFAULT_COMPRESSION_BLOCK_SIZE = 1024 * 64;
+  private static final int DEFAULT_BLOCK_CACHE_SIZE = 1024 * 1024 * 4;
+  private static final long DEFAULT_MAX_MEMORY_SIZE = 0;
 
   private StorageLevel storageLevel = StorageLevel.DISK;
   private File directory = new File(DEFAULT_DIRECTORY);
@@ -79,6 +97,25 @@ public class Storage {
   private Duration minorCompactionInterval = DEFAULT_MINOR_COMPACTION_INTERVAL;
   private Duration majorCompactionInterval = DEFAULT_MAJOR_COMPACTION_INTERVAL;
   private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+  private long compactionRateLimit = DEFAULT_COMPACTION_RATE_LIMIT;
+  private int maxCompactionSegments = DEFAULT_MAX_COMPACTION_SEGMENTS;
+  private FlushMode flushMode = DEFAULT_FLUSH_MODE;
+  private Duration flushInterval = DEFAULT_FLUSH_INTERVAL;
+  private int maxFlushSize = DEFAULT_MAX_FLUSH_SIZE;
+  private boolean checksums = DEFAULT_CHECKSUMS;
+  private boolean verifyChecksums = DEFAULT_VERIFY_CHECKSUMS;
+  private boolean preallocateSegments = DEFAULT_PREALLOCATE_SEGMENTS;
+  private boolean preallocateFiles = DEFAULT_PREALLOCATE_FILES;
+  private int maxOpenSegments = DEFAULT_MAX_OPEN_SEGMENTS;
+  private int mappedSegments = DEFAULT_MAPPED_SEGMENTS;
+  private int recoveryThreads = DEFAULT_RECOVERY_THREADS;
+  private int entryCacheSize = DEFAULT_ENTRY_CACHE_SIZE;
+  private int indexInterval = DEFAULT_INDEX_INTERVAL;
+  private boolean compressSegments = DEFAULT_COMPRESS_SEGMENTS;
+  private int compressionBlockSize = DEFAULT_COMPRESSION_BLOCK_SIZE;
+  private int blockCacheSize = DEFAULT_BLOCK_CACHE_SIZE;
+  private long maxMemorySize = DEFAULT_MAX_MEMORY_SIZE;
+  private final StorageMemory memory = new StorageMemory(this);
 
   public Storage() {
   }
@@ -230,8 +267,8 @@ public class Storage {
   /**
    * Returns the compaction threshold.
    * <p>
-   * The compaction threshold is used during {@link io.atomix.copycat.server.storage.compaction.Compaction#MINOR minor compaction}
-   * to determine the set of segments to compact.
+   * The compaction threshold is the fraction of a segment's bytes that must be released before the segment is
+   * compacted during {@link io.atomix.copycat.server.storage.compaction.Compaction#MINOR minor compaction}.
    *
    * @return The compaction threshold.
    */
@@ -239,6 +276,247 @@ public class Storage {
     return compactionThreshold;
   }
 
+  /**
+   * Returns the maximum number of bytes per second compaction may read and write.
+   * <p>
+   * Bytes appended to the log count against the same budget, so compaction is slowed while the log is under
+   * heavy write load.
+   *
+   * @return The compaction rate limit in bytes per second, or {@code 0} if compaction is not rate limited.
+   */
+  public long compactionRateLimit() {
+    return compactionRateLimit;
+  }
+
+  /**
+   * Returns the maximum number of segments rewritten by a single compaction.
+   * <p>
+   * Segments that are eligible for compaction but exceed the limit are compacted by later compactions.
+   *
+   * @return The maximum number of segments rewritten by a single compaction.
+   */
+  public int maxCompactionSegments() {
+    return maxCompactionSegments;
+  }
+
+  /**
+   * Returns the log flush mode.
+   * <p>
+   * The flush mode dictates when entries written to the {@link Log} are synced to disk and thus when they
+   * may be considered durable.
+   *
+   * @return The log flush mode.
+   */
+  public FlushMode flushMode() {
+    return flushMode;
+  }
+
+  /**
+   * Returns the maximum interval between group flushes.
+   * <p>
+   * The flush interval is used by the {@link FlushMode#GROUP} flush mode to bound the amount of time an
+   * appended entry may wait before being synced to disk.
+   *
+   * @return The maximum interval between group flushes.
+   */
+  public Duration flushInterval() {
+    return flushInterval;
+  }
+
+  /**
+   * Returns the maximum number of bytes to write between group flushes.
+   * <p>
+   * The maximum flush size is used by the {@link FlushMode#GROUP} flush mode to bound the number of bytes
+   * that may be written to the log before a flush is triggered, regardless of the {@link #flushInterval()}.
+   *
+   * @return The maximum number of bytes to write between group flushes.
+   */
+  public int maxFlushSize() {
+    return maxFlushSize;
+  }
+
+  /**
+   * Returns a boolean value indicating whether to write checksums for log entries.
+   * <p>
+   * When checksums are enabled, each entry written to a new {@link Segment} is stored with a CRC32 checksum of
+   * the entry header and value. Checksums are used to detect partially written entries when segments are
+   * loaded from disk after a crash. Existing segments retain the format with which they were written.
+   *
+   * @return Indicates whether to write checksums for log entries.
+   */
+  public boolean checksums() {
+    return checksums;
+  }
+
+  /**
+   * Returns a boolean value indicating whether to verify entry checksums when reading entries from the log.
+   * <p>
+   * Checksums are always verified when segments are loaded from disk. When checksum verification is enabled,
+   * checksums will additionally be verified each time an entry is read from a segment.
+   *
+   * @return Indicates whether to verify entry checksums when reading entries from the log.
+   */
+  public boolean verifyChecksums() {
+    return verifyChecksums;
+  }
+
+  /**
+   * Returns a boolean value indicating whether to preallocate the next log segment in the background.
+   * <p>
+   * When segment preallocation is enabled, the file, buffers, and indexes for the next {@link Segment} are
+   * allocated in a background thread before the current segment fills, so rolling over to a new segment only
+   * requires writing the new segment's descriptor.
+   *
+   * @return Indicates whether to preallocate the next log segment in the background.
+   */
+  public boolean preallocateSegments() {
+    return preallocateSegments;
+  }
+
+  /**
+   * Returns a boolean value indicating whether to preallocate segment files to the maximum segment size.
+   * <p>
+   * When file preallocation is enabled, new segment files are filled to {@link #maxSegmentSize()} before any
+   * entries are written to them, avoiding file system metadata updates as entries are appended. File preallocation
+   * only applies to {@link StorageLevel#DISK} and {@link StorageLevel#MAPPED} logs.
+   *
+   * @return Indicates whether to preallocate segment files to the maximum segment size.
+   */
+  public boolean preallocateFiles() {
+    return preallocateFiles;
+  }
+
+  /**
+   * Returns the maximum number of segments to keep open at any given time.
+   * <p>
+   * Segments of persistent logs that exceed the maximum number of open
+   * segments are closed in least recently used order and reopened the next time they're accessed. Closed segments
+   * hold only their descriptor, released entries, and the size of the segment in memory. Segments of
+   * {@link StorageLevel#MEMORY} logs are always open.
+   *
+   * @return The maximum number of segments to keep open at any given time.
+   */
+  public int maxOpenSegments() {
+    return maxOpenSegments;
+  }
+
+  /**
+   * Returns the number of recent segments to store in memory mapped files.
+   * <p>
+   * Segments of {@link StorageLevel#TIERED} logs are stored in memory mapped files while they're among the configured
+   * number of most recent segments in the log, including the current segment. Older segments are stored on disk as
+   * with {@link StorageLevel#DISK} logs. This option is ignored for all other storage levels.
+   *
+   * @return The number of recent segments to store in memory mapped files.
+   */
+  public int mappedSegments() {
+    return mappedSegments;
+  }
+
+  /**
+   * Returns the number of threads with which to load segments when the log is opened.
+   * <p>
+   * Loading a segment rebuilds the segment's in-memory indexes and validates the segment's entries. The recovery
+   * thread count dictates the number of segments that can be loaded in parallel.
+   *
+   * @return The number of threads with which to load segments when the log is opened.
+   */
+  public int recoveryThreads() {
+    return recoveryThreads;
+  }
+
+  /**
+   * Returns the maximum size in bytes of recently appended entries to cache in memory.
+   * <p>
+   * Entries are cached as they're appended to the log, and reads of cached entries are served from memory without
+   * reading or deserializing the entry from its segment. The size of the cache is calculated from the serialized
+   * size of each entry.
+   *
+   * @return The maximum size in bytes of the entry cache, or {@code 0} if the cache is disabled.
+   */
+  public int entryCacheSize() {
+    return entryCacheSize;
+  }
+
+  /**
+   * Returns the number of entries per entry stored in segment offset indexes.
+   * <p>
+   * Each segment indexes the position of its entries in memory. With an index interval of {@code 1}, the position
+   * of every entry is indexed. With greater intervals, only the position of every {@code n}th entry is indexed, and
+   * reading an entry that is not indexed requires scanning forward from the nearest indexed entry.
+   *
+   * @return The number of entries per entry stored in segment offset indexes.
+   */
+  public int indexInterval() {
+    return indexInterval;
+  }
+
+  /**
+   * Returns a boolean value indicating whether to compress sealed log segments.
+   * <p>
+   * When segment compression is enabled, segments of {@link StorageLevel#DISK} logs are rewritten as a sequence of
+   * compressed blocks once the log has rolled over to a later segment and all the entries in the segment have been
+   * committed. Segments are compressed during {@link io.atomix.copycat.server.storage.compaction.Compaction#MINOR
+   * minor compaction}. Segments of {@link StorageLevel#TIERED} logs are compressed once they're no longer among the
+   * {@link #mappedSegments() mapped segments}. Segments of {@link StorageLevel#MEMORY} and {@link StorageLevel#MAPPED}
+   * logs are never compressed.
+   *
+   * @return Indicates whether to compress sealed log segments.
+   */
+  public boolean compressSegments() {
+    return compressSegments;
+  }
+
+  /**
+   * Returns the uncompressed size in bytes of the blocks in which compressed segments are stored.
+   * <p>
+   * Entries in compressed segments are grouped into blocks of up to the configured block size, and each block is
+   * compressed independently. Reading an entry from a compressed segment requires decompressing the block in which
+   * the entry is stored.
+   *
+   * @return The uncompressed size in bytes of compressed segment blocks.
+   */
+  public int compressionBlockSize() {
+    return compressionBlockSize;
+  }
+
+  /**
+   * Returns the maximum size in bytes of decompressed blocks to cache in memory.
+   * <p>
+   * Blocks decompressed when reading entries from compressed segments are cached so that sequential reads of a
+   * compressed segment only decompress each block once.
+   *
+   * @return The maximum size in bytes of the block cache, or {@code 0} if the cache is disabled.
+   */
+  public int blockCacheSize() {
+    return blockCacheSize;
+  }
+
+  /**
+   * Returns the maximum number of bytes of memory storage buffers may consume.
+   * <p>
+   * The memory budget is shared by all the logs and snapshot stores opened from this storage configuration. Once
+   * the memory consumed by storage buffers exceeds the budget, the leader rejects commands with a retriable
+   * {@link io.atomix.copycat.error.CopycatError.Type#RESOURCE_EXHAUSTED_ERROR} until memory has been released.
+   *
+   * @return The memory budget in bytes, or {@code 0} if the budget is unlimited.
+   */
+  public long maxMemorySize() {
+    return maxMemorySize;
+  }
+
+  /**
+   * Returns the memory accounting for storage buffers.
+   * <p>
+   * The returned {@link StorageMemory} exposes the memory consumed by each storage component, e.g. segment buffers,
+   * offset indexes and caches, across all logs and snapshot stores opened from this storage configuration.
+   *
+   * @return The memory accounting for storage buffers.
+   */
+  public StorageMemory memory() {
+    return memory;
+  }
+
   /**
    * Opens a new {@link MetaStore}, recovering metadata from disk if it exists.
    * <p>
@@ -317,7 +595,7 @@ public class Storage {
    */
   public void deleteLog(String name) {
     StorageCleaner cleaner = new StorageCleaner(this);
-    cleaner.cleanFiles(f -> SegmentFile.isSegmentFile(name, f));
+    cleaner.cleanFiles(f -> SegmentFile.isSegmentFile(name, f) || SegmentFile.isIndexFile(name, f) || SegmentFile.isReleaseFile(name, f));
   }
 
   @Override
@@ -537,12 +815,14 @@ public class Storage {
     }
 
     /**
-     * Sets the percentage of entries in the segment that must be released before a segment can be compacted,
+     * Sets the fraction of the segment's bytes that must be released before a segment can be compacted,
      * returning the builder for method chaining.
      * <p>
      * The compaction threshold is used during {@link io.atomix.copycat.server.storage.compaction.Compaction#MINOR minor compaction}
-     * to determine the set of segments to compact. By default, the compaction threshold is {@code 0.5}. Increasing the
-     * compaction threshold will increase the number of {@link io.atomix.copycat.server.storage.entry.Entry entries} that
+     * to determine the set of segments to compact. By default, the compaction threshold is {@code 0.5}. The threshold
+     * applies to the size of released {@link io.atomix.copycat.server.storage.entry.Entry entries} rather than their
+     * count, so a segment from which half the entries have been released may not meet the threshold if the remaining
+     * entries are larger. Increasing the compaction threshold will increase the number of entries that
      * must be released from the segment before compaction and thus decrease the likelihood that a segment will be compacted.
      * Conversely, decreasing the compaction threshold will increase the frequency of compaction at the cost of unnecessary
      * I/O.
@@ -558,6 +838,332 @@ public class Storage {
       return this;
     }
 
+    /**
+     * Sets the maximum number of bytes per second compaction may read and write, returning the builder for method
+     * chaining.
+     * <p>
+     * Compaction tasks are paused between entries to limit the rate at which segments are rewritten. Appends to the
+     * log are never delayed by the rate limit, but the bytes appended are charged against the same budget so that
+     * compaction yields to the write path. By default, compaction is not rate limited.
+     *
+     * @param compactionRateLimit The compaction rate limit in bytes per second, or {@code 0} to disable rate limiting.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if {@code compactionRateLimit} is negative
+     */
+    public Builder withCompactionRateLimit(long compactionRateLimit) {
+      storage.compactionRateLimit = Assert.arg(compactionRateLimit, compactionRateLimit >= 0, "compactionRateLimit must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of segments rewritten by a single compaction, returning the builder for method chaining.
+     * <p>
+     * Bounding the number of segments compacted on each {@link #withMinorCompactionInterval(Duration) minor} and
+     * {@link #withMajorCompactionInterval(Duration) major} compaction interval spreads the cost of compacting a
+     * large backlog of segments over several intervals. Minor compaction compacts the segments that reclaim the most
+     * space first, and major compaction compacts the earliest segments in the log first. By default, the number of
+     * segments is unlimited.
+     *
+     * @param maxCompactionSegments The maximum number of segments rewritten by a single compaction.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if {@code maxCompactionSegments} is not positive
+     */
+    public Builder withMaxCompactionSegments(int maxCompactionSegments) {
+      storage.maxCompactionSegments = Assert.arg(maxCompactionSegments, maxCompactionSegments > 0, "maxCompactionSegments must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the log flush mode, returning the builder for method chaining.
+     * <p>
+     * The flush mode dictates when entries written to the {@link Log} are synced to disk. By default, the flush
+     * mode is {@link FlushMode#OS}, leaving flushing to the operating system. To ensure entries are persisted
+     * before they're acknowledged, use {@link FlushMode#ENTRY} or {@link FlushMode#GROUP}.
+     *
+     * @param flushMode The log flush mode.
+     * @return The storage builder.
+     * @throws NullPointerException if the flush mode is {@code null}
+     */
+    public Builder withFlushMode(FlushMode flushMode) {
+      storage.flushMode = Assert.notNull(flushMode, "flushMode");
+      return this;
+    }
+
+    /**
+     * Sets the maximum interval between group flushes, returning the builder for method chaining.
+     * <p>
+     * When the {@link FlushMode#GROUP} flush mode is used, entries appended to the log will be flushed to disk
+     * no later than the given interval after they're written. Increasing the flush interval allows more entries
+     * to share a single disk sync at the cost of increased commit latency. By default, the flush interval is
+     * {@code 10} milliseconds.
+     *
+     * @param interval The maximum interval between group flushes.
+     * @return The storage builder.
+     * @throws NullPointerException if the interval is null
+     * @throws IllegalArgumentException if the interval is negative
+     */
+    public Builder withFlushInterval(Duration interval) {
+      Assert.notNull(interval, "interval");
+      storage.flushInterval = Assert.argNot(interval, interval.isNegative(), "interval cannot be negative");
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of bytes to write between group flushes, returning the builder for method chaining.
+     * <p>
+     * When the {@link FlushMode#GROUP} flush mode is used, once the given number of bytes have been written to
+     * the log since the last flush a new flush will be triggered immediately rather than waiting for the
+     * {@link #withFlushInterval(Duration) flush interval} to elapse. By default, the maximum flush size is
+     * {@code 1024 * 1024}.
+     *
+     * @param maxFlushSize The maximum number of bytes to write between group flushes.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if the {@code maxFlushSize} is not positive
+     */
+    public Builder withMaxFlushSize(int maxFlushSize) {
+      storage.maxFlushSize = Assert.arg(maxFlushSize, maxFlushSize > 0, "maxFlushSize must be positive");
+      return this;
+    }
+
+    /**
+     * Enables checksums for log entries, returning the builder for method chaining.
+     * <p>
+     * When checksums are enabled, each entry written to the log is stored with a CRC32 checksum of the entry
+     * header and value. When segments are loaded from disk, the log will be truncated at the first entry whose
+     * checksum does not match, allowing entries that were partially written before a crash to be safely
+     * discarded.
+     *
+     * @return The storage builder.
+     */
+    public Builder withChecksums() {
+      return withChecksums(true);
+    }
+
+    /**
+     * Sets whether to write checksums for log entries, returning the builder for method chaining.
+     * <p>
+     * When checksums are enabled, each entry written to the log is stored with a CRC32 checksum of the entry
+     * header and value. When segments are loaded from disk, the log will be truncated at the first entry whose
+     * checksum does not match, allowing entries that were partially written before a crash to be safely
+     * discarded. By default, checksums are disabled.
+     *
+     * @param checksums Whether to write checksums for log entries.
+     * @return The storage builder.
+     */
+    public Builder withChecksums(boolean checksums) {
+      storage.checksums = checksums;
+      return this;
+    }
+
+    /**
+     * Sets whether to verify entry checksums when reading entries, returning the builder for method chaining.
+     * <p>
+     * When checksum verification is enabled, the checksum of each entry read from a checksummed segment will be
+     * verified, and a {@link StorageException} will be thrown if the checksum does not match. By default,
+     * checksums are only verified when segments are loaded from disk.
+     *
+     * @param verifyChecksums Whether to verify entry checksums when reading entries.
+     * @return The storage builder.
+     */
+    public Builder withVerifyChecksums(boolean verifyChecksums) {
+      storage.verifyChecksums = verifyChecksums;
+      return this;
+    }
+
+    /**
+     * Sets whether to preallocate the next log segment in the background, returning the builder for method chaining.
+     * <p>
+     * When segment preallocation is enabled, the file, buffers, and indexes for the next segment are allocated in
+     * a background thread so rolling over to a new segment does not block appends. By default, segments are
+     * allocated when the log rolls over to a new segment.
+     *
+     * @param preallocateSegments Whether to preallocate the next log segment in the background.
+     * @return The storage builder.
+     */
+    public Builder withPreallocateSegments(boolean preallocateSegments) {
+      storage.preallocateSegments = preallocateSegments;
+      return this;
+    }
+
+    /**
+     * Sets whether to preallocate segment files to the maximum segment size, returning the builder for method chaining.
+     * <p>
+     * When file preallocation is enabled, new segment files are extended to the maximum segment size before entries
+     * are written to them. Segment files {@link #withPreallocateSegments(boolean) preallocated} in the background are
+     * also filled with zeros and synced to disk. Because filling a file may be expensive, segment files allocated
+     * synchronously are only extended, so file preallocation should typically be used in combination with segment
+     * preallocation. By default, segment files grow as entries are written to them.
+     *
+     * @param preallocateFiles Whether to preallocate segment files to the maximum segment size.
+     * @return The storage builder.
+     */
+    public Builder withPreallocateFiles(boolean preallocateFiles) {
+      storage.preallocateFiles = preallocateFiles;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of segments to keep open at any given time, returning the builder for method chaining.
+     * <p>
+     * Each open segment of a persistent log holds file handles for the segment and its index files along with an
+     * in-memory index of the segment's entries. When the number of open segments exceeds the configured maximum,
+     * the least recently used segments are closed and reopened the next time they're read. The current segment
+     * is never closed. Segments of {@link StorageLevel#MEMORY} logs are always open.
+     * <p>
+     * By default, up to {@code 128} segments are kept open.
+     *
+     * @param maxOpenSegments The maximum number of segments to keep open at any given time.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if {@code maxOpenSegments} is not positive
+     */
+    public Builder withMaxOpenSegments(int maxOpenSegments) {
+      Assert.arg(maxOpenSegments > 0, "max open segments must be positive");
+      storage.maxOpenSegments = maxOpenSegments;
+      return this;
+    }
+
+    /**
+     * Sets the number of recent segments to store in memory mapped files, returning the builder for method chaining.
+     * <p>
+     * When the {@link StorageLevel#TIERED} storage level is used, the current segment and the most recent segments
+     * up to the configured number of segments are memory mapped for fast appends and reads from the tail of the log.
+     * Once the log rolls over to a new segment, segments that are no longer among the most recent segments are
+     * reopened from disk the next time they're accessed. By default, the {@code 2} most recent segments are mapped.
+     *
+     * @param mappedSegments The number of recent segments to store in memory mapped files.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if {@code mappedSegments} is not positive
+     */
+    public Builder withMappedSegments(int mappedSegments) {
+      storage.mappedSegments = Assert.arg(mappedSegments, mappedSegments > 0, "mappedSegments must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the number of threads with which to load segments when the log is opened, returning the builder for
+     * method chaining.
+     * <p>
+     * Segments are loaded in parallel when the log is opened, and conflicts between segments are resolved once
+     * all segments have been loaded. By default, the log uses {@code Runtime.getRuntime().availableProcessors()}
+     * recovery threads.
+     *
+     * @param recoveryThreads The number of segment recovery threads.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if {@code recoveryThreads} is not positive
+     */
+    public Builder withRecoveryThreads(int recoveryThreads) {
+      storage.recoveryThreads = Assert.arg(recoveryThreads, recoveryThreads > 0, "recoveryThreads must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the maximum size in bytes of recently appended entries to cache in memory, returning the builder for
+     * method chaining.
+     * <p>
+     * The entry cache holds the most recently appended entries so that reads of the tail of the log, e.g. when
+     * replicating and applying newly appended entries, are served without deserializing entries from disk. Cached
+     * entries are evicted in the order in which they were appended once the serialized size of all cached entries
+     * exceeds the cache size. By default, the cache size is {@code 1MB}. A cache size of {@code 0} disables the cache.
+     *
+     * @param entryCacheSize The maximum size in bytes of the entry cache.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if {@code entryCacheSize} is negative
+     */
+    public Builder withEntryCacheSize(int entryCacheSize) {
+      storage.entryCacheSize = Assert.arg(entryCacheSize, entryCacheSize >= 0, "entryCacheSize must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the number of entries per entry stored in segment offset indexes, returning the builder for method
+     * chaining.
+     * <p>
+     * Segment offset indexes consume 12 bytes of memory per indexed entry, so indexing every entry in a segment with
+     * {@code 1024 * 1024} entries consumes {@code 12MB} of memory. An index interval of {@code n} stores only every
+     * {@code n}th entry in the index, reducing the memory consumed by indexes by a factor of {@code n}. Entries that
+     * are not indexed are located by scanning at most {@code n - 1} entries forward from the nearest indexed entry.
+     * Sequential readers scan forward from the last entry read and therefore remain unaffected by the interval. By
+     * default, every entry is indexed.
+     *
+     * @param indexInterval The number of entries per entry stored in segment offset indexes.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if {@code indexInterval} is not positive
+     */
+    public Builder withIndexInterval(int indexInterval) {
+      storage.indexInterval = Assert.arg(indexInterval, indexInterval > 0, "indexInterval must be positive");
+      return this;
+    }
+
+    /**
+     * Sets whether to compress sealed log segments, returning the builder for method chaining.
+     * <p>
+     * When segment compression is enabled, segments of {@link StorageLevel#DISK} and {@link StorageLevel#TIERED}
+     * logs are rewritten as a sequence of independently compressed blocks once all the entries in the segment have
+     * been committed and the log has rolled over to a later segment. Compressed segments reduce disk usage for logs
+     * with repetitive entries at the cost of decompressing blocks when entries are read from older segments. By
+     * default, segments are not compressed.
+     *
+     * @param compressSegments Whether to compress sealed log segments.
+     * @return The storage builder.
+     */
+    public Builder withCompressSegments(boolean compressSegments) {
+      storage.compressSegments = compressSegments;
+      return this;
+    }
+
+    /**
+     * Sets the uncompressed size in bytes of compressed segment blocks, returning the builder for method chaining.
+     * <p>
+     * Larger blocks generally compress better, but reading a single entry requires decompressing the entire block
+     * in which it's stored. Entries are never split across blocks, so entries larger than the block size are stored
+     * in blocks of their own. By default, the block size is {@code 64KB}.
+     *
+     * @param compressionBlockSize The uncompressed size in bytes of compressed segment blocks.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if {@code compressionBlockSize} is not positive
+     */
+    public Builder withCompressionBlockSize(int compressionBlockSize) {
+      storage.compressionBlockSize = Assert.arg(compressionBlockSize, compressionBlockSize > 0, "compressionBlockSize must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the maximum size in bytes of decompressed blocks to cache in memory, returning the builder for method
+     * chaining.
+     * <p>
+     * Decompressed blocks are evicted in least recently used order once the size of all cached blocks exceeds the
+     * cache size. By default, the cache size is {@code 4MB}. A cache size of {@code 0} disables the cache.
+     *
+     * @param blockCacheSize The maximum size in bytes of the block cache.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if {@code blockCacheSize} is negative
+     */
+    public Builder withBlockCacheSize(int blockCacheSize) {
+      storage.blockCacheSize = Assert.arg(blockCacheSize, blockCacheSize >= 0, "blockCacheSize must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of bytes of memory storage buffers may consume, returning the builder for method
+     * chaining.
+     * <p>
+     * Memory is accounted for segment buffers stored in memory, i.e. the segments of {@link StorageLevel#MEMORY} logs,
+     * segment offset indexes, released-entry bit arrays, the entry and block caches, and in-memory snapshots. Memory
+     * mapped segments are reported by {@link StorageMemory} but don't count towards the budget since their pages are
+     * backed by files and can be reclaimed by the operating system. Memory is accounted rather than reserved, so
+     * storage buffers may exceed the budget during a write burst, but the leader rejects new commands with a
+     * retriable error while the budget is exhausted. By default, the memory budget is unlimited.
+     *
+     * @param maxMemorySize The maximum number of bytes of memory storage buffers may consume, or {@code 0} for an
+     *                      unlimited budget.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if {@code maxMemorySize} is negative
+     */
+    public Builder withMaxMemorySize(long maxMemorySize) {
+      storage.maxMemorySize = Assert.arg(maxMemorySize, maxMemorySize >= 0, "maxMemorySize must not be negative");
+      return this;
+    }
+
     /**
      * Builds the {@link Storage} object.
      *
@@ -59,6 +59,19 @@ public enum StorageLevel {
    * event of a failure or other restart. Additionally, the use of persistent storage levels reduces the amount of overhead
    * required to catch the log up at startup.
    */
-  DISK
+  DISK,
+
+  /**
+   * Stores recent segments in memory mapped files and older segments on disk.
+   * <p>
+   * Tiered logs write the current {@link Segment} and up to {@link Storage#mappedSegments()} of the most recent
+   * segments to memory mapped files backed by {@link io.atomix.catalyst.buffer.MappedBuffer}, so appends and reads
+   * from the tail of the log benefit from the performance of {@link #MAPPED} storage. As the log rolls over to new
+   * segments, older segments are demoted to {@link io.atomix.catalyst.buffer.FileBuffer} storage and are read from
+   * disk as with {@link #DISK} storage, ensuring the memory mapped portion of the log remains bounded regardless of
+   * the size of the log. Segments of tiered logs are stored in the same format as {@code DISK} segments and are
+   * recovered in the same manner.
+   */
+  TIERED
 
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.util.Assert;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accounts for the memory consumed by storage buffers.
+ * <p>
+ * Each {@link Storage} configuration shares a single memory budget between all the logs and snapshot stores opened
+ * from it. Storage components report the memory consumed by their buffers as buffers are allocated, grow, and are
+ * released, and the memory consumed by each {@link Component} can be read via {@link #size(Component)}. Memory is
+ * accounted, not reserved: components continue to allocate memory once the budget has been exhausted, and it's the
+ * responsibility of the server to apply backpressure to clients while the budget is {@link #isExhausted() exhausted}.
+ * <p>
+ * Pages of memory mapped segments are backed by their files and can be reclaimed by the operating system at any
+ * time, so they're accounted as the {@link Component#MAPPED_SEGMENTS} component but don't count towards the budget.
+ * <pre>
+ *   {@code
+ *   StorageMemory memory = storage.memory();
+ *   long segments = memory.size(StorageMemory.Component.SEGMENTS);
+ *   }
+ * </pre>
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public final class StorageMemory {
+
+  /**
+   * Storage components for which memory is accounted.
+   */
+  public enum Component {
+
+    /**
+     * Segment buffers stored in memory.
+     */
+    SEGMENTS(true),
+
+    /**
+     * Memory mapped segment files. Mapped segments don't count towards the memory budget.
+     */
+    MAPPED_SEGMENTS(false),
+
+    /**
+     * Segment offset indexes.
+     */
+    INDEXES(true),
+
+    /**
+     * Released-entry bit arrays of segments.
+     */
+    PREDICATES(true),
+
+    /**
+     * Cached entries.
+     */
+    ENTRY_CACHE(true),
+
+    /**
+     * Cached decompressed blocks of compressed segments.
+     */
+    BLOCK_CACHE(true),
+
+    /**
+     * In-memory snapshots.
+     */
+    SNAPSHOTS(true);
+
+    private final boolean budgeted;
+
+    Component(boolean budgeted) {
+      this.budgeted = budgeted;
+    }
+
+    /**
+     * Returns a boolean indicating whether the component's memory counts towards the memory budget.
+     *
+     * @return Indicates whether the component's memory counts towards the memory budget.
+     */
+    public boolean isBudgeted() {
+      return budgeted;
+    }
+  }
+
+  private final Storage storage;
+  private final AtomicLong size = new AtomicLong();
+  private final AtomicLong[] sizes = new AtomicLong[Component.values().length];
+
+  StorageMemory(Storage storage) {
+    this.storage = Assert.notNull(storage, "storage");
+    for (int i = 0; i < sizes.length; i++) {
+      sizes[i] = new AtomicLong();
+    }
+  }
+
+  /**
+   * Returns the maximum number of bytes of memory storage buffers may consume.
+   *
+   * @return The memory budget in bytes, or {@code 0} if the budget is unlimited.
+   */
+  public long maxSize() {
+    return storage.maxMemorySize();
+  }
+
+  /**
+   * Returns the number of bytes of memory consumed by all storage components that count towards the budget.
+   *
+   * @return The number of bytes of memory consumed by storage buffers, excluding memory mapped segments.
+   */
+  public long size() {
+    return size.get();
+  }
+
+  /**
+   * Returns the number of bytes of memory consumed by the given storage component.
+   *
+   * @param component The component for which to return the memory consumed.
+   * @return The number of bytes of memory consumed by the component.
+   * @throws NullPointerException if {@code component} is null
+   */
+  public long size(Component component) {
+    return sizes[Assert.notNull(component, "component").ordinal()].get();
+  }
+
+  /**
+   * Returns a boolean value indicating whether the memory budget has been exhausted.
+   *
+   * @return Indicates whether storage buffers consume at least the maximum number of bytes of memory.
+   */
+  public boolean isExhausted() {
+    long maxSize = maxSize();
+    return maxSize > 0 && size.get() >= maxSize;
+  }
+
+  /**
+   * Accounts for memory allocated by the given component.
+   *
+   * @param component The component that allocated memory.
+   * @param bytes The number of bytes allocated.
+   */
+  public void allocate(Component component, long bytes) {
+    if (bytes != 0) {
+      sizes[component.ordinal()].addAndGet(bytes);
+      if (component.budgeted) {
+        size.addAndGet(bytes);
+      }
+    }
+  }
+
+  /**
+   * Accounts for memory released by the given component.
+   *
+   * @param component The component that released memory.
+   * @param bytes The number of bytes released.
+   */
+  public void release(Component component, long bytes) {
+    allocate(component, -bytes);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder(getClass().getSimpleName()).append("[size=").append(size()).append(", maxSize=").append(maxSize());
+    for (Component component : Component.values()) {
+      builder.append(", ").append(component.name().toLowerCase()).append('=').append(size(component));
+    }
+    return builder.append(']').toString();
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage.compaction;
+
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.Segment;
+import io.atomix.copycat.server.storage.SegmentManager;
+import io.atomix.copycat.server.storage.Storage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ranks log {@link Segment}s by the cost and benefit of compacting them.
+ * <p>
+ * Compacting a segment reads the entire segment and copies its live entries to a new segment, and reclaims the space
+ * consumed by its released entries. The selector scores each segment with a cost/benefit ratio:
+ * <pre>
+ *   {@code
+ *   score = garbage * age / (1 + live)
+ *   }
+ * </pre>
+ * where {@code garbage} is the {@link #garbageRatio(Segment) fraction} of the segment's bytes that have been
+ * {@link Segment#releaseSize() released}, {@code live} is the remaining fraction of the segment that must be copied, and {@code age} is
+ * {@code 1 + n / maxEntries} where {@code n} is the number of entries committed to the log after the segment's last
+ * entry. Segments with more garbage are cheaper to compact and reclaim more space, and older segments are less likely
+ * to accumulate more garbage if compaction is delayed, so both are compacted first.
+ * <p>
+ * A segment is only {@link #isCompactable(Segment) compactable} once its garbage ratio meets the configured
+ * {@link Storage#compactionThreshold()}. Scores are exposed to operators via {@link Compactor#scores()}.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+public final class CompactionSelector {
+  private final Storage storage;
+  private final SegmentManager manager;
+
+  CompactionSelector(Storage storage, SegmentManager manager) {
+    this.storage = Assert.notNull(storage, "storage");
+    this.manager = Assert.notNull(manager, "manager");
+  }
+
+  /**
+   * Returns the fraction of the bytes in the given segment that have been released.
+   *
+   * @param segment The segment for which to return the garbage ratio.
+   * @return The fraction of the segment that has been released, between {@code 0} and {@code 1}.
+   */
+  public double garbageRatio(Segment segment) {
+    long releaseSize = segment.releaseSize();
+    long size = releaseSize + segment.liveSize();
+    return size > 0 ? releaseSize / (double) size : 0;
+  }
+
+  /**
+   * Returns the cost/benefit score of compacting the given segment.
+   *
+   * @param segment The segment for which to return the score.
+   * @return The score of the segment. Segments with greater scores are compacted first.
+   */
+  public double score(Segment segment) {
+    double garbage = garbageRatio(segment);
+    double age = 1 + Math.max(manager.commitIndex() - segment.lastIndex(), 0) / (double) segment.descriptor().maxEntries();
+    return garbage * age / (2 - garbage);
+  }
+
+  /**
+   * Returns a boolean value indicating whether the given segment has accumulated enough garbage to be compacted.
+   *
+   * @param segment The segment to check.
+   * @return Indicates whether the segment's garbage ratio meets the compaction threshold.
+   */
+  public boolean isCompactable(Segment segment) {
+    return garbageRatio(segment) >= storage.compactionThreshold();
+  }
+
+  /**
+   * Selects the compactable segments with the greatest scores from the given segments.
+   *
+   * @param segments The segments from which to select segments to compact.
+   * @param maxSegments The maximum number of segments to select.
+   * @return The selected segments in order of decreasing score.
+   */
+  List<Segment> select(List<Segment> segments, int maxSegments) {
+    // Scores are computed once per segment since they change as entries are released and committed.
+    Map<Segment, Double> scores = new IdentityHashMap<>();
+    for (Segment segment : segments) {
+      if (isCompactable(segment)) {
+        scores.put(segment, score(segment));
+      }
+    }
+    List<Segment> selected = new ArrayList<>(scores.keySet());
+    selected.sort(Comparator.comparingDouble(scores::get).reversed());
+    return selected.size() > maxSegments ? selected.subList(0, maxSegments) : selected;
+  }
+
+  /**
+   * Returns the scores of all the segments in the log.
+   */
+  Map<Long, Double> scores() {
+    Map<Long, Double> scores = new LinkedHashMap<>();
+    for (Segment segment : manager.segments()) {
+      scores.put(segment.descriptor().id(), score(segment));
+    }
+    return scores;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[threshold=%s]", getClass().getSimpleName(), storage.compactionThreshold());
+  }
+
+}
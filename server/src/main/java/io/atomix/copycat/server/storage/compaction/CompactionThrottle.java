@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage.compaction;
+
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.Storage;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the rate at which {@link CompactionTask}s read and write segments.
+ * <p>
+ * The throttle allows compaction tasks to consume up to the configured {@link Storage#compactionRateLimit()} bytes
+ * per second, allowing bursts of up to one second's worth of bytes. Compaction tasks acquire the size of each entry
+ * from the throttle once as it's read and are paused until enough bytes are available. Bytes written by the foreground
+ * write path are {@link #foreground(long) charged} against the same budget without ever being delayed, so compaction
+ * slows down while the log is under heavy write load. The debt incurred by foreground writes is limited to one
+ * second's worth of bytes, so compaction is slowed but never starved by a sustained write load.
+ * <p>
+ * Compaction can also be {@link #pause() paused} and {@link #resume() resumed} explicitly. Paused compaction tasks
+ * stop between entries until the throttle is resumed.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+public final class CompactionThrottle {
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  private final long rate;
+  private final LongSupplier ticker;
+  private final AtomicLong foreground = new AtomicLong();
+  private long available;
+  private long lastRefill;
+  private boolean paused;
+  private boolean closed;
+
+  CompactionThrottle(long rate) {
+    this(rate, System::nanoTime);
+  }
+
+  /**
+   * @param rate The maximum number of bytes per second compaction may read and write.
+   * @param ticker The source of the current time in nanoseconds.
+   */
+  CompactionThrottle(long rate, LongSupplier ticker) {
+    this.rate = Assert.arg(rate, rate >= 0, "rate must not be negative");
+    this.ticker = Assert.notNull(ticker, "ticker");
+    this.available = rate;
+    this.lastRefill = ticker.getAsLong();
+  }
+
+  /**
+   * Returns the maximum number of bytes per second compaction may read and write.
+   *
+   * @return The compaction rate limit in bytes per second, or {@code 0} if compaction is not rate limited.
+   */
+  public long rate() {
+    return rate;
+  }
+
+  /**
+   * Pauses compaction.
+   * <p>
+   * Running compaction tasks will be paused before reading their next entry.
+   */
+  public synchronized void pause() {
+    paused = true;
+  }
+
+  /**
+   * Resumes compaction.
+   */
+  public synchronized void resume() {
+    paused = false;
+    notifyAll();
+  }
+
+  /**
+   * Returns a boolean value indicating whether compaction is paused.
+   *
+   * @return Indicates whether compaction is paused.
+   */
+  public synchronized boolean isPaused() {
+    return paused;
+  }
+
+  /**
+   * Charges bytes written by the foreground write path against the compaction budget.
+   * <p>
+   * This method never blocks.
+   *
+   * @param bytes The number of bytes written.
+   */
+  public void foreground(long bytes) {
+    if (rate > 0) {
+      foreground.addAndGet(bytes);
+    }
+  }
+
+  /**
+   * Acquires the given number of bytes for compaction, blocking while compaction is paused or the budget is
+   * exhausted.
+   * <p>
+   * Bytes are acquired as long as the budget is not overdrawn, so entries larger than the budget do not block
+   * compaction indefinitely. If the calling thread is interrupted, the bytes are acquired immediately.
+   *
+   * @param bytes The number of bytes to acquire.
+   */
+  synchronized void acquire(long bytes) {
+    try {
+      while (!closed) {
+        if (paused) {
+          wait();
+        } else {
+          long delay = tryAcquire(bytes);
+          if (delay == 0) {
+            return;
+          }
+          TimeUnit.NANOSECONDS.timedWait(this, delay);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Attempts to acquire the given number of bytes for compaction without blocking.
+   *
+   * @param bytes The number of bytes to acquire.
+   * @return {@code 0} if the bytes were acquired, otherwise the number of nanoseconds until the budget is refilled.
+   */
+  synchronized long tryAcquire(long bytes) {
+    if (rate == 0) {
+      return 0;
+    }
+    refill();
+    if (available > 0) {
+      available -= bytes;
+      return 0;
+    }
+    // Wait until at least one byte is available.
+    return Math.max(saturatedMultiply(-available, NANOS_PER_SECOND) / rate + NANOS_PER_SECOND / rate, 1);
+  }
+
+  /**
+   * Refills the budget according to the time elapsed since the last refill and charges foreground writes.
+   */
+  private void refill() {
+    long now = ticker.getAsLong();
+    long elapsed = Math.min(now - lastRefill, NANOS_PER_SECOND);
+    // Compute elapsed * rate / NANOS_PER_SECOND without overflowing for rates of several gigabytes per second.
+    long bytes = rate / NANOS_PER_SECOND * elapsed + rate % NANOS_PER_SECOND * elapsed / NANOS_PER_SECOND;
+    if (bytes > 0) {
+      available = available > rate - bytes ? rate : available + bytes;
+      lastRefill = now;
+    }
+    // Foreground writes never overdraw the budget by more than one second's worth of bytes.
+    available = Math.max(available - foreground.getAndSet(0), Math.min(available, -rate));
+  }
+
+  /**
+   * Multiplies two non-negative values, saturating at {@link Long#MAX_VALUE} rather than overflowing.
+   */
+  private static long saturatedMultiply(long a, long b) {
+    return a != 0 && b > Long.MAX_VALUE / a ? Long.MAX_VALUE : a * b;
+  }
+
+  /**
+   * Closes the throttle, releasing any paused or throttled compaction tasks.
+   */
+  synchronized void close() {
+    closed = true;
+    notifyAll();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("%s[rate=%d, paused=%b]", getClass().getSimpleName(), rate, paused);
+  }
+
+}
@@ -25,6 +25,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -46,6 +47,11 @@ import java.util.concurrent.atomic.AtomicInteger;
  * are run in parallel in the compaction thread pool. However, the compactor will not allow multiple compaction
  * executions to run in parallel. If a compaction is attempted while another compaction is already running,
  * it will be ignored.
+ * <p>
+ * Compaction tasks read and write segments through the compactor's {@link CompactionThrottle}, which limits
+ * compaction to the configured {@link Storage#compactionRateLimit()} and allows compaction to be paused and
+ * resumed between entries. Each compaction rewrites at most {@link Storage#maxCompactionSegments()} segments,
+ * so a large backlog of segments is compacted incrementally over several compaction intervals.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
@@ -54,6 +60,8 @@ public class Compactor implements AutoCloseable {
   private final Storage storage;
   private final SegmentManager segments;
   private final ScheduledExecutorService executor;
+  private final CompactionThrottle throttle;
+  private final CompactionSelector selector;
   private long minorIndex;
   private long majorIndex;
   private long snapshotIndex;
@@ -67,10 +75,47 @@ public class Compactor implements AutoCloseable {
     this.storage = Assert.notNull(storage, "storage");
     this.segments = Assert.notNull(segments, "segments");
     this.executor = Assert.notNull(executor, "executor");
+    this.throttle = new CompactionThrottle(storage.compactionRateLimit());
+    this.selector = new CompactionSelector(storage, segments);
     minor = executor.scheduleAtFixedRate(() -> compact(Compaction.MINOR), storage.minorCompactionInterval().toMillis(), storage.minorCompactionInterval().toMillis(), TimeUnit.MILLISECONDS);
     major = executor.scheduleAtFixedRate(() -> compact(Compaction.MAJOR), storage.majorCompactionInterval().toMillis(), storage.majorCompactionInterval().toMillis(), TimeUnit.MILLISECONDS);
   }
 
+  /**
+   * Returns the compaction throttle.
+   * <p>
+   * The throttle can be used to {@link CompactionThrottle#pause() pause} and {@link CompactionThrottle#resume() resume}
+   * running compaction tasks.
+   *
+   * @return The compaction throttle.
+   */
+  public CompactionThrottle throttle() {
+    return throttle;
+  }
+
+  /**
+   * Returns the compaction selector.
+   * <p>
+   * The selector ranks segments by the cost and benefit of compacting them.
+   *
+   * @return The compaction selector.
+   */
+  public CompactionSelector selector() {
+    return selector;
+  }
+
+  /**
+   * Returns the compaction scores of all the segments in the log.
+   * <p>
+   * Scores are computed by the {@link CompactionSelector} at the time of the call. Segments with greater scores
+   * are compacted first.
+   *
+   * @return The compaction score of each segment in the log, keyed by segment ID in log order.
+   */
+  public Map<Long, Double> scores() {
+    return selector.scores();
+  }
+
   /**
    * Sets the default compaction mode.
    *
@@ -239,6 +284,9 @@ public class Compactor implements AutoCloseable {
     if (major != null)
       major.cancel(false);
 
+    // Release paused and throttled tasks to allow them to complete.
+    throttle.close();
+
     executor.shutdown();
     try {
       executor.awaitTermination(30, TimeUnit.SECONDS);
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.storage.compaction;
+
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.Segment;
+import io.atomix.copycat.server.storage.SegmentDescriptor;
+import io.atomix.copycat.server.storage.SegmentManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+
+/**
+ * Rewrites a sealed log {@link Segment} in compressed blocks to reduce disk usage.
+ * <p>
+ * The compression task rewrites all the entries in a segment without removing any entries. As with
+ * {@link MinorCompactionTask}, the compressed segment is created with the same starting index as the segment being
+ * compressed and the next greatest version number, and the compressed segment is {@link SegmentDescriptor#lock()
+ * locked} only once all the segment's entries have been written to it. If a failure occurs during compression,
+ * the unlocked compressed segment will be discarded when the log is recovered and the uncompressed segment will
+ * be used.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+public final class CompressionTask implements CompactionTask {
+  private static final Logger LOGGER = LoggerFactory.getLogger(CompressionTask.class);
+  private final SegmentManager manager;
+  private final Segment segment;
+  private final CompactionThrottle throttle;
+
+  CompressionTask(SegmentManager manager, Segment segment, CompactionThrottle throttle) {
+    this.manager = Assert.notNull(manager, "manager");
+    this.segment = Assert.notNull(segment, "segment");
+    this.throttle = Assert.notNull(throttle, "throttle");
+  }
+
+  @Override
+  public void run() {
+    // The segment is compressed in a single pass, so the entire segment is charged to the throttle up front.
+    throttle.acquire(segment.size());
+    Segment compressedSegment = manager.compressSegment(segment);
+
+    // Replace the old segment with the compressed segment.
+    manager.replaceSegments(Collections.singletonList(segment), compressedSegment);
+
+    // Update the new segment with offsets that were released from the old segment.
+    for (long i = segment.firstIndex(); i <= segment.lastIndex(); i++) {
+      if (!segment.isLive(i)) {
+        compressedSegment.release(i);
+      }
+    }
+
+    LOGGER.debug("Compressed segment {}", segment.descriptor().id());
+
+    // Delete the old segment once it's no longer in use by readers.
+    manager.retireSegments(Collections.singletonList(segment));
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName();
+  }
+
+}
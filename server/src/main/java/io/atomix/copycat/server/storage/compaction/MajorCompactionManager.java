@@ -19,19 +19,21 @@ import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.server.storage.Segment;
 import io.atomix.copycat.server.storage.SegmentManager;
 import io.atomix.copycat.server.storage.Storage;
+import io.atomix.copycat.server.storage.util.OffsetPredicate;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Builds tasks for the {@link Compaction#MAJOR} compaction process.
  * <p>
  * Major compaction works by iterating through all committed {@link Segment}s in the log and rewriting and
- * combining segments to compact them together. Because of the sequential nature of major compaction, the major
- * compaction manager builds only a single {@link MajorCompactionTask} which will rewrite the log sequentially.
- * Segments are provided to the major compaction task in groups that indicate which segments to combine. A set
+ * combining segments to compact them together. The major compaction manager builds a {@link MajorCompactionTask} for
+ * each group of segments to combine, and groups are rewritten in parallel in the compaction thread pool. Because of
+ * the sequential nature of major compaction, each task only swaps its compact segment into the log once the preceding
+ * group has been swapped, and the released entries of all groups are captured before any task is run. A set
  * of segments can be combined if they meet the following criteria:
  * <ul>
  *   <li>The entries in the set of segments are sequential; there are no missing segments in the set
@@ -39,6 +41,9 @@ import java.util.List;
  *   <li>The combined size of all segments in the set is less than the configured {@link Storage#maxSegmentSize()}</li>
  *   <li>The combined number of entries after compaction is less than the configured {@link Storage#maxEntriesPerSegment()}</li>
  * </ul>
+ * <p>
+ * Groups consisting of a single segment with no released entries are skipped since rewriting them would reclaim
+ * no space.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
@@ -51,8 +56,67 @@ public final class MajorCompactionManager implements CompactionManager {
 
   @Override
   public List<CompactionTask> buildTasks(Storage storage, SegmentManager segments) {
-    List<List<Segment>> groups = getCompactableGroups(storage, segments);
-    return !groups.isEmpty() ? Collections.singletonList(new MajorCompactionTask(segments, groups, compactor.snapshotIndex(), compactor.majorIndex(), compactor.getDefaultCompactionMode())) : Collections.emptyList();
+    List<List<Segment>> groups = limitGroups(removeLiveGroups(getCompactableGroups(storage, segments)), storage.maxCompactionSegments());
+
+    // Copy the offset predicates of all groups prior to compacting any segments to prevent race conditions.
+    List<List<OffsetPredicate>> predicates = copyPredicates(groups);
+
+    List<CompactionTask> tasks = new ArrayList<>(groups.size());
+    CompletableFuture<Void> previous = CompletableFuture.completedFuture(null);
+    for (int i = 0; i < groups.size(); i++) {
+      MajorCompactionTask task = new MajorCompactionTask(segments, groups.get(i), predicates.get(i), compactor.throttle(), previous, compactor.snapshotIndex(), compactor.majorIndex(), compactor.getDefaultCompactionMode());
+      tasks.add(task);
+      previous = task.swapped();
+    }
+    return tasks;
+  }
+
+  /**
+   * Removes groups that consist of a single segment with no released entries.
+   * <p>
+   * Rewriting such a segment would neither remove any entries nor combine any segments, so the segment is skipped.
+   * Skipping a group does not violate the sequential ordering of major compaction since no entries would be removed
+   * from the group.
+   */
+  private List<List<Segment>> removeLiveGroups(List<List<Segment>> groups) {
+    List<List<Segment>> compactableGroups = new ArrayList<>(groups.size());
+    for (List<Segment> group : groups) {
+      if (group.size() > 1 || compactor.selector().garbageRatio(group.get(0)) > 0) {
+        compactableGroups.add(group);
+      }
+    }
+    return compactableGroups;
+  }
+
+  /**
+   * Limits the given groups to the earliest groups in the log containing at most the given number of segments.
+   * <p>
+   * At least one group is always compacted. Later groups are left to be compacted by later major compactions.
+   */
+  private List<List<Segment>> limitGroups(List<List<Segment>> groups, int maxSegments) {
+    int segments = 0;
+    for (int i = 0; i < groups.size(); i++) {
+      segments += groups.get(i).size();
+      if (segments > maxSegments) {
+        return groups.subList(0, Math.max(i, 1));
+      }
+    }
+    return groups;
+  }
+
+  /**
+   * Creates a copy of the offset predicates of the given groups of segments.
+   */
+  private List<List<OffsetPredicate>> copyPredicates(List<List<Segment>> groups) {
+    List<List<OffsetPredicate>> predicates = new ArrayList<>(groups.size());
+    for (List<Segment> group : groups) {
+      List<OffsetPredicate> groupPredicates = new ArrayList<>(group.size());
+      for (Segment segment : group) {
+        groupPredicates.add(segment.offsetPredicate().copy());
+      }
+      predicates.add(groupPredicates);
+    }
+    return predicates;
   }
 
   /**
@@ -17,6 +17,7 @@ package io.atomix.copycat.server.storage.compaction;
 
 import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.server.Commit;
+import io.atomix.copycat.server.storage.RawEntry;
 import io.atomix.copycat.server.storage.Segment;
 import io.atomix.copycat.server.storage.SegmentDescriptor;
 import io.atomix.copycat.server.storage.SegmentManager;
@@ -25,8 +26,8 @@ import io.atomix.copycat.server.storage.util.OffsetPredicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Removes tombstones from the log and combines {@link Segment}s to reclaim disk space.
@@ -54,8 +55,8 @@ import java.util.List;
  * <p>
  * A significant objective of the major compaction task is to remove tombstones from the log in a manor that ensures
  * failures before, during, or after the compaction task will not result in inconsistencies when state is rebuilt from
- * the log. In order to ensure tombstones are removed only <em>after</em> any prior related entries, the major compaction
- * task simply compacts segments in sequential order from the {@link Segment#firstIndex()} of the first segment to the
+ * the log. In order to ensure tombstones are removed only <em>after</em> any prior related entries, compacted groups
+ * are swapped into the log in sequential order from the {@link Segment#firstIndex()} of the first segment to the
  * {@link Segment#lastIndex()} of the last segment. This ensures that if a failure occurs during the compaction process,
  * only entries earlier in the log will have been removed, and potential tombstones which erase the state of those entries
  * will remain.
@@ -83,67 +84,90 @@ import java.util.List;
  * incorrect, but it will be inconsistent with other servers which are likely to have correctly removed both entry
  * {@code 1} and entry {@code 12345} during major compaction.
  * <p>
- * In order to prevent such a scenario from occurring, the major compaction task takes an immutable snapshot of the
- * state of offsets underlying all the segments to be compacted prior to rewriting any entries. This ensures that any
- * entries released after the start of rewriting segments will not be considered for compaction during the execution
- * of this task.
+ * In order to prevent such a scenario from occurring, the {@link MajorCompactionManager} takes an immutable snapshot
+ * of the state of offsets underlying all the segments to be compacted prior to rewriting any entries. This ensures
+ * that any entries released after the start of rewriting segments will not be considered for compaction during the
+ * execution of the major compaction.
+ * <p>
+ * <b>Parallel compaction</b>
+ * <p>
+ * Each major compaction task compacts a single group of segments, and the tasks for all the groups in the log are
+ * run in parallel in the compactor's thread pool. Rewriting a group is independent of all other groups, but the
+ * compact segment is only swapped into the log once the group preceding it has been swapped. The swap of each group
+ * is performed by whichever of the group's task or the preceding group's task completes last, so compaction threads
+ * never block waiting for other groups.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
 public final class MajorCompactionTask implements CompactionTask {
   private static final Logger LOGGER = LoggerFactory.getLogger(MajorCompactionTask.class);
   private final SegmentManager manager;
-  private final List<List<Segment>> groups;
-  private List<List<OffsetPredicate>> predicates;
+  private final List<Segment> segments;
+  private final List<OffsetPredicate> predicates;
+  private final CompactionThrottle throttle;
+  private final CompletableFuture<Void> previous;
+  private final CompletableFuture<Void> swapped = new CompletableFuture<>();
   private final long snapshotIndex;
   private final long compactIndex;
   private final Compaction.Mode defaultCompactionMode;
 
-  MajorCompactionTask(SegmentManager manager, List<List<Segment>> groups, long snapshotIndex, long compactIndex, Compaction.Mode defaultCompactionMode) {
+  MajorCompactionTask(SegmentManager manager, List<Segment> segments, List<OffsetPredicate> predicates, CompactionThrottle throttle, CompletableFuture<Void> previous, long snapshotIndex, long compactIndex, Compaction.Mode defaultCompactionMode) {
     this.manager = Assert.notNull(manager, "manager");
-    this.groups = Assert.notNull(groups, "segments");
+    this.segments = Assert.notNull(segments, "segments");
+    this.predicates = Assert.notNull(predicates, "predicates");
+    this.throttle = Assert.notNull(throttle, "throttle");
+    this.previous = Assert.notNull(previous, "previous");
     this.snapshotIndex = snapshotIndex;
     this.compactIndex = compactIndex;
     this.defaultCompactionMode = Assert.notNull(defaultCompactionMode, "defaultCompactionMode");
   }
 
-  @Override
-  public void run() {
-    copyPredicates();
-    compactGroups();
-  }
-
   /**
-   * Creates a copy of offset predicates prior to compacting segments to prevent race conditions.
+   * Returns a future to be completed once the group has been swapped into the log.
+   * <p>
+   * The future is completed exceptionally if compaction of the group or any preceding group fails, in which case
+   * later groups are not swapped into the log.
+   *
+   * @return A future to be completed once the group has been swapped into the log.
    */
-  private void copyPredicates() {
-    predicates = new ArrayList<>(groups.size());
-    for (List<Segment> group : groups) {
-      List<OffsetPredicate> groupPredicates = new ArrayList<>(group.size());
-      for (Segment segment : group) {
-        groupPredicates.add(segment.offsetPredicate().copy());
-      }
-      predicates.add(groupPredicates);
-    }
+  CompletableFuture<Void> swapped() {
+    return swapped;
   }
 
-  /**
-   * Compacts all compactable segments.
-   */
-  private void compactGroups() {
-    for (int i = 0; i < groups.size(); i++) {
-      List<Segment> group = groups.get(i);
-      List<OffsetPredicate> groupPredicates = predicates.get(i);
-      Segment segment = compactGroup(group, groupPredicates);
-      mergeReleased(group, groupPredicates, segment);
-      deleteGroup(group);
+  @Override
+  public void run() {
+    Segment compactSegment;
+    try {
+      compactSegment = compactGroup();
+    } catch (RuntimeException e) {
+      previous.whenComplete((result, error) -> swapped.completeExceptionally(e));
+      throw e;
     }
+
+    // Swap the compact segment into the log once the preceding group has been swapped. If compaction of the
+    // preceding group failed, the compact segment is discarded since removing tombstones from this group could
+    // otherwise outlive entries they delete in the preceding group.
+    previous.whenComplete((result, error) -> {
+      if (error != null) {
+        compactSegment.close();
+        compactSegment.delete();
+        swapped.completeExceptionally(error);
+        return;
+      }
+
+      try {
+        swapGroup(compactSegment);
+        swapped.complete(null);
+      } catch (RuntimeException e) {
+        swapped.completeExceptionally(e);
+      }
+    });
   }
 
   /**
-   * Compacts a group.
+   * Rewrites the group to a new compact segment.
    */
-  private Segment compactGroup(List<Segment> segments, List<OffsetPredicate> predicates) {
+  private Segment compactGroup() {
     // Get the first segment which contains the first index being compacted. The compact segment will be written
     // as a newer version of the earliest segment being rewritten.
     Segment firstSegment = segments.iterator().next();
@@ -155,14 +179,25 @@ public final class MajorCompactionTask implements CompactionTask {
       .withIndex(firstSegment.descriptor().index())
       .withMaxSegmentSize(segments.stream().mapToLong(s -> s.descriptor().maxSegmentSize()).max().getAsLong())
       .withMaxEntries(segments.stream().mapToInt(s -> s.descriptor().maxEntries()).max().getAsInt())
+      .withChecksums(segments.stream().anyMatch(s -> s.descriptor().checksums()))
       .build());
 
     compactGroup(segments, predicates, compactSegment);
+    return compactSegment;
+  }
 
+  /**
+   * Replaces the rewritten segments with the compact segment and deletes the old segments.
+   */
+  private void swapGroup(Segment compactSegment) {
     // Replace the rewritten segments with the updated segment.
     manager.replaceSegments(segments, compactSegment);
 
-    return compactSegment;
+    // Update the new segment with offsets that were released during compaction.
+    mergeReleased(segments, predicates, compactSegment);
+
+    // Delete the old segments.
+    deleteGroup(segments);
   }
 
   /**
@@ -185,36 +220,54 @@ public final class MajorCompactionTask implements CompactionTask {
    * @param compactSegment The segment to which to write the compacted segment.
    */
   private void compactSegment(Segment segment, OffsetPredicate predicate, Segment compactSegment) {
+    Segment.Reader reader = segment.createReader();
     for (long i = segment.firstIndex(); i <= segment.lastIndex(); i++) {
-      checkEntry(i, segment, predicate, compactSegment);
+      checkEntry(i, segment, reader, predicate, compactSegment);
     }
   }
 
   /**
    * Compacts the entry at the given index.
+   * <p>
+   * Entries are read and transferred to the compact segment as raw records, so live entries are copied without being
+   * deserialized. Records written before compaction modes were stored in record headers are deserialized to
+   * determine the entry's compaction mode.
    *
    * @param index The index at which to compact the entry.
    * @param segment The segment to compact.
+   * @param reader The reader with which to read entries from the segment.
    * @param compactSegment The segment to which to write the uncompacted segment.
    */
-  private void checkEntry(long index, Segment segment, OffsetPredicate predicate, Segment compactSegment) {
-    try (Entry entry = segment.get(index)) {
-      // If an entry was found, remove the entry from the segment.
-      if (entry != null) {
-        checkEntry(index, entry, segment, predicate, compactSegment);
-      } else {
-        compactSegment.skip(1);
+  private void checkEntry(long index, Segment segment, Segment.Reader reader, OffsetPredicate predicate, Segment compactSegment) {
+    RawEntry entry = reader.nextRaw(index);
+
+    // If no entry was found, the entry was already removed from the segment.
+    if (entry == null) {
+      compactSegment.skip(1);
+      return;
+    }
+
+    throttle.acquire(entry.size());
+
+    Compaction.Mode mode = entry.compactionMode();
+    if (mode == null) {
+      try (Entry legacy = reader.next(index)) {
+        mode = legacy.getCompactionMode();
       }
     }
+
+    if (isCompactable(index, mode, segment, predicate)) {
+      compactEntry(index, segment, compactSegment);
+    } else {
+      transferEntry(entry, compactSegment);
+    }
   }
 
   /**
-   * Compacts a command entry from a segment.
+   * Returns a boolean value indicating whether the entry at the given index can be removed from the segment.
    */
-  private void checkEntry(long index, Entry entry, Segment segment, OffsetPredicate predicate, Segment compactSegment) {
-    // Get the entry compaction mode. If the compaction mode is DEFAULT apply the default compaction
-    // mode to the entry.
-    Compaction.Mode mode = entry.getCompactionMode();
+  private boolean isCompactable(long index, Compaction.Mode mode, Segment segment, OffsetPredicate predicate) {
+    // If the compaction mode is DEFAULT apply the default compaction mode to the entry.
     if (mode == Compaction.Mode.DEFAULT) {
       mode = defaultCompactionMode;
     }
@@ -225,21 +278,11 @@ public final class MajorCompactionTask implements CompactionTask {
       // SNAPSHOT entries are compacted if a snapshot has been taken at an index greater than the
       // entry's index.
       case SNAPSHOT:
-        if (index <= snapshotIndex && !isLive(index, segment, predicate)) {
-          compactEntry(index, segment, compactSegment);
-        } else {
-          transferEntry(entry, compactSegment);
-        }
-        break;
+        return index <= snapshotIndex && !isLive(index, segment, predicate);
       // RELEASE and QUORUM entries are compacted if the entry has been released from the segment.
       case RELEASE:
       case QUORUM:
-        if (!isLive(index, segment, predicate)) {
-          compactEntry(index, segment, compactSegment);
-        } else {
-          transferEntry(entry, compactSegment);
-        }
-        break;
+        return !isLive(index, segment, predicate);
       // FULL entries are compacted if the major compact index is greater than the entry index and
       // the entry has been released.
       // SEQUENTIAL, EXPIRING, and TOMBSTONE entries are compacted if the major compact index is greater than the
@@ -248,23 +291,13 @@ public final class MajorCompactionTask implements CompactionTask {
       case SEQUENTIAL:
       case EXPIRING:
       case TOMBSTONE:
-        if (index <= compactIndex && !isLive(index, segment, predicate)) {
-          compactEntry(index, segment, compactSegment);
-        } else {
-          transferEntry(entry, compactSegment);
-        }
-        break;
+        return index <= compactIndex && !isLive(index, segment, predicate);
       // UNKNOWN entries are compacted if the index is less than both the snapshot and major
       // compaction indexes and the entry has been released.
       case UNKNOWN:
-        if (index <= snapshotIndex && index <= compactIndex && !isLive(index, segment, predicate)) {
-          compactEntry(index, segment, compactSegment);
-        } else {
-          transferEntry(entry, compactSegment);
-        }
-        break;
+        return index <= snapshotIndex && index <= compactIndex && !isLive(index, segment, predicate);
       default:
-        break;
+        return false;
     }
   }
 
@@ -279,8 +312,8 @@ public final class MajorCompactionTask implements CompactionTask {
   /**
    * Transfers an entry to the given segment.
    */
-  private void transferEntry(Entry entry, Segment compactSegment) {
-    compactSegment.append(entry);
+  private void transferEntry(RawEntry entry, Segment compactSegment) {
+    compactSegment.appendRaw(entry);
   }
 
   /**
@@ -313,19 +346,15 @@ public final class MajorCompactionTask implements CompactionTask {
   }
 
   /**
-   * Completes compaction by deleting old segments.
+   * Completes compaction by deleting old segments once they're no longer in use by readers.
    */
   private void deleteGroup(List<Segment> group) {
-    // Delete the old segments.
-    for (Segment oldSegment : group) {
-      oldSegment.close();
-      oldSegment.delete();
-    }
+    manager.retireSegments(group);
   }
 
   @Override
   public String toString() {
-    return getClass().getSimpleName();
+    return String.format("%s[segments=%d-%d]", getClass().getSimpleName(), segments.get(0).descriptor().id(), segments.get(segments.size() - 1).descriptor().id());
   }
 
 }
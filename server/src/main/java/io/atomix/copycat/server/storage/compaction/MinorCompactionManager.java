@@ -19,7 +19,7 @@ import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.server.storage.Segment;
 import io.atomix.copycat.server.storage.SegmentManager;
 import io.atomix.copycat.server.storage.Storage;
-import io.atomix.copycat.server.storage.entry.Entry;
+import io.atomix.copycat.server.storage.StorageLevel;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -34,25 +34,18 @@ import java.util.List;
  * However, in order to ensure segments are not compacted without cause, this compaction manager attempts to
  * prioritize segments for which compaction will result in greater disk space savings.
  * <p>
- * Segments are selected for minor compaction based on several factors:
- * <ul>
- *   <li>The number of {@link Entry entries} in the segment that have been {@link Segment#release(long) released}</li>
- *   <li>The number of times the segment has been compacted already</li>
- * </ul>
+ * Segments are eligible for minor compaction once the fraction of the segment that has been
+ * {@link Segment#release(long) released} meets the configured {@link Storage#compactionThreshold()}. Eligible
+ * segments across the whole log are then ranked by the {@link CompactionSelector}, which weighs the space reclaimed
+ * by compacting a segment against the cost of copying the segment's live entries and favors older segments, and at
+ * most {@link Storage#maxCompactionSegments()} segments with the greatest scores are compacted by each minor
+ * compaction.
  * <p>
- * Given the number of entries that have been released from the segment, a percentage of entries reclaimed by
- * compacting the segment is calculated. Then, the percentage of entries that have been released is multiplied
- * by the number of times the segment has been compacted. If the result of this calculation is greater than
- * the configured {@link Storage#compactionThreshold()} then the segment is selected for compaction.
- * <p>
- * The final formula is as follows:
- * <pre>
- *   {@code
- *   if ((segment.releaseCount() / (double) segment.count()) * segment.descriptor().version() > storage.compactionThreshold()) {
- *     // Compact the segment
- *   }
- *   }
- * </pre>
+ * If {@link Storage#compressSegments() segment compression} is enabled, sealed segments that are not selected for
+ * compaction are rewritten in compressed blocks by a {@link CompressionTask}. Segments are sealed once all their
+ * entries have been committed and a later segment exists in the log. Segments of
+ * {@link io.atomix.copycat.server.storage.StorageLevel#TIERED} logs are only compressed once they're no longer
+ * among the {@link Storage#mappedSegments() mapped segments}.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
@@ -66,18 +59,32 @@ public final class MinorCompactionManager implements CompactionManager {
   @Override
   public List<CompactionTask> buildTasks(Storage storage, SegmentManager segments) {
     List<CompactionTask> tasks = new ArrayList<>(segments.segments().size());
-    for (Segment segment : getCompactableSegments(storage, segments)) {
-      tasks.add(new MinorCompactionTask(segments, segment, compactor.snapshotIndex(), compactor.majorIndex(), compactor.getDefaultCompactionMode()));
+    // Compact the segments with the greatest scores first and leave the rest to later compactions.
+    int maxSegments = storage.maxCompactionSegments();
+    List<Segment> compactableSegments = compactor.selector().select(getCompactableSegments(segments), maxSegments);
+
+    for (Segment segment : compactableSegments) {
+      tasks.add(new MinorCompactionTask(segments, segment, compactor.throttle(), compactor.snapshotIndex(), compactor.majorIndex(), compactor.getDefaultCompactionMode()));
+    }
+    if (storage.compressSegments() && (storage.level() == StorageLevel.DISK || storage.level() == StorageLevel.TIERED)) {
+      for (Segment segment : getCompressibleSegments(storage, segments)) {
+        if (tasks.size() >= maxSegments) {
+          break;
+        }
+        if (!compactableSegments.contains(segment)) {
+          tasks.add(new CompressionTask(segments, segment, compactor.throttle()));
+        }
+      }
     }
     return tasks;
   }
 
   /**
-   * Returns a list of compactable segments.
+   * Returns a list of segments eligible for compaction.
    *
-   * @return A list of compactable segments.
+   * @return A list of segments eligible for compaction.
    */
-  private Iterable<Segment> getCompactableSegments(Storage storage, SegmentManager manager) {
+  private List<Segment> getCompactableSegments(SegmentManager manager) {
     List<Segment> segments = new ArrayList<>(manager.segments().size());
     Iterator<Segment> iterator = manager.segments().iterator();
     Segment segment = iterator.next();
@@ -88,14 +95,7 @@ public final class MinorCompactionManager implements CompactionManager {
       // of entries less than the minorIndex, and a later segment with at least one committed entry must exist in the log. This ensures that
       // a non-empty entry always remains at the end of the log.
       if (segment.isCompacted() || (segment.isFull() && segment.lastIndex() < compactor.minorIndex() && nextSegment.firstIndex() <= manager.commitIndex() && !nextSegment.isEmpty())) {
-        // Calculate the percentage of entries that have been released in the segment.
-        double compactablePercentage = segment.releaseCount() / (double) segment.count();
-
-        // If the percentage of entries released times the segment version meets the compaction threshold,
-        // add the segment to the segments list for compaction.
-        if (compactablePercentage * segment.descriptor().version() >= storage.compactionThreshold()) {
-          segments.add(segment);
-        }
+        segments.add(segment);
       }
 
       segment = nextSegment;
@@ -103,4 +103,23 @@ public final class MinorCompactionManager implements CompactionManager {
     return segments;
   }
 
+  /**
+   * Returns a list of sealed segments that have not been compressed.
+   *
+   * @return A list of compressible segments.
+   */
+  private List<Segment> getCompressibleSegments(Storage storage, SegmentManager manager) {
+    // The last segment in the log is never compressed, and tiered logs only compress segments that are no longer mapped.
+    int recentSegments = storage.level() == StorageLevel.TIERED ? storage.mappedSegments() : 1;
+    List<Segment> allSegments = new ArrayList<>(manager.segments());
+    List<Segment> segments = new ArrayList<>(allSegments.size());
+    for (Segment segment : allSegments.subList(0, Math.max(allSegments.size() - recentSegments, 0))) {
+      // All the entries in a segment must be committed.
+      if (!segment.descriptor().compressed() && !segment.isEmpty() && segment.lastIndex() <= manager.commitIndex()) {
+        segments.add(segment);
+      }
+    }
+    return segments;
+  }
+
 }
@@ -47,13 +47,15 @@ public final class MinorCompactionTask implements CompactionTask {
   private static final Logger LOGGER = LoggerFactory.getLogger(MinorCompactionTask.class);
   private final SegmentManager manager;
   private final Segment segment;
+  private final CompactionThrottle throttle;
   private final long snapshotIndex;
   private final long compactIndex;
   private final Compaction.Mode defaultCompactionMode;
 
-  MinorCompactionTask(SegmentManager manager, Segment segment, long snapshotIndex, long compactIndex, Compaction.Mode defaultCompactionMode) {
+  MinorCompactionTask(SegmentManager manager, Segment segment, CompactionThrottle throttle, long snapshotIndex, long compactIndex, Compaction.Mode defaultCompactionMode) {
     this.manager = Assert.notNull(manager, "manager");
     this.segment = Assert.notNull(segment, "segment");
+    this.throttle = Assert.notNull(throttle, "throttle");
     this.snapshotIndex = snapshotIndex;
     this.compactIndex = compactIndex;
     this.defaultCompactionMode = Assert.notNull(defaultCompactionMode, "defaultCompactionMode");
@@ -75,6 +77,7 @@ public final class MinorCompactionTask implements CompactionTask {
       .withIndex(segment.descriptor().index())
       .withMaxSegmentSize(segment.descriptor().maxSegmentSize())
       .withMaxEntries(segment.descriptor().maxEntries())
+      .withChecksums(segment.descriptor().checksums())
       .build());
 
     compactEntries(segment, compactSegment);
@@ -85,9 +88,8 @@ public final class MinorCompactionTask implements CompactionTask {
     // Update the new segment with offsets that were released during compaction.
     mergeReleasedEntries(segment, compactSegment);
 
-    // Delete the old segment.
-    segment.close();
-    segment.delete();
+    // Delete the old segment once it's no longer in use by readers.
+    manager.retireSegments(Collections.singletonList(segment));
   }
 
   /**
@@ -97,8 +99,9 @@ public final class MinorCompactionTask implements CompactionTask {
    * @param compactSegment The compact segment.
    */
   private void compactEntries(Segment segment, Segment compactSegment) {
+    Segment.Reader reader = segment.createReader();
     for (long i = segment.firstIndex(); i <= segment.lastIndex(); i++) {
-      checkEntry(i, segment, compactSegment);
+      checkEntry(i, segment, reader, compactSegment);
     }
   }
 
@@ -107,12 +110,14 @@ public final class MinorCompactionTask implements CompactionTask {
    *
    * @param index The index at which to compact the entry.
    * @param segment The segment to compact.
+   * @param reader The reader with which to read entries from the segment.
    * @param compactSegment The segment to which to write the compacted segment.
    */
-  private void checkEntry(long index, Segment segment, Segment compactSegment) {
-    try (Entry entry = segment.get(index)) {
+  private void checkEntry(long index, Segment segment, Segment.Reader reader, Segment compactSegment) {
+    try (Entry entry = reader.next(index)) {
       // If an entry was found, only remove the entry from the segment if it's not a tombstone that has been released.
       if (entry != null) {
+        throttle.acquire(entry.size());
         checkEntry(index, entry, segment, compactSegment);
       } else {
         compactSegment.skip(1);
@@ -17,9 +17,13 @@ package io.atomix.copycat.server.storage.snapshot;
 
 import io.atomix.catalyst.buffer.HeapBuffer;
 import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.StorageMemory;
 
 /**
  * In-memory snapshot backed by a {@link HeapBuffer}.
+ * <p>
+ * The capacity of the snapshot buffer is accounted to the storage memory budget as the
+ * {@link StorageMemory.Component#SNAPSHOTS} component once the snapshot has been written.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
@@ -27,6 +31,7 @@ final class MemorySnapshot extends Snapshot {
   private final HeapBuffer buffer;
   private final SnapshotDescriptor descriptor;
   private final SnapshotStore store;
+  private long size;
 
   MemorySnapshot(HeapBuffer buffer, SnapshotDescriptor descriptor, SnapshotStore store) {
     super(store);
@@ -56,6 +61,7 @@ final class MemorySnapshot extends Snapshot {
   @Override
   protected void closeWriter(SnapshotWriter writer) {
     buffer.skip(writer.buffer.position()).mark();
+    account();
     super.closeWriter(writer);
   }
 
@@ -71,9 +77,22 @@ final class MemorySnapshot extends Snapshot {
     return super.complete();
   }
 
+  /**
+   * Updates the memory accounted for the snapshot buffer.
+   */
+  private synchronized void account() {
+    long size = buffer.capacity();
+    store.storage.memory().allocate(StorageMemory.Component.SNAPSHOTS, size - this.size);
+    this.size = size;
+  }
+
   @Override
   public void close() {
     buffer.close();
+    synchronized (this) {
+      store.storage.memory().release(StorageMemory.Component.SNAPSHOTS, size);
+      size = 0;
+    }
   }
 
   @Override
@@ -16,11 +16,16 @@
 package io.atomix.copycat.server.storage.util;
 
 import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.DirectBuffer;
 import io.atomix.catalyst.buffer.FileBuffer;
 import io.atomix.catalyst.buffer.MappedBuffer;
 import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.server.storage.Segment;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
 /**
  * Segment offset index.
  * <p>
@@ -43,6 +48,25 @@ import io.atomix.copycat.server.storage.Segment;
  * as they're written to the index. The bit array is sized according to the underlying index buffer. Prior to searching
  * for an offset in the index, the {@link io.atomix.catalyst.buffer.util.BitArray} is checked for existence of the offset in the index. Only if the offset
  * exists in the index is a binary search required.
+ * <p>
+ * The index supports a single writer and any number of concurrent readers without locking. Each new entry is written
+ * to the index buffer before the index's volatile size and last offset are updated, so readers that observe an offset
+ * are guaranteed to see the entry's position. Rather than a shared search cursor, readers check the entry at and
+ * following the last matched position before falling back to a binary search. The last match is only a hint and is
+ * always validated against the index buffer, so concurrent readers can't observe an inconsistent cursor.
+ * <p>
+ * Indexes for persistent segments should be stored off-heap in a {@link DirectBuffer} to avoid retaining large
+ * heap buffers for every segment in the log. Because resizing native memory would free the memory being read by
+ * concurrent readers, direct buffers are grown by copying the index to a new buffer and publishing the new buffer
+ * to readers. Replaced buffers are retained until the owner of the index determines that no reader can still be
+ * reading them.
+ * <p>
+ * Indexes may optionally be sparse. A sparse index with an {@code interval} of {@code n} stores only every
+ * {@code n}th entry appended to the index, reducing the memory consumed by the index by a factor of {@code n}.
+ * Entries that are not stored in a sparse index are located by scanning forward from the nearest preceding
+ * indexed entry with the {@link Scanner} provided by the segment. To avoid repeatedly scanning from the indexed
+ * entry for sequential reads, readers scan forward from the last entry found when possible. As with the last
+ * match in dense indexes, the last entry found is only a hint and is discarded when the index is truncated.
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
@@ -55,22 +79,85 @@ public final class OffsetIndex implements AutoCloseable {
     return (long) maxEntries * 12 + 16;
   }
 
+  /**
+   * Returns the count of a sparse index for the given number of entries and index interval.
+   */
+  public static long size(int maxEntries, int interval) {
+    return size((int) (((long) maxEntries + interval - 1) / interval));
+  }
+
+  /**
+   * Reads the records of a segment when locating entries that are not stored in a sparse index.
+   */
+  public interface Scanner {
+
+    /**
+     * Returns the offset of the record at the given position.
+     *
+     * @param position The position of the record.
+     * @return The offset of the record.
+     */
+    long offset(long position);
+
+    /**
+     * Returns the position of the record following the record at the given position.
+     *
+     * @param position The position of the record.
+     * @return The position of the next record.
+     */
+    long next(long position);
+  }
+
   private static final long MAX_POSITION = (long) Math.pow(2, 32) - 1;
   private static final int ENTRY_SIZE = 12;
   private static final int OFFSET_SIZE = 8;
 
-  private final Buffer buffer;
+  private final List<Buffer> replacedBuffers = new ArrayList<>(0);
+  private volatile long replacedSize;
+  private final int interval;
+  private volatile Scanner scanner;
+  private volatile Cursor cursor;
+  private volatile int generation;
+  private volatile Buffer buffer;
   private boolean skipped;
-  private int size;
-  private long lastOffset = -1;
-  private long currentOffset = -1;
-  private long currentMatch = -1;
+  private volatile int size;
+  private volatile long lastOffset = -1;
+  private volatile int lastMatch = -1;
 
   /**
    * @throws NullPointerException if {@code buffer} is null
    */
   public OffsetIndex(Buffer buffer) {
+    this(buffer, 1);
+  }
+
+  /**
+   * @throws NullPointerException if {@code buffer} is null
+   * @throws IllegalArgumentException if {@code interval} is not positive
+   */
+  public OffsetIndex(Buffer buffer, int interval) {
     this.buffer = Assert.notNull(buffer, "buffer");
+    this.interval = Assert.arg(interval, interval > 0, "interval must be positive");
+  }
+
+  /**
+   * Returns the number of entries appended to the index per stored index entry.
+   *
+   * @return The index interval, or {@code 1} if every entry is stored in the index.
+   */
+  public int interval() {
+    return interval;
+  }
+
+  /**
+   * Sets the scanner with which to locate entries that are not stored in a sparse index.
+   *
+   * @param scanner The segment record scanner.
+   * @return The offset index.
+   */
+  public OffsetIndex scanner(Scanner scanner) {
+    this.scanner = scanner;
+    return this;
   }
 
   /**
@@ -88,19 +175,107 @@ public final class OffsetIndex implements AutoCloseable {
    * @throws IllegalArgumentException if the {@code offset} is less than or equal to the last offset in the index, 
    * or {@code position} is greater than MAX_POSITION
    */
-  public synchronized void index(long offset, long position) {
+  public void index(long offset, long position) {
     Assert.argNot(offset, lastOffset > -1 && offset <= lastOffset,
       "offset cannot be less than or equal to the last offset in the index");
     Assert.argNot(position > MAX_POSITION, "position cannot be greater than " + MAX_POSITION);
 
-    buffer.writeLong(offset).writeUnsignedInt(position);
+    // Sparse indexes only store every interval entries, starting with the first entry.
+    if (size % interval == 0) {
+      ensureCapacity(1);
+      buffer.writeLong(offset).writeUnsignedInt(position);
+    }
 
-    size++;
     if (offset > lastOffset + 1)
       skipped = true;
+    size++;
+
+    // Publish the entry to readers by updating the last offset after the entry has been written.
     lastOffset = offset;
   }
 
+  /**
+   * Indexes a batch of offsets with the given positions.
+   * <p>
+   * All entries in the batch are written to the index before any of them are published to readers.
+   *
+   * @param offsets The offsets to index in increasing order.
+   * @param positions The positions of the offsets to index.
+   * @param count The number of offsets to index.
+   * @throws IllegalArgumentException if the offsets are not increasing or are less than or equal to the last offset
+   * in the index, or a {@code position} is greater than MAX_POSITION
+   */
+  public void index(long[] offsets, long[] positions, int count) {
+    if (count == 0)
+      return;
+
+    long lastOffset = this.lastOffset;
+    for (int i = 0; i < count; i++) {
+      Assert.argNot(offsets[i], lastOffset > -1 && offsets[i] <= lastOffset,
+        "offset cannot be less than or equal to the last offset in the index");
+      Assert.argNot(positions[i] > MAX_POSITION, "position cannot be greater than " + MAX_POSITION);
+      if (offsets[i] > lastOffset + 1)
+        skipped = true;
+      lastOffset = offsets[i];
+    }
+
+    int first = (interval - size % interval) % interval;
+    ensureCapacity(first < count ? (count - 1 - first) / interval + 1 : 0);
+    Buffer buffer = this.buffer;
+    for (int i = first; i < count; i += interval) {
+      buffer.writeLong(offsets[i]).writeUnsignedInt(positions[i]);
+    }
+    size += count;
+
+    // Publish the batch to readers by updating the last offset after all entries have been written.
+    this.lastOffset = lastOffset;
+  }
+
+  /**
+   * Grows a direct index buffer by copying it to a larger buffer if the next entries would exceed its capacity.
+   */
+  private void ensureCapacity(int entries) {
+    Buffer buffer = this.buffer;
+    long position = buffer.position();
+    long required = position + (long) entries * ENTRY_SIZE;
+    if (buffer instanceof DirectBuffer && required > buffer.capacity() && buffer.capacity() < buffer.maxCapacity()) {
+      Buffer newBuffer = DirectBuffer.allocate(Math.min(Math.max(buffer.capacity() * 2, required), buffer.maxCapacity()), buffer.maxCapacity());
+      newBuffer.write(0, buffer.bytes(), buffer.offset(), position).position(position);
+
+      // Publish the new buffer before retaining the replaced buffer so that a reader can only observe a replaced
+      // buffer if it read the index before the buffer was retained.
+      this.buffer = newBuffer;
+      synchronized (replacedBuffers) {
+        replacedBuffers.add(buffer);
+        replacedSize += buffer.capacity();
+      }
+    }
+  }
+
+  /**
+   * Closes buffers replaced as the index has grown if no reader can still be reading them.
+   * <p>
+   * Readers may hold a reference to a replaced buffer for as long as they're reading the index, so replaced buffers
+   * can only be closed once the owner of the index knows that no reader is reading it. The given predicate is checked
+   * after the replaced buffers to close have been determined, and replaced buffers are only closed if the predicate
+   * indicates that no reader is reading the index. Readers that start reading the index after the predicate was
+   * checked can only observe the current buffer.
+   *
+   * @param idle Indicates whether no reader is reading the index.
+   * @return Indicates whether any replaced buffers were closed.
+   */
+  public boolean closeReplacedBuffers(BooleanSupplier idle) {
+    synchronized (replacedBuffers) {
+      if (replacedBuffers.isEmpty() || !idle.getAsBoolean()) {
+        return false;
+      }
+      replacedBuffers.forEach(Buffer::close);
+      replacedBuffers.clear();
+      replacedSize = 0;
+      return true;
+    }
+  }
+
   /**
    * Returns a boolean value indicating whether the index is empty.
    *
@@ -126,7 +301,8 @@ public final class OffsetIndex implements AutoCloseable {
    * @return Indicates whether the index contains the given offset.
    */
   public boolean contains(long offset) {
-    return !skipped ? offset <= lastOffset : position(offset) != -1;
+    long lastOffset = this.lastOffset;
+    return !skipped ? offset >= 0 && offset <= lastOffset : position(offset) != -1;
   }
 
   /**
@@ -135,7 +311,11 @@ public final class OffsetIndex implements AutoCloseable {
    * @param offset The offset to look up.
    * @return The starting position of the given offset.
    */
-  public synchronized long position(long offset) {
+  public long position(long offset) {
+    if (interval > 1) {
+      Cursor cursor = seek(offset);
+      return cursor != null ? cursor.position : -1;
+    }
     long relativeOffset = find(offset);
     return relativeOffset != -1 ? buffer.readUnsignedInt(relativeOffset * ENTRY_SIZE + OFFSET_SIZE) : -1;
   }
@@ -143,20 +323,35 @@ public final class OffsetIndex implements AutoCloseable {
   /**
    * Finds the real offset for the given relative offset.
    */
-  public synchronized long find(long offset) {
-    if (size == 0) {
+  public long find(long offset) {
+    // Read the last offset before any other state to ensure entries up to the last offset are visible.
+    long lastOffset = this.lastOffset;
+    int size = this.size;
+    if (size == 0 || offset < 0 || offset > lastOffset) {
       return -1;
     }
 
-    if (!skipped && offset <= lastOffset) {
+    if (!skipped) {
       return offset;
     }
 
-    if (offset == currentOffset) {
-      return currentMatch;
-    } else if (currentOffset != -1 && currentMatch + 1 < size && buffer.readLong((currentMatch + 1) * ENTRY_SIZE) == offset) {
-      currentOffset = offset;
-      return ++currentMatch;
+    if (interval > 1) {
+      Cursor cursor = seek(offset);
+      return cursor != null ? cursor.ordinal : -1;
+    }
+
+    Buffer buffer = this.buffer;
+
+    // Check the last matched entry and the entry following it to avoid searching the index for sequential reads.
+    int lastMatch = this.lastMatch;
+    if (lastMatch >= 0 && lastMatch < size) {
+      long matchOffset = buffer.readLong(lastMatch * ENTRY_SIZE);
+      if (matchOffset == offset) {
+        return lastMatch;
+      } else if (matchOffset < offset && lastMatch + 1 < size && buffer.readLong((lastMatch + 1) * ENTRY_SIZE) == offset) {
+        this.lastMatch = lastMatch + 1;
+        return lastMatch + 1;
+      }
     }
 
     int lo = 0;
@@ -166,14 +361,12 @@ public final class OffsetIndex implements AutoCloseable {
       int mid = lo + (hi - lo) / 2;
       long i = buffer.readLong(mid * ENTRY_SIZE);
       if (i == offset) {
-        currentOffset = offset;
-        currentMatch = mid;
+        this.lastMatch = mid;
         return mid;
       } else if (lo == mid) {
         i = buffer.readLong(hi * ENTRY_SIZE);
         if (i == offset) {
-          currentOffset = offset;
-          currentMatch = hi;
+          this.lastMatch = hi;
           return hi;
         }
         return -1;
@@ -185,13 +378,91 @@ public final class OffsetIndex implements AutoCloseable {
     }
 
     if (buffer.readLong(hi * ENTRY_SIZE) == offset) {
-      currentOffset = offset;
-      currentMatch = hi;
+      this.lastMatch = hi;
       return hi;
     }
     return -1;
   }
 
+  /**
+   * Locates the given offset in a sparse index by scanning forward from the nearest preceding entry.
+   *
+   * @param offset The offset to look up.
+   * @return The entry for the given offset, or {@code null} if the offset is not in the index.
+   */
+  private Cursor seek(long offset) {
+    // Read the last offset before any other state to ensure entries up to the last offset are visible.
+    long lastOffset = this.lastOffset;
+    int size = this.size;
+    int generation = this.generation;
+    if (size == 0 || offset < 0 || offset > lastOffset) {
+      return null;
+    }
+
+    // Start from the last entry found if it precedes the offset and follows the nearest indexed entry.
+    Cursor cursor = floor(offset, size);
+    if (cursor == null) {
+      return null;
+    }
+
+    Cursor last = this.cursor;
+    if (last != null && last.generation == generation && last.offset <= offset && last.ordinal >= cursor.ordinal && last.ordinal < size) {
+      cursor = last;
+    }
+
+    Scanner scanner = Assert.notNull(this.scanner, "scanner");
+    int ordinal = cursor.ordinal;
+    long entryOffset = cursor.offset;
+    long position = cursor.position;
+    while (entryOffset < offset && ordinal + 1 < size) {
+      position = scanner.next(position);
+      entryOffset = scanner.offset(position);
+      ordinal++;
+    }
+
+    if (entryOffset != offset) {
+      return null;
+    }
+
+    cursor = new Cursor(ordinal, entryOffset, position, generation);
+    this.cursor = cursor;
+    return cursor;
+  }
+
+  /**
+   * Returns the indexed entry nearest to and preceding the given offset in a sparse index.
+   *
+   * @param offset The offset to look up.
+   * @param size The number of entries in the index.
+   * @return The nearest preceding indexed entry, or {@code null} if the offset precedes the first entry.
+   */
+  private Cursor floor(long offset, int size) {
+    Buffer buffer = this.buffer;
+    int count = (size + interval - 1) / interval;
+    int index;
+    if (!skipped) {
+      index = (int) Math.min(offset / interval, count - 1);
+    } else {
+      int low = 0;
+      int high = count - 1;
+      while (low < high) {
+        int mid = (low + high + 1) >>> 1;
+        if (buffer.readLong(mid * ENTRY_SIZE) <= offset) {
+          low = mid;
+        } else {
+          high = mid - 1;
+        }
+      }
+      index = low;
+    }
+
+    long entryOffset = buffer.readLong(index * ENTRY_SIZE);
+    if (entryOffset > offset) {
+      return null;
+    }
+    return new Cursor(index * interval, entryOffset, buffer.readUnsignedInt(index * ENTRY_SIZE + OFFSET_SIZE), generation);
+  }
+
   /**
    * Returns the real offset nearest the given relative offset.
    */
@@ -237,10 +508,19 @@ public final class OffsetIndex implements AutoCloseable {
 
     if (offset == -1) {
       buffer.position(0).zero();
-      currentOffset = currentMatch = lastOffset = -1;
+      size = 0;
+      skipped = false;
+      lastMatch = -1;
+      cursor = null;
+      generation++;
+      lastOffset = -1;
       return 0;
     }
 
+    if (interval > 1) {
+      return truncateSparse(offset);
+    }
+
     long nearestOffset = findAfter(offset + 1);
 
     if (nearestOffset == -1)
@@ -259,12 +539,69 @@ public final class OffsetIndex implements AutoCloseable {
 
     buffer.position(nearestIndex)
       .zero(nearestIndex);
+    lastMatch = -1;
     this.lastOffset = offset;
-    currentOffset = currentMatch = -1;
 
     return position;
   }
 
+  /**
+   * Truncates a sparse index after the given offset.
+   */
+  private long truncateSparse(long offset) {
+    int size = this.size;
+    if (size == 0) {
+      return -1;
+    }
+
+    // Find the first entry following the offset, scanning from the offset itself if it's in the index to avoid
+    // reading beyond the last valid entry in the segment.
+    Scanner scanner = Assert.notNull(this.scanner, "scanner");
+    Cursor cursor = seek(offset);
+    int ordinal;
+    long position;
+    if (cursor != null) {
+      ordinal = cursor.ordinal + 1;
+      position = scanner.next(cursor.position);
+    } else if ((cursor = floor(offset, size)) == null) {
+      ordinal = 0;
+      position = buffer.readUnsignedInt(OFFSET_SIZE);
+    } else {
+      ordinal = cursor.ordinal;
+      position = cursor.position;
+      do {
+        position = scanner.next(position);
+        ordinal++;
+      } while (ordinal < size && scanner.offset(position) <= offset);
+    }
+
+    if (ordinal >= size) {
+      return -1;
+    }
+
+    long indexPosition = (long) ((ordinal + interval - 1) / interval) * ENTRY_SIZE;
+    buffer.position(indexPosition)
+      .zero(indexPosition);
+    this.size = ordinal;
+    this.cursor = null;
+    generation++;
+    this.lastOffset = offset;
+    return position;
+  }
+
+  /**
+   * Returns the number of bytes of memory consumed by the index buffers.
+   * <p>
+   * Buffers replaced as the index grows are retained until they're {@link #closeReplacedBuffers(BooleanSupplier) closed}
+   * and are included in the size. The size may be read from any thread without locking, so the capacity of replaced
+   * buffers is tracked separately from the list of replaced buffers.
+   *
+   * @return The capacity in bytes of the index buffers.
+   */
+  public long memorySize() {
+    return buffer.capacity() + replacedSize;
+  }
+
   /**
    * Flushes the index to the underlying storage.
    */
@@ -275,6 +612,11 @@ public final class OffsetIndex implements AutoCloseable {
   @Override
   public void close() {
     buffer.close();
+    synchronized (replacedBuffers) {
+      replacedBuffers.forEach(Buffer::close);
+      replacedBuffers.clear();
+      replacedSize = 0;
+    }
   }
 
   /**
@@ -288,4 +630,21 @@ public final class OffsetIndex implements AutoCloseable {
     }
   }
 
+  /**
+   * Sparse index entry.
+   */
+  private static final class Cursor {
+    private final int ordinal;
+    private final long offset;
+    private final long position;
+    private final int generation;
+
+    private Cursor(int ordinal, long offset, long position, int generation) {
+      this.ordinal = ordinal;
+      this.offset = offset;
+      this.position = position;
+      this.generation = generation;
+    }
+  }
+
 }
@@ -32,7 +32,7 @@ import java.util.function.Predicate;
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
 public final class OffsetPredicate implements Predicate<Long>, AutoCloseable {
-  private final BitArray bits;
+  private BitArray bits;
 
   public OffsetPredicate() {
     this(BitArray.allocate(1024));
@@ -69,6 +69,27 @@ public final class OffsetPredicate implements Predicate<Long>, AutoCloseable {
     return bits.set(offset);
   }
 
+  /**
+   * Truncates released offsets greater than or equal to the given size.
+   *
+   * @param size The number of offsets to retain.
+   */
+  public void truncate(long size) {
+    for (long i = Math.max(size, 0); i < bits.size(); i++) {
+      if (bits.get(i)) {
+        BitArray truncated = BitArray.allocate(bits.size());
+        for (long j = 0; j < size; j++) {
+          if (bits.get(j)) {
+            truncated.set(j);
+          }
+        }
+        bits.close();
+        bits = truncated;
+        return;
+      }
+    }
+  }
+
   /**
    * Returns the number of offsets released from the segment.
    *
@@ -78,6 +99,15 @@ public final class OffsetPredicate implements Predicate<Long>, AutoCloseable {
     return bits.count();
   }
 
+  /**
+   * Returns the number of bytes of memory consumed by the predicate's bit array.
+   *
+   * @return The size in bytes of the predicate's bit array.
+   */
+  public long memorySize() {
+    return bits.size() / 8;
+  }
+
   /**
    * Copies the offset predicate.
    *
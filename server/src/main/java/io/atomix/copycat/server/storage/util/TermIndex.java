@@ -15,8 +15,7 @@
  */
 package io.atomix.copycat.server.storage.util;
 
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 /**
  * Log entry term index.
@@ -26,25 +25,34 @@ import java.util.TreeMap;
  * we can assume that if entry {@code n}'s term is {@code t} then entry {@code n + 1}'s term
  * will be {@code t} or greater.
  * <p>
- * The implementation of the term index uses a {@link TreeMap} to store a map of offsets to
- * terms. To look up the term for any given offset, we use {@code map.floorEntry(offset)}
- * to loop up the term for the offset.
+ * The implementation of the term index stores the first offset of each term and the term itself
+ * in parallel {@code long} arrays in increasing order. To look up the term for any given offset,
+ * the index first checks the last matched term and otherwise performs a binary search for the
+ * highest offset less than or equal to the given offset. Lookups do not allocate or box values.
  * <p>
- * This class is thread safe.
+ * The index supports a single writer and any number of concurrent readers without locking. Terms
+ * are only ever appended to the end of the arrays, and the volatile size of the index is updated
+ * only after the arrays have been written, so readers that observe a size are guaranteed to see
+ * all terms up to that size.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
 public final class TermIndex {
-  private final TreeMap<Long, Long> terms = new TreeMap<>();
+  private static final int DEFAULT_CAPACITY = 8;
+
+  private long[] offsets = new long[DEFAULT_CAPACITY];
+  private long[] terms = new long[DEFAULT_CAPACITY];
+  private volatile int size;
+  private volatile int lastMatch = -1;
 
   /**
    * Returns the highest term in the index.
    *
    * @return The highest term in the index.
    */
-  public synchronized long term() {
-    Map.Entry<Long, Long> entry = terms.lastEntry();
-    return entry != null ? entry.getValue() : 0;
+  public long term() {
+    int size = this.size;
+    return size > 0 ? terms[size - 1] : 0;
   }
 
   /**
@@ -53,9 +61,18 @@ public final class TermIndex {
    * @param offset The offset to index.
    * @param term The term to index.
    */
-  public synchronized void index(long offset, long term) {
+  public void index(long offset, long term) {
     if (lookup(offset) != term) {
-      terms.put(offset, term);
+      // If the offset precedes the last indexed offset, remove terms following the offset first.
+      int size = search(offset - 1, this.size) + 1;
+      if (size == offsets.length) {
+        int capacity = offsets.length * 2;
+        terms = Arrays.copyOf(terms, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+      }
+      offsets[size] = offset;
+      terms[size] = term;
+      this.size = size + 1;
     }
   }
 
@@ -65,9 +82,49 @@ public final class TermIndex {
    * @param offset The offset for which to look up the term.
    * @return The term for the entry at the given offset.
    */
-  public synchronized long lookup(long offset) {
-    Map.Entry<Long, Long> entry = terms.floorEntry(offset);
-    return entry != null ? entry.getValue() : 0;
+  public long lookup(long offset) {
+    int size = this.size;
+    if (size == 0) {
+      return 0;
+    }
+
+    // Most lookups are for entries in the last term.
+    long[] offsets = this.offsets;
+    long[] terms = this.terms;
+    if (offset >= offsets[size - 1]) {
+      return terms[size - 1];
+    }
+
+    // Check whether the offset falls within the last matched term.
+    int match = lastMatch;
+    if (match >= 0 && match < size - 1 && offsets[match] <= offset && offsets[match + 1] > offset) {
+      return terms[match];
+    }
+
+    match = search(offset, size);
+    if (match == -1) {
+      return 0;
+    }
+    lastMatch = match;
+    return terms[match];
+  }
+
+  /**
+   * Returns the position of the highest offset less than or equal to the given offset, or {@code -1}.
+   */
+  private int search(long offset, int size) {
+    long[] offsets = this.offsets;
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (offsets[mid] <= offset) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return high;
   }
 
   /**
@@ -75,8 +132,12 @@ public final class TermIndex {
    *
    * @param offset The offset to which to truncate the index.
    */
-  public synchronized void truncate(long offset) {
-    terms.tailMap(offset, false).clear();
+  public void truncate(long offset) {
+    int size = this.size;
+    if (size > 0 && offsets[size - 1] > offset) {
+      this.size = search(offset, size) + 1;
+      lastMatch = -1;
+    }
   }
 
   @Override
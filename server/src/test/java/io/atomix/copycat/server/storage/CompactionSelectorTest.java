@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.copycat.server.storage.compaction.Compaction;
+import io.atomix.copycat.server.storage.compaction.CompactionSelector;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * Compaction selector test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class CompactionSelectorTest extends AbstractLogTest {
+
+  @Override
+  protected Storage createStorage() {
+    return tempStorageBuilder()
+      .withMaxEntriesPerSegment(10)
+      .withMaxCompactionSegments(1)
+      .build();
+  }
+
+  /**
+   * Tests scoring segments.
+   */
+  public void testScores() throws Throwable {
+    writeEntries(41);
+    releaseEntries(1, 5);
+    releaseEntries(11, 8);
+    log.commit(41);
+
+    CompactionSelector selector = log.compactor().selector();
+    Segment first = log.segments.segment(1);
+    Segment second = log.segments.segment(11);
+    Segment third = log.segments.segment(21);
+    assertEquals(selector.garbageRatio(first), 0.5, 0.05);
+    assertEquals(selector.garbageRatio(second), 0.8, 0.05);
+    assertEquals(selector.garbageRatio(third), 0.0);
+    assertEquals(selector.score(third), 0.0);
+    assertTrue(selector.score(second) > selector.score(first));
+    assertTrue(selector.isCompactable(first));
+    assertFalse(selector.isCompactable(third));
+
+    Map<Long, Double> scores = log.compactor().scores();
+    assertEquals(scores.size(), log.segments.segments().size());
+    assertEquals(scores.get(second.descriptor().id()), selector.score(second));
+  }
+
+  /**
+   * Tests that the segment with the greatest score is compacted first.
+   */
+  public void testCompactBestSegment() throws Throwable {
+    writeEntries(41);
+    releaseEntries(1, 5);
+    releaseEntries(11, 8);
+    log.commit(41).compactor().minorIndex(41);
+
+    log.compactor().compact(Compaction.MINOR).get(10, TimeUnit.SECONDS);
+    assertEquals(log.segments.segment(1).descriptor().version(), 1);
+    assertTrue(log.segments.segment(11).descriptor().version() > 1);
+  }
+
+  /**
+   * Tests that segments are ranked by the size rather than the number of released entries.
+   */
+  public void testScoreReleasedBytes() throws Throwable {
+    writeEntries(10);
+    writeEntries(2, 4096);
+    writeEntries(9);
+    releaseEntries(1, 6);
+    releaseEntries(11, 2);
+    log.commit(21).compactor().minorIndex(21);
+
+    CompactionSelector selector = log.compactor().selector();
+    Segment small = log.segments.segment(1);
+    Segment large = log.segments.segment(11);
+    assertTrue(small.releaseCount() > large.releaseCount());
+    assertTrue(large.releaseSize() > small.releaseSize());
+    assertTrue(selector.garbageRatio(large) > 0.9);
+    assertTrue(selector.isCompactable(small));
+    assertTrue(selector.score(large) > selector.score(small));
+
+    log.compactor().compact(Compaction.MINOR).get(10, TimeUnit.SECONDS);
+    assertEquals(log.segments.segment(1).descriptor().version(), 1);
+    assertTrue(log.segments.segment(11).descriptor().version() > 1);
+  }
+
+  /**
+   * Releases the given number of entries starting at the given index.
+   */
+  private void releaseEntries(long index, int count) {
+    for (long i = index; i < index + count; i++) {
+      log.release(i);
+    }
+  }
+
+  /**
+   * Writes a set of session entries to the log.
+   */
+  private void writeEntries(int entries) {
+    writeEntries(entries, 0);
+  }
+
+  /**
+   * Writes a set of session entries with the given padding to the log.
+   */
+  private void writeEntries(int entries, int padding) {
+    for (int i = 0; i < entries; i++) {
+      try (TestEntry entry = log.create(TestEntry.class)) {
+        entry.setTerm(1);
+        entry.setCompactionMode(Compaction.Mode.QUORUM);
+        entry.setPadding(padding);
+        log.append(entry);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.copycat.server.storage.compaction.Compaction;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * Compaction throttle test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class CompactionThrottleTest extends AbstractLogTest {
+
+  @Override
+  protected Storage createStorage() {
+    return tempStorageBuilder()
+      .withMaxEntriesPerSegment(10)
+      .withMaxCompactionSegments(1)
+      .build();
+  }
+
+  /**
+   * Tests pausing and resuming compaction.
+   */
+  public void testPauseResume() throws Throwable {
+    writeEntries(31);
+    for (long index = 1; index < 11; index++) {
+      log.release(index);
+    }
+    log.commit(31).compactor().minorIndex(31);
+
+    log.compactor().throttle().pause();
+    assertTrue(log.compactor().throttle().isPaused());
+    // Paused compaction tasks can't read entries, so the compaction can't complete until the throttle is resumed.
+    CompletableFuture<Void> future = log.compactor().compact(Compaction.MINOR);
+    assertFalse(future.isDone());
+    assertEquals(log.segments.segment(1).descriptor().version(), 1);
+
+    log.compactor().throttle().resume();
+    future.get(10, TimeUnit.SECONDS);
+    assertTrue(log.segments.segment(1).descriptor().version() > 1);
+  }
+
+  /**
+   * Tests that a compaction rewrites at most the maximum number of segments.
+   */
+  public void testMaxCompactionSegments() throws Throwable {
+    writeEntries(31);
+    for (long index = 1; index < 21; index++) {
+      if (index < 11 || index % 2 != 0) {
+        log.release(index);
+      }
+    }
+    log.commit(31).compactor().minorIndex(31);
+
+    // The segment with the most released entries is compacted first.
+    log.compactor().compact(Compaction.MINOR).get(10, TimeUnit.SECONDS);
+    assertTrue(log.segments.segment(1).descriptor().version() > 1);
+    assertEquals(log.segments.segment(11).descriptor().version(), 1);
+
+    log.compactor().compact(Compaction.MINOR).get(10, TimeUnit.SECONDS);
+    assertTrue(log.segments.segment(11).descriptor().version() > 1);
+  }
+
+  /**
+   * Writes a set of session entries to the log.
+   */
+  private void writeEntries(int entries) {
+    for (int i = 0; i < entries; i++) {
+      try (TestEntry entry = log.create(TestEntry.class)) {
+        entry.setTerm(1);
+        entry.setCompactionMode(Compaction.Mode.QUORUM);
+        log.append(entry);
+      }
+    }
+  }
+
+}
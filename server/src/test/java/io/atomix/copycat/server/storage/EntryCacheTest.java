@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Entry cache test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class EntryCacheTest extends AbstractLogTest {
+  private static final int CACHED_ENTRIES = 10;
+
+  @Override
+  protected Storage createStorage() {
+    return tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(StorageLevel.DISK)
+      .withEntryCacheSize(entrySize() * CACHED_ENTRIES)
+      .build();
+  }
+
+  /**
+   * Creates a test entry.
+   */
+  private TestEntry createEntry(long index, int size) {
+    TestEntry entry = new TestEntry().setIndex(index).setTerm(1);
+    entry.setSize(size);
+    return entry;
+  }
+
+  /**
+   * Tests that the cache is bounded by the size of cached entries.
+   */
+  public void testEvictEntries() {
+    EntryCache cache = new EntryCache(100, new Storage().memory());
+    TestEntry first = createEntry(1, 40);
+    cache.put(first);
+    cache.put(createEntry(2, 40));
+    assertEquals(first.references(), 1);
+    cache.put(createEntry(3, 40));
+    assertEquals(cache.count(), 2);
+    assertEquals(cache.size(), 80);
+    assertNull(cache.get(1));
+    assertEquals(first.references(), 0);
+
+    cache.put(createEntry(4, 101));
+    assertNull(cache.get(4));
+    assertEquals(cache.count(), 2);
+  }
+
+  /**
+   * Tests that entries are acquired when read from the cache.
+   */
+  public void testGetEntry() {
+    EntryCache cache = new EntryCache(100, new Storage().memory());
+    TestEntry entry = createEntry(1, 10);
+    cache.put(entry);
+    try (TestEntry cached = cache.get(1)) {
+      assertSame(cached, entry);
+      assertEquals(entry.references(), 2);
+    }
+    assertEquals(entry.references(), 1);
+    cache.clear();
+    assertEquals(entry.references(), 0);
+  }
+
+  /**
+   * Tests invalidating cached entries.
+   */
+  public void testInvalidateEntries() {
+    EntryCache cache = new EntryCache(100, new Storage().memory());
+    for (int i = 1; i <= 5; i++) {
+      cache.put(createEntry(i, 10));
+    }
+    cache.truncate(4);
+    assertNull(cache.get(5));
+    cache.invalidate(2, 3);
+    assertNull(cache.get(2));
+    assertNull(cache.get(3));
+    assertEquals(cache.count(), 2);
+    assertEquals(cache.size(), 20);
+
+    cache.put(createEntry(2, 10));
+    assertNull(cache.get(4));
+    assertEquals(cache.count(), 2);
+  }
+
+  /**
+   * Tests reading recently appended entries from the cache.
+   */
+  public void testReadCachedEntries() {
+    appendEntries(CACHED_ENTRIES * 4);
+    assertTrue(log.segments.cache().count() >= CACHED_ENTRIES);
+    assertTrue(log.segments.cache().count() < CACHED_ENTRIES * 4);
+    assertTrue(log.segments.cache().size() <= storage.entryCacheSize());
+    for (int i = 1; i <= CACHED_ENTRIES * 4; i++) {
+      try (TestEntry entry = log.get(i)) {
+        assertEquals(entry.getIndex(), i);
+        assertEquals(entry.getTerm(), 1);
+      }
+    }
+  }
+
+  /**
+   * Tests checking whether entries are held in the cache.
+   */
+  public void testIsCached() {
+    appendEntries(CACHED_ENTRIES * 4);
+    assertFalse(log.isCached(1));
+    assertTrue(log.isCached(CACHED_ENTRIES * 4));
+    log.truncate(CACHED_ENTRIES * 4 - 1);
+    assertFalse(log.isCached(CACHED_ENTRIES * 4));
+    assertTrue(log.isCached(CACHED_ENTRIES * 4 - 1));
+  }
+
+  /**
+   * Tests that truncating the log invalidates cached entries.
+   */
+  public void testTruncateCachedEntries() {
+    appendEntries(CACHED_ENTRIES);
+    log.truncate(CACHED_ENTRIES / 2);
+    assertEquals(log.segments.cache().count(), CACHED_ENTRIES / 2);
+
+    try (TestEntry entry = log.create(TestEntry.class)) {
+      entry.setTerm(2);
+      log.append(entry);
+    }
+    try (TestEntry entry = log.get(CACHED_ENTRIES / 2 + 1)) {
+      assertEquals(entry.getTerm(), 2);
+    }
+  }
+
+  /**
+   * Tests that closing the log releases cached entries.
+   */
+  public void testCloseReleasesEntries() {
+    appendEntries(CACHED_ENTRIES);
+    log.close();
+    assertEquals(log.segments.cache().count(), 0);
+    log = createLog();
+    try (TestEntry entry = log.get(1)) {
+      assertEquals(entry.getIndex(), 1);
+    }
+  }
+
+}
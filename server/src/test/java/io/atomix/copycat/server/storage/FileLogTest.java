@@ -62,6 +62,19 @@ public class FileLogTest extends LogTest {
    * Tests recovery of a log after compaction.
    */
   public void testRecoverAfterCompact() {
+    // The compaction threshold applies to the fraction of a segment's bytes that have been released, and the first
+    // entry in each segment is larger than the rest since it carries the entry's term. With two entries per segment,
+    // releasing only the second entry releases less than half the segment's bytes, so the threshold is lowered to
+    // ensure every segment from which entries are released is compacted.
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxSegmentSize(Integer.MAX_VALUE)
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(storageLevel())
+      .withCompactionThreshold(0.25)
+      .build();
+    log = createLog();
+
     appendEntries(entriesPerSegment * 5);
     for (long i = 1; i <= entriesPerSegment * 5; i++) {
       if (i % 3 == 0 || i % 3 == 1) {
@@ -94,6 +107,28 @@ public class FileLogTest extends LogTest {
     }
   }
 
+  /**
+   * Tests that a segment truncated while pinned doesn't delete the segment that replaces it once unpinned.
+   */
+  public void testRecoverAfterTruncatePinnedSegment() {
+    appendEntries(entriesPerSegment * 3);
+    Segment segment = log.segments.pin(log.lastIndex());
+    log.truncate(entriesPerSegment);
+    appendEntries(entriesPerSegment * 2);
+    assertTrue(segment.isRetired());
+    segment.unpin();
+    log.close();
+
+    try (Log log = createLog()) {
+      assertEquals(log.length(), entriesPerSegment * 3);
+      for (long i = 1; i <= entriesPerSegment * 3; i++) {
+        try (Entry entry = log.get(i)) {
+          assertEquals(entry.getIndex(), i);
+        }
+      }
+    }
+  }
+
   /**
    * Tests recovering from an inconsistent disk.
    */
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * Log flusher test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class LogFlusherTest extends AbstractLogTest {
+
+  @Override
+  protected Storage createStorage() {
+    return tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(StorageLevel.DISK)
+      .withFlushMode(FlushMode.GROUP)
+      .withFlushInterval(Duration.ofMillis(50))
+      .build();
+  }
+
+  /**
+   * Tests that entries are flushed in groups.
+   */
+  public void testGroupFlush() throws Throwable {
+    appendEntries(entriesPerSegment * 3);
+    assertEquals(log.flushIndex(), 0);
+
+    CompletableFuture<Long> future = log.flush(entriesPerSegment * 2);
+    assertEquals(future.get(5, TimeUnit.SECONDS).longValue(), entriesPerSegment * 2);
+    assertEquals(log.flushIndex(), entriesPerSegment * 3);
+    assertTrue(log.flush(entriesPerSegment * 3).isDone());
+  }
+
+  /**
+   * Tests that a group flush is triggered once the max flush size has been written.
+   */
+  public void testGroupFlushSize() throws Throwable {
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withFlushMode(FlushMode.GROUP)
+      .withFlushInterval(Duration.ofMinutes(1))
+      .withMaxFlushSize(1)
+      .build();
+    log = createLog();
+    appendEntries(1);
+    assertEquals(log.flush(1).get(5, TimeUnit.SECONDS).longValue(), 1);
+  }
+
+  /**
+   * Tests that truncating the log resets the flush index.
+   */
+  public void testTruncateFlushIndex() throws Throwable {
+    appendEntries(entriesPerSegment * 2);
+    log.flush(entriesPerSegment * 2).get(5, TimeUnit.SECONDS);
+    log.truncate(entriesPerSegment);
+    assertEquals(log.flushIndex(), entriesPerSegment);
+    appendEntries(1);
+    assertEquals(log.flush(entriesPerSegment + 1).get(5, TimeUnit.SECONDS).longValue(), entriesPerSegment + 1);
+  }
+
+  /**
+   * Tests that futures waiting for truncated entries are completed exceptionally.
+   */
+  public void testTruncatePendingFlush() throws Throwable {
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withFlushMode(FlushMode.GROUP)
+      .withFlushInterval(Duration.ofMinutes(1))
+      .build();
+    log = createLog();
+    appendEntries(entriesPerSegment * 2);
+    CompletableFuture<Long> truncated = log.flush(entriesPerSegment * 2);
+    CompletableFuture<Long> retained = log.flush(entriesPerSegment);
+    log.truncate(entriesPerSegment);
+    assertTrue(truncated.isCompletedExceptionally());
+    assertFalse(retained.isDone());
+    log.flush();
+    assertEquals(retained.get(5, TimeUnit.SECONDS).longValue(), entriesPerSegment);
+    assertEquals(log.flushIndex(), entriesPerSegment);
+  }
+
+  /**
+   * Tests flushing every entry.
+   */
+  public void testEntryFlush() {
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withFlushMode(FlushMode.ENTRY)
+      .build();
+    log = createLog();
+    appendEntries(entriesPerSegment * 2);
+    assertEquals(log.flushIndex(), entriesPerSegment * 2);
+    assertTrue(log.flush(entriesPerSegment * 2).isDone());
+  }
+
+  /**
+   * Tests that entries are always considered flushed when flushing is left to the OS.
+   */
+  public void testOsFlush() {
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withFlushMode(FlushMode.OS)
+      .build();
+    log = createLog();
+    appendEntries(entriesPerSegment * 2);
+    assertEquals(log.flushIndex(), entriesPerSegment * 2);
+    assertTrue(log.flush(entriesPerSegment * 2).isDone());
+  }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.copycat.server.storage.compaction.Compaction;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Log reader test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class LogReaderTest extends AbstractLogTest {
+
+  public LogReaderTest() {
+    entriesPerSegment = 10;
+    entryPadding = 16;
+  }
+
+  @Override
+  protected Storage createStorage() {
+    return storageBuilder(StorageLevel.DISK).build();
+  }
+
+  /**
+   * Returns a storage builder for a log that doesn't cache entries, ensuring entries are read from segments.
+   */
+  private Storage.Builder storageBuilder(StorageLevel storageLevel) {
+    return tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(storageLevel)
+      .withChecksums()
+      .withVerifyChecksums(true)
+      .withEntryCacheSize(0);
+  }
+
+  /**
+   * Replaces the test log with a log using the given storage.
+   */
+  private void replaceLog(Storage storage) {
+    log.close();
+    storage.deleteLog(logId);
+    this.storage = storage;
+    log = createLog();
+  }
+
+  /**
+   * Reads entries up to the last index in the log with the given reader and asserts they match the entries in the log.
+   */
+  private void assertEntries(LogReader reader) {
+    while (reader.hasNext()) {
+      long index = reader.nextIndex();
+      try (TestEntry entry = reader.next(); TestEntry expected = log.get(index)) {
+        if (expected == null) {
+          assertNull(entry);
+        } else {
+          assertNotNull(entry);
+          assertEquals(entry.getIndex(), index);
+          assertEquals(entry.getTerm(), expected.getTerm());
+          assertEquals(entry.getPadding().length, expected.getPadding().length);
+        }
+      }
+    }
+    assertEquals(reader.nextIndex(), log.lastIndex() + 1);
+  }
+
+  /**
+   * Tests reading entries sequentially across segments.
+   */
+  public void testReadSequentially() {
+    appendEntries(entriesPerSegment * 5);
+    try (LogReader reader = log.createReader(1)) {
+      assertEntries(reader);
+    }
+  }
+
+  /**
+   * Tests reading entries sequentially from memory segments.
+   */
+  public void testReadMemory() {
+    replaceLog(storageBuilder(StorageLevel.MEMORY).build());
+    appendEntries(entriesPerSegment * 5);
+    try (LogReader reader = log.createReader(1)) {
+      assertEntries(reader);
+    }
+  }
+
+  /**
+   * Tests reading entries appended after the reader has read to the end of the log.
+   */
+  public void testReadAfterAppend() {
+    appendEntries(entriesPerSegment / 2);
+    try (LogReader reader = log.createReader(1)) {
+      assertEntries(reader);
+      assertFalse(reader.hasNext());
+      appendEntries(entriesPerSegment * 2);
+      assertTrue(reader.hasNext());
+      assertEntries(reader);
+    }
+  }
+
+  /**
+   * Tests resetting the reader to a prior index.
+   */
+  public void testReset() {
+    appendEntries(entriesPerSegment * 3);
+    try (LogReader reader = log.createReader(entriesPerSegment + 2)) {
+      try (TestEntry entry = reader.next()) {
+        assertEquals(entry.getIndex(), entriesPerSegment + 2);
+      }
+      reader.reset(2);
+      assertEquals(reader.nextIndex(), 2);
+      assertEntries(reader);
+    }
+  }
+
+  /**
+   * Tests that compacted entries are not visible to the reader.
+   */
+  public void testReadCompactedEntries() {
+    appendEntries(entriesPerSegment * 5);
+    log.commit(entriesPerSegment * 5);
+    for (long i = 1; i <= entriesPerSegment * 5; i += 2) {
+      log.release(i);
+    }
+    log.compactor().minorIndex(entriesPerSegment * 5);
+    log.compactor().majorIndex(entriesPerSegment * 5);
+    log.compactor().compact(Compaction.MAJOR).join();
+
+    try (LogReader reader = log.createReader(1)) {
+      while (reader.hasNext()) {
+        long index = reader.nextIndex();
+        try (TestEntry entry = reader.next()) {
+          if (index % 2 == 1 && index != log.lastIndex()) {
+            assertNull(entry);
+          } else {
+            assertEquals(entry.getIndex(), index);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests that entries rewritten after a truncation are read by the reader.
+   */
+  public void testReadAfterTruncate() {
+    appendEntries(entriesPerSegment * 2);
+    try (LogReader reader = log.createReader(1)) {
+      for (int i = 0; i < entriesPerSegment + 2; i++) {
+        reader.next().close();
+      }
+
+      log.truncate(entriesPerSegment);
+      for (int i = 0; i < entriesPerSegment; i++) {
+        try (TestEntry entry = log.create(TestEntry.class)) {
+          entry.setTerm(2).setPadding(entryPadding * 2);
+          log.append(entry);
+        }
+      }
+
+      reader.reset(entriesPerSegment + 1);
+      while (reader.hasNext()) {
+        try (TestEntry entry = reader.next()) {
+          assertEquals(entry.getTerm(), 2);
+          assertEquals(entry.getPadding().length, entryPadding * 2);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests reading entries larger than the read-ahead window.
+   */
+  public void testReadLargeEntries() {
+    entryPadding = 1024 * 100;
+    replaceLog(storageBuilder(StorageLevel.DISK).withMaxSegmentSize(1024 * 1024 * 4).build());
+    appendEntries(entriesPerSegment * 2);
+    try (LogReader reader = log.createReader(1)) {
+      assertEntries(reader);
+    }
+  }
+
+  /**
+   * Tests reading entries from compressed segments.
+   */
+  public void testReadCompressedSegments() {
+    replaceLog(storageBuilder(StorageLevel.DISK).withCompressSegments(true).withCompressionBlockSize(entrySize() * 4).build());
+    appendEntries(entriesPerSegment * 5);
+    log.commit(entriesPerSegment * 5);
+    log.compactor().compact(Compaction.MINOR).join();
+    assertTrue(log.segments.firstSegment().descriptor().compressed());
+
+    try (LogReader reader = log.createReader(1)) {
+      assertEntries(reader);
+    }
+  }
+
+  /**
+   * Tests reading entries from segments with a sparse offset index.
+   */
+  public void testReadSparseIndex() {
+    replaceLog(storageBuilder(StorageLevel.DISK).withIndexInterval(3).build());
+    appendEntries(entriesPerSegment * 5);
+    try (LogReader reader = log.createReader(entriesPerSegment / 2)) {
+      assertEntries(reader);
+    }
+  }
+
+}
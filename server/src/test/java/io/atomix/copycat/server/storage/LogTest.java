@@ -15,11 +15,18 @@
  */
 package io.atomix.copycat.server.storage;
 
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.copycat.server.protocol.AppendRequest;
 import io.atomix.copycat.server.storage.compaction.Compaction;
+import io.atomix.copycat.server.storage.entry.Entry;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.testng.Assert.*;
 
@@ -290,6 +297,182 @@ public abstract class LogTest extends AbstractLogTest {
     }
   }
 
+  /**
+   * Creates a test entry for appending in a batch.
+   */
+  private TestEntry createEntry(long index, long term) {
+    TestEntry entry = new TestEntry().setIndex(index).setTerm(term);
+    entry.setPadding(entryPadding);
+    return entry;
+  }
+
+  /**
+   * Tests {@link Log#append(List)}.
+   */
+  public void testAppendBatch() throws Throwable {
+    appendEntries(5);
+
+    List<TestEntry> entries = new ArrayList<>();
+    for (int i = 6; i <= 105; i++) {
+      entries.add(createEntry(i, i / 10 + 1));
+    }
+    assertEquals(log.append(entries), 105);
+    assertEquals(log.lastIndex(), 105);
+
+    for (int i = 6; i <= 105; i++) {
+      assertEquals(log.term(i), i / 10 + 1);
+      try (TestEntry entry = log.get(i)) {
+        assertEquals(entry.getIndex(), i);
+        assertEquals(entry.getTerm(), i / 10 + 1);
+      }
+    }
+
+    assertEquals(log.append(createEntry(106, 11)), 106);
+    assertEquals(log.lastIndex(), 106);
+  }
+
+  /**
+   * Tests skipping missing entries in a batch appended with {@link Log#append(List)}.
+   */
+  public void testAppendBatchSkipped() throws Throwable {
+    appendEntries(10);
+
+    List<TestEntry> entries = new ArrayList<>();
+    entries.add(createEntry(11, 1));
+    entries.add(createEntry(15, 1));
+    entries.add(createEntry(16, 2));
+    assertEquals(log.append(entries), 16);
+    assertEquals(log.lastIndex(), 16);
+
+    log.commit(16);
+    try (TestEntry entry = log.get(12)) {
+      assertNull(entry);
+    }
+    try (TestEntry entry = log.get(15)) {
+      assertEquals(entry.getIndex(), 15);
+    }
+    try (TestEntry entry = log.get(16)) {
+      assertEquals(entry.getTerm(), 2);
+    }
+  }
+
+  /**
+   * Tests {@link Log#readRaw(long, int)}.
+   */
+  public void testReadRaw() throws Throwable {
+    appendEntries(100);
+    long index = 1;
+    while (index <= 100) {
+      List<RawEntry> entries = log.readRaw(index, 1024);
+      assertFalse(entries.isEmpty());
+      for (RawEntry rawEntry : entries) {
+        assertEquals(rawEntry.index(), index);
+        assertEquals(rawEntry.term(), 1);
+        try (TestEntry entry = rawEntry.toEntry(log.serializer())) {
+          assertEquals(entry.getIndex(), index);
+          assertEquals(entry.getTerm(), 1);
+          assertEquals(entry.getPadding().length, entryPadding);
+        }
+        index++;
+      }
+    }
+  }
+
+  /**
+   * Tests copying raw entries verbatim and deserializing the copy.
+   */
+  public void testCopyRawEntries() throws Throwable {
+    appendEntries(10);
+    for (RawEntry rawEntry : log.readRaw(1, 1024 * 32)) {
+      Buffer buffer = HeapBuffer.allocate();
+      rawEntry.writeTo(buffer);
+      byte[] bytes = new byte[rawEntry.size()];
+      buffer.flip().read(bytes);
+
+      RawEntry copy = new RawEntry(rawEntry.index(), rawEntry.term(), bytes, 0, bytes.length, rawEntry.order());
+      try (TestEntry entry = copy.toEntry(log.serializer())) {
+        assertEquals(entry.getIndex(), rawEntry.index());
+        assertEquals(entry.getPadding().length, entryPadding);
+      }
+    }
+  }
+
+  /**
+   * Tests that raw entries are written to append requests in the same format as deserialized entries.
+   */
+  public void testWriteRawEntriesToAppendRequest() throws Throwable {
+    appendEntries(entriesPerSegment);
+    List<RawEntry> rawEntries = log.readRaw(1, 1024 * 32);
+    assertEquals(rawEntries.size(), entriesPerSegment);
+
+    List<Entry> entries = new ArrayList<>();
+    for (long i = 1; i <= entriesPerSegment; i++) {
+      entries.add(log.get(i));
+    }
+
+    AppendRequest rawRequest = appendRequest().withEntries(new ArrayList<>()).withRawEntries(rawEntries, log.serializer()).build();
+    AppendRequest request = appendRequest().withEntries(entries).build();
+
+    for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+      Buffer rawBuffer = HeapBuffer.allocate().order(order);
+      rawRequest.writeObject(rawBuffer, log.serializer());
+      Buffer buffer = HeapBuffer.allocate().order(order);
+      request.writeObject(buffer, log.serializer());
+
+      byte[] rawBytes = new byte[(int) rawBuffer.flip().remaining()];
+      rawBuffer.read(rawBytes);
+      byte[] bytes = new byte[(int) buffer.flip().remaining()];
+      buffer.read(bytes);
+      assertEquals(rawBytes, bytes);
+
+      AppendRequest copy = new AppendRequest();
+      copy.readObject(rawBuffer.rewind(), log.serializer());
+      assertEquals(copy.entries().size(), entriesPerSegment);
+      long index = 1;
+      for (Entry entry : copy.entries()) {
+        assertEquals(entry.getIndex(), index++);
+        assertEquals(((TestEntry) entry).getPadding().length, entryPadding);
+        entry.release();
+      }
+    }
+
+    // Raw entries are deserialized with the request's serializer if the request is not serialized.
+    assertEquals(rawRequest.entries().size(), entriesPerSegment);
+    rawRequest.entries().forEach(Entry::release);
+    entries.forEach(Entry::release);
+  }
+
+  /**
+   * Returns an append request builder with the request metadata populated.
+   */
+  private AppendRequest.Builder appendRequest() {
+    return AppendRequest.builder()
+      .withTerm(1)
+      .withLeader(1)
+      .withLogIndex(0)
+      .withLogTerm(0)
+      .withCommitIndex(0)
+      .withGlobalIndex(0);
+  }
+
+  /**
+   * Tests that raw reads skip missing entries and are limited by the maximum number of bytes.
+   */
+  public void testReadRawLimits() throws Throwable {
+    appendEntries(1);
+    log.skip(2);
+    appendEntries(1);
+    List<RawEntry> entries = log.readRaw(2, 1024);
+    if (log.segments.segment(2) == log.segments.segment(4)) {
+      assertEquals(entries.size(), 1);
+      assertEquals(entries.get(0).index(), 4);
+    }
+
+    entries = log.readRaw(1, 1);
+    assertEquals(entries.size(), 1);
+    assertEquals(entries.get(0).index(), 1);
+  }
+
   /**
    * Tests {@link Log#truncate(long)}.
    */
@@ -359,4 +542,43 @@ public abstract class LogTest extends AbstractLogTest {
     assertEquals(log.firstIndex(), 1);
     assertEquals(log.lastIndex(), 10);
   }
+
+  /**
+   * Tests reading entries concurrently with appends.
+   */
+  public void testConcurrentReads() throws Throwable {
+    int numEntries = entriesPerSegment * 20;
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    List<Thread> readers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Thread reader = new Thread(() -> {
+        try {
+          long lastIndex = 0;
+          while (lastIndex < numEntries) {
+            lastIndex = log.lastIndex();
+            for (long index = 1; index <= lastIndex; index++) {
+              try (TestEntry entry = log.get(index)) {
+                assertNotNull(entry);
+                assertEquals(entry.getIndex(), index);
+                assertEquals(entry.getTerm(), 1);
+              }
+            }
+          }
+        } catch (Throwable t) {
+          error.compareAndSet(null, t);
+        }
+      });
+      reader.start();
+      readers.add(reader);
+    }
+
+    appendEntries(numEntries);
+
+    for (Thread reader : readers) {
+      reader.join(10000);
+    }
+    if (error.get() != null) {
+      throw error.get();
+    }
+  }
 }
@@ -34,6 +34,7 @@ public class MajorCompactionTest extends AbstractLogTest {
   protected Storage createStorage() {
     return tempStorageBuilder()
       .withMaxEntriesPerSegment(10)
+      .withCompactionThreads(4)
       .build();
   }
 
@@ -65,6 +66,77 @@ public class MajorCompactionTest extends AbstractLogTest {
     }
   }
 
+  /**
+   * Tests that entries transferred to the compact segment retain their terms and compaction modes.
+   */
+  public void testMajorCompactionRetainsRecords() throws Throwable {
+    for (int i = 0; i < 31; i++) {
+      try (TestEntry entry = log.create(TestEntry.class)) {
+        entry.setTerm(entry.getIndex() < 15 ? 1 : 2);
+        entry.setCompactionMode(entry.getIndex() % 2 == 0 ? Compaction.Mode.SEQUENTIAL : Compaction.Mode.QUORUM);
+        log.append(entry);
+      }
+    }
+
+    for (long index = 11; index < 18; index++) {
+      log.release(index);
+    }
+    log.commit(31).compactor().minorIndex(31).majorIndex(31);
+
+    CountDownLatch latch = new CountDownLatch(1);
+    log.compactor().compact(Compaction.MAJOR).thenRun(latch::countDown);
+    latch.await();
+
+    Segment segment = log.segments.segment(11);
+    assertTrue(segment.descriptor().version() > 1);
+    Segment.Reader reader = segment.createReader();
+    for (long index = 18; index <= segment.lastIndex(); index++) {
+      RawEntry raw = reader.nextRaw(index);
+      assertNotNull(raw);
+      assertEquals(raw.term(), 2);
+      assertEquals(raw.compactionMode(), index % 2 == 0 ? Compaction.Mode.SEQUENTIAL : Compaction.Mode.QUORUM);
+      try (TestEntry entry = log.get(index)) {
+        assertEquals(entry.getIndex(), index);
+        assertEquals(entry.getTerm(), 2);
+        assertEquals(entry.getCompactionMode(), raw.compactionMode());
+      }
+    }
+  }
+
+  /**
+   * Tests compacting multiple groups of segments in parallel.
+   */
+  public void testParallelMajorCompaction() throws Throwable {
+    writeEntries(61);
+
+    for (long index = 1; index < 51; index++) {
+      if (index % 3 != 0) {
+        log.release(index);
+      }
+    }
+    log.commit(61).compactor().minorIndex(61).majorIndex(61);
+
+    CountDownLatch latch = new CountDownLatch(1);
+    log.compactor().compact(Compaction.MAJOR).thenRun(latch::countDown);
+    latch.await();
+
+    assertEquals(log.length(), 61L);
+    for (long index = 1; index < 51; index += 10) {
+      assertTrue(log.segments.segment(index).descriptor().version() > 1);
+    }
+
+    for (long index = 1; index < 51; index++) {
+      if (index % 3 != 0) {
+        assertFalse(log.contains(index));
+      } else {
+        try (TestEntry entry = log.get(index)) {
+          assertNotNull(entry);
+          assertEquals(entry.getIndex(), index);
+        }
+      }
+    }
+  }
+
   /**
    * Writes a set of session entries to the log.
    */
@@ -18,6 +18,11 @@ package io.atomix.copycat.server.storage;
 import org.testng.annotations.Factory;
 import org.testng.annotations.Test;
 
+import java.nio.ByteOrder;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
 /**
  * Memory mapped file log test.
  *
@@ -35,4 +40,24 @@ public class MappedLogTest extends FileLogTest {
     return StorageLevel.MAPPED;
   }
 
+  /**
+   * Tests that raw entries read from a mapped segment are decoded in the segment's big-endian byte order.
+   */
+  public void testReadRawMapped() throws Throwable {
+    appendEntries(entriesPerSegment);
+    List<RawEntry> entries = log.readRaw(1, 1024 * 32);
+    assertEquals(entries.size(), entriesPerSegment);
+
+    long index = 1;
+    for (RawEntry rawEntry : entries) {
+      assertEquals(rawEntry.order(), ByteOrder.BIG_ENDIAN);
+      assertEquals(rawEntry.index(), index);
+      try (TestEntry entry = rawEntry.toEntry(log.serializer())) {
+        assertEquals(entry.getIndex(), index);
+        assertEquals(entry.getPadding().length, entryPadding);
+      }
+      index++;
+    }
+  }
+
 }
@@ -72,6 +72,31 @@ public class MinorCompactionTest extends AbstractLogTest {
     }
   }
 
+  /**
+   * Tests that a segment replaced during compaction remains readable until it's unpinned.
+   */
+  public void testPinnedSegmentRetainedUntilUnpinned() throws Throwable {
+    writeEntries(31);
+    for (long index = 1; index < 11; index++) {
+      log.release(index);
+    }
+    log.commit(31).compactor().minorIndex(31);
+
+    Segment segment = log.segments.pin(1);
+    CountDownLatch latch = new CountDownLatch(1);
+    log.compactor().compact(Compaction.MINOR).thenRun(latch::countDown);
+    latch.await();
+
+    assertNotSame(log.segments.segment(1), segment);
+    assertTrue(segment.isRetired());
+    assertTrue(segment.isOpen());
+    assertEquals(segment.term(5), 1);
+
+    segment.unpin();
+    assertFalse(segment.isOpen());
+    assertFalse(segment.pin());
+  }
+
   /**
    * Writes a set of session entries to the log.
    */
@@ -15,10 +15,14 @@
  */
 package io.atomix.copycat.server.storage;
 
+import io.atomix.catalyst.buffer.DirectBuffer;
 import io.atomix.catalyst.buffer.HeapBuffer;
 import io.atomix.copycat.server.storage.util.OffsetIndex;
 import org.testng.annotations.Test;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import static org.testng.Assert.*;
 
 /**
@@ -135,4 +139,140 @@ public class OffsetIndexTest {
     assertEquals(index.truncate(1), 30);
   }
 
+  /**
+   * Tests growing a direct index buffer.
+   */
+  public void testGrowDirectIndex() {
+    try (OffsetIndex index = new OffsetIndex(DirectBuffer.allocate(16, OffsetIndex.size(1024)))) {
+      for (int i = 0; i < 1024; i++) {
+        index.index(i * 2, i * 100);
+      }
+      for (int i = 0; i < 1024; i++) {
+        assertEquals(index.position(i * 2), i * 100);
+        assertEquals(index.position(i * 2 + 1), -1);
+      }
+      assertEquals(index.truncate(511 * 2), 512 * 100);
+      assertEquals(index.size(), 512);
+      index.index(1023, 1234);
+      assertEquals(index.position(1023), 1234);
+    }
+  }
+
+  /**
+   * Tests closing buffers replaced as a direct index grows.
+   */
+  public void testCloseReplacedBuffers() {
+    try (OffsetIndex index = new OffsetIndex(DirectBuffer.allocate(16, OffsetIndex.size(1024)))) {
+      for (int i = 0; i < 1024; i++) {
+        index.index(i, i * 100);
+      }
+      long size = index.memorySize();
+      assertTrue(size > OffsetIndex.size(1024));
+      assertFalse(index.closeReplacedBuffers(() -> false));
+      assertEquals(index.memorySize(), size);
+      assertTrue(index.closeReplacedBuffers(() -> true));
+      assertEquals(index.memorySize(), OffsetIndex.size(1024));
+      assertFalse(index.closeReplacedBuffers(() -> true));
+      for (int i = 0; i < 1024; i++) {
+        assertEquals(index.position(i), i * 100);
+      }
+    }
+  }
+
+  /**
+   * Tests reading positions from a sparse index.
+   */
+  public void testSparseIndexPositions() {
+    TestScanner scanner = new TestScanner();
+    OffsetIndex index = new OffsetIndex(HeapBuffer.allocate(1024 * 8), 4).scanner(scanner);
+    for (int i = 0; i < 100; i++) {
+      scanner.index(index, i, i * 10);
+    }
+    assertEquals(index.size(), 100);
+    for (int i = 0; i < 100; i++) {
+      assertTrue(index.contains(i));
+      assertEquals(index.find(i), i);
+      assertEquals(index.position(i), i * 10);
+    }
+    for (int i = 99; i >= 0; i--) {
+      assertEquals(index.position(i), i * 10);
+    }
+    assertEquals(index.position(100), -1);
+  }
+
+  /**
+   * Tests reading positions from a sparse index with skipped entries.
+   */
+  public void testSparseIndexSkipped() {
+    TestScanner scanner = new TestScanner();
+    OffsetIndex index = new OffsetIndex(HeapBuffer.allocate(1024 * 8), 4).scanner(scanner);
+    for (int i = 0; i < 100; i++) {
+      scanner.index(index, i * 2 + 1, i * 10);
+    }
+    for (int i = 0; i < 100; i++) {
+      assertTrue(index.contains(i * 2 + 1));
+      assertFalse(index.contains(i * 2));
+      assertEquals(index.find(i * 2 + 1), i);
+      assertEquals(index.position(i * 2 + 1), i * 10);
+      assertEquals(index.position(i * 2), -1);
+    }
+  }
+
+  /**
+   * Tests truncating a sparse index.
+   */
+  public void testSparseTruncate() {
+    TestScanner scanner = new TestScanner();
+    OffsetIndex index = new OffsetIndex(HeapBuffer.allocate(1024 * 8), 4).scanner(scanner);
+    for (int i = 0; i < 100; i++) {
+      scanner.index(index, i * 2, i * 10);
+    }
+    assertEquals(index.truncate(50 * 2), 51 * 10);
+    assertEquals(index.size(), 51);
+    assertEquals(index.lastOffset(), 100);
+    assertEquals(index.position(100), 500);
+    assertEquals(index.position(102), -1);
+
+    assertEquals(index.truncate(21 * 2 + 1), 22 * 10);
+    assertEquals(index.size(), 22);
+    assertEquals(index.position(42), 210);
+
+    scanner.index(index, 50, 220);
+    assertEquals(index.size(), 23);
+    assertEquals(index.find(50), 22);
+    assertEquals(index.position(50), 220);
+    assertEquals(index.position(42), 210);
+  }
+
+  /**
+   * Tests the size of a sparse index.
+   */
+  public void testSparseIndexSize() {
+    assertEquals(OffsetIndex.size(1024, 1), OffsetIndex.size(1024));
+    assertEquals(OffsetIndex.size(1024, 4), OffsetIndex.size(256));
+    assertEquals(OffsetIndex.size(1025, 4), OffsetIndex.size(257));
+  }
+
+  /**
+   * Scanner over fixed size records.
+   */
+  private static final class TestScanner implements OffsetIndex.Scanner {
+    private final Map<Long, Long> offsets = new HashMap<>();
+
+    private void index(OffsetIndex index, long offset, long position) {
+      offsets.put(position, offset);
+      index.index(offset, position);
+    }
+
+    @Override
+    public long offset(long position) {
+      return offsets.get(position);
+    }
+
+    @Override
+    public long next(long position) {
+      return position + 10;
+    }
+  }
+
 }
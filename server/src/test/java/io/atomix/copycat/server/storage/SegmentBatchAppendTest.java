@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ * Batched segment append test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class SegmentBatchAppendTest extends AbstractLogTest {
+
+  @Override
+  protected Storage createStorage() {
+    return tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(StorageLevel.DISK)
+      .withChecksums()
+      .build();
+  }
+
+  /**
+   * Returns a batch of entries.
+   */
+  private List<TestEntry> createBatch(long startIndex, int numEntries, int padding) {
+    List<TestEntry> entries = new ArrayList<>();
+    for (long index = startIndex; index < startIndex + numEntries; index++) {
+      TestEntry entry = new TestEntry().setIndex(index).setTerm(1);
+      entry.setPadding(padding);
+      entries.add(entry);
+    }
+    return entries;
+  }
+
+  /**
+   * Asserts that the log contains the expected entries.
+   */
+  private void assertEntries(int numEntries, int padding) {
+    assertEquals(log.lastIndex(), numEntries);
+    for (int i = 1; i <= numEntries; i++) {
+      try (TestEntry entry = log.get(i)) {
+        assertEquals(entry.getIndex(), i);
+        assertEquals(entry.getTerm(), 1);
+        assertEquals(entry.getPadding().length, padding);
+      }
+    }
+  }
+
+  /**
+   * Tests appending a batch that spans multiple segments.
+   */
+  public void testAppendBatchAcrossSegments() {
+    log.append(createBatch(1, entriesPerSegment * 3 + 1, 0));
+    assertEquals(log.segments.segments().size(), 4);
+    assertEntries(entriesPerSegment * 3 + 1, 0);
+  }
+
+  /**
+   * Tests appending a batch larger than the batch write buffer.
+   */
+  public void testAppendLargeBatch() {
+    entriesPerSegment = 100;
+    log.close();
+    storage.deleteLog(logId);
+    storage = createStorage();
+    log = createLog();
+
+    log.append(createBatch(1, 100, 1024));
+    assertEquals(log.segments.segments().size(), 1);
+    assertEntries(100, 1024);
+  }
+
+  /**
+   * Tests appending a batch to a mapped segment that must be remapped to fit the batch.
+   */
+  public void testAppendLargeMappedBatch() {
+    entriesPerSegment = 2048;
+    log.close();
+    storage.deleteLog(logId);
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(StorageLevel.MAPPED)
+      .withChecksums()
+      .build();
+    log = createLog();
+
+    log.append(createBatch(1, 1024, 1024));
+    log.append(createBatch(1025, 1024, 1024));
+    assertEquals(log.segments.segments().size(), 1);
+    assertEntries(2048, 1024);
+
+    log.close();
+    log = createLog();
+    assertEntries(2048, 1024);
+  }
+
+  /**
+   * Tests recovering batched entries after the log is reopened.
+   */
+  public void testRecoverBatch() {
+    log.append(createBatch(1, entriesPerSegment * 3, 16));
+    log.close();
+
+    log = createLog();
+    assertEntries(entriesPerSegment * 3, 16);
+    log.append(createBatch(entriesPerSegment * 3 + 1, entriesPerSegment, 16));
+    assertEntries(entriesPerSegment * 4, 16);
+  }
+
+  /**
+   * Tests that no entries in an inconsistent batch are written.
+   */
+  public void testAppendInvalidBatch() {
+    List<TestEntry> entries = createBatch(1, 2, 0);
+    entries.add(new TestEntry().setIndex(2).setTerm(1));
+    try {
+      log.append(entries);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+    }
+    assertTrue(log.isEmpty());
+    log.append(createBatch(1, 2, 0));
+    assertEntries(2, 0);
+  }
+
+}
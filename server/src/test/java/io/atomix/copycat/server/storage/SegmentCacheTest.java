@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.*;
+
+/**
+ * Open segment cache test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class SegmentCacheTest extends AbstractLogTest {
+  private static final int MAX_OPEN_SEGMENTS = 2;
+
+  @Override
+  protected Storage createStorage() {
+    return tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(StorageLevel.DISK)
+      .withMaxOpenSegments(MAX_OPEN_SEGMENTS)
+      .build();
+  }
+
+  /**
+   * Returns the number of open segments.
+   */
+  private long openSegments() {
+    return log.segments.segments().stream().filter(Segment::isLoaded).count();
+  }
+
+  /**
+   * Asserts that the log contains the expected entries.
+   */
+  private void assertEntries(int numEntries) {
+    assertEquals(log.lastIndex(), numEntries);
+    for (int i = 1; i <= numEntries; i++) {
+      try (TestEntry entry = log.get(i)) {
+        assertEquals(entry.getIndex(), i);
+        assertEquals(entry.getTerm(), 1);
+      }
+    }
+  }
+
+  /**
+   * Tests that segments are closed as the log grows.
+   */
+  public void testCloseSegments() {
+    appendEntries(entriesPerSegment * 10);
+    assertEquals(log.segments.segments().size(), 10);
+    assertTrue(openSegments() <= MAX_OPEN_SEGMENTS);
+    assertTrue(log.segments.currentSegment().isLoaded());
+  }
+
+  /**
+   * Tests reading entries from closed segments.
+   */
+  public void testReopenSegments() {
+    appendEntries(entriesPerSegment * 10);
+    assertEntries(entriesPerSegment * 10);
+    assertTrue(openSegments() <= MAX_OPEN_SEGMENTS);
+  }
+
+  /**
+   * Tests that segment metadata is available without reopening closed segments.
+   */
+  public void testClosedSegmentMetadata() {
+    appendEntries(entriesPerSegment * 10);
+    Segment segment = log.segments.firstSegment();
+    assertFalse(segment.isLoaded());
+    assertEquals(segment.firstIndex(), 1);
+    assertEquals(segment.lastIndex(), entriesPerSegment);
+    assertEquals(segment.count(), entriesPerSegment);
+    assertEquals(segment.length(), entriesPerSegment);
+    assertTrue(segment.size() > 0);
+    assertTrue(segment.isFull());
+    assertEquals(log.length(), entriesPerSegment * 10);
+    assertFalse(segment.isLoaded());
+  }
+
+  /**
+   * Tests that segments are not opened when the log is loaded.
+   */
+  public void testLoadClosedSegments() {
+    appendEntries(entriesPerSegment * 10);
+    long size = log.segments.firstSegment().size();
+    log.close();
+
+    log = createLog();
+    assertEquals(log.segments.segments().size(), 10);
+    for (Segment segment : log.segments.segments()) {
+      if (segment != log.segments.lastSegment()) {
+        assertFalse(segment.isLoaded());
+      }
+    }
+
+    Segment segment = log.segments.firstSegment();
+    assertEquals(segment.lastIndex(), entriesPerSegment);
+    assertEquals(segment.count(), entriesPerSegment);
+    assertEquals(segment.size(), size);
+    assertFalse(segment.isLoaded());
+    assertEntries(entriesPerSegment * 10);
+    assertTrue(openSegments() <= MAX_OPEN_SEGMENTS);
+
+    appendEntries(entriesPerSegment);
+    assertEntries(entriesPerSegment * 11);
+  }
+
+  /**
+   * Tests releasing entries in closed segments.
+   */
+  public void testReleaseClosedSegment() {
+    appendEntries(entriesPerSegment * 10);
+    log.release(1);
+    appendEntries(entriesPerSegment * 2);
+    Segment segment = log.segments.firstSegment();
+    assertFalse(segment.isLoaded());
+    assertEquals(segment.releaseCount(), 1);
+    assertFalse(segment.isLive(1));
+    assertTrue(segment.isLive(2));
+
+    log.close();
+    log = createLog();
+    assertFalse(log.segments.firstSegment().isLive(1));
+    assertTrue(log.segments.firstSegment().isLive(2));
+  }
+
+  /**
+   * Tests truncating the log into a closed segment.
+   */
+  public void testTruncateClosedSegment() {
+    appendEntries(entriesPerSegment * 10);
+    log.truncate(entriesPerSegment * 2 - 1);
+    assertEquals(log.lastIndex(), entriesPerSegment * 2 - 1);
+    appendEntries(entriesPerSegment * 4);
+    assertEntries(entriesPerSegment * 6 - 1);
+  }
+
+  /**
+   * Tests recovering a log with more segments than the maximum number of open segments.
+   */
+  public void testRecoverClosedSegments() {
+    appendEntries(entriesPerSegment * 10);
+    log.close();
+    log = createLog();
+    assertTrue(openSegments() <= MAX_OPEN_SEGMENTS);
+    assertEntries(entriesPerSegment * 10);
+  }
+
+  /**
+   * Tests concurrently reading from segments as they're closed and reopened.
+   */
+  public void testConcurrentReopen() throws Throwable {
+    int numEntries = entriesPerSegment * 10;
+    appendEntries(numEntries);
+
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    List<Thread> readers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      int offset = i;
+      Thread reader = new Thread(() -> {
+        try {
+          for (int j = 0; j < 20; j++) {
+            for (long index = 1; index <= numEntries; index++) {
+              long readIndex = (index + offset * entriesPerSegment) % numEntries + 1;
+              try (TestEntry entry = log.get(readIndex)) {
+                assertNotNull(entry);
+                assertEquals(entry.getIndex(), readIndex);
+              }
+            }
+          }
+        } catch (Throwable t) {
+          error.compareAndSet(null, t);
+        }
+      });
+      reader.start();
+      readers.add(reader);
+    }
+
+    for (Thread reader : readers) {
+      reader.join(10000);
+    }
+    if (error.get() != null) {
+      throw error.get();
+    }
+  }
+
+}
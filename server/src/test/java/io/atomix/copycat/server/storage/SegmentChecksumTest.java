@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.testng.Assert.*;
+
+/**
+ * Segment checksum test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class SegmentChecksumTest extends AbstractLogTest {
+
+  @Override
+  protected Storage createStorage() {
+    return tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(StorageLevel.DISK)
+      .withChecksums()
+      .build();
+  }
+
+  /**
+   * Returns the file for the given segment.
+   */
+  private File segmentFile(long id) {
+    return SegmentFile.createSegmentFile(logId, storage.directory(), id, 1);
+  }
+
+  /**
+   * Corrupts the value of the given entry in the given segment file.
+   */
+  private void corruptEntry(long segmentId, int entry) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(segmentFile(segmentId), "rw")) {
+      long position = SegmentDescriptor.BYTES;
+      for (int i = 0; i <= entry; i++) {
+        file.seek(position);
+        int length = file.readInt();
+        file.readLong();
+        int headerLength = Integer.BYTES + Long.BYTES + 1 + ((file.readByte() & 0x01) != 0 ? Long.BYTES : 0) + Integer.BYTES;
+        if (i == entry) {
+          file.seek(position + headerLength);
+          int value = file.read();
+          file.seek(position + headerLength);
+          file.write(~value);
+        }
+        position += headerLength + length;
+      }
+    }
+  }
+
+  /**
+   * Tests reading checksummed entries after recovering the log.
+   */
+  public void testRecoverChecksummedEntries() {
+    appendEntries(entriesPerSegment * 2);
+    log.close();
+    log = createLog();
+    assertEquals(log.lastIndex(), entriesPerSegment * 2);
+    for (int i = 1; i <= entriesPerSegment * 2; i++) {
+      try (TestEntry entry = log.get(i)) {
+        assertEquals(entry.getIndex(), i);
+      }
+    }
+  }
+
+  /**
+   * Tests that a torn entry at the end of the log is discarded.
+   */
+  public void testDiscardTornEntry() throws Throwable {
+    appendEntries(entriesPerSegment * 2);
+    log.close();
+    corruptEntry(2, entriesPerSegment - 1);
+    log = createLog();
+    assertEquals(log.lastIndex(), entriesPerSegment * 2 - 1);
+
+    appendEntries(1);
+    assertEquals(log.lastIndex(), entriesPerSegment * 2);
+    log.close();
+    log = createLog();
+    assertEquals(log.lastIndex(), entriesPerSegment * 2);
+  }
+
+  /**
+   * Tests that entries following a torn entry in the last segment are discarded.
+   */
+  public void testDiscardEntriesFollowingTornEntry() throws Throwable {
+    appendEntries(entriesPerSegment * 2);
+    log.close();
+    corruptEntry(2, 0);
+    log = createLog();
+    assertEquals(log.lastIndex(), entriesPerSegment);
+  }
+
+  /**
+   * Tests that segments following an invalid entry are deleted.
+   */
+  public void testDeleteSegmentsFollowingInvalidEntry() throws Throwable {
+    appendEntries(entriesPerSegment * 2);
+    log.close();
+    corruptEntry(1, 1);
+    assertTrue(SegmentFile.createIndexFile(logId, storage.directory(), 1, 1).delete());
+    log = createLog();
+    assertEquals(log.lastIndex(), 1);
+    assertFalse(segmentFile(2).exists());
+  }
+
+  /**
+   * Tests verifying checksums when reading entries.
+   */
+  public void testVerifyChecksums() throws Throwable {
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(StorageLevel.DISK)
+      .withChecksums()
+      .withVerifyChecksums(true)
+      .withEntryCacheSize(0)
+      .build();
+    log = createLog();
+    appendEntries(entriesPerSegment);
+    corruptEntry(1, 0);
+    try {
+      log.get(1);
+      fail();
+    } catch (StorageException e) {
+    }
+  }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.copycat.server.storage.compaction.Compaction;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ * Segment compression test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class SegmentCompressionTest extends AbstractLogTest {
+  private static final int SEGMENTS = 5;
+
+  public SegmentCompressionTest() {
+    entriesPerSegment = 20;
+    entryPadding = 64;
+  }
+
+  @Override
+  protected Storage createStorage() {
+    return tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(StorageLevel.DISK)
+      .withChecksums()
+      .withVerifyChecksums(true)
+      .withEntryCacheSize(0)
+      .withCompressSegments(true)
+      .withCompressionBlockSize(entrySize() * 4)
+      .build();
+  }
+
+  /**
+   * Appends and commits entries and compresses all sealed segments.
+   */
+  private void compressEntries(int numEntries) {
+    appendEntries(numEntries);
+    log.commit(numEntries);
+    log.compactor().compact(Compaction.MINOR).join();
+  }
+
+  /**
+   * Asserts that the log contains the expected entries.
+   */
+  private void assertEntries(int numEntries) {
+    assertEquals(log.lastIndex(), numEntries);
+    for (int i = 1; i <= numEntries; i++) {
+      try (TestEntry entry = log.get(i)) {
+        assertEquals(entry.getIndex(), i);
+        assertEquals(entry.getTerm(), 1);
+        assertEquals(entry.getPadding().length, entryPadding);
+      }
+    }
+  }
+
+  /**
+   * Returns the file of the given segment.
+   */
+  private File segmentFile(Segment segment) {
+    return SegmentFile.createSegmentFile(logId, storage.directory(), segment.descriptor().id(), segment.descriptor().version());
+  }
+
+  /**
+   * Tests compressing sealed segments.
+   */
+  public void testCompressSegments() {
+    compressEntries(entriesPerSegment * SEGMENTS);
+    assertEquals(log.segments.segments().size(), SEGMENTS);
+    for (Segment segment : log.segments.segments()) {
+      if (segment != log.segments.currentSegment()) {
+        assertTrue(segment.descriptor().compressed());
+        assertTrue(segment.isFull());
+        assertEquals(segment.count(), entriesPerSegment);
+        assertTrue(segmentFile(segment).length() < segment.size());
+      } else {
+        assertFalse(segment.descriptor().compressed());
+      }
+    }
+    assertEntries(entriesPerSegment * SEGMENTS);
+    assertTrue(log.segments.blockCache().count() > 0);
+  }
+
+  /**
+   * Tests that uncommitted segments are not compressed.
+   */
+  public void testSkipUncommittedSegments() {
+    appendEntries(entriesPerSegment * 2);
+    log.commit(entriesPerSegment - 1);
+    log.compactor().compact(Compaction.MINOR).join();
+    for (Segment segment : log.segments.segments()) {
+      assertFalse(segment.descriptor().compressed());
+    }
+  }
+
+  /**
+   * Tests reading raw entries from a compressed segment.
+   */
+  public void testReadRawCompressed() {
+    compressEntries(entriesPerSegment * 2);
+    long index = 1;
+    while (index <= entriesPerSegment) {
+      List<RawEntry> entries = log.readRaw(index, 1024 * 1024);
+      assertFalse(entries.isEmpty());
+      assertTrue(entries.size() <= 4);
+      for (RawEntry rawEntry : entries) {
+        try (TestEntry entry = rawEntry.toEntry(log.serializer())) {
+          assertEquals(entry.getIndex(), index);
+          assertEquals(entry.getPadding().length, entryPadding);
+        }
+        index++;
+      }
+    }
+  }
+
+  /**
+   * Tests that released entries are retained when a segment is compressed.
+   */
+  public void testRetainReleasedEntries() {
+    appendEntries(entriesPerSegment * 2);
+    log.release(2);
+    log.release(3);
+    log.commit(entriesPerSegment * 2);
+    log.compactor().compact(Compaction.MINOR).join();
+    assertTrue(log.segments.firstSegment().descriptor().compressed());
+    assertFalse(log.segments.firstSegment().isLive(2));
+    assertFalse(log.segments.firstSegment().isLive(3));
+    assertTrue(log.segments.firstSegment().isLive(4));
+  }
+
+  /**
+   * Tests recovering compressed segments.
+   */
+  public void testRecoverCompressedSegments() {
+    compressEntries(entriesPerSegment * SEGMENTS);
+    log.close();
+
+    log = createLog();
+    assertEquals(log.segments.segments().size(), SEGMENTS);
+    assertTrue(log.segments.firstSegment().descriptor().compressed());
+    assertEntries(entriesPerSegment * SEGMENTS);
+  }
+
+  /**
+   * Tests recovering compressed segments without index files.
+   */
+  public void testRecoverCompressedSegmentsWithoutIndex() {
+    compressEntries(entriesPerSegment * SEGMENTS);
+    log.close();
+
+    for (File file : storage.directory().listFiles()) {
+      if (SegmentFile.isIndexFile(logId, file)) {
+        assertTrue(file.delete());
+      }
+    }
+
+    log = createLog();
+    assertTrue(log.segments.firstSegment().descriptor().compressed());
+    assertEntries(entriesPerSegment * SEGMENTS);
+  }
+
+  /**
+   * Tests that the block cache is bounded and evicts the least recently used blocks.
+   */
+  public void testBlockCache() {
+    BlockCache cache = new BlockCache(100, new Storage().memory());
+    cache.put(1, 1, 0, new byte[40]);
+    cache.put(1, 1, 1, new byte[40]);
+    assertNotNull(cache.get(1, 1, 0));
+    cache.put(1, 1, 2, new byte[40]);
+    assertEquals(cache.count(), 2);
+    assertEquals(cache.size(), 80);
+    assertNotNull(cache.get(1, 1, 0));
+    assertNull(cache.get(1, 1, 1));
+
+    cache.put(2, 1, 0, new byte[10]);
+    cache.invalidate(1, 1);
+    assertEquals(cache.count(), 1);
+    assertEquals(cache.size(), 10);
+
+    cache.put(2, 1, 1, new byte[101]);
+    assertNull(cache.get(2, 1, 1));
+  }
+
+}
@@ -73,6 +73,7 @@ public class SegmentDescriptorTest {
       .withIndex(1025)
       .withMaxSegmentSize(1024 * 1024)
       .withMaxEntries(2048)
+      .withChecksums(true)
       .build();
 
     Assert.assertEquals(descriptor.id(), 2);
@@ -80,6 +81,7 @@ public class SegmentDescriptorTest {
     Assert.assertEquals(descriptor.index(), 1025);
     Assert.assertEquals(descriptor.maxSegmentSize(), 1024 * 1024);
     Assert.assertEquals(descriptor.maxEntries(), 2048);
+    Assert.assertTrue(descriptor.checksums());
 
     buffer.close();
 
@@ -89,6 +91,7 @@ public class SegmentDescriptorTest {
     Assert.assertEquals(descriptor.version(), 3);
     Assert.assertEquals(descriptor.index(), 1025);
     Assert.assertEquals(descriptor.maxSegmentSize(), 1024 * 1024);
+    Assert.assertTrue(descriptor.checksums());
   }
 
   /**
@@ -118,6 +121,36 @@ public class SegmentDescriptorTest {
     Assert.assertTrue(descriptor.locked());
   }
 
+  /**
+   * Tests persisting updates to the segment descriptor.
+   */
+  public void testDescriptorUpdatePersist() {
+    Buffer buffer = FileBuffer.allocate(file, SegmentDescriptor.BYTES);
+    SegmentDescriptor descriptor = SegmentDescriptor.builder(buffer)
+      .withId(2)
+      .withVersion(3)
+      .withIndex(1025)
+      .withMaxSegmentSize(1024 * 1024)
+      .withMaxEntries(2048)
+      .build();
+
+    long time = System.currentTimeMillis();
+    descriptor.update(time);
+    descriptor.lock();
+
+    buffer.close();
+
+    descriptor = new SegmentDescriptor(FileBuffer.allocate(file, SegmentDescriptor.BYTES));
+
+    Assert.assertEquals(descriptor.id(), 2);
+    Assert.assertEquals(descriptor.version(), 3);
+    Assert.assertEquals(descriptor.index(), 1025);
+    Assert.assertEquals(descriptor.maxSegmentSize(), 1024 * 1024);
+    Assert.assertEquals(descriptor.maxEntries(), 2048);
+    Assert.assertEquals(descriptor.updated(), time);
+    Assert.assertTrue(descriptor.locked());
+  }
+
   /**
    * Deletes the descriptor file.
    */
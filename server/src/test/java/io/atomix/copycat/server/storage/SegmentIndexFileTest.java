@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.testng.Assert.*;
+
+/**
+ * Segment index file test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class SegmentIndexFileTest extends AbstractLogTest {
+
+  @Override
+  protected Storage createStorage() {
+    return tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(StorageLevel.DISK)
+      .build();
+  }
+
+  /**
+   * Appends entries with the given term.
+   */
+  private void appendEntries(int numEntries, long term) {
+    for (int i = 0; i < numEntries; i++) {
+      try (TestEntry entry = log.create(TestEntry.class)) {
+        entry.setTerm(term);
+        log.append(entry);
+      }
+    }
+  }
+
+  /**
+   * Returns the index file for the given segment.
+   */
+  private File indexFile(long id) {
+    return SegmentFile.createIndexFile(logId, storage.directory(), id, 1);
+  }
+
+  /**
+   * Asserts that the log contains the expected entries.
+   */
+  private void assertEntries(int numEntries) {
+    assertEquals(log.lastIndex(), numEntries);
+    for (int i = 1; i <= numEntries; i++) {
+      try (TestEntry entry = log.get(i)) {
+        assertEquals(entry.getIndex(), i);
+        assertEquals(entry.getTerm(), i <= 4 ? 1 : 2);
+      }
+    }
+  }
+
+  /**
+   * Tests that an index record is written for each appended entry.
+   */
+  public void testWriteIndexFile() {
+    appendEntries(4, 1);
+    appendEntries(2, 2);
+    log.flush();
+    assertEquals(indexFile(1).length(), SegmentIndexFile.RECORD_BYTES * entriesPerSegment);
+    assertEquals(indexFile(2).length(), SegmentIndexFile.RECORD_BYTES * entriesPerSegment);
+  }
+
+  /**
+   * Tests that index records are buffered until the segment is flushed.
+   */
+  public void testBufferIndexRecords() {
+    appendEntries(4, 1);
+    appendEntries(1, 2);
+    assertEquals(indexFile(2).length(), 0);
+    log.flush();
+    assertEquals(indexFile(2).length(), SegmentIndexFile.RECORD_BYTES * 2);
+    appendEntries(1, 2);
+    assertEquals(indexFile(2).length(), SegmentIndexFile.RECORD_BYTES * 2);
+    log.close();
+    assertEquals(indexFile(2).length(), SegmentIndexFile.RECORD_BYTES * 3);
+    log = createLog();
+    assertEntries(6);
+  }
+
+  /**
+   * Tests loading segment indexes from index files.
+   */
+  public void testLoadIndexFile() {
+    appendEntries(4, 1);
+    appendEntries(3, 2);
+    log.close();
+    log = createLog();
+    assertEntries(7);
+    assertEquals(indexFile(3).length(), SegmentIndexFile.RECORD_BYTES);
+  }
+
+  /**
+   * Tests that entries missing from the index file are recovered from the segment.
+   */
+  public void testRecoverMissingIndexRecords() throws Exception {
+    appendEntries(4, 1);
+    appendEntries(2, 2);
+    log.close();
+
+    try (RandomAccessFile file = new RandomAccessFile(indexFile(2), "rw")) {
+      file.setLength(SegmentIndexFile.RECORD_BYTES + 5);
+    }
+    assertTrue(indexFile(1).delete());
+
+    log = createLog();
+    assertEntries(6);
+    log.flush();
+    assertEquals(indexFile(1).length(), SegmentIndexFile.RECORD_BYTES * entriesPerSegment);
+    assertEquals(indexFile(2).length(), SegmentIndexFile.RECORD_BYTES * entriesPerSegment);
+  }
+
+  /**
+   * Tests that index records that are inconsistent with the segment are discarded.
+   */
+  public void testDiscardCorruptIndexRecords() throws Exception {
+    appendEntries(4, 1);
+    appendEntries(2, 2);
+    log.close();
+
+    try (RandomAccessFile file = new RandomAccessFile(indexFile(2), "rw")) {
+      file.seek(SegmentIndexFile.RECORD_BYTES * 2);
+      file.writeLong(Long.MAX_VALUE);
+    }
+
+    log = createLog();
+    assertEntries(6);
+  }
+
+  /**
+   * Tests that truncating the log truncates the index file.
+   */
+  public void testTruncateIndexFile() {
+    appendEntries(4, 1);
+    appendEntries(2, 2);
+    log.truncate(4);
+    assertEquals(indexFile(2).length(), SegmentIndexFile.RECORD_BYTES);
+    log.close();
+    log = createLog();
+    assertEntries(4);
+  }
+
+  /**
+   * Tests that deleting the log deletes index files.
+   */
+  public void testDeleteIndexFiles() {
+    appendEntries(4, 1);
+    log.close();
+    storage.deleteLog(logId);
+    assertFalse(indexFile(1).exists());
+    assertFalse(indexFile(2).exists());
+  }
+
+}
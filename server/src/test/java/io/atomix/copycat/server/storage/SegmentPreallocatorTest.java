@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.copycat.server.storage.util.OffsetIndex;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.CountDownLatch;
+
+import static org.testng.Assert.*;
+
+/**
+ * Segment preallocator test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class SegmentPreallocatorTest extends AbstractLogTest {
+  private static final int MAX_SEGMENT_SIZE = 1024 * 64;
+
+  @Override
+  protected Storage createStorage() {
+    return tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withMaxSegmentSize(MAX_SEGMENT_SIZE)
+      .withStorageLevel(StorageLevel.DISK)
+      .withPreallocateSegments(true)
+      .withPreallocateFiles(true)
+      .build();
+  }
+
+  /**
+   * Returns the file for the given segment.
+   */
+  private File segmentFile(long id) {
+    return SegmentFile.createSegmentFile(logId, storage.directory(), id, 1);
+  }
+
+  /**
+   * Returns the file for the given segment.
+   */
+  private File segmentFile(Segment segment) {
+    return SegmentFile.createSegmentFile(logId, storage.directory(), segment.descriptor().id(), segment.descriptor().version());
+  }
+
+  /**
+   * Asserts that the log contains the expected entries.
+   */
+  private void assertEntries(int numEntries) {
+    assertEquals(log.lastIndex(), numEntries);
+    for (int i = 1; i <= numEntries; i++) {
+      try (TestEntry entry = log.get(i)) {
+        assertEquals(entry.getIndex(), i);
+      }
+    }
+  }
+
+  /**
+   * Tests rolling over to preallocated segments.
+   */
+  public void testRollPreallocatedSegments() {
+    appendEntries(entriesPerSegment * 5);
+    assertEquals(log.segments.segments().size(), 5);
+    assertEntries(entriesPerSegment * 5);
+  }
+
+  /**
+   * Tests that segment files are preallocated to the maximum segment size.
+   */
+  public void testPreallocateFiles() {
+    appendEntries(entriesPerSegment * 2);
+    for (Segment segment : log.segments.segments()) {
+      assertTrue(segmentFile(segment).length() >= MAX_SEGMENT_SIZE);
+    }
+  }
+
+  /**
+   * Tests that taking a preallocated segment that's still being allocated doesn't wait for the allocation.
+   */
+  public void testTakeIncompleteAllocation() {
+    CountDownLatch latch = new CountDownLatch(1);
+    try (SegmentPreallocator preallocator = new SegmentPreallocator((id, version) -> {
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+      return new SegmentAllocation(id, version, HeapBuffer.allocate(1024), new OffsetIndex(HeapBuffer.allocate(1024)), null, null);
+    })) {
+      preallocator.prepare(2, 1);
+      assertNull(preallocator.take(2));
+      latch.countDown();
+    }
+  }
+
+  /**
+   * Tests that an unused preallocated segment is deleted when the log is closed.
+   */
+  public void testDeleteUnusedPreallocatedSegment() {
+    appendEntries(entriesPerSegment * 2);
+    log.close();
+    assertFalse(segmentFile(3).exists());
+
+    log = createLog();
+    assertEntries(entriesPerSegment * 2);
+    appendEntries(entriesPerSegment);
+    assertEntries(entriesPerSegment * 3);
+  }
+
+  /**
+   * Tests that a preallocated segment left behind by a crash is deleted when the log is loaded.
+   */
+  public void testDeleteCrashedPreallocatedSegment() throws Exception {
+    appendEntries(entriesPerSegment * 2);
+    log.close();
+    try (RandomAccessFile file = new RandomAccessFile(segmentFile(3), "rw")) {
+      file.setLength(MAX_SEGMENT_SIZE);
+    }
+
+    log = createLog();
+    assertEquals(log.segments.segments().size(), 2);
+    assertEntries(entriesPerSegment * 2);
+    appendEntries(entriesPerSegment);
+    assertEntries(entriesPerSegment * 3);
+  }
+
+  /**
+   * Tests that a preallocated segment is discarded when the log is truncated.
+   */
+  public void testTruncateDiscardsPreallocatedSegment() {
+    appendEntries(entriesPerSegment * 2);
+    log.truncate(entriesPerSegment);
+    appendEntries(entriesPerSegment * 2);
+    assertEntries(entriesPerSegment * 3);
+
+    log.close();
+    log = createLog();
+    assertEntries(entriesPerSegment * 3);
+  }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Parallel segment recovery test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class SegmentRecoveryTest extends AbstractLogTest {
+
+  @Override
+  protected Storage createStorage() {
+    return tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(StorageLevel.DISK)
+      .withRecoveryThreads(4)
+      .build();
+  }
+
+  /**
+   * Asserts that the log contains the expected entries.
+   */
+  private void assertEntries(int numEntries) {
+    assertEquals(log.lastIndex(), numEntries);
+    for (int i = 1; i <= numEntries; i++) {
+      try (TestEntry entry = log.get(i)) {
+        assertEquals(entry.getIndex(), i);
+      }
+    }
+  }
+
+  /**
+   * Tests recovering many segments in parallel.
+   */
+  public void testParallelRecovery() {
+    appendEntries(entriesPerSegment * 50);
+    log.close();
+
+    log = createLog();
+    assertEquals(log.segments.segments().size(), 50);
+    long index = 1;
+    for (Segment segment : log.segments.segments()) {
+      assertEquals(segment.firstIndex(), index);
+      index = segment.lastIndex() + 1;
+    }
+    assertEntries(entriesPerSegment * 50);
+  }
+
+  /**
+   * Tests that a newer version of a segment supersedes the older version after the segments are loaded.
+   */
+  public void testRecoverNewerVersion() {
+    appendEntries(entriesPerSegment * 3);
+    Segment firstSegment = log.segments.firstSegment();
+    SegmentDescriptor descriptor = SegmentDescriptor.builder()
+      .withId(firstSegment.descriptor().id())
+      .withIndex(firstSegment.descriptor().index())
+      .withVersion(firstSegment.descriptor().version() + 1)
+      .withMaxSegmentSize(firstSegment.descriptor().maxSegmentSize())
+      .withMaxEntries(firstSegment.descriptor().maxEntries())
+      .build();
+    descriptor.lock();
+
+    Segment newSegment = log.segments.createSegment(descriptor);
+    for (long i = firstSegment.firstIndex(); i <= firstSegment.lastIndex(); i++) {
+      try (TestEntry entry = firstSegment.get(i)) {
+        newSegment.append(entry);
+      }
+    }
+    newSegment.close();
+    log.close();
+
+    log = createLog();
+    assertEquals(log.segments.segments().size(), 3);
+    assertEquals(log.segments.firstSegment().descriptor().version(), 2);
+    assertFalse(SegmentFile.createSegmentFile(logId, storage.directory(), 1, 1).exists());
+    assertEntries(entriesPerSegment * 3);
+  }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.testng.Assert.*;
+
+/**
+ * Segment release file test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class SegmentReleaseFileTest extends AbstractLogTest {
+
+  @Override
+  protected Storage createStorage() {
+    return tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(StorageLevel.DISK)
+      .build();
+  }
+
+  /**
+   * Returns the release file for the given segment.
+   */
+  private File releaseFile(long id) {
+    return SegmentFile.createReleaseFile(logId, storage.directory(), id, 1);
+  }
+
+  /**
+   * Tests that the release file bitmap is unmapped when the log is closed.
+   */
+  public void testUnmapOnClose() throws IOException {
+    Path maps = Paths.get("/proc/self/maps");
+    if (!Files.isReadable(maps)) {
+      throw new SkipException("memory mappings not available");
+    }
+
+    appendEntries(entriesPerSegment * 3);
+    log.release(1);
+    String path = releaseFile(1).getAbsolutePath();
+    assertTrue(Files.readAllLines(maps).stream().anyMatch(line -> line.endsWith(path)));
+    log.close();
+    assertFalse(Files.readAllLines(maps).stream().anyMatch(line -> line.endsWith(path)));
+
+    log = createLog();
+    assertFalse(log.segments.segment(1).isLive(1));
+  }
+
+  /**
+   * Tests that released entries are restored after the log is reopened.
+   */
+  public void testRecoverReleasedEntries() {
+    appendEntries(entriesPerSegment * 3);
+    for (long i = 1; i <= entriesPerSegment * 3; i++) {
+      if (i % 2 == 0) {
+        log.release(i);
+      }
+    }
+    log.close();
+    assertTrue(releaseFile(1).exists());
+
+    log = createLog();
+    for (long i = 1; i <= entriesPerSegment * 3; i++) {
+      assertEquals(log.segments.segment(i).isLive(i), i % 2 != 0);
+    }
+    assertEquals(log.segments.segment(1).releaseCount(), entriesPerSegment / 2);
+  }
+
+  /**
+   * Tests that the size of released entries is rebuilt after the log is reopened.
+   */
+  public void testRecoverReleaseSize() {
+    appendEntries(entriesPerSegment * 3);
+    long releaseSize = log.releaseSize();
+    assertEquals(releaseSize, 0);
+
+    for (long i = 1; i <= entriesPerSegment * 3; i++) {
+      if (i % 2 == 0) {
+        log.release(i);
+      }
+    }
+    releaseSize = log.releaseSize();
+    Segment segment = log.segments.segment(1);
+    long segmentReleaseSize = segment.releaseSize();
+    long segmentLiveSize = segment.liveSize();
+    assertTrue(segmentReleaseSize > 0);
+    assertTrue(segmentLiveSize > segmentReleaseSize);
+    assertTrue(releaseSize > segmentReleaseSize);
+    log.close();
+
+    log = createLog();
+    assertEquals(log.releaseSize(), releaseSize);
+    assertEquals(log.segments.segment(1).releaseSize(), segmentReleaseSize);
+    assertEquals(log.segments.segment(1).liveSize(), segmentLiveSize);
+    assertFalse(log.segments.segment(1).isLoaded());
+  }
+
+  /**
+   * Tests that released entries are cleared when entries are truncated from the segment.
+   */
+  public void testTruncateReleasedEntries() {
+    appendEntries(entriesPerSegment - 1);
+    log.release(entriesPerSegment - 1);
+    log.truncate(entriesPerSegment - 2);
+    appendEntries(1);
+    log.close();
+
+    log = createLog();
+    assertTrue(log.segments.segment(entriesPerSegment - 1).isLive(entriesPerSegment - 1));
+  }
+
+  /**
+   * Tests that deleting the log deletes release files.
+   */
+  public void testDeleteReleaseFiles() {
+    appendEntries(entriesPerSegment);
+    log.release(1);
+    log.close();
+    storage.deleteLog(logId);
+    assertFalse(releaseFile(1).exists());
+  }
+
+}
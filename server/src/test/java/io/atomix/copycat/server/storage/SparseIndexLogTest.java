@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.copycat.server.storage.entry.Entry;
+import org.testng.annotations.Factory;
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+import static org.testng.Assert.*;
+
+/**
+ * Sparse offset index log test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class SparseIndexLogTest extends FileLogTest {
+  private static final int INDEX_INTERVAL = 3;
+
+  @Factory
+  public Object[] createTests() throws Throwable {
+    return testsFor(SparseIndexLogTest.class);
+  }
+
+  @Override
+  protected Storage createStorage() {
+    return tempStorageBuilder().withDirectory(new File(String.format("target/test-logs/%s", logId)))
+      .withMaxSegmentSize(Integer.MAX_VALUE)
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(storageLevel())
+      .withEntryCacheSize(0)
+      .withIndexInterval(INDEX_INTERVAL)
+      .build();
+  }
+
+  /**
+   * Tests reading entries in random order from a sparse index.
+   */
+  public void testReadSparseIndexOutOfOrder() {
+    appendEntries(entriesPerSegment * 3);
+    for (long i = log.lastIndex(); i >= log.firstIndex(); i--) {
+      try (Entry entry = log.get(i)) {
+        assertEquals(entry.getIndex(), i);
+      }
+    }
+  }
+
+  /**
+   * Tests reading entries after truncating a sparse index.
+   */
+  public void testTruncateSparseIndex() {
+    appendEntries(entriesPerSegment * 3);
+    log.truncate(entriesPerSegment * 2 + 1);
+    assertEquals(log.lastIndex(), entriesPerSegment * 2 + 1);
+    appendEntries(entriesPerSegment);
+    assertEquals(log.lastIndex(), entriesPerSegment * 3 + 1);
+    for (long i = log.firstIndex(); i <= log.lastIndex(); i++) {
+      try (Entry entry = log.get(i)) {
+        assertEquals(entry.getIndex(), i);
+      }
+    }
+  }
+
+}
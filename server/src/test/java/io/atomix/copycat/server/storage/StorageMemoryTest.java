@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.copycat.server.storage.util.StorageSerialization;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Storage memory accounting test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class StorageMemoryTest extends AbstractLogTest {
+
+  public StorageMemoryTest() {
+    entriesPerSegment = 10;
+    entryPadding = 1024;
+  }
+
+  @Override
+  protected Storage createStorage() {
+    return tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(StorageLevel.MEMORY)
+      .withMaxMemorySize(1024 * 1024)
+      .build();
+  }
+
+  /**
+   * Tests accounting for memory allocated and released by components.
+   */
+  public void testAllocateRelease() {
+    StorageMemory memory = new Storage().memory();
+    memory.allocate(StorageMemory.Component.SEGMENTS, 100);
+    memory.allocate(StorageMemory.Component.INDEXES, 50);
+    assertEquals(memory.size(StorageMemory.Component.SEGMENTS), 100);
+    assertEquals(memory.size(StorageMemory.Component.INDEXES), 50);
+    assertEquals(memory.size(), 150);
+    assertFalse(memory.isExhausted());
+
+    memory.release(StorageMemory.Component.SEGMENTS, 100);
+    assertEquals(memory.size(StorageMemory.Component.SEGMENTS), 0);
+    assertEquals(memory.size(), 50);
+  }
+
+  /**
+   * Tests that the budget is exhausted once the memory consumed reaches the maximum size.
+   */
+  public void testExhausted() {
+    StorageMemory memory = Storage.builder().withMaxMemorySize(100).build().memory();
+    memory.allocate(StorageMemory.Component.ENTRY_CACHE, 99);
+    assertFalse(memory.isExhausted());
+    memory.allocate(StorageMemory.Component.BLOCK_CACHE, 1);
+    assertTrue(memory.isExhausted());
+    memory.release(StorageMemory.Component.ENTRY_CACHE, 99);
+    assertFalse(memory.isExhausted());
+  }
+
+  /**
+   * Tests that memory mapped segments are accounted but don't count towards the budget.
+   */
+  public void testMappedSegmentsNotBudgeted() {
+    StorageMemory memory = Storage.builder().withMaxMemorySize(100).build().memory();
+    memory.allocate(StorageMemory.Component.MAPPED_SEGMENTS, 1000);
+    assertEquals(memory.size(StorageMemory.Component.MAPPED_SEGMENTS), 1000);
+    assertEquals(memory.size(), 0);
+    assertFalse(memory.isExhausted());
+    memory.release(StorageMemory.Component.MAPPED_SEGMENTS, 1000);
+    assertEquals(memory.size(StorageMemory.Component.MAPPED_SEGMENTS), 0);
+  }
+
+  /**
+   * Tests that a mapped log never exhausts the budget with its segments.
+   */
+  public void testAccountMappedSegments() {
+    Storage storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(StorageLevel.MAPPED)
+      .withMaxMemorySize(entrySize() * entriesPerSegment)
+      .withEntryCacheSize(0)
+      .build();
+    try (Log log = new Log("mapped", storage, new Serializer().resolve(new StorageSerialization()).register(TestEntry.class))) {
+      for (int i = 0; i < entriesPerSegment * 3; i++) {
+        try (TestEntry entry = log.create(TestEntry.class)) {
+          entry.setTerm(1);
+          entry.setPadding(entryPadding);
+          log.append(entry);
+        }
+      }
+      StorageMemory memory = storage.memory();
+      assertTrue(memory.size(StorageMemory.Component.MAPPED_SEGMENTS) >= entrySize() * entriesPerSegment);
+      assertEquals(memory.size(StorageMemory.Component.SEGMENTS), 0);
+      assertFalse(memory.isExhausted());
+    }
+  }
+
+  /**
+   * Tests accounting for the memory consumed by in-memory segments and their indexes.
+   */
+  public void testAccountSegments() {
+    StorageMemory memory = storage.memory();
+    appendEntries(entriesPerSegment * 3);
+    assertTrue(memory.size(StorageMemory.Component.SEGMENTS) >= entrySize() * entriesPerSegment * 3);
+    assertTrue(memory.size(StorageMemory.Component.INDEXES) > 0);
+    assertTrue(memory.size(StorageMemory.Component.ENTRY_CACHE) > 0);
+
+    log.close();
+    assertEquals(memory.size(StorageMemory.Component.SEGMENTS), 0);
+    assertEquals(memory.size(StorageMemory.Component.INDEXES), 0);
+    assertEquals(memory.size(StorageMemory.Component.ENTRY_CACHE), 0);
+    log = createLog();
+  }
+
+  /**
+   * Tests accounting for the memory consumed by released-entry bit arrays.
+   */
+  public void testAccountReleasedEntries() {
+    StorageMemory memory = storage.memory();
+    appendEntries(entriesPerSegment);
+    long predicates = memory.size(StorageMemory.Component.PREDICATES);
+    assertTrue(predicates > 0);
+
+    log.release(1);
+    log.close();
+    assertEquals(memory.size(StorageMemory.Component.PREDICATES), 0);
+    log = createLog();
+  }
+
+  /**
+   * Tests that the budget is exhausted by a write burst.
+   */
+  public void testExhaustBudget() {
+    StorageMemory memory = storage.memory();
+    while (!memory.isExhausted()) {
+      appendEntries(entriesPerSegment);
+    }
+    assertTrue(memory.size() >= memory.maxSize());
+  }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.copycat.server.storage.util.TermIndex;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Term index test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class TermIndexTest {
+
+  /**
+   * Tests looking up terms in the index.
+   */
+  public void testLookup() {
+    TermIndex index = new TermIndex();
+    assertEquals(index.term(), 0);
+    assertEquals(index.lookup(0), 0);
+    index.index(2, 1);
+    index.index(5, 3);
+    index.index(6, 3);
+    index.index(10, 4);
+    assertEquals(index.term(), 4);
+    assertEquals(index.lookup(1), 0);
+    assertEquals(index.lookup(2), 1);
+    assertEquals(index.lookup(4), 1);
+    assertEquals(index.lookup(5), 3);
+    assertEquals(index.lookup(9), 3);
+    assertEquals(index.lookup(10), 4);
+    assertEquals(index.lookup(100), 4);
+  }
+
+  /**
+   * Tests indexing more terms than the initial capacity of the index.
+   */
+  public void testGrow() {
+    TermIndex index = new TermIndex();
+    for (int i = 1; i <= 1000; i++) {
+      index.index(i * 10, i);
+    }
+    for (int i = 1; i <= 1000; i++) {
+      assertEquals(index.lookup(i * 10), i);
+      assertEquals(index.lookup(i * 10 + 9), i);
+    }
+    assertEquals(index.term(), 1000);
+  }
+
+  /**
+   * Tests truncating the index.
+   */
+  public void testTruncate() {
+    TermIndex index = new TermIndex();
+    index.index(0, 1);
+    index.index(5, 2);
+    index.index(10, 3);
+    index.truncate(7);
+    assertEquals(index.term(), 2);
+    assertEquals(index.lookup(10), 2);
+    index.truncate(4);
+    assertEquals(index.term(), 1);
+    index.index(5, 3);
+    assertEquals(index.lookup(4), 1);
+    assertEquals(index.lookup(5), 3);
+    index.truncate(-1);
+    assertEquals(index.term(), 0);
+  }
+
+  /**
+   * Tests that indexing an offset preceding the last indexed offset replaces the following terms.
+   */
+  public void testReindex() {
+    TermIndex index = new TermIndex();
+    index.index(0, 1);
+    index.index(5, 2);
+    index.index(10, 3);
+    index.index(5, 4);
+    assertEquals(index.term(), 4);
+    assertEquals(index.lookup(4), 1);
+    assertEquals(index.lookup(10), 4);
+  }
+
+  /**
+   * Tests looking up terms for a mix of sequential and random offsets.
+   */
+  public void testLookupSequentialAndRandom() {
+    TermIndex index = new TermIndex();
+    for (int i = 1; i <= 1024; i++) {
+      index.index(i * 16, i);
+    }
+
+    long offset = 0;
+    for (int i = 0; i < 1024 * 64; i++) {
+      offset = (i & 1) == 0 ? (i >>> 1) % (1024 * 16) : (offset * 31 + 17) % (1024 * 16);
+      assertEquals(index.lookup(offset), offset / 16);
+    }
+  }
+
+}
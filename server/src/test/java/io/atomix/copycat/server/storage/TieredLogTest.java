@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.copycat.server.storage.compaction.Compaction;
+import io.atomix.copycat.server.storage.entry.Entry;
+import org.testng.annotations.Factory;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tiered log test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class TieredLogTest extends FileLogTest {
+  @Factory
+  public Object[] createTests() throws Throwable {
+    return testsFor(TieredLogTest.class);
+  }
+
+  @Override
+  protected StorageLevel storageLevel() {
+    return StorageLevel.TIERED;
+  }
+
+  /**
+   * Reads the first entry in the given segment, opening the segment if necessary.
+   */
+  private void load(Segment segment) {
+    try (Entry entry = segment.get(segment.firstIndex())) {
+      assertEquals(entry.getIndex(), segment.firstIndex());
+    }
+  }
+
+  /**
+   * Asserts that only the most recent segments in the log are mapped.
+   */
+  private void assertTiers(Log log) {
+    List<Segment> segments = new ArrayList<>(log.segments.segments());
+    for (int i = 0; i < segments.size(); i++) {
+      Segment segment = segments.get(i);
+      load(segment);
+      assertEquals(segment.isMapped(), i >= segments.size() - storage.mappedSegments());
+    }
+  }
+
+  /**
+   * Tests that recent segments are mapped and older segments are stored on disk.
+   */
+  public void testMapRecentSegments() {
+    appendEntries(entriesPerSegment * 5);
+    assertEquals(log.segments.segments().size(), 5);
+    assertTiers(log);
+  }
+
+  /**
+   * Tests that segments are unmapped once the log rolls over to newer segments.
+   */
+  public void testUnmapOlderSegments() {
+    appendEntries(entriesPerSegment * 2);
+    Segment firstSegment = log.segments.firstSegment();
+    assertTrue(firstSegment.isMapped());
+
+    appendEntries(entriesPerSegment + 1);
+    assertFalse(firstSegment.isMapped());
+    load(firstSegment);
+    assertTrue(firstSegment.isLoaded());
+    assertFalse(firstSegment.isMapped());
+  }
+
+  /**
+   * Tests that recent segments are mapped when the log is recovered.
+   */
+  public void testMapRecentSegmentsAfterRecovery() {
+    appendEntries(entriesPerSegment * 5);
+    log.close();
+
+    try (Log log = createLog()) {
+      assertEquals(log.length(), entriesPerSegment * 5);
+      assertTiers(log);
+    }
+  }
+
+  /**
+   * Tests that only segments that are no longer mapped are compressed.
+   */
+  public void testCompressUnmappedSegments() {
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(StorageLevel.TIERED)
+      .withCompressSegments(true)
+      .build();
+    log = createLog();
+
+    appendEntries(entriesPerSegment * 5);
+    log.commit(entriesPerSegment * 5).compactor().compact(Compaction.MINOR).join();
+
+    List<Segment> segments = new ArrayList<>(log.segments.segments());
+    for (int i = 0; i < segments.size(); i++) {
+      assertEquals(segments.get(i).descriptor().compressed(), i < segments.size() - storage.mappedSegments());
+    }
+    for (long i = 1; i <= entriesPerSegment * 5; i++) {
+      try (Entry entry = log.get(i)) {
+        assertEquals(entry.getIndex(), i);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.storage.compaction;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * Compaction throttle rate limiting test.
+ * <p>
+ * Throttles are driven by a manual ticker so that rate limiting can be tested without waiting.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class CompactionThrottleRateTest {
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+  private long now;
+
+  /**
+   * Tests acquiring bytes within the rate limit.
+   */
+  public void testAcquireWithinRate() {
+    CompactionThrottle throttle = new CompactionThrottle(100, () -> now);
+    assertEquals(throttle.tryAcquire(60), 0);
+    assertEquals(throttle.tryAcquire(40), 0);
+    assertEquals(throttle.tryAcquire(1), SECOND / 100);
+
+    now += SECOND / 100;
+    assertEquals(throttle.tryAcquire(1), 0);
+  }
+
+  /**
+   * Tests that the budget is refilled up to one second's worth of bytes.
+   */
+  public void testRefillLimitedToRate() {
+    CompactionThrottle throttle = new CompactionThrottle(100, () -> now);
+    assertEquals(throttle.tryAcquire(100), 0);
+
+    now += SECOND * 10;
+    assertEquals(throttle.tryAcquire(100), 0);
+    assertTrue(throttle.tryAcquire(1) > 0);
+  }
+
+  /**
+   * Tests that entries larger than the budget are acquired once the budget is not overdrawn.
+   */
+  public void testAcquireLargeEntry() {
+    CompactionThrottle throttle = new CompactionThrottle(100, () -> now);
+    assertEquals(throttle.tryAcquire(300), 0);
+    assertEquals(throttle.tryAcquire(1), SECOND * 2 + SECOND / 100);
+
+    now += SECOND;
+    assertTrue(throttle.tryAcquire(1) > 0);
+  }
+
+  /**
+   * Tests that foreground writes overdraw the budget by at most one second's worth of bytes.
+   */
+  public void testForegroundWrites() {
+    CompactionThrottle throttle = new CompactionThrottle(100, () -> now);
+    throttle.foreground(1000);
+    assertEquals(throttle.tryAcquire(1), SECOND + SECOND / 100);
+
+    now += SECOND;
+    assertEquals(throttle.tryAcquire(1), SECOND / 100);
+  }
+
+  /**
+   * Tests that rates above the point at which nanoseconds times bytes overflows are refilled.
+   */
+  public void testHighRate() {
+    long rate = 100L * 1024 * 1024 * 1024;
+    CompactionThrottle throttle = new CompactionThrottle(rate, () -> now);
+    assertEquals(throttle.tryAcquire(rate), 0);
+    assertTrue(throttle.tryAcquire(1) > 0);
+
+    now += SECOND;
+    assertEquals(throttle.tryAcquire(rate), 0);
+
+    now += SECOND / 2;
+    assertEquals(throttle.tryAcquire(rate / 2), 0);
+    assertTrue(throttle.tryAcquire(1) > 0);
+  }
+
+  /**
+   * Tests that a rate of zero disables rate limiting.
+   */
+  public void testUnlimitedRate() {
+    CompactionThrottle throttle = new CompactionThrottle(0, () -> now);
+    assertEquals(throttle.tryAcquire(Long.MAX_VALUE), 0);
+    assertEquals(throttle.tryAcquire(Long.MAX_VALUE), 0);
+  }
+
+  /**
+   * Tests that a paused throttle blocks acquisition until it's resumed.
+   */
+  public void testPauseResume() throws Throwable {
+    CompactionThrottle throttle = new CompactionThrottle(0, () -> now);
+    throttle.pause();
+
+    Thread thread = new Thread(() -> throttle.acquire(1));
+    thread.start();
+    while (thread.getState() != Thread.State.WAITING) {
+      Thread.yield();
+    }
+    assertTrue(thread.isAlive());
+
+    throttle.resume();
+    thread.join(TimeUnit.SECONDS.toMillis(10));
+    assertFalse(thread.isAlive());
+  }
+
+}